@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.benchmark;
+
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.classfilewriter.ClassFactory;
+import org.jboss.classfilewriter.ClassFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end benchmarks for class file generation.
+ * <p>
+ * {@link #create()} measures building the class model, which is dominated by the {@code CodeAttribute} stack tracking and
+ * {@code ConstPool} lookups, {@link #toBytecode()} adds serialization including the {@code StackMapTableAttribute}, and
+ * {@link #define()} additionally loads the result into the JVM. {@link #defineFromBuffer()} defines the class from a reused direct
+ * buffer instead of a fresh array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassFileBenchmark {
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    @Param({ "MANY_METHODS", "LARGE_SWITCH", "DEEP_EXCEPTION_NESTING", "HEAVY_ANNOTATIONS" })
+    public ClassFileShapes shape;
+
+    private BenchmarkClassLoader classLoader;
+
+    private String name;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    /**
+     * Classes can only be defined once per class loader, so a new loader is used for every iteration and every generated
+     * class gets a unique name.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        classLoader = new BenchmarkClassLoader(ClassFileBenchmark.class.getClassLoader());
+        name = "org.jboss.classfilewriter.benchmark.Generated" + shape.name() + COUNT.incrementAndGet();
+    }
+
+    @Benchmark
+    public ClassFile create() {
+        return shape.create(name, classLoader, classLoader);
+    }
+
+    @Benchmark
+    public byte[] toBytecode() {
+        return shape.create(name, classLoader, classLoader).toBytecode();
+    }
+
+    @Benchmark
+    public Class<?> define() {
+        return shape.create(name + "_" + COUNT.incrementAndGet(), classLoader, classLoader).define();
+    }
+
+    @Benchmark
+    public Class<?> defineFromBuffer() {
+        buffer.clear();
+        return shape.create(name + "_" + COUNT.incrementAndGet(), classLoader, classLoader).define(buffer);
+    }
+
+    /**
+     * Defines classes directly, so the benchmarks do not depend on reflective access to {@link ClassLoader}
+     */
+    private static final class BenchmarkClassLoader extends ClassLoader implements ClassFactory {
+
+        BenchmarkClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        public Class<?> defineClass(ClassLoader loader, String name, byte[] b, int off, int len, ProtectionDomain protectionDomain)
+                throws ClassFormatError {
+            return defineClass(name, b, off, len, protectionDomain);
+        }
+
+        @Override
+        public Class<?> defineClass(ClassLoader loader, String name, ByteBuffer b, ProtectionDomain protectionDomain)
+                throws ClassFormatError {
+            return defineClass(name, b, protectionDomain);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFactory;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.annotations.AnnotationValue;
+import org.jboss.classfilewriter.annotations.AnnotationsAttribute;
+import org.jboss.classfilewriter.annotations.ArrayAnnotationValue;
+import org.jboss.classfilewriter.annotations.BooleanAnnotationValue;
+import org.jboss.classfilewriter.annotations.ClassAnnotation;
+import org.jboss.classfilewriter.annotations.IntAnnotationValue;
+import org.jboss.classfilewriter.annotations.StringAnnotationValue;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.ExceptionHandler;
+import org.jboss.classfilewriter.code.LookupSwitchBuilder;
+import org.jboss.classfilewriter.code.TableSwitchBuilder;
+import org.jboss.classfilewriter.constpool.ConstPool;
+
+/**
+ * Representative class shapes used by the benchmarks. Each shape stresses a different part of the writer, roughly modelled
+ * on the proxies generated by the projects that use this library.
+ */
+public enum ClassFileShapes {
+
+    /**
+     * A proxy like class with a large number of small delegating methods and fields
+     */
+    MANY_METHODS {
+        @Override
+        void populate(ClassFile file) {
+            for (int i = 0; i < 200; ++i) {
+                file.addField(AccessFlag.PRIVATE, "field" + i, "Ljava/lang/String;");
+                ClassMethod method = file.addMethod(AccessFlag.PUBLIC, "method" + i, "I", "I", "Ljava/lang/String;");
+                CodeAttribute code = method.getCodeAttribute();
+                code.aload(2);
+                code.invokevirtual("java.lang.String", "length", "()I");
+                code.iload(1);
+                code.iadd();
+                code.iconst(i);
+                code.iadd();
+                code.returnInstruction();
+            }
+        }
+    },
+
+    /**
+     * A dispatch method containing a dense table switch and a sparse lookup switch
+     */
+    LARGE_SWITCH {
+        @Override
+        void populate(ClassFile file) {
+            ClassMethod method = file.addMethod(AccessFlag.PUBLIC | AccessFlag.STATIC, "table", "I", "I");
+            CodeAttribute code = method.getCodeAttribute();
+            code.iload(0);
+            TableSwitchBuilder table = new TableSwitchBuilder(0, 511);
+            List<AtomicReference<BranchEnd>> ends = new ArrayList<AtomicReference<BranchEnd>>();
+            for (int i = 0; i < 512; ++i) {
+                ends.add(table.add());
+            }
+            code.tableswitch(table);
+            for (int i = 0; i < ends.size(); ++i) {
+                code.branchEnd(ends.get(i).get());
+                code.iconst(i * 3);
+                code.returnInstruction();
+            }
+            code.branchEnd(table.getDefaultBranchEnd().get());
+            code.iconst(-1);
+            code.returnInstruction();
+
+            method = file.addMethod(AccessFlag.PUBLIC | AccessFlag.STATIC, "lookup", "I", "I");
+            code = method.getCodeAttribute();
+            code.iload(0);
+            LookupSwitchBuilder lookup = new LookupSwitchBuilder();
+            ends.clear();
+            for (int i = 0; i < 512; ++i) {
+                ends.add(lookup.add(i * 37));
+            }
+            code.lookupswitch(lookup);
+            for (int i = 0; i < ends.size(); ++i) {
+                code.branchEnd(ends.get(i).get());
+                code.iconst(i);
+                code.returnInstruction();
+            }
+            code.branchEnd(lookup.getDefaultBranchEnd().get());
+            code.iconst(-1);
+            code.returnInstruction();
+        }
+    },
+
+    /**
+     * A method with deeply nested try / catch blocks, each with its own handler
+     */
+    DEEP_EXCEPTION_NESTING {
+        @Override
+        void populate(ClassFile file) {
+            final int depth = 64;
+            ClassMethod method = file.addMethod(AccessFlag.PUBLIC | AccessFlag.STATIC, "nested", "I", "I");
+            CodeAttribute code = method.getCodeAttribute();
+            ExceptionHandler[] handlers = new ExceptionHandler[depth];
+            for (int i = 0; i < depth; ++i) {
+                handlers[i] = code.exceptionBlockStart(i % 2 == 0 ? "java.lang.RuntimeException"
+                        : "java.lang.IllegalStateException");
+                code.iload(0);
+                code.iconst(i);
+                code.iadd();
+                code.istore(0);
+            }
+            code.iload(0);
+            code.invokestatic("java.lang.Integer", "toString", "(I)Ljava/lang/String;");
+            code.invokestatic("java.lang.Integer", "parseInt", "(Ljava/lang/String;)I");
+            code.istore(0);
+            for (int i = depth - 1; i >= 0; --i) {
+                code.exceptionBlockEnd(handlers[i]);
+                code.iload(0);
+                code.iconst(i);
+                code.isub();
+                code.istore(0);
+            }
+            code.iload(0);
+            code.returnInstruction();
+            for (int i = 0; i < depth; ++i) {
+                code.exceptionHandlerStart(handlers[i]);
+                code.pop();
+                code.iconst(-i);
+                code.returnInstruction();
+            }
+        }
+    },
+
+    /**
+     * A class where the class, every method and every parameter carry several annotations
+     */
+    HEAVY_ANNOTATIONS {
+        @Override
+        void populate(ClassFile file) {
+            ConstPool constPool = file.getConstPool();
+            addAnnotations(constPool, -1, file.getRuntimeVisibleAnnotationsAttribute());
+            for (int i = 0; i < 100; ++i) {
+                ClassMethod method = file.addMethod(AccessFlag.PUBLIC, "annotated" + i, "V", "Ljava/lang/String;", "I",
+                        "J");
+                addAnnotations(constPool, i, method.getRuntimeVisibleAnnotationsAttribute());
+                for (int p = 0; p < 3; ++p) {
+                    method.getRuntimeVisibleParameterAnnotationsAttribute().addAnnotation(p,
+                            annotation(constPool, "org.jboss.classfilewriter.benchmark.Param", i * 3 + p));
+                }
+                method.getCodeAttribute().returnInstruction();
+            }
+        }
+    };
+
+    private static final String[] ANNOTATION_TYPES = { "org.jboss.classfilewriter.benchmark.Intercepted",
+            "org.jboss.classfilewriter.benchmark.Secured", "org.jboss.classfilewriter.benchmark.Transactional",
+            "org.jboss.classfilewriter.benchmark.Metered" };
+
+    abstract void populate(ClassFile file);
+
+    /**
+     * Creates a new class file of this shape. The class file is fully populated but has not been written yet.
+     *
+     * @param name the name of the generated class
+     * @param classLoader the class loader the class will be defined in
+     * @param classFactory the factory used to define the class
+     * @return the populated class file
+     */
+    public ClassFile create(String name, ClassLoader classLoader, ClassFactory classFactory) {
+        ClassFile file = new ClassFile(name, AccessFlag.PUBLIC | AccessFlag.SUPER, "java.lang.Object", JavaVersions.JAVA_7,
+                classLoader, classFactory, "java.io.Serializable");
+        populate(file);
+        return file;
+    }
+
+    private static void addAnnotations(ConstPool constPool, int seed, AnnotationsAttribute attribute) {
+        for (String type : ANNOTATION_TYPES) {
+            attribute.addAnnotation(annotation(constPool, type, seed));
+        }
+    }
+
+    private static ClassAnnotation annotation(ConstPool constPool, String type, int seed) {
+        List<AnnotationValue> strings = new ArrayList<AnnotationValue>();
+        for (int i = 0; i < 4; ++i) {
+            strings.add(new StringAnnotationValue(constPool, "value", "role-" + ((seed + i) & 15)));
+        }
+        List<AnnotationValue> values = Arrays.<AnnotationValue> asList(
+                new StringAnnotationValue(constPool, "name", type + seed),
+                new IntAnnotationValue(constPool, "priority", seed),
+                new BooleanAnnotationValue(constPool, "enabled", (seed & 1) == 0),
+                new ArrayAnnotationValue(constPool, "roles", strings));
+        return new ClassAnnotation(constPool, type, values);
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.jboss.classfilewriter;
 
+import java.nio.ByteBuffer;
 import java.security.ProtectionDomain;
 
 /**
@@ -59,4 +60,42 @@ public interface ClassFactory {
      */
     Class<?> defineClass(ClassLoader loader, String name, byte[] b, int off, int len, ProtectionDomain protectionDomain) throws ClassFormatError;
 
+    /**
+     * Converts a {@link ByteBuffer} into an instance of class <tt>Class</tt>. The class data is read from the buffer's
+     * position up to its limit, and the position is advanced to the limit.
+     * <p/>
+     * The default implementation delegates to {@link #defineClass(ClassLoader, String, byte[], int, int, ProtectionDomain)},
+     * copying the data into an array if the buffer is not backed by one.
+     *
+     * @param  loader
+     *         The classloader to be used for class definition.
+     *
+     * @param  name
+     *         The expected <a href="#name">binary name</a> of the class, or
+     *         <tt>null</tt> if not known
+     *
+     * @param  b
+     *         The bytes that make up the class data.
+     *
+     * @param  protectionDomain
+     *         The ProtectionDomain of the class
+     *
+     * @return  The <tt>Class</tt> object that was created from the specified
+     *          class data.
+     *
+     * @throws  ClassFormatError
+     *          If the data did not contain a valid class
+     */
+    default Class<?> defineClass(ClassLoader loader, String name, ByteBuffer b, ProtectionDomain protectionDomain) throws ClassFormatError {
+        final int len = b.remaining();
+        if (b.hasArray()) {
+            Class<?> clazz = defineClass(loader, name, b.array(), b.arrayOffset() + b.position(), len, protectionDomain);
+            b.position(b.limit());
+            return clazz;
+        }
+        byte[] data = new byte[len];
+        b.get(data);
+        return defineClass(loader, name, data, 0, len, protectionDomain);
+    }
+
 }
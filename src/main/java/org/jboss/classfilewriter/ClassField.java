@@ -19,6 +19,7 @@ package org.jboss.classfilewriter;
 
 import org.jboss.classfilewriter.annotations.AnnotationsAttribute;
 import org.jboss.classfilewriter.attributes.Attribute;
+import org.jboss.classfilewriter.attributes.ConstantValueAttribute;
 import org.jboss.classfilewriter.attributes.SignatureAttribute;
 import org.jboss.classfilewriter.constpool.ConstPool;
 import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
@@ -44,34 +45,51 @@ public class ClassField implements WritableEntry {
 
     private final ClassFile classFile;
 
-    private final AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
+    /**
+     * Created when it is first used
+     */
+    private AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
 
     private SignatureAttribute signatureAttribute;
 
     private String signature;
 
+    private ConstantValueAttribute constantValueAttribute;
+
+    /**
+     * The value as it was passed to {@link #setConstantValue(Object)}, the attribute holds the value stored in the pool
+     */
+    private Object constantValue;
+
     ClassField(int accessFlags, String name, String descriptor, ClassFile classFile,
             ConstPool constPool) {
         this.accessFlags = accessFlags;
         this.name = name;
         this.descriptor = descriptor;
         this.classFile = classFile;
-        this.nameIndex = constPool.addUtf8Entry(name);
-        this.descriptorIndex = constPool.addUtf8Entry(descriptor);
-        runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, constPool);
-        this.attributes.add(runtimeVisibleAnnotationsAttribute);
+        this.nameIndex = constPool.addUtf8(name);
+        this.descriptorIndex = constPool.addUtf8(descriptor);
     }
 
     public void write(ByteArrayDataOutputStream stream) throws IOException {
-        if(signatureAttribute != null) {
-            attributes.add(signatureAttribute);
-        }
         stream.writeShort(accessFlags);
         stream.writeShort(nameIndex);
         stream.writeShort(descriptorIndex);
-        stream.writeShort(attributes.size());
+        // empty attributes are not written, and the signature attribute is written last
+        int count = signatureAttribute == null ? 0 : 1;
+        for (Attribute attribute : attributes) {
+            if (!attribute.isEmpty()) {
+                count++;
+            }
+        }
+        stream.writeShort(count);
         for (Attribute attribute : attributes) {
-            attribute.write(stream);
+            if (!attribute.isEmpty()) {
+                attribute.write(stream);
+            }
+        }
+        if (signatureAttribute != null) {
+            signatureAttribute.write(stream);
         }
     }
 
@@ -104,6 +122,103 @@ public class ClassField implements WritableEntry {
         this.signature = signature;
     }
 
+    /**
+     * Returns the constant value as it was passed to {@link #setConstantValue(Object)}, or null if the field has none
+     */
+    public Object getConstantValue() {
+        return constantValue;
+    }
+
+    /**
+     * Sets the value of a static constant field, which is written as a ConstantValue attribute. The field is initialized to
+     * this value when the class is prepared, so it does not need to be assigned in the static initializer.
+     * <p/>
+     * The value must match the field type. <code>int</code>, <code>long</code>, <code>float</code>, <code>double</code> and
+     * String fields take an {@link Integer}, {@link Long}, {@link Float}, {@link Double} or {@link String}.
+     * <code>short</code>, <code>byte</code>, <code>char</code> and <code>boolean</code> fields take either the matching
+     * wrapper or an {@link Integer}.
+     * <p/>
+     * Entries are never removed from the constant pool, so replacing or removing a value that has already been set leaves
+     * the pool entry of the old value in the class file. Setting the same value again reuses its entry.
+     *
+     * @param value the constant value, or null to remove it
+     */
+    public void setConstantValue(Object value) {
+        if (value == null) {
+            if (constantValueAttribute != null) {
+                attributes.remove(constantValueAttribute);
+                constantValueAttribute = null;
+                constantValue = null;
+            }
+            return;
+        }
+        if ((accessFlags & AccessFlag.STATIC) == 0) {
+            throw new IllegalStateException("Constant value can only be set on a static field, " + name + " is not static");
+        }
+        ConstantValueAttribute attribute = new ConstantValueAttribute(constantValue(value), classFile.getConstPool());
+        if (constantValueAttribute == null) {
+            attributes.add(attribute);
+        } else {
+            attributes.set(attributes.indexOf(constantValueAttribute), attribute);
+        }
+        constantValueAttribute = attribute;
+        constantValue = value;
+    }
+
+    /**
+     * returns the value that is stored in the constant pool for the given value of this field
+     */
+    private Object constantValue(Object value) {
+        switch (descriptor.charAt(0)) {
+            case 'I':
+                if (value instanceof Integer) {
+                    return value;
+                }
+                break;
+            case 'S':
+            case 'B':
+                if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return ((Number) value).intValue();
+                }
+                break;
+            case 'C':
+                if (value instanceof Character) {
+                    return (int) (Character) value;
+                } else if (value instanceof Integer) {
+                    return value;
+                }
+                break;
+            case 'Z':
+                if (value instanceof Boolean) {
+                    return (Boolean) value ? 1 : 0;
+                } else if (value instanceof Integer) {
+                    return value;
+                }
+                break;
+            case 'J':
+                if (value instanceof Long) {
+                    return value;
+                }
+                break;
+            case 'F':
+                if (value instanceof Float) {
+                    return value;
+                }
+                break;
+            case 'D':
+                if (value instanceof Double) {
+                    return value;
+                }
+                break;
+            default:
+                if (value instanceof String && descriptor.equals("Ljava/lang/String;")) {
+                    return value;
+                }
+        }
+        throw new IllegalArgumentException("Constant value " + value + " of type " + value.getClass().getName()
+                + " cannot be assigned to field " + name + " of type " + descriptor);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -136,6 +251,11 @@ public class ClassField implements WritableEntry {
     }
 
     public AnnotationsAttribute getRuntimeVisibleAnnotationsAttribute() {
+        if (runtimeVisibleAnnotationsAttribute == null) {
+            runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, classFile
+                    .getConstPool());
+            attributes.add(runtimeVisibleAnnotationsAttribute);
+        }
         return runtimeVisibleAnnotationsAttribute;
     }
 }
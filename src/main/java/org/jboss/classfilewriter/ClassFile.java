@@ -19,21 +19,30 @@ package org.jboss.classfilewriter;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.jboss.classfilewriter.annotations.AnnotationBuilder;
 import org.jboss.classfilewriter.annotations.AnnotationsAttribute;
 import org.jboss.classfilewriter.attributes.Attribute;
+import org.jboss.classfilewriter.attributes.BootstrapMethodsAttribute;
+import org.jboss.classfilewriter.attributes.NestHostAttribute;
+import org.jboss.classfilewriter.attributes.NestMembersAttribute;
+import org.jboss.classfilewriter.code.CodeAttribute;
 import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.constpool.MethodHandleKind;
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
 import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
 import org.jboss.classfilewriter.util.DescriptorUtils;
 
@@ -43,6 +52,9 @@ import org.jboss.classfilewriter.util.DescriptorUtils;
  */
 public class ClassFile implements WritableEntry {
 
+    private static final String OBJECT_METHODS_BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/TypeDescriptor;Ljava/lang/Class;Ljava/lang/String;[Ljava/lang/invoke/MethodHandle;)Ljava/lang/Object;";
+
     private final String name;
 
     private final String superclass;
@@ -55,20 +67,54 @@ public class ClassFile implements WritableEntry {
 
     private final List<String> interfaces = new ArrayList<String>();
 
-    private final Set<ClassField> fields = new HashSet<ClassField>();
+    /**
+     * The fields and methods are written in the order they were added, so the same input always produces the same class file
+     */
+    private final Set<ClassField> fields = new LinkedHashSet<ClassField>();
 
-    private final Set<ClassMethod> methods = new HashSet<ClassMethod>();
+    private final Set<ClassMethod> methods = new LinkedHashSet<ClassMethod>();
 
     private byte[] bytecode;
 
+    /**
+     * The length of the class data in {@link #bytecode}, the array may be larger than the class data
+     */
+    private int bytecodeLength;
+
+    /**
+     * The 64 bit FNV-1a hash of the class data, computed when the bytecode is written
+     */
+    private long contentHash;
+
+    /**
+     * true once the class has been written, either to {@link #bytecode} or directly into a caller's array
+     */
+    private boolean written;
+
     private final List<Attribute> attributes = new ArrayList<Attribute>();
 
-    private final AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
+    /**
+     * Created when it is first used
+     */
+    private AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
+
+    /**
+     * The BootstrapMethods attribute, which is only added once the first bootstrap method is added
+     */
+    private BootstrapMethodsAttribute bootstrapMethodsAttribute;
+
+    private NestHostAttribute nestHostAttribute;
+
+    private NestMembersAttribute nestMembersAttribute;
 
     private final ClassLoader classLoader;
 
     private final ClassFactory classFactory;
 
+    private CodeAttribute.StackFrameTypeResolver stackFrameTypeResolver;
+
+    private boolean unchecked;
+
     @Deprecated
     public ClassFile(String name, String superclass, String... interfaces) {
         this(name, AccessFlag.of(AccessFlag.SUPER, AccessFlag.PUBLIC), superclass, null, interfaces);
@@ -102,6 +148,22 @@ public class ClassFile implements WritableEntry {
         this(name, accessFlags, superclass, JavaVersions.JAVA_6, classLoader, classFactory, interfaces);
     }
 
+    /**
+     * Creates a class file that will be defined with a {@link LookupClassFactory} using the given lookup. The class must be in
+     * the same package as the lookup class.
+     */
+    public ClassFile(String name, String superclass, MethodHandles.Lookup lookup, String... interfaces) {
+        this(name, AccessFlag.of(AccessFlag.SUPER, AccessFlag.PUBLIC), superclass, JavaVersions.JAVA_6, lookup, interfaces);
+    }
+
+    /**
+     * Creates a class file that will be defined with a {@link LookupClassFactory} using the given lookup. The class must be in
+     * the same package as the lookup class.
+     */
+    public ClassFile(String name, int accessFlags, String superclass, int version, MethodHandles.Lookup lookup, String... interfaces) {
+        this(name, accessFlags, superclass, version, lookup.lookupClass().getClassLoader(), new LookupClassFactory(lookup), interfaces);
+    }
+
     public ClassFile(String name, int accessFlags, String superclass, int version, ClassLoader classLoader, ClassFactory classFactory, String... interfaces) {
         if(version > JavaVersions.JAVA_6 && classLoader == null) {
             throw new IllegalArgumentException("ClassLoader must be specified if version is greater than Java 6");
@@ -116,8 +178,6 @@ public class ClassFile implements WritableEntry {
         this.superclass = superclass;
         this.accessFlags = accessFlags;
         this.interfaces.addAll(Arrays.asList(interfaces));
-        this.runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, constPool);
-        this.attributes.add(runtimeVisibleAnnotationsAttribute);
     }
 
     public void addInterface(String iface) {
@@ -173,6 +233,90 @@ public class ClassFile implements WritableEntry {
         return method;
     }
 
+    /**
+     * Adds <code>equals</code>, <code>hashCode</code> and <code>toString</code> methods that are implemented by the
+     * <code>java.lang.runtime.ObjectMethods</code> bootstrap, which requires JDK 16 or later at runtime. The methods are
+     * based on the given fields, which must already have been added to this class, in the same way as the methods of a
+     * record.
+     *
+     * @param fieldNames the names of the instance fields to include, in the order they are compared and printed
+     * @throws InvalidBytecodeException if the class file version is older than Java 7
+     * @throws IllegalArgumentException if one of the fields does not exist or is static
+     * @throws DuplicateMemberException if one of the methods already exists
+     */
+    public void addObjectMethods(String... fieldNames) {
+        if (version < JavaVersions.JAVA_7) {
+            throw new InvalidBytecodeException("Object methods require a class file version of at least Java 7");
+        }
+        ClassField[] objectFields = new ClassField[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; ++i) {
+            ClassField field = getField(fieldNames[i]);
+            if (field == null) {
+                throw new IllegalArgumentException("Field " + fieldNames[i] + " does not exist on " + name);
+            }
+            if ((field.getAccessFlags() & AccessFlag.STATIC) != 0) {
+                throw new IllegalArgumentException("Field " + fieldNames[i] + " on " + name
+                        + " is static, so it cannot be used by object methods");
+            }
+            objectFields[i] = field;
+        }
+        checkMethodAbsent("equals", "(Ljava/lang/Object;)Z");
+        checkMethodAbsent("hashCode", "()I");
+        checkMethodAbsent("toString", "()Ljava/lang/String;");
+
+        int[] arguments = new int[objectFields.length + 2];
+        arguments[0] = constPool.addClass(name);
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < objectFields.length; ++i) {
+            ClassField field = objectFields[i];
+            if (i != 0) {
+                names.append(';');
+            }
+            names.append(field.getName());
+            arguments[i + 2] = constPool.addMethodHandle(MethodHandleKind.GET_FIELD, name, field.getName(),
+                    field.getDescriptor());
+        }
+        arguments[1] = constPool.addString(names.toString());
+        int bootstrap = addBootstrapMethod("java/lang/runtime/ObjectMethods", "bootstrap", OBJECT_METHODS_BOOTSTRAP_DESCRIPTOR,
+                arguments);
+        final String descriptor = getDescriptor();
+
+        CodeAttribute code = addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.FINAL), "equals", "Z", "Ljava/lang/Object;")
+                .getCodeAttribute();
+        code.aload(0);
+        code.aload(1);
+        code.invokedynamic(bootstrap, "equals", "(" + descriptor + "Ljava/lang/Object;)Z");
+        code.returnInstruction();
+
+        code = addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.FINAL), "hashCode", "I").getCodeAttribute();
+        code.aload(0);
+        code.invokedynamic(bootstrap, "hashCode", "(" + descriptor + ")I");
+        code.returnInstruction();
+
+        code = addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.FINAL), "toString", "Ljava/lang/String;").getCodeAttribute();
+        code.aload(0);
+        code.invokedynamic(bootstrap, "toString", "(" + descriptor + ")Ljava/lang/String;");
+        code.returnInstruction();
+    }
+
+    private void checkMethodAbsent(String methodName, String descriptor) {
+        for (ClassMethod method : methods) {
+            if (method.getName().equals(methodName) && method.getDescriptor().equals(descriptor)) {
+                throw new DuplicateMemberException("Method  already exists. Method: " + methodName + " Descriptor: "
+                        + descriptor);
+            }
+        }
+    }
+
+    private ClassField getField(String fieldName) {
+        for (ClassField field : fields) {
+            if (field.getName().equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
     /**
      * Adds a method with the same signiture as the given method, including exception types
      * <p>
@@ -230,13 +374,26 @@ public class ClassFile implements WritableEntry {
     }
 
     public void write(ByteArrayDataOutputStream stream) throws IOException {
+        // split methods that are too large, this adds helper methods and the const pool entries they need
+        for (ClassMethod method : new ArrayList<ClassMethod>(methods)) {
+            if (method.getCodeAttribute() != null) {
+                method.getCodeAttribute().split();
+            }
+        }
+        // compute the frames of unchecked code, which may add class entries to the const pool
+        for (ClassMethod method : methods) {
+            if (method.getCodeAttribute() != null) {
+                method.getCodeAttribute().computeFrames();
+            }
+        }
+
         // first make sure everything we need is in the const pool
-        int nameIndex = constPool.addClassEntry(name);
-        int superClassIndex = constPool.addClassEntry(superclass);
+        int nameIndex = constPool.addClass(name);
+        int superClassIndex = constPool.addClass(superclass);
 
         List<Integer> interfaceIndexes = new ArrayList<Integer>(interfaces.size());
         for (String i : interfaces) {
-            interfaceIndexes.add(constPool.addClassEntry(i));
+            interfaceIndexes.add(constPool.addClass(i));
         }
 
         stream.writeInt(0xCAFEBABE);// magic
@@ -257,12 +414,38 @@ public class ClassFile implements WritableEntry {
         for (ClassMethod method : methods) {
             method.write(stream);
         }
-        stream.writeShort(attributes.size()); // attribute count
+        // empty attributes are not written
+        int attributeCount = 0;
         for (Attribute attribute : attributes) {
-            attribute.write(stream);
+            if (!attribute.isEmpty()) {
+                attributeCount++;
+            }
+        }
+        stream.writeShort(attributeCount); // attribute count
+        for (Attribute attribute : attributes) {
+            if (!attribute.isEmpty()) {
+                attribute.write(stream);
+            }
         }
     }
 
+    /**
+     * Estimates the size of the class file, so the output buffer does not need to be resized while the class is written. The
+     * const pool and the bytecode lengths are exact, the other structures use a rough per member allowance.
+     */
+    private int estimateSize() {
+        // magic, version, const pool, access flags, this, super, and the interface, field, method and attribute counts
+        int size = 24 + constPool.getLength() + interfaces.size() * 2 + fields.size() * 16;
+        for (ClassMethod method : methods) {
+            size += 64;
+            CodeAttribute code = method.getCodeAttribute();
+            if (code != null) {
+                size += code.getCodeLength();
+            }
+        }
+        return size;
+    }
+
     public Class<?> define() {
         return defineInternal(classLoader, null);
     }
@@ -283,29 +466,204 @@ public class ClassFile implements WritableEntry {
         return defineInternal(loader, domain);
     }
 
+    /**
+     * Writes the class into the given buffer at its current position, and defines it from there. The buffer can be reused
+     * once this method returns, its position is left after the class data.
+     *
+     * @throws java.nio.BufferOverflowException if the class does not fit in the buffer
+     */
+    public Class<?> define(ByteBuffer buffer) {
+        return define(buffer, null);
+    }
+
+    /**
+     * Writes the class into the given buffer at its current position, and defines it from there using the given
+     * ProtectionDomain. The buffer can be reused once this method returns, its position is left after the class data.
+     *
+     * @throws java.nio.BufferOverflowException if the class does not fit in the buffer
+     */
+    public Class<?> define(ByteBuffer buffer, ProtectionDomain domain) {
+        final int start = buffer.position();
+        writeTo(buffer);
+        ByteBuffer data = buffer.duplicate();
+        data.limit(buffer.position());
+        data.position(start);
+        return classFactory.defineClass(classLoader, name, data, domain);
+    }
+
     private Class<?> defineInternal(ClassLoader loader, ProtectionDomain domain) {
-        byte[] b = toBytecode();
-        return classFactory.defineClass(loader, name, b, 0, b.length, domain);
+        writeBytecode();
+        return classFactory.defineClass(loader, name, bytecode, 0, bytecodeLength, domain);
     }
 
     public byte[] toBytecode() {
+        writeBytecode();
+        if (bytecode.length != bytecodeLength) {
+            bytecode = Arrays.copyOf(bytecode, bytecodeLength);
+        }
+        return bytecode;
+    }
+
+    /**
+     * Returns the length of the class file in bytes
+     */
+    public int getBytecodeLength() {
+        if (!written) {
+            writeBytecode();
+        }
+        return bytecodeLength;
+    }
+
+    /**
+     * Writes the class file into the given buffer at its current position, advancing the position past the class data.
+     * <p/>
+     * If the class has not been written yet and the buffer is backed by an accessible array, the class is encoded directly into
+     * the buffer. Otherwise the bytecode is written once and copied into the buffer.
+     *
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the class does not fit in the buffer. The position of the buffer is not
+     *         changed, but its remaining content is undefined.
+     */
+    public int writeTo(ByteBuffer buffer) {
+        if (bytecode == null && buffer.hasArray()) {
+            final int length = writeDirect(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (length == -1) {
+                throw new BufferOverflowException();
+            }
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+        writeBytecode();
+        buffer.put(bytecode, 0, bytecodeLength);
+        return bytecodeLength;
+    }
+
+    /**
+     * Writes the class file into the given array, starting at <code>offset</code>. If the class has not been written yet it is
+     * encoded directly into the array.
+     *
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the class does not fit in the array. The content of the array after
+     *         <code>offset</code> is undefined.
+     */
+    public int writeTo(byte[] array, int offset) {
+        if (bytecode == null) {
+            if (offset < 0 || offset > array.length) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " is outside of an array of length " + array.length);
+            }
+            final int length = writeDirect(array, offset, array.length - offset);
+            if (length == -1) {
+                throw new IndexOutOfBoundsException("Class " + name + " of " + bytecodeLength + " bytes does not fit in "
+                        + (array.length - offset) + " bytes");
+            }
+            return length;
+        }
+        System.arraycopy(bytecode, 0, array, offset, bytecodeLength);
+        return bytecodeLength;
+    }
+
+    /**
+     * Writes the class into the given region of an array. The bytecode is not kept, so writing the class again encodes it
+     * again, which gives the same result.
+     *
+     * @return the number of bytes written, or -1 if the class does not fit in the region, in which case the bytecode is kept
+     */
+    private int writeDirect(byte[] array, int offset, int length) {
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(array, offset, length);
+        final ByteArrayDataOutputStream stream = new ByteArrayDataOutputStream(buffer);
+        try {
+            write(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        bytecodeLength = buffer.size();
+        contentHash = stream.getContentHash();
+        written = true;
+        if (buffer.array() != array) {
+            // the buffer moved the data to a new array, keep it so the class is not written again
+            bytecode = buffer.array();
+            return -1;
+        }
+        return bytecodeLength;
+    }
+
+    private void writeBytecode() {
         // TODO: throw illegal state exception if the class file is modified after writing
         if (bytecode == null) {
             try {
-                ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
-                write(out);
-                bytecode = out.getBytes();
+                ByteArrayBuffer buffer = new ByteArrayBuffer(estimateSize());
+                ByteArrayDataOutputStream stream = new ByteArrayDataOutputStream(buffer);
+                write(stream);
+                bytecode = buffer.array();
+                bytecodeLength = buffer.size();
+                contentHash = stream.getContentHash();
+                written = true;
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
-        return bytecode;
+    }
+
+    /**
+     * Returns a 64 bit FNV-1a hash of the class file. As the class file written for a given sequence of calls is always the
+     * same, this can be used as the key of a cache of generated classes. This writes the bytecode if it has not been written
+     * already.
+     */
+    public long getContentHash() {
+        if (!written) {
+            writeBytecode();
+        }
+        return contentHash;
+    }
+
+    /**
+     * returns the 64 bit FNV-1a hash of the bytes between the position and the limit of the buffer
+     */
+    static long hash(ByteBuffer data) {
+        long hash = ByteArrayDataOutputStream.FNV_OFFSET_BASIS;
+        for (int i = data.position(); i < data.limit(); ++i) {
+            hash ^= data.get(i) & 0xFF;
+            hash *= ByteArrayDataOutputStream.FNV_PRIME;
+        }
+        return hash;
     }
 
     public ClassLoader getClassLoader() {
         return classLoader;
     }
 
+    ClassFactory getClassFactory() {
+        return classFactory;
+    }
+
+    public CodeAttribute.StackFrameTypeResolver getStackFrameTypeResolver() {
+        return stackFrameTypeResolver;
+    }
+
+    /**
+     * Sets the resolver used to merge stack frames in methods that do not have their own resolver set. If this is not set an
+     * uncached {@link org.jboss.classfilewriter.code.ClassLoadingStackFrameTypeResolver} is used. To share merge results
+     * between class files set a {@link org.jboss.classfilewriter.code.CachingStackFrameTypeResolver}, such as
+     * {@link org.jboss.classfilewriter.code.CachingStackFrameTypeResolver#getDefault()}. Frames are merged as the code is
+     * written, so the resolver must be set before writing the code of any method.
+     */
+    public void setStackFrameTypeResolver(CodeAttribute.StackFrameTypeResolver stackFrameTypeResolver) {
+        this.stackFrameTypeResolver = stackFrameTypeResolver;
+    }
+
+    public boolean isUnchecked() {
+        return unchecked;
+    }
+
+    /**
+     * Disables tracking and validation of the stack and the local variables in the code of methods that are added after this
+     * is called. Their stack map frames are computed from the finished bytecode when the class file is written. See
+     * {@link CodeAttribute#setUnchecked(boolean)}.
+     */
+    public void setUnchecked(boolean unchecked) {
+        this.unchecked = unchecked;
+    }
+
     public ConstPool getConstPool() {
         return constPool;
     }
@@ -319,7 +677,78 @@ public class ClassFile implements WritableEntry {
         return DescriptorUtils.makeDescriptor(name);
     }
 
+    /**
+     * Adds a bootstrap method to the BootstrapMethods attribute of this class, and returns its index. Identical bootstrap
+     * methods share an index.
+     *
+     * @param methodHandleIndex the const pool index of the bootstrap method handle
+     * @param argumentIndexes the const pool indexes of the static arguments
+     */
+    public int addBootstrapMethod(int methodHandleIndex, int... argumentIndexes) {
+        if (bootstrapMethodsAttribute == null) {
+            bootstrapMethodsAttribute = new BootstrapMethodsAttribute(constPool);
+            attributes.add(bootstrapMethodsAttribute);
+        }
+        return bootstrapMethodsAttribute.addBootstrapMethod(methodHandleIndex, argumentIndexes);
+    }
+
+    /**
+     * Adds a static bootstrap method to the BootstrapMethods attribute of this class, and returns its index.
+     *
+     * @param className the class that declares the bootstrap method
+     * @param methodName the name of the bootstrap method
+     * @param descriptor the descriptor of the bootstrap method
+     * @param argumentIndexes the const pool indexes of the static arguments
+     */
+    public int addBootstrapMethod(String className, String methodName, String descriptor, int... argumentIndexes) {
+        int methodHandleIndex = constPool.addMethodHandle(MethodHandleKind.INVOKE_STATIC, className, methodName, descriptor);
+        return addBootstrapMethod(methodHandleIndex, argumentIndexes);
+    }
+
+    /**
+     * Makes this class a member of the nest hosted by the given class, which gives the classes access to each other's private
+     * members. The host class must list this class as a nest member, and be in the same package and class loader.
+     */
+    public void setNestHost(String hostClass) {
+        checkNestSupported();
+        if (nestMembersAttribute != null) {
+            throw new IllegalStateException(name + " is a nest host, so it cannot be a member of another nest");
+        }
+        if (nestHostAttribute != null) {
+            attributes.remove(nestHostAttribute);
+        }
+        nestHostAttribute = new NestHostAttribute(hostClass, constPool);
+        attributes.add(nestHostAttribute);
+    }
+
+    /**
+     * Makes this class the host of a nest that includes the given class, which gives the classes access to each other's
+     * private members. The member class must name this class as its nest host.
+     */
+    public void addNestMember(String memberClass) {
+        checkNestSupported();
+        if (nestHostAttribute != null) {
+            throw new IllegalStateException(name + " is a member of the nest hosted by " + nestHostAttribute.getHostClass()
+                    + ", so it cannot be a nest host");
+        }
+        if (nestMembersAttribute == null) {
+            nestMembersAttribute = new NestMembersAttribute(constPool);
+            attributes.add(nestMembersAttribute);
+        }
+        nestMembersAttribute.addMemberClass(memberClass);
+    }
+
+    private void checkNestSupported() {
+        if (version < JavaVersions.JAVA_11) {
+            throw new InvalidBytecodeException("Nests require a class file version of at least Java 11");
+        }
+    }
+
     public AnnotationsAttribute getRuntimeVisibleAnnotationsAttribute() {
+        if (runtimeVisibleAnnotationsAttribute == null) {
+            runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, constPool);
+            attributes.add(runtimeVisibleAnnotationsAttribute);
+        }
         return runtimeVisibleAnnotationsAttribute;
     }
 
@@ -332,6 +761,18 @@ public class ClassFile implements WritableEntry {
         return name;
     }
 
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     *
+     * @return The class file major version
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      *
      * @return The generated superclass name
@@ -0,0 +1,409 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.ProtectionDomain;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A cache of generated class files that is stored in an archive file, so that classes generated by one JVM can be defined
+ * by the next without building and writing the class file again.
+ * <p/>
+ * Classes are stored under a key supplied by the generator, which must identify everything the generated class depends on.
+ * The archive is memory mapped when the cache is opened, and classes found in the cache are defined directly from the
+ * mapped file. Each class is stored with its {@link ClassFile#getContentHash() content hash}, which is checked before the
+ * class is first used, so a corrupt entry is discarded and the class is generated again. The archive also records a version
+ * string, and an archive written with a different version is ignored, so changing the version invalidates every entry.
+ * <p/>
+ * New classes are only written to the archive by {@link #flush()} or {@link #close()}. Each flush writes a new generation
+ * of the archive next to the given file, named after it with the generation number appended, and then deletes the older
+ * generations. A mapped archive is never replaced, which some platforms do not allow. Only the classes that have been used
+ * since the cache was opened are written, so classes that are no longer generated do not stay in the archive. This class
+ * is thread safe.
+ */
+public final class ClassFileCache implements Closeable {
+
+    private static final int MAGIC = 0x4A434643;
+
+    /**
+     * The version of the archive format, which is incremented when the layout of the archive changes
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+    /**
+     * The file name of the archive followed by a dot, the generation number follows it
+     */
+    private final String prefix;
+
+    private final String version;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * The generation of the archive that was read or last written, or -1 if there is none
+     */
+    private long generation = -1;
+
+    /**
+     * true if entries have been added or removed since the archive was read or last written
+     */
+    private boolean modified;
+
+    /**
+     * Opens the cache stored in the given file. If the archive does not exist, was written with a different version or is
+     * corrupt the cache starts out empty.
+     *
+     * @param file the archive file, the generations of the archive are stored next to it
+     * @param version the version of the generator, entries written by a different version are ignored
+     * @throws IOException if the archive cannot be read
+     */
+    public ClassFileCache(Path file, String version) throws IOException {
+        this.directory = file.toAbsolutePath().getParent();
+        this.prefix = file.getFileName().toString() + '.';
+        this.version = version;
+        for (;;) {
+            long latest = latestGeneration();
+            if (latest < 0) {
+                break;
+            }
+            try (FileChannel channel = FileChannel.open(generationFile(latest), StandardOpenOption.READ)) {
+                generation = latest;
+                if (channel.size() > Integer.MAX_VALUE || !readArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                        .size()))) {
+                    entries.clear();
+                    modified = true;
+                }
+                break;
+            } catch (NoSuchFileException e) {
+                // another process wrote a newer generation and deleted this one
+            }
+        }
+    }
+
+    /**
+     * Returns the class file stored under the given key, or null if the cache does not contain it or the stored class file is
+     * corrupt.
+     */
+    public ByteBuffer get(String key) {
+        Entry entry = lookup(key);
+        return entry == null ? null : entry.data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Stores the class file under the given key, replacing any class file that is already stored under that key.
+     */
+    public void put(String key, ClassFile classFile) {
+        Entry entry = new Entry(classFile.getName(), classFile.getContentHash(), ByteBuffer.wrap(classFile.toBytecode()));
+        entry.verified = true;
+        entry.used = true;
+        synchronized (this) {
+            entries.put(key, entry);
+            modified = true;
+        }
+    }
+
+    /**
+     * Defines the class stored under the given key. If the cache does not contain it the class file is generated and added
+     * to the cache.
+     *
+     * @param key the key of the class
+     * @param loader the class loader to define the class in
+     * @param factory the factory that defines the class
+     * @param domain the protection domain of the class, may be null
+     * @param generator generates the class file if it is not in the cache
+     * @return the defined class
+     */
+    public Class<?> define(String key, ClassLoader loader, ClassFactory factory, ProtectionDomain domain,
+            Supplier<ClassFile> generator) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            ClassFile classFile = generator.get();
+            put(key, classFile);
+            entry = lookup(key);
+        }
+        return factory.defineClass(loader, entry.name, entry.data.duplicate(), domain);
+    }
+
+    /**
+     * Defines the class stored under the given key with the default class factory. If the cache does not contain it the class
+     * file is generated and added to the cache.
+     */
+    public Class<?> define(String key, ClassLoader loader, Supplier<ClassFile> generator) {
+        return define(key, loader, DefaultClassFactory.INSTANCE, null, generator);
+    }
+
+    /**
+     * Writes a new generation of the archive if it would differ from the current one, either because classes have been
+     * added or removed, or because some classes in the archive have not been used since the cache was opened. Unused classes
+     * are left out of the new generation, so this should be called once the application has generated the classes it needs,
+     * usually through {@link #close()}.
+     * <p/>
+     * The archive is written to a temporary file that is then moved to the name of the new generation, so other processes
+     * never see a partially written archive. Older generations are deleted afterwards. If an older generation cannot be
+     * deleted, for example because it is still mapped, it is deleted by a later flush instead.
+     */
+    public synchronized void flush() throws IOException {
+        boolean write = modified;
+        for (Entry entry : entries.values()) {
+            write |= entry.used != entry.archived;
+        }
+        if (!write) {
+            return;
+        }
+        Path temp = Files.createTempFile(directory, prefix, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                int count = 0;
+                for (Entry entry : entries.values()) {
+                    if (entry.used) {
+                        ++count;
+                    }
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, version);
+                out.writeInt(count);
+                byte[] buffer = new byte[8192];
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    if (!entry.used) {
+                        continue;
+                    }
+                    writeString(out, e.getKey());
+                    writeString(out, entry.name);
+                    out.writeLong(entry.hash);
+                    ByteBuffer data = entry.data.duplicate();
+                    out.writeInt(data.remaining());
+                    while (data.hasRemaining()) {
+                        int length = Math.min(buffer.length, data.remaining());
+                        data.get(buffer, 0, length);
+                        out.write(buffer, 0, length);
+                    }
+                }
+            }
+            long next = Math.max(generation, latestGeneration()) + 1;
+            while (!moveIfAbsent(temp, generationFile(next))) {
+                ++next;
+            }
+            generation = next;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        for (Entry entry : entries.values()) {
+            entry.archived = entry.used;
+        }
+        modified = false;
+        deleteOlderGenerations();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * returns the entry stored under the given key, checking its hash the first time it is used
+     */
+    private synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.used = true;
+        if (entry.verified) {
+            return entry;
+        }
+        if (ClassFile.hash(entry.data.duplicate()) != entry.hash) {
+            entries.remove(key);
+            modified = true;
+            return null;
+        }
+        entry.verified = true;
+        return entry;
+    }
+
+    private Path generationFile(long generation) {
+        return directory.resolve(prefix + generation);
+    }
+
+    /**
+     * returns the generation of the file, or -1 if it is not a generation of this archive
+     */
+    private long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); ++i) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * returns the newest generation of the archive in the directory, or -1 if there is none
+     */
+    private long latestGeneration() throws IOException {
+        long latest = -1;
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    latest = Math.max(latest, generationOf(file));
+                }
+            }
+        }
+        return latest;
+    }
+
+    private void deleteOlderGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                long g = generationOf(file);
+                if (g >= 0 && g < generation) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // still mapped by this or another process
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * moves the file to the target, returning false if the target already exists
+     */
+    private static boolean moveIfAbsent(Path source, Path target) throws IOException {
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target);
+            }
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * reads the index of the archive, the class files stay in the mapped buffer. Returns false if the archive cannot be used.
+     */
+    private boolean readArchive(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || !version.equals(readString(buffer))) {
+                return false;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; ++i) {
+                String key = readString(buffer);
+                String name = readString(buffer);
+                long hash = buffer.getLong();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    return false;
+                }
+                ByteBuffer data = buffer.slice();
+                data.limit(length);
+                buffer.position(buffer.position() + length);
+                Entry entry = new Entry(name, hash, data);
+                entry.archived = true;
+                entries.put(key, entry);
+            }
+            return !buffer.hasRemaining();
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static final class Entry {
+
+        private final String name;
+
+        private final long hash;
+
+        /**
+         * The class data, from the position to the limit. This is a slice of the mapped archive for entries that were read
+         * from the archive.
+         */
+        private final ByteBuffer data;
+
+        /**
+         * true once the hash of the data has been checked
+         */
+        private boolean verified;
+
+        /**
+         * true if the entry has been used since the cache was opened, only used entries are written to the archive
+         */
+        private boolean used;
+
+        /**
+         * true if the entry is stored in the current generation of the archive
+         */
+        private boolean archived;
+
+        Entry(String name, long hash, ByteBuffer data) {
+            this.name = name;
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.classfilewriter.constpool.ConstPoolEntryType;
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+/**
+ * A finished class file that is used as a template for classes that differ from it only in their name, their superclass or
+ * some of their constants.
+ * <p/>
+ * The prototype is written once. Each derived class file is produced by writing a new const pool, and the fields, methods
+ * and attributes of the prototype, which refer to the const pool by index, are copied unchanged. This avoids building the
+ * class file model and computing the stack frames for every class.
+ * <p/>
+ * When a class is derived:
+ * <ul>
+ * <li>every reference to the prototype class, including references in descriptors and signatures, refers to the new
+ * class</li>
+ * <li>if a new superclass is given, the superclass of the class and the owner of every method reference to the old
+ * superclass, such as the superclass constructor calls, is the new superclass. Other references to the old superclass,
+ * including references in descriptors and signatures, are not changed.</li>
+ * <li>every use of a String, Integer, Long, Float or Double constant that is a key of the constants map is replaced with
+ * the corresponding value, which must be of the same type. Constants are replaced wherever they are used, including
+ * constant field values.</li>
+ * </ul>
+ * Other names, such as the names of inner classes, are not changed.
+ */
+public final class ClassFilePrototype {
+
+    private static final ConstPoolEntryType[] TYPES = new ConstPoolEntryType[256];
+
+    static {
+        for (ConstPoolEntryType type : ConstPoolEntryType.values()) {
+            TYPES[type.getTag()] = type;
+        }
+    }
+
+    /**
+     * The offset of the const pool count in the class file
+     */
+    private static final int CONST_POOL_OFFSET = 8;
+
+    private static final int MAX_CONST_POOL_COUNT = 0xFFFF;
+
+    private final ClassFile prototype;
+
+    private final byte[] bytecode;
+
+    /**
+     * The name of the prototype class in internal form
+     */
+    private final String name;
+
+    /**
+     * The superclass of the prototype class in internal form
+     */
+    private final String superclass;
+
+    private final int constPoolCount;
+
+    /**
+     * The index of the Class entry of the superclass
+     */
+    private final int superclassIndex;
+
+    /**
+     * The offset of the end of the const pool in the class file
+     */
+    private final int constPoolEnd;
+
+    /**
+     * The offset in the class file of each const pool entry
+     */
+    private final int[] offsets;
+
+    private final ConstPoolEntryType[] types;
+
+    /**
+     * The data of each Utf8 entry
+     */
+    private final String[] utf8;
+
+    /**
+     * Writes the given class file, which is used as the prototype. The class file should not be modified afterwards.
+     */
+    public ClassFilePrototype(ClassFile prototype) {
+        this.prototype = prototype;
+        this.bytecode = prototype.toBytecode();
+        this.name = prototype.getName().replace('.', '/');
+        this.superclass = prototype.getSuperclass().replace('.', '/');
+        this.constPoolCount = readUnsignedShort(CONST_POOL_OFFSET);
+        this.offsets = new int[constPoolCount];
+        this.types = new ConstPoolEntryType[constPoolCount];
+        this.utf8 = new String[constPoolCount];
+        int pos = CONST_POOL_OFFSET + 2;
+        for (int i = 1; i < constPoolCount; i += types[i].getSlots()) {
+            final ConstPoolEntryType type = TYPES[bytecode[pos] & 0xFF];
+            if (type == null) {
+                throw new IllegalArgumentException("Unsupported const pool entry with tag " + (bytecode[pos] & 0xFF));
+            }
+            offsets[i] = pos;
+            types[i] = type;
+            if (type == ConstPoolEntryType.UTF8) {
+                final int length = readUnsignedShort(pos + 1);
+                try {
+                    utf8[i] = new DataInputStream(new ByteArrayInputStream(bytecode, pos + 1, length + 2)).readUTF();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                pos += type.getLength() + length;
+            } else {
+                pos += type.getLength();
+            }
+        }
+        this.constPoolEnd = pos;
+        this.superclassIndex = readUnsignedShort(constPoolEnd + 4);
+    }
+
+    public ClassFile getPrototype() {
+        return prototype;
+    }
+
+    /**
+     * Returns the bytecode of a class with the given name, that is otherwise identical to the prototype.
+     */
+    public byte[] derive(String name) {
+        return derive(name, null, Collections.emptyMap());
+    }
+
+    /**
+     * Returns the bytecode of a class derived from the prototype.
+     *
+     * @param name the name of the new class
+     * @param superclass the superclass of the new class, or null to keep the superclass of the prototype
+     * @param constants the constants to replace, mapped to their replacements
+     * @return the bytecode of the new class
+     */
+    public byte[] derive(String name, String superclass, Map<?, ?> constants) {
+        final Map<String, String> renames = Collections.singletonMap(this.name, name.replace('.', '/'));
+        // the new superclass is added as a Utf8 entry and a Class entry at the end of the const pool
+        final boolean newSuperclass = superclass != null && !superclass.replace('.', '/').equals(this.superclass);
+        final int newSuperclassIndex = constPoolCount + 1;
+        final int addedStart = newSuperclass ? constPoolCount + 2 : constPoolCount;
+        // Utf8 entries for string constants that no longer match the Utf8 entry they share with other entries
+        final Map<String, Integer> added = new LinkedHashMap<String, Integer>();
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(bytecode.length + 64);
+        final ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(buffer);
+        try {
+            out.write(bytecode, 0, CONST_POOL_OFFSET + 2);
+            for (int i = 1; i < constPoolCount; i += types[i].getSlots()) {
+                final int pos = offsets[i];
+                switch (types[i]) {
+                    case UTF8: {
+                        final String data = rename(utf8[i], renames);
+                        if (data == utf8[i]) {
+                            out.write(bytecode, pos, ConstPoolEntryType.UTF8.getLength() + readUnsignedShort(pos + 1));
+                        } else {
+                            out.writeByte(ConstPoolEntryType.UTF8.getTag());
+                            out.writeUTF(data);
+                        }
+                        break;
+                    }
+                    case STRING: {
+                        int index = readUnsignedShort(pos + 1);
+                        final String value = replacement(constants, utf8[index], String.class);
+                        if (!value.equals(rename(utf8[index], renames))) {
+                            Integer addedIndex = added.get(value);
+                            if (addedIndex == null) {
+                                addedIndex = addedStart + added.size();
+                                added.put(value, addedIndex);
+                            }
+                            index = addedIndex;
+                        }
+                        out.writeByte(ConstPoolEntryType.STRING.getTag());
+                        out.writeShort(index);
+                        break;
+                    }
+                    case METHODREF:
+                        if (newSuperclass && readUnsignedShort(pos + 1) == superclassIndex) {
+                            out.writeByte(ConstPoolEntryType.METHODREF.getTag());
+                            out.writeShort(newSuperclassIndex);
+                            out.write(bytecode, pos + 3, 2);
+                        } else {
+                            out.write(bytecode, pos, types[i].getLength());
+                        }
+                        break;
+                    case INTEGER:
+                        out.writeByte(ConstPoolEntryType.INTEGER.getTag());
+                        out.writeInt(replacement(constants, readInt(pos + 1), Integer.class));
+                        break;
+                    case FLOAT:
+                        out.writeByte(ConstPoolEntryType.FLOAT.getTag());
+                        out.writeFloat(replacement(constants, Float.intBitsToFloat(readInt(pos + 1)), Float.class));
+                        break;
+                    case LONG:
+                        out.writeByte(ConstPoolEntryType.LONG.getTag());
+                        out.writeLong(replacement(constants, readLong(pos + 1), Long.class));
+                        break;
+                    case DOUBLE:
+                        out.writeByte(ConstPoolEntryType.DOUBLE.getTag());
+                        out.writeDouble(replacement(constants, Double.longBitsToDouble(readLong(pos + 1)), Double.class));
+                        break;
+                    default:
+                        out.write(bytecode, pos, types[i].getLength());
+                }
+            }
+            final int count = addedStart + added.size();
+            if (count > MAX_CONST_POOL_COUNT) {
+                throw new IllegalStateException("Too many const pool entries in class derived from " + this.name);
+            }
+            if (newSuperclass) {
+                out.writeByte(ConstPoolEntryType.UTF8.getTag());
+                out.writeUTF(superclass.replace('.', '/'));
+                out.writeByte(ConstPoolEntryType.CLASS.getTag());
+                out.writeShort(constPoolCount);
+            }
+            for (String value : added.keySet()) {
+                out.writeByte(ConstPoolEntryType.UTF8.getTag());
+                out.writeUTF(value);
+            }
+            out.flush();
+            buffer.putShort(CONST_POOL_OFFSET, count);
+            final int tail = buffer.size();
+            out.write(bytecode, constPoolEnd, bytecode.length - constPoolEnd);
+            out.flush();
+            if (newSuperclass) {
+                // the super_class item follows the access flags and the this_class item
+                buffer.putShort(tail + 4, newSuperclassIndex);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Derives a class from the prototype and defines it with the class loader and class factory of the prototype, in the
+     * default protection domain of the class loader.
+     *
+     * @see #derive(String, String, Map)
+     */
+    public Class<?> define(String name, String superclass, Map<?, ?> constants) {
+        return define(name, superclass, constants, null);
+    }
+
+    /**
+     * Derives a class from the prototype and defines it with the class loader and class factory of the prototype, using the
+     * given ProtectionDomain.
+     *
+     * @param domain the protection domain of the class, or null for the default protection domain of the class loader
+     * @see #derive(String, String, Map)
+     */
+    public Class<?> define(String name, String superclass, Map<?, ?> constants, ProtectionDomain domain) {
+        final byte[] derived = derive(name, superclass, constants);
+        return prototype.getClassFactory().defineClass(prototype.getClassLoader(), name.replace('/', '.'), derived, 0,
+                derived.length, domain);
+    }
+
+    /**
+     * returns the replacement of the given constant, or the constant itself if it is not replaced
+     */
+    private static <T> T replacement(Map<?, ?> constants, T value, Class<T> type) {
+        final Object replacement = constants.get(value);
+        if (replacement == null) {
+            return value;
+        }
+        if (!type.isInstance(replacement)) {
+            throw new IllegalArgumentException("Cannot replace constant " + value + " of type " + type.getName() + " with "
+                    + replacement + " of type " + replacement.getClass().getName());
+        }
+        return type.cast(replacement);
+    }
+
+    /**
+     * Renames the classes in the given Utf8 data, which may be a class name, a descriptor or a signature. Returns the same
+     * string if it does not change.
+     */
+    private static String rename(String data, Map<String, String> renames) {
+        final String renamed = renames.get(data);
+        if (renamed != null) {
+            return renamed;
+        }
+        String ret = data;
+        for (Map.Entry<String, String> entry : renames.entrySet()) {
+            ret = renameType(ret, entry.getKey(), entry.getValue());
+        }
+        return ret.equals(data) ? data : ret;
+    }
+
+    /**
+     * Replaces the class type <code>Lold;</code> with <code>Lnew;</code> in a descriptor or signature. In signatures the
+     * class may also be followed by type arguments.
+     */
+    private static String renameType(String data, String oldName, String newName) {
+        final String type = "L" + oldName;
+        int index = data.indexOf(type);
+        if (index == -1) {
+            return data;
+        }
+        final StringBuilder builder = new StringBuilder(data.length() + newName.length());
+        int last = 0;
+        while (index != -1) {
+            final int end = index + type.length();
+            final boolean start = index == 0 || !isNamePart(data.charAt(index - 1));
+            if (start && end < data.length() && (data.charAt(end) == ';' || data.charAt(end) == '<')) {
+                builder.append(data, last, index).append('L').append(newName);
+                last = end;
+            }
+            index = data.indexOf(type, end);
+        }
+        return builder.append(data, last, data.length()).toString();
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '/';
+    }
+
+    private int readUnsignedShort(int pos) {
+        return ((bytecode[pos] & 0xFF) << 8) | (bytecode[pos + 1] & 0xFF);
+    }
+
+    private int readInt(int pos) {
+        return ((bytecode[pos] & 0xFF) << 24) | ((bytecode[pos + 1] & 0xFF) << 16) | ((bytecode[pos + 2] & 0xFF) << 8)
+                | (bytecode[pos + 3] & 0xFF);
+    }
+
+    private long readLong(int pos) {
+        return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xFFFFFFFFL);
+    }
+}
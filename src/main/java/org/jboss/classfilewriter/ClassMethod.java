@@ -56,13 +56,16 @@ public class ClassMethod implements WritableEntry {
 
     private final CodeAttribute codeAttribute;
 
-    private final ExceptionsAttribute exceptionsAttribute;
+    /**
+     * The attributes below are created when they are first used
+     */
+    private ExceptionsAttribute exceptionsAttribute;
 
     private final boolean constructor;
 
-    private final AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
+    private AnnotationsAttribute runtimeVisibleAnnotationsAttribute;
 
-    private final ParameterAnnotationsAttribute runtimeVisibleParameterAnnotationsAttribute;
+    private ParameterAnnotationsAttribute runtimeVisibleParameterAnnotationsAttribute;
 
     private SignatureAttribute signatureAttribute;
 
@@ -76,11 +79,9 @@ public class ClassMethod implements WritableEntry {
         this.name = name;
         this.descriptor = DescriptorUtils.methodDescriptor(parameters, returnType);
         this.accessFlags = accessFlags;
-        this.nameIndex = constPool.addUtf8Entry(name);
-        this.descriptorIndex = constPool.addUtf8Entry(descriptor);
+        this.nameIndex = constPool.addUtf8(name);
+        this.descriptorIndex = constPool.addUtf8(descriptor);
         this.constructor = name.equals("<init>");
-        this.exceptionsAttribute = new ExceptionsAttribute(constPool);
-        this.attributes.add(exceptionsAttribute);
 
         if (Modifier.isAbstract(accessFlags)) {
             codeAttribute = null;
@@ -91,35 +92,39 @@ public class ClassMethod implements WritableEntry {
         for (String param : this.parameters) {
             DescriptorUtils.validateDescriptor(param);
         }
-        this.runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, constPool);
-        this.attributes.add(runtimeVisibleAnnotationsAttribute);
-        this.runtimeVisibleParameterAnnotationsAttribute = new ParameterAnnotationsAttribute(
-                ParameterAnnotationsAttribute.Type.RUNTIME_VISIBLE, constPool, parameters.length);
-        this.attributes.add(runtimeVisibleParameterAnnotationsAttribute);
     }
 
     public void addCheckedExceptions(Class<? extends Exception>... exceptions) {
         for (Class<? extends Exception> exception : exceptions) {
-            exceptionsAttribute.addExceptionClass(exception.getName());
+            getExceptionsAttribute().addExceptionClass(exception.getName());
         }
     }
 
     public void addCheckedExceptions(String... exceptions) {
         for (String exception : exceptions) {
-            exceptionsAttribute.addExceptionClass(exception);
+            getExceptionsAttribute().addExceptionClass(exception);
         }
     }
 
     public void write(ByteArrayDataOutputStream stream) throws IOException {
-        if(signatureAttribute != null) {
-            attributes.add(signatureAttribute);
-        }
         stream.writeShort(accessFlags);
         stream.writeShort(nameIndex);
         stream.writeShort(descriptorIndex);
-        stream.writeShort(attributes.size());
+        // empty attributes are not written, and the signature attribute is written last
+        int count = signatureAttribute == null ? 0 : 1;
         for (Attribute attribute : attributes) {
-            attribute.write(stream);
+            if (!attribute.isEmpty()) {
+                count++;
+            }
+        }
+        stream.writeShort(count);
+        for (Attribute attribute : attributes) {
+            if (!attribute.isEmpty()) {
+                attribute.write(stream);
+            }
+        }
+        if (signatureAttribute != null) {
+            signatureAttribute.write(stream);
         }
     }
 
@@ -161,13 +166,31 @@ public class ClassMethod implements WritableEntry {
     }
 
     public AnnotationsAttribute getRuntimeVisibleAnnotationsAttribute() {
+        if (runtimeVisibleAnnotationsAttribute == null) {
+            runtimeVisibleAnnotationsAttribute = new AnnotationsAttribute(AnnotationsAttribute.Type.RUNTIME_VISIBLE, classFile
+                    .getConstPool());
+            attributes.add(runtimeVisibleAnnotationsAttribute);
+        }
         return runtimeVisibleAnnotationsAttribute;
     }
 
     public ParameterAnnotationsAttribute getRuntimeVisibleParameterAnnotationsAttribute() {
+        if (runtimeVisibleParameterAnnotationsAttribute == null) {
+            runtimeVisibleParameterAnnotationsAttribute = new ParameterAnnotationsAttribute(
+                    ParameterAnnotationsAttribute.Type.RUNTIME_VISIBLE, classFile.getConstPool(), parameters.length);
+            attributes.add(runtimeVisibleParameterAnnotationsAttribute);
+        }
         return runtimeVisibleParameterAnnotationsAttribute;
     }
 
+    private ExceptionsAttribute getExceptionsAttribute() {
+        if (exceptionsAttribute == null) {
+            exceptionsAttribute = new ExceptionsAttribute(classFile.getConstPool());
+            attributes.add(exceptionsAttribute);
+        }
+        return exceptionsAttribute;
+    }
+
     public String getSignature() {
         return signature;
     }
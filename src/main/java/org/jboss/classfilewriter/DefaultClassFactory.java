@@ -20,6 +20,7 @@ package org.jboss.classfilewriter;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.ProtectionDomain;
@@ -32,7 +33,7 @@ import java.security.ProtectionDomain;
 final class DefaultClassFactory implements ClassFactory {
 
     private static final String DEFINE_CLASS_METHOD_NAME = "defineClass";
-    private static final MethodHandle defineClassWithoutDomainParam, defineClassWithDomainParam;
+    private static final MethodHandle defineClassWithoutDomainParam, defineClassWithDomainParam, defineClassWithByteBuffer;
 
     static {
         MethodHandle[] defineClassMethods;
@@ -44,7 +45,9 @@ final class DefaultClassFactory implements ClassFactory {
                             MethodType.methodType(Class.class, String.class, byte[].class, int.class, int.class));
                     MethodHandle defineClass2 = LOOKUP.findVirtual(ClassLoader.class, DEFINE_CLASS_METHOD_NAME,
                             MethodType.methodType(Class.class, String.class, byte[].class, int.class, int.class, ProtectionDomain.class));
-                    return new MethodHandle[]{defineClass1, defineClass2};
+                    MethodHandle defineClass3 = LOOKUP.findVirtual(ClassLoader.class, DEFINE_CLASS_METHOD_NAME,
+                            MethodType.methodType(Class.class, String.class, ByteBuffer.class, ProtectionDomain.class));
+                    return new MethodHandle[]{defineClass1, defineClass2, defineClass3};
                 }
             });
         } catch (Throwable t) {
@@ -52,6 +55,7 @@ final class DefaultClassFactory implements ClassFactory {
         }
         defineClassWithoutDomainParam = defineClassMethods[0];
         defineClassWithDomainParam = defineClassMethods[1];
+        defineClassWithByteBuffer = defineClassMethods[2];
     }
 
     static final ClassFactory INSTANCE = new DefaultClassFactory();
@@ -65,22 +69,11 @@ final class DefaultClassFactory implements ClassFactory {
                                 final byte[] b, final int off, final int len,
                                 final ProtectionDomain domain) throws ClassFormatError {
         try {
-            SecurityManager sm = System.getSecurityManager();
-            if (sm != null) {
-                final int index = name.lastIndexOf('.');
-                final String packageName;
-                if(index == -1 ) {
-                    packageName = "";
-                } else {
-                    packageName = name.substring(0, index);
-                }
-                RuntimePermission permission = new RuntimePermission("defineClassInPackage." + packageName);
-                sm.checkPermission(permission);
-            }
+            checkPermission(name);
             if (domain == null) {
-                return (Class<?>) defineClassWithoutDomainParam.invokeExact(loader, name, b, 0, b.length);
+                return (Class<?>) defineClassWithoutDomainParam.invokeExact(loader, name, b, off, len);
             } else {
-                return (Class<?>) defineClassWithDomainParam.invokeExact(loader, name, b, 0, b.length, domain);
+                return (Class<?>) defineClassWithDomainParam.invokeExact(loader, name, b, off, len, domain);
             }
         } catch (RuntimeException e) {
             throw e;
@@ -89,4 +82,32 @@ final class DefaultClassFactory implements ClassFactory {
         }
     }
 
+    @Override
+    public Class<?> defineClass(final ClassLoader loader, final String name, final ByteBuffer b,
+                                final ProtectionDomain domain) throws ClassFormatError {
+        try {
+            checkPermission(name);
+            return (Class<?>) defineClassWithByteBuffer.invokeExact(loader, name, b, domain);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void checkPermission(final String name) {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            final int index = name.lastIndexOf('.');
+            final String packageName;
+            if(index == -1 ) {
+                packageName = "";
+            } else {
+                packageName = name.substring(0, index);
+            }
+            RuntimePermission permission = new RuntimePermission("defineClassInPackage." + packageName);
+            sm.checkPermission(permission);
+        }
+    }
+
 }
@@ -54,6 +54,106 @@ public class JavaVersions {
      */
     public static final int JAVA_7 = 51;
 
+    /**
+     * The major version number of class files for JDK 1.8.
+     */
+    public static final int JAVA_8 = 52;
+
+    /**
+     * The major version number of class files for JDK 9.
+     */
+    public static final int JAVA_9 = 53;
+
+    /**
+     * The major version number of class files for JDK 10.
+     */
+    public static final int JAVA_10 = 54;
+
+    /**
+     * The major version number of class files for JDK 11.
+     */
+    public static final int JAVA_11 = 55;
+
+    /**
+     * The major version number of class files for JDK 12.
+     */
+    public static final int JAVA_12 = 56;
+
+    /**
+     * The major version number of class files for JDK 13.
+     */
+    public static final int JAVA_13 = 57;
+
+    /**
+     * The major version number of class files for JDK 14.
+     */
+    public static final int JAVA_14 = 58;
+
+    /**
+     * The major version number of class files for JDK 15.
+     */
+    public static final int JAVA_15 = 59;
+
+    /**
+     * The major version number of class files for JDK 16.
+     */
+    public static final int JAVA_16 = 60;
+
+    /**
+     * The major version number of class files for JDK 17.
+     */
+    public static final int JAVA_17 = 61;
+
+    /**
+     * The major version number of class files for JDK 18.
+     */
+    public static final int JAVA_18 = 62;
+
+    /**
+     * The major version number of class files for JDK 19.
+     */
+    public static final int JAVA_19 = 63;
+
+    /**
+     * The major version number of class files for JDK 20.
+     */
+    public static final int JAVA_20 = 64;
+
+    /**
+     * The major version number of class files for JDK 21.
+     */
+    public static final int JAVA_21 = 65;
+
+    /**
+     * The major version number of class files for JDK 22.
+     */
+    public static final int JAVA_22 = 66;
+
+    /**
+     * The major version number of class files for JDK 23.
+     */
+    public static final int JAVA_23 = 67;
+
+    /**
+     * The major version number of class files for JDK 24.
+     */
+    public static final int JAVA_24 = 68;
+
+    /**
+     * The major version number of class files for JDK 25.
+     */
+    public static final int JAVA_25 = 69;
+
+    /**
+     * The major version number of class files for JDK 26.
+     */
+    public static final int JAVA_26 = 70;
+
+    /**
+     * The major version number of class files for JDK 27.
+     */
+    public static final int JAVA_27 = 71;
+
     private JavaVersions() {
 
     }
@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.security.ProtectionDomain;
+
+/**
+ * Class definition factory that defines classes through a {@link MethodHandles.Lookup}. Unlike {@link DefaultClassFactory}
+ * this does not need reflective access to {@link ClassLoader}.
+ * <p/>
+ * Classes are defined in the class loader, package and protection domain of the lookup class, the loader and protection
+ * domain passed to {@link #defineClass(ClassLoader, String, byte[], int, int, ProtectionDomain)} are ignored. The lookup must
+ * have {@link MethodHandles.Lookup#PACKAGE} access.
+ * <p/>
+ * If {@link Option#HIDDEN} is specified classes are defined as hidden classes, which requires JDK 15 or later. Hidden classes
+ * are not registered with their class loader, so they can be unloaded as soon as they are unreachable (or when their class
+ * loader is unloaded if {@link Option#STRONG} is also specified). A hidden class gets a generated name that is based on, but
+ * not the same as, the name in the class file.
+ */
+public final class LookupClassFactory implements ClassFactory {
+
+    public enum Option {
+        /**
+         * Define classes as hidden classes
+         */
+        HIDDEN,
+        /**
+         * Add hidden classes as members of the nest of the lookup class. Requires {@link #HIDDEN}.
+         */
+        NESTMATE,
+        /**
+         * Hidden classes are strongly reachable from their class loader. Requires {@link #HIDDEN}.
+         */
+        STRONG
+    }
+
+    private static final MethodHandle DEFINE_HIDDEN_CLASS;
+    private static final Class<?> CLASS_OPTION;
+
+    static {
+        MethodHandle defineHiddenClass = null;
+        Class<?> classOption = null;
+        try {
+            classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Class<?> classOptionArray = Array.newInstance(classOption, 0).getClass();
+            defineHiddenClass = MethodHandles.publicLookup().findVirtual(MethodHandles.Lookup.class, "defineHiddenClass",
+                    MethodType.methodType(MethodHandles.Lookup.class, byte[].class, boolean.class, classOptionArray))
+                    .asFixedArity();
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            // hidden classes are not supported before JDK 15
+        }
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        CLASS_OPTION = classOption;
+    }
+
+    private final MethodHandles.Lookup lookup;
+
+    private final boolean hidden;
+
+    /**
+     * The ClassOption array passed to defineHiddenClass, or null if classes are not hidden
+     */
+    private final Object hiddenClassOptions;
+
+    public LookupClassFactory(MethodHandles.Lookup lookup, Option... options) {
+        if (lookup == null) {
+            throw new IllegalArgumentException("Lookup must be specified");
+        }
+        if ((lookup.lookupModes() & MethodHandles.Lookup.PACKAGE) == 0) {
+            throw new IllegalArgumentException("Lookup " + lookup + " does not have package access");
+        }
+        boolean hidden = false;
+        boolean nestmate = false;
+        boolean strong = false;
+        for (Option option : options) {
+            switch (option) {
+                case HIDDEN:
+                    hidden = true;
+                    break;
+                case NESTMATE:
+                    nestmate = true;
+                    break;
+                case STRONG:
+                    strong = true;
+                    break;
+            }
+        }
+        if (!hidden && (nestmate || strong)) {
+            throw new IllegalArgumentException("NESTMATE and STRONG can only be used with HIDDEN");
+        }
+        if (hidden && !isHiddenClassSupported()) {
+            throw new UnsupportedOperationException("Hidden classes require JDK 15 or later");
+        }
+        this.lookup = lookup;
+        this.hidden = hidden;
+        if (hidden) {
+            Object classOptions = Array.newInstance(CLASS_OPTION, (nestmate ? 1 : 0) + (strong ? 1 : 0));
+            int i = 0;
+            if (nestmate) {
+                Array.set(classOptions, i++, classOption("NESTMATE"));
+            }
+            if (strong) {
+                Array.set(classOptions, i, classOption("STRONG"));
+            }
+            this.hiddenClassOptions = classOptions;
+        } else {
+            this.hiddenClassOptions = null;
+        }
+    }
+
+    /**
+     * Returns true if the running JVM supports hidden classes
+     */
+    public static boolean isHiddenClassSupported() {
+        return DEFINE_HIDDEN_CLASS != null;
+    }
+
+    public MethodHandles.Lookup getLookup() {
+        return lookup;
+    }
+
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    @Override
+    public Class<?> defineClass(final ClassLoader loader, final String name,
+                                final byte[] b, final int off, final int len,
+                                final ProtectionDomain domain) throws ClassFormatError {
+        final byte[] data;
+        if (off == 0 && len == b.length) {
+            data = b;
+        } else {
+            data = new byte[len];
+            System.arraycopy(b, off, data, 0, len);
+        }
+        try {
+            if (hidden) {
+                MethodHandles.Lookup result = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(lookup, data, false, hiddenClassOptions);
+                return result.lookupClass();
+            }
+            return lookup.defineClass(data);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object classOption(String name) {
+        return Enum.valueOf((Class<? extends Enum>) CLASS_OPTION, name);
+    }
+}
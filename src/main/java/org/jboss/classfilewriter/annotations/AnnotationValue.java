@@ -39,7 +39,7 @@ public abstract class AnnotationValue implements WritableEntry {
     protected AnnotationValue(ConstPool constPool, String name) {
         this.name = name;
         if (name != null) {
-            this.nameIndex = constPool.addUtf8Entry(name);
+            this.nameIndex = constPool.addUtf8(name);
         } else {
             this.nameIndex = -1;
         }
@@ -67,6 +67,11 @@ public class AnnotationsAttribute extends Attribute {
         sizeMarker.markEnd();
     }
 
+    @Override
+    public boolean isEmpty() {
+        return annotations.isEmpty();
+    }
+
     public void addAnnotation(Annotation annotation) {
         annotations.add(AnnotationBuilder.createAnnotation(constPool, annotation));
     }
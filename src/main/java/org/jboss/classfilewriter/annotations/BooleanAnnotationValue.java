@@ -38,7 +38,7 @@ public class BooleanAnnotationValue extends AnnotationValue {
     public BooleanAnnotationValue(ConstPool constPool, String name, boolean value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addIntegerEntry(value ? 1 : 0);
+        this.valueIndex = constPool.addInteger(value ? 1 : 0);
     }
 
     @Override
@@ -38,7 +38,7 @@ public class ByteAnnotationValue extends AnnotationValue {
     public ByteAnnotationValue(ConstPool constPool, String name, byte value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addIntegerEntry(value);
+        this.valueIndex = constPool.addInteger(value);
     }
 
     @Override
@@ -38,7 +38,7 @@ public class CharAnnotationValue extends AnnotationValue {
     public CharAnnotationValue(ConstPool constPool, String name, char value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addIntegerEntry(value);
+        this.valueIndex = constPool.addInteger(value);
     }
 
     @Override
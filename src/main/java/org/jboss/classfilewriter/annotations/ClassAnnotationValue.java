@@ -36,12 +36,12 @@ public class ClassAnnotationValue extends AnnotationValue {
 
     public ClassAnnotationValue(ConstPool constPool, String name, Class<?> value) {
         super(constPool, name);
-        this.valueIndex = constPool.addUtf8Entry(DescriptorUtils.makeDescriptor(value));
+        this.valueIndex = constPool.addUtf8(DescriptorUtils.makeDescriptor(value));
     }
 
     public ClassAnnotationValue(ConstPool constPool, String name, String descriptor) {
         super(constPool, name);
-        this.valueIndex = constPool.addUtf8Entry(descriptor);
+        this.valueIndex = constPool.addUtf8(descriptor);
     }
 
     @Override
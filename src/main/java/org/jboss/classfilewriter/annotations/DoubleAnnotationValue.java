@@ -38,7 +38,7 @@ public class DoubleAnnotationValue extends AnnotationValue {
     public DoubleAnnotationValue(ConstPool constPool, String name, double value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addDoubleEntry(value);
+        this.valueIndex = constPool.addDouble(value);
     }
 
     @Override
@@ -38,14 +38,14 @@ public class EnumAnnotationValue extends AnnotationValue {
 
     public EnumAnnotationValue(ConstPool constPool, String name, Enum<?> value) {
         super(constPool, name);
-        this.valueIndex = constPool.addUtf8Entry(value.name());
-        this.typeIndex = constPool.addUtf8Entry(DescriptorUtils.makeDescriptor(value.getDeclaringClass().getName()));
+        this.valueIndex = constPool.addUtf8(value.name());
+        this.typeIndex = constPool.addUtf8(DescriptorUtils.makeDescriptor(value.getDeclaringClass().getName()));
     }
 
     public EnumAnnotationValue(ConstPool constPool, String name, String enumType, String enumValue) {
         super(constPool, name);
-        this.valueIndex = constPool.addUtf8Entry(enumValue);
-        this.typeIndex = constPool.addUtf8Entry(enumType);
+        this.valueIndex = constPool.addUtf8(enumValue);
+        this.typeIndex = constPool.addUtf8(enumType);
     }
 
     @Override
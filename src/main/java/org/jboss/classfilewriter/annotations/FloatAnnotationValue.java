@@ -38,7 +38,7 @@ public class FloatAnnotationValue extends AnnotationValue {
     public FloatAnnotationValue(ConstPool constPool, String name, float value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addFloatEntry(value);
+        this.valueIndex = constPool.addFloat(value);
     }
 
     @Override
@@ -38,7 +38,7 @@ public class IntAnnotationValue extends AnnotationValue {
     public IntAnnotationValue(ConstPool constPool, String name, int value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addIntegerEntry(value);
+        this.valueIndex = constPool.addInteger(value);
     }
 
     @Override
@@ -38,7 +38,7 @@ public class LongAnnotationValue extends AnnotationValue {
     public LongAnnotationValue(ConstPool constPool, String name, long value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addLongEntry(value);
+        this.valueIndex = constPool.addLong(value);
     }
 
     @Override
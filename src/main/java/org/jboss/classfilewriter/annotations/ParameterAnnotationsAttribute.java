@@ -79,6 +79,11 @@ public class ParameterAnnotationsAttribute extends Attribute {
         sizeMarker.markEnd();
     }
 
+    @Override
+    public boolean isEmpty() {
+        return annotations.isEmpty();
+    }
+
     public void addAnnotation(int parameter, Annotation annotation) {
         if (!annotations.containsKey(parameter)) {
             annotations.put(parameter, new ArrayList<ClassAnnotation>());
@@ -38,7 +38,7 @@ public class ShortAnnotationValue extends AnnotationValue {
     public ShortAnnotationValue(ConstPool constPool, String name, short value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addIntegerEntry(value);
+        this.valueIndex = constPool.addInteger(value);
     }
 
     @Override
@@ -34,7 +34,7 @@ public class StringAnnotationValue extends AnnotationValue {
     public StringAnnotationValue(ConstPool constPool, String name, String value) {
         super(constPool, name);
         this.value = value;
-        this.valueIndex = constPool.addUtf8Entry(value);
+        this.valueIndex = constPool.addUtf8(value);
     }
 
     @Override
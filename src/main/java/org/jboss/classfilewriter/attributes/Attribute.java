@@ -37,7 +37,7 @@ public abstract class Attribute implements WritableEntry {
 
     public Attribute(String name, final ConstPool constPool) {
         this.name = name;
-        this.nameIndex = constPool.addUtf8Entry(name);
+        this.nameIndex = constPool.addUtf8(name);
         this.constPool = constPool;
     }
 
@@ -48,6 +48,13 @@ public abstract class Attribute implements WritableEntry {
 
     public abstract void writeData(ByteArrayDataOutputStream stream) throws IOException;
 
+    /**
+     * Returns true if this attribute has no content, in which case it is not written to the class file
+     */
+    public boolean isEmpty() {
+        return false;
+    }
+
     public String getName() {
         return name;
     }
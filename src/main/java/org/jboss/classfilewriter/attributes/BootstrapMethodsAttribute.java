@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.attributes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+import org.jboss.classfilewriter.util.LazySize;
+
+/**
+ * The BootstrapMethods attribute, which stores the bootstrap methods used by invokedynamic instructions and dynamic
+ * constants. Identical bootstrap methods are only stored once.
+ */
+public class BootstrapMethodsAttribute extends Attribute {
+
+    public static final String NAME = "BootstrapMethods";
+
+    private final List<BootstrapMethod> bootstrapMethods = new ArrayList<BootstrapMethod>();
+
+    private final Map<BootstrapMethod, Integer> bootstrapMethodIndexes = new HashMap<BootstrapMethod, Integer>();
+
+    public BootstrapMethodsAttribute(ConstPool constPool) {
+        super(NAME, constPool);
+    }
+
+    /**
+     * Adds a bootstrap method, and returns its index in this attribute
+     *
+     * @param methodHandleIndex the const pool index of the bootstrap method handle
+     * @param argumentIndexes the const pool indexes of the static arguments
+     */
+    public int addBootstrapMethod(int methodHandleIndex, int... argumentIndexes) {
+        BootstrapMethod method = new BootstrapMethod(methodHandleIndex, argumentIndexes.clone());
+        Integer index = bootstrapMethodIndexes.get(method);
+        if (index == null) {
+            index = bootstrapMethods.size();
+            bootstrapMethods.add(method);
+            bootstrapMethodIndexes.put(method, index);
+        }
+        return index;
+    }
+
+    public int size() {
+        return bootstrapMethods.size();
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        LazySize size = stream.writeSize();
+        stream.writeShort(bootstrapMethods.size());
+        for (BootstrapMethod method : bootstrapMethods) {
+            stream.writeShort(method.methodHandleIndex);
+            stream.writeShort(method.argumentIndexes.length);
+            for (int i : method.argumentIndexes) {
+                stream.writeShort(i);
+            }
+        }
+        size.markEnd();
+    }
+
+    private static final class BootstrapMethod {
+        private final int methodHandleIndex;
+        private final int[] argumentIndexes;
+
+        BootstrapMethod(int methodHandleIndex, int[] argumentIndexes) {
+            this.methodHandleIndex = methodHandleIndex;
+            this.argumentIndexes = argumentIndexes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BootstrapMethod)) {
+                return false;
+            }
+            BootstrapMethod other = (BootstrapMethod) o;
+            return methodHandleIndex == other.methodHandleIndex && Arrays.equals(argumentIndexes, other.argumentIndexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * methodHandleIndex + Arrays.hashCode(argumentIndexes);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.attributes;
+
+import java.io.IOException;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+/**
+ * The ConstantValue attribute, which holds the value of a static constant field. The value must be an {@link Integer},
+ * {@link Long}, {@link Float}, {@link Double} or {@link String}.
+ */
+public class ConstantValueAttribute extends Attribute {
+
+    public static final String NAME = "ConstantValue";
+
+    private final Object value;
+
+    private final int valueIndex;
+
+    public ConstantValueAttribute(Object value, ConstPool constPool) {
+        super(NAME, constPool);
+        this.value = value;
+        if (value instanceof Integer) {
+            valueIndex = constPool.addInteger((Integer) value);
+        } else if (value instanceof Long) {
+            valueIndex = constPool.addLong((Long) value);
+        } else if (value instanceof Float) {
+            valueIndex = constPool.addFloat((Float) value);
+        } else if (value instanceof Double) {
+            valueIndex = constPool.addDouble((Double) value);
+        } else if (value instanceof String) {
+            valueIndex = constPool.addString((String) value);
+        } else {
+            throw new IllegalArgumentException("Invalid constant value " + value);
+        }
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        stream.writeInt(2);
+        stream.writeShort(valueIndex);
+    }
+
+}
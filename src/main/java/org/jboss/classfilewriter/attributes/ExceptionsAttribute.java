@@ -47,7 +47,12 @@ public class ExceptionsAttribute extends Attribute {
 
     public void addExceptionClass(String exception) {
         exceptionClasses.add(exception);
-        exceptionClassIndexes.add(constPool.addClassEntry(exception));
+        exceptionClassIndexes.add(constPool.addClass(exception));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return exceptionClassIndexes.isEmpty();
     }
 
     @Override
@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.attributes;
+
+import java.io.IOException;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+/**
+ * The NestHost attribute, which names the class that is the host of the nest this class belongs to
+ */
+public class NestHostAttribute extends Attribute {
+
+    public static final String NAME = "NestHost";
+
+    private final String hostClass;
+
+    private final int hostClassIndex;
+
+    public NestHostAttribute(String hostClass, ConstPool constPool) {
+        super(NAME, constPool);
+        this.hostClass = hostClass;
+        this.hostClassIndex = constPool.addClass(hostClass);
+    }
+
+    public String getHostClass() {
+        return hostClass;
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        stream.writeInt(2);
+        stream.writeShort(hostClassIndex);
+    }
+
+}
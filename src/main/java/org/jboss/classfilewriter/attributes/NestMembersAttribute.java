@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.attributes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+/**
+ * The NestMembers attribute, which lists the classes that belong to the nest hosted by this class
+ */
+public class NestMembersAttribute extends Attribute {
+
+    public static final String NAME = "NestMembers";
+
+    private final List<String> memberClasses = new ArrayList<String>();
+
+    private final List<Integer> memberClassIndexes = new ArrayList<Integer>();
+
+    public NestMembersAttribute(ConstPool constPool) {
+        super(NAME, constPool);
+    }
+
+    public void addMemberClass(String memberClass) {
+        int index = constPool.addClass(memberClass);
+        if (!memberClassIndexes.contains(index)) {
+            memberClasses.add(memberClass);
+            memberClassIndexes.add(index);
+        }
+    }
+
+    public List<String> getMemberClasses() {
+        return Collections.unmodifiableList(memberClasses);
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        stream.writeInt(2 + memberClassIndexes.size() * 2);
+        stream.writeShort(memberClassIndexes.size());
+        for (int i : memberClassIndexes) {
+            stream.writeShort(i);
+        }
+    }
+
+}
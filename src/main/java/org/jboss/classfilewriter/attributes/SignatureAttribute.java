@@ -33,7 +33,7 @@ public class SignatureAttribute extends Attribute {
     public SignatureAttribute(final ConstPool constPool, String signature) {
         super(NAME, constPool);
         this.signature = signature;
-        this.signatureIndex = constPool.addUtf8Entry(signature);
+        this.signatureIndex = constPool.addUtf8(signature);
     }
 
     @Override
@@ -18,19 +18,18 @@
 package org.jboss.classfilewriter.attributes;
 
 import org.jboss.classfilewriter.ClassMethod;
-import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.LocalVariableState;
 import org.jboss.classfilewriter.code.StackEntry;
 import org.jboss.classfilewriter.code.StackEntryType;
 import org.jboss.classfilewriter.code.StackFrame;
-import org.jboss.classfilewriter.code.StackFrameType;
 import org.jboss.classfilewriter.constpool.ConstPool;
 import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
 import org.jboss.classfilewriter.util.LazySize;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 /**
@@ -43,9 +42,17 @@ import java.util.Map.Entry;
  */
 public class StackMapTableAttribute extends Attribute {
 
-    private static final int FULL_FRAME = 255;
+    private static final int SAME_LOCALS_1_STACK_ITEM = 64;
+    private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+    private static final int CHOP_FRAME = 251;
     private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int APPEND_FRAME = 251;
+    private static final int FULL_FRAME = 255;
 
+    /**
+     * The largest offset delta that can be encoded in the frame type of same_frame and same_locals_1_stack_item frames
+     */
+    private static final int MAX_SHORT_OFFSET_DELTA = 63;
 
     public static final String NAME = "StackMapTable";
 
@@ -58,39 +65,84 @@ public class StackMapTableAttribute extends Attribute {
 
     @Override
     public void writeData(ByteArrayDataOutputStream stream) throws IOException {
-        // as we don't know the size yet we write everything to a byte stream first
-        // TODO: make this better
-        final CodeAttribute ca = method.getCodeAttribute();
-        // now we need to write the stack frames.
-        // for now we are going to write all frames as full frames
-        // TODO: optimise the frame creation
-
-        // write to dstream
+        final Map<Integer, StackFrame> frames = method.getCodeAttribute().getStackFrames();
         LazySize size = stream.writeSize();
-        stream.writeShort(ca.getStackFrames().size());
+        stream.writeShort(frames.size());
+        // each frame is written as a delta of the frame before it, the first frame is relative to the
+        // implicit frame formed from the method descriptor
+        List<StackEntry> lastLocals = verificationTypes(new LocalVariableState(method).getContents());
         int lastPos = -1;
-        for (Entry<Integer, StackFrame> entry : method.getCodeAttribute().getStackFrames().entrySet()) {
+        for (Entry<Integer, StackFrame> entry : frames.entrySet()) {
             int offset = entry.getKey() - lastPos - 1;
             lastPos = entry.getKey();
             StackFrame frame = entry.getValue();
-            if (frame.getType() == StackFrameType.SAME_FRAME || frame.getType() == StackFrameType.SAME_FRAME_EXTENDED) {
-                writeSameFrame(stream, offset, lastPos, frame);
-            } else if (frame.getType() == StackFrameType.SAME_LOCALS_1_STACK && offset < (127 - 64)) {
-                writeSameLocals1Stack(stream, offset, lastPos, frame);
+            List<StackEntry> locals = verificationTypes(frame.getLocalVariableState().getContents());
+            List<StackEntry> stack = verificationTypes(frame.getStackState().getContents());
+            int common = commonPrefix(lastLocals, locals);
+            boolean sameLocals = common == locals.size() && common == lastLocals.size();
+            if (sameLocals && stack.isEmpty()) {
+                writeSameFrame(stream, offset);
+            } else if (sameLocals && stack.size() == 1) {
+                writeSameLocals1Stack(stream, offset, stack.get(0));
+            } else if (stack.isEmpty() && common == locals.size() && lastLocals.size() - common <= 3) {
+                writeChopFrame(stream, offset, lastLocals.size() - common);
+            } else if (stack.isEmpty() && common == lastLocals.size() && locals.size() - common <= 3) {
+                writeAppendFrame(stream, offset, locals.subList(common, locals.size()));
             } else {
-                writeFullFrame(stream, offset, lastPos, entry.getValue());
+                writeFullFrame(stream, offset, locals, stack);
             }
+            lastLocals = locals;
         }
         size.markEnd();
     }
 
-    private void writeSameLocals1Stack(DataOutputStream dstream, int offset, int lastPos, StackFrame frame) throws IOException {
-        dstream.writeByte(offset + 64);
-        frame.getStackState().getContents().get(0).write(dstream);
+    /**
+     * Removes the TOP entries that represent the second half of wide types, as in the stack map table wide types only take up
+     * a single entry.
+     */
+    private static List<StackEntry> verificationTypes(List<StackEntry> entries) {
+        List<StackEntry> ret = new ArrayList<StackEntry>(entries.size());
+        for (int i = 0; i < entries.size(); ++i) {
+            StackEntry entry = entries.get(i);
+            ret.add(entry);
+            if (entry.isWide() && i + 1 < entries.size() && entries.get(i + 1).getType() == StackEntryType.TOP) {
+                ++i;
+            }
+        }
+        return ret;
     }
 
-    private void writeSameFrame(DataOutputStream dstream, int offset, int lastPos, StackFrame frame) throws IOException {
-        if (offset > 63) {
+    /**
+     * returns the number of leading entries that are the same in both lists
+     */
+    private static int commonPrefix(List<StackEntry> l1, List<StackEntry> l2) {
+        int max = Math.min(l1.size(), l2.size());
+        for (int i = 0; i < max; ++i) {
+            if (!sameType(l1.get(i), l2.get(i))) {
+                return i;
+            }
+        }
+        return max;
+    }
+
+    private static boolean sameType(StackEntry e1, StackEntry e2) {
+        if (e1 == e2) {
+            return true;
+        }
+        if (e1.getType() != e2.getType()) {
+            return false;
+        }
+        if (e1.getType() == StackEntryType.OBJECT) {
+            return e1.getDescriptor().equals(e2.getDescriptor());
+        }
+        if (e1.getType() == StackEntryType.UNITITIALIZED_OBJECT) {
+            return e1.getNewInstructionLocation() == e2.getNewInstructionLocation();
+        }
+        return true;
+    }
+
+    private void writeSameFrame(ByteArrayDataOutputStream dstream, int offset) throws IOException {
+        if (offset > MAX_SHORT_OFFSET_DELTA) {
             dstream.writeByte(SAME_FRAME_EXTENDED);
             dstream.writeShort(offset);
         } else {
@@ -98,31 +150,48 @@ public class StackMapTableAttribute extends Attribute {
         }
     }
 
+    private void writeSameLocals1Stack(ByteArrayDataOutputStream dstream, int offset, StackEntry stackEntry) throws IOException {
+        if (offset > MAX_SHORT_OFFSET_DELTA) {
+            dstream.writeByte(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+            dstream.writeShort(offset);
+        } else {
+            dstream.writeByte(SAME_LOCALS_1_STACK_ITEM + offset);
+        }
+        stackEntry.write(dstream);
+    }
+
+    /**
+     * writes a chop_frame, which removes the last <code>chopped</code> locals
+     */
+    private void writeChopFrame(ByteArrayDataOutputStream dstream, int offset, int chopped) throws IOException {
+        dstream.writeByte(CHOP_FRAME - chopped);
+        dstream.writeShort(offset);
+    }
+
+    /**
+     * writes an append_frame, which adds up to 3 locals
+     */
+    private void writeAppendFrame(ByteArrayDataOutputStream dstream, int offset, List<StackEntry> appended) throws IOException {
+        dstream.writeByte(APPEND_FRAME + appended.size());
+        dstream.writeShort(offset);
+        for (StackEntry i : appended) {
+            i.write(dstream);
+        }
+    }
+
     /**
      * writes a full_frame to the stack map table
      */
-    private void writeFullFrame(DataOutputStream dstream, int offset, int position, StackFrame value) throws IOException {
+    private void writeFullFrame(ByteArrayDataOutputStream dstream, int offset, List<StackEntry> locals, List<StackEntry> stack)
+            throws IOException {
         dstream.writeByte(FULL_FRAME);
         dstream.writeShort(offset);
-        List<StackEntry> realLocalVars = new ArrayList<StackEntry>(value.getLocalVariableState().getContents().size());
-        for (StackEntry i : value.getLocalVariableState().getContents()) {
-            if (i.getType() != StackEntryType.TOP) {
-                realLocalVars.add(i);
-            }
-        }
-        dstream.writeShort(realLocalVars.size());
-        for (StackEntry i : realLocalVars) {
+        dstream.writeShort(locals.size());
+        for (StackEntry i : locals) {
             i.write(dstream);
         }
-        // TODO: this is inefficient, the stack should store the number of TOP values in each frame
-        List<StackEntry> realStack = new ArrayList<StackEntry>(value.getStackState().getContents().size());
-        for (StackEntry i : value.getStackState().getContents()) {
-            if (i.getType() != StackEntryType.TOP) {
-                realStack.add(i);
-            }
-        }
-        dstream.writeShort(realStack.size());
-        for (StackEntry i : realStack) {
+        dstream.writeShort(stack.size());
+        for (StackEntry i : stack) {
             i.write(dstream);
         }
     }
@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
+
+/**
+ * A branch instruction that has been written to the bytecode. Branch instructions are tracked so that 16 bit jumps that end
+ * up out of range can be widened once the method is complete.
+ */
+final class BranchSite {
+
+    /**
+     * The offset of the branch instruction
+     */
+    private final int offset;
+
+    /**
+     * The frame after a conditional branch falls through, or null if this is not a conditional branch. If the branch is
+     * widened the fall through location becomes a jump target, so it needs a frame in the stack map table.
+     */
+    private final StackFrame fallThrough;
+
+    /**
+     * The absolute target of a 16 bit jump that could not be written because it was out of range, or -1 if the jump offset in
+     * the bytecode is correct
+     */
+    private int target = -1;
+
+    BranchSite(int offset, StackFrame fallThrough) {
+        this.offset = offset;
+        this.fallThrough = fallThrough;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    StackFrame getFallThrough() {
+        return fallThrough;
+    }
+
+    int getTarget() {
+        return target;
+    }
+
+    void setTarget(int target) {
+        this.target = target;
+    }
+
+    boolean isOutOfRange() {
+        return target != -1;
+    }
+
+    int getOpcode(byte[] code) {
+        return code[offset] & 0xFF;
+    }
+
+    boolean isSwitch(byte[] code) {
+        int opcode = getOpcode(code);
+        return opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH;
+    }
+
+    /**
+     * Returns the absolute targets of this branch, reading the jump offsets from the given bytecode. The default target of a
+     * switch comes first, followed by the targets in the order they appear in the switch.
+     */
+    int[] getTargets(byte[] code) {
+        final int opcode = getOpcode(code);
+        if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+            final int pos = offset + 1 + padding(offset);
+            int[] ret;
+            if (opcode == Opcode.TABLESWITCH) {
+                int n = readInt(code, pos + 8) - readInt(code, pos + 4) + 1;
+                ret = new int[n + 1];
+                for (int i = 0; i < n; ++i) {
+                    ret[i + 1] = offset + readInt(code, pos + 12 + i * 4);
+                }
+            } else {
+                int n = readInt(code, pos + 4);
+                ret = new int[n + 1];
+                for (int i = 0; i < n; ++i) {
+                    ret[i + 1] = offset + readInt(code, pos + 12 + i * 8);
+                }
+            }
+            ret[0] = offset + readInt(code, pos);
+            return ret;
+        } else if (opcode == Opcode.GOTO_W) {
+            return new int[] { offset + readInt(code, offset + 1) };
+        } else if (isOutOfRange()) {
+            return new int[] { target };
+        }
+        return new int[] { offset + (short) readShort(code, offset + 1) };
+    }
+
+    /**
+     * Returns the length of this branch instruction
+     */
+    int getLength(byte[] code) {
+        final int opcode = getOpcode(code);
+        if (opcode == Opcode.TABLESWITCH) {
+            final int pos = offset + 1 + padding(offset);
+            return pos + 16 + (readInt(code, pos + 8) - readInt(code, pos + 4)) * 4 - offset;
+        } else if (opcode == Opcode.LOOKUPSWITCH) {
+            final int pos = offset + 1 + padding(offset);
+            return pos + 8 + readInt(code, pos + 4) * 8 - offset;
+        } else if (opcode == Opcode.GOTO_W) {
+            return 5;
+        }
+        return 3;
+    }
+
+    /**
+     * Writes the jump offsets of this branch, which is at the given offset in the given bytecode, so that they jump to the
+     * given targets. The targets are in the same order as {@link #getTargets(byte[])}.
+     */
+    static void writeTargets(ByteArrayBuffer code, int offset, int[] targets) {
+        final int opcode = code.get(offset);
+        if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+            final int pos = offset + 1 + padding(offset);
+            code.putInt(pos, targets[0] - offset);
+            for (int i = 1; i < targets.length; ++i) {
+                if (opcode == Opcode.TABLESWITCH) {
+                    code.putInt(pos + 8 + i * 4, targets[i] - offset);
+                } else {
+                    code.putInt(pos + 4 + i * 8, targets[i] - offset);
+                }
+            }
+        } else if (opcode == Opcode.GOTO_W) {
+            code.putInt(offset + 1, targets[0] - offset);
+        } else {
+            code.putShort(offset + 1, targets[0] - offset);
+        }
+    }
+
+    /**
+     * the number of padding bytes after a switch opcode at the given offset, so the operands start on a 4 byte boundary
+     */
+    static int padding(int offset) {
+        return (4 - (offset + 1) % 4) % 4;
+    }
+
+    static int readShort(byte[] code, int pos) {
+        return ((code[pos] & 0xFF) << 8) | (code[pos + 1] & 0xFF);
+    }
+
+    static int readInt(byte[] code, int pos) {
+        return ((code[pos] & 0xFF) << 24) | ((code[pos + 1] & 0xFF) << 16) | ((code[pos + 2] & 0xFF) << 8) | (code[pos + 3] & 0xFF);
+    }
+}
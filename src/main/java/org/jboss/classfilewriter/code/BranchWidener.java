@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.List;
+import java.util.TreeMap;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
+
+/**
+ * Rewrites the bytecode of a method so that every branch can reach its target.
+ * <p>
+ * A <code>goto</code> that is out of range becomes a <code>goto_w</code>. A conditional branch that is out of range is
+ * inverted so that it jumps over a <code>goto_w</code> to the original target. As widening a branch moves the code that
+ * follows it, which may push other branches out of range, the layout is recomputed until no more branches need widening.
+ * The padding of switch instructions is recalculated as they move.
+ */
+final class BranchWidener extends OffsetMapper {
+
+    /**
+     * The length of a conditional branch that has been widened into an inverted branch and a <code>goto_w</code>
+     */
+    private static final int WIDE_CONDITIONAL_LENGTH = 8;
+
+    private static final int WIDE_GOTO_LENGTH = 5;
+
+    private final byte[] code;
+
+    private final int codeLength;
+
+    private final BranchSite[] sites;
+
+    /**
+     * The branch targets of each site, as absolute offsets into the original code
+     */
+    private final int[][] targets;
+
+    private final int[] lengths;
+
+    private final boolean[] wide;
+
+    private final int[] newOffsets;
+
+    /**
+     * The number of bytes that each site has grown by, summed over all preceding sites. This has one more entry than there are
+     * sites.
+     */
+    private final int[] shift;
+
+    BranchWidener(ByteArrayBuffer code, TreeMap<Integer, BranchSite> branches, ConstPool constPool) {
+        super(constPool);
+        this.code = code.array();
+        this.codeLength = code.size();
+        this.sites = branches.values().toArray(new BranchSite[branches.size()]);
+        this.targets = new int[sites.length][];
+        this.lengths = new int[sites.length];
+        this.wide = new boolean[sites.length];
+        this.newOffsets = new int[sites.length];
+        this.shift = new int[sites.length + 1];
+        for (int i = 0; i < sites.length; ++i) {
+            targets[i] = sites[i].getTargets(this.code);
+            lengths[i] = sites[i].getLength(this.code);
+            wide[i] = sites[i].isOutOfRange();
+        }
+    }
+
+    /**
+     * Computes the layout of the widened code. Branches are only ever widened, never narrowed, so this always terminates.
+     */
+    void layout() {
+        boolean changed = true;
+        while (changed) {
+            for (int i = 0; i < sites.length; ++i) {
+                newOffsets[i] = sites[i].getOffset() + shift[i];
+                shift[i + 1] = shift[i] + newLength(i) - lengths[i];
+            }
+            changed = false;
+            for (int i = 0; i < sites.length; ++i) {
+                if (!wide[i] && isShortBranch(i)) {
+                    int jump = map(targets[i][0]) - newOffsets[i];
+                    if (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE) {
+                        wide[i] = true;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the widened code. {@link #layout()} must have been called first.
+     */
+    ByteArrayBuffer write() {
+        ByteArrayBuffer out = new ByteArrayBuffer(codeLength + shift[sites.length]);
+        int pos = 0;
+        for (int i = 0; i < sites.length; ++i) {
+            int offset = sites[i].getOffset();
+            out.write(code, pos, offset - pos);
+            writeSite(out, i);
+            pos = offset + lengths[i];
+        }
+        out.write(code, pos, codeLength - pos);
+        return out;
+    }
+
+    /**
+     * Returns the offset in the widened code of an instruction at the given offset in the original code
+     */
+    @Override
+    int map(int offset) {
+        // find the number of sites that start before the offset
+        int low = 0;
+        int high = sites.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sites[mid].getOffset() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return offset + shift[low];
+    }
+
+    /**
+     * Returns the branch sites of the widened code. Widened conditionals are represented by the inverted branch, which always
+     * jumps over the <code>goto_w</code>, and the <code>goto_w</code> itself.
+     */
+    TreeMap<Integer, BranchSite> getBranches() {
+        TreeMap<Integer, BranchSite> ret = new TreeMap<Integer, BranchSite>();
+        for (int i = 0; i < sites.length; ++i) {
+            if (wide[i] && isConditional(opcode(i))) {
+                ret.put(newOffsets[i], new BranchSite(newOffsets[i], null));
+                ret.put(newOffsets[i] + 3, new BranchSite(newOffsets[i] + 3, null));
+            } else {
+                ret.put(newOffsets[i], new BranchSite(newOffsets[i], map(sites[i].getFallThrough())));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Moves the stack frames to their new offsets, and adds frames for the fall through locations of conditional branches that
+     * have been widened, as these are now jump targets.
+     */
+    TreeMap<Integer, StackFrame> widenFrames(TreeMap<Integer, StackFrame> frames) {
+        TreeMap<Integer, StackFrame> ret = mapFrames(frames);
+        for (int i = 0; i < sites.length; ++i) {
+            if (wide[i] && isConditional(opcode(i))) {
+                int fallThrough = newOffsets[i] + WIDE_CONDITIONAL_LENGTH;
+                if (!ret.containsKey(fallThrough)) {
+                    ret.put(fallThrough, map(sites[i].getFallThrough()));
+                }
+            }
+        }
+        return ret;
+    }
+
+    void mapExceptionTable(List<ExceptionHandler> exceptionTable) {
+        for (ExceptionHandler handler : exceptionTable) {
+            map(handler);
+        }
+    }
+
+    private int newLength(int i) {
+        if (sites[i].isSwitch(code)) {
+            return lengths[i] - BranchSite.padding(sites[i].getOffset()) + BranchSite.padding(newOffsets[i]);
+        } else if (!wide[i]) {
+            return lengths[i];
+        } else if (opcode(i) == Opcode.GOTO) {
+            return WIDE_GOTO_LENGTH;
+        }
+        return WIDE_CONDITIONAL_LENGTH;
+    }
+
+    private void writeSite(ByteArrayBuffer out, int i) {
+        final int opcode = opcode(i);
+        final int offset = sites[i].getOffset();
+        final int newOffset = newOffsets[i];
+        final int[] newTargets = new int[targets[i].length];
+        for (int j = 0; j < newTargets.length; ++j) {
+            newTargets[j] = map(targets[i][j]);
+        }
+        if (sites[i].isSwitch(code)) {
+            // copy the switch with the new padding, then fix up the jump offsets
+            out.writeByte(opcode);
+            for (int j = BranchSite.padding(newOffset); j > 0; --j) {
+                out.writeByte(0);
+            }
+            int operands = offset + 1 + BranchSite.padding(offset);
+            out.write(code, operands, offset + lengths[i] - operands);
+            BranchSite.writeTargets(out, newOffset, newTargets);
+        } else if (opcode == Opcode.GOTO_W || (wide[i] && opcode == Opcode.GOTO)) {
+            out.writeByte(Opcode.GOTO_W);
+            out.writeInt(newTargets[0] - newOffset);
+        } else if (wide[i]) {
+            out.writeByte(invert(opcode));
+            out.writeShort(WIDE_CONDITIONAL_LENGTH);
+            out.writeByte(Opcode.GOTO_W);
+            out.writeInt(newTargets[0] - (newOffset + 3));
+        } else {
+            out.writeByte(opcode);
+            out.writeShort(newTargets[0] - newOffset);
+        }
+    }
+
+    private boolean isShortBranch(int i) {
+        int opcode = opcode(i);
+        return opcode == Opcode.GOTO || isConditional(opcode);
+    }
+
+    private int opcode(int i) {
+        return sites[i].getOpcode(code);
+    }
+
+    static boolean isConditional(int opcode) {
+        return (opcode >= Opcode.IFEQ && opcode <= Opcode.IF_ACMPNE) || opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL;
+    }
+
+    /**
+     * returns the conditional branch that jumps when the given branch falls through
+     */
+    static int invert(int opcode) {
+        switch (opcode) {
+            case Opcode.IFNULL:
+                return Opcode.IFNONNULL;
+            case Opcode.IFNONNULL:
+                return Opcode.IFNULL;
+            default:
+                // the conditional branches between ifeq and if_acmpne are laid out in complementary pairs
+                return ((opcode - Opcode.IFEQ) ^ 1) + Opcode.IFEQ;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Thread safe {@link CodeAttribute.StackFrameTypeResolver} that caches the results of another resolver.
+ * <p/>
+ * Results are cached per class loader, and class loaders are only weakly referenced so the cache does not prevent them from
+ * being unloaded. Each class loader's cache holds at most <code>maxEntriesPerClassLoader</code> results, with the least
+ * recently used result being evicted first. Unresolvable types (a <code>null</code> result) are not cached, as the class may
+ * become available later.
+ * <p/>
+ * A single instance is intended to be shared across class files. Caching is opt-in: it is only used if it is set with
+ * {@link org.jboss.classfilewriter.ClassFile#setStackFrameTypeResolver(CodeAttribute.StackFrameTypeResolver)} or
+ * {@link CodeAttribute#setStackFrameTypeResolver(CodeAttribute.StackFrameTypeResolver)}. Cached results are kept until the
+ * class loader is unloaded or {@link #clear(ClassLoader)} is called, so a class loader whose classes can change should not
+ * share a cache.
+ */
+public class CachingStackFrameTypeResolver implements CodeAttribute.StackFrameTypeResolver {
+
+    public static final int DEFAULT_MAX_ENTRIES_PER_CLASS_LOADER = 1024;
+
+    private static final CachingStackFrameTypeResolver DEFAULT = new CachingStackFrameTypeResolver(
+            new ClassLoadingStackFrameTypeResolver(), DEFAULT_MAX_ENTRIES_PER_CLASS_LOADER);
+
+    private final CodeAttribute.StackFrameTypeResolver delegate;
+
+    private final int maxEntriesPerClassLoader;
+
+    private final Map<ClassLoader, Map<String, String>> caches = Collections
+            .synchronizedMap(new WeakHashMap<ClassLoader, Map<String, String>>());
+
+    public CachingStackFrameTypeResolver(CodeAttribute.StackFrameTypeResolver delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES_PER_CLASS_LOADER);
+    }
+
+    public CachingStackFrameTypeResolver(CodeAttribute.StackFrameTypeResolver delegate, int maxEntriesPerClassLoader) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be specified");
+        }
+        if (maxEntriesPerClassLoader <= 0) {
+            throw new IllegalArgumentException("maxEntriesPerClassLoader must be positive");
+        }
+        this.delegate = delegate;
+        this.maxEntriesPerClassLoader = maxEntriesPerClassLoader;
+    }
+
+    /**
+     * Returns the shared resolver that caches the results of a {@link ClassLoadingStackFrameTypeResolver}
+     */
+    public static CachingStackFrameTypeResolver getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public String resolve(ClassLoader classLoader, String type1, String type2) {
+        final Map<String, String> cache = getCache(classLoader);
+        final String key = type1 + ',' + type2;
+        String result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result != null) {
+            return result;
+        }
+        // resolve outside the lock, as the delegate may load classes. Concurrent callers may both resolve the same pair, which
+        // is harmless as they get the same result.
+        result = delegate.resolve(classLoader, type1, type2);
+        if (result != null) {
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cached results for the given class loader
+     */
+    public void clear(ClassLoader classLoader) {
+        caches.remove(classLoader);
+    }
+
+    private Map<String, String> getCache(ClassLoader classLoader) {
+        synchronized (caches) {
+            Map<String, String> cache = caches.get(classLoader);
+            if (cache == null) {
+                cache = new LruCache(maxEntriesPerClassLoader);
+                caches.put(classLoader, cache);
+            }
+            return cache;
+        }
+    }
+
+    private static final class LruCache extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LruCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CodeAttribute.StackFrameTypeResolver} that reads the type hierarchy from <code>.class</code> resources, rather than
+ * loading the classes. This means merging stack frames never triggers class loading or linking, which makes it safe to use
+ * from inside a class loader.
+ * <p/>
+ * Only the class file header up to the interface table is parsed. The parsed hierarchy is cached per class loader, and class
+ * loaders are weakly referenced. Types whose class file cannot be found are not cached, and cause <code>null</code> to be
+ * returned.
+ * <p/>
+ * Types are merged in the same way as {@link ClassLoadingStackFrameTypeResolver}.
+ */
+public class ClassFileStackFrameTypeResolver implements CodeAttribute.StackFrameTypeResolver {
+
+    private static final String OBJECT = "java.lang.Object";
+
+    private final Map<ClassLoader, ConcurrentHashMap<String, TypeInfo>> types = Collections
+            .synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentHashMap<String, TypeInfo>>());
+
+    @Override
+    public String resolve(ClassLoader classLoader, String d1, String d2) {
+        final ConcurrentHashMap<String, TypeInfo> cache = getCache(classLoader);
+        TypeInfo c1 = getType(classLoader, cache, d1);
+        TypeInfo c2 = getType(classLoader, cache, d2);
+        if (c1 == null || c2 == null) {
+            return null;
+        }
+        if (c1.isAssignableFrom(c2)) {
+            return c1.name;
+        } else if (c2.isAssignableFrom(c1)) {
+            return c2.name;
+        }
+        TypeInfo p = c1;
+        while (p != null && !p.name.equals(OBJECT)) {
+            if (p.isAssignableFrom(c2)) {
+                return p.name;
+            }
+            p = p.superclass;
+        }
+        p = c2;
+        while (p != null && !p.name.equals(OBJECT)) {
+            if (p.isAssignableFrom(c1)) {
+                return p.name;
+            }
+            p = p.superclass;
+        }
+
+        Set<TypeInfo> s1 = getAllSuperclassesAndInterface(c1, new HashSet<TypeInfo>());
+        Set<TypeInfo> s2 = getAllSuperclassesAndInterface(c2, new HashSet<TypeInfo>());
+        leavesOnly(s1);
+        leavesOnly(s2);
+        Set<TypeInfo> interfaces = new HashSet<TypeInfo>();
+        interfaces.addAll(s1);
+        interfaces.addAll(s2);
+        interfaces.remove(c1);
+        interfaces.remove(c2);
+        if (interfaces.size() == 1) {
+            return interfaces.iterator().next().name;
+        } else if (interfaces.size() > 1) {
+            throw new RuntimeException("Could not resolve common superclass for " + d1 + " and " + d2);
+        } else {
+            return OBJECT;
+        }
+    }
+
+    /**
+     * Removes all cached type information for the given class loader
+     */
+    public void clear(ClassLoader classLoader) {
+        types.remove(classLoader);
+    }
+
+    private static void leavesOnly(Set<TypeInfo> s2) {
+        List<TypeInfo> keys = new ArrayList<TypeInfo>(s2);
+        for (TypeInfo key : keys) {
+            for (TypeInfo content : s2) {
+                if (key == content) {
+                    continue;
+                }
+                if (key.isAssignableFrom(content)) {
+                    s2.remove(key);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static Set<TypeInfo> getAllSuperclassesAndInterface(TypeInfo c, Set<TypeInfo> set) {
+        for (TypeInfo i : c.interfaces) {
+            set.add(i);
+        }
+        set.add(c);
+        if (c.superclass != null) {
+            getAllSuperclassesAndInterface(c.superclass, set);
+        }
+        return set;
+    }
+
+    private ConcurrentHashMap<String, TypeInfo> getCache(ClassLoader classLoader) {
+        synchronized (types) {
+            ConcurrentHashMap<String, TypeInfo> cache = types.get(classLoader);
+            if (cache == null) {
+                cache = new ConcurrentHashMap<String, TypeInfo>();
+                types.put(classLoader, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the type with the given name, with its supertypes resolved, or null if the class file for the type or one of its
+     * supertypes cannot be found
+     */
+    private TypeInfo getType(ClassLoader classLoader, ConcurrentHashMap<String, TypeInfo> cache, String name) {
+        TypeInfo type = cache.get(name);
+        if (type != null) {
+            return type;
+        }
+        ClassHeader header = readHeader(classLoader, name);
+        if (header == null) {
+            return null;
+        }
+        TypeInfo superclass = null;
+        if (header.superclass != null) {
+            superclass = getType(classLoader, cache, header.superclass);
+            if (superclass == null) {
+                return null;
+            }
+        }
+        TypeInfo[] interfaces = new TypeInfo[header.interfaces.length];
+        for (int i = 0; i < interfaces.length; ++i) {
+            interfaces[i] = getType(classLoader, cache, header.interfaces[i]);
+            if (interfaces[i] == null) {
+                return null;
+            }
+        }
+        type = new TypeInfo(name, superclass, interfaces);
+        TypeInfo existing = cache.putIfAbsent(name, type);
+        return existing == null ? type : existing;
+    }
+
+    private static ClassHeader readHeader(ClassLoader classLoader, String name) {
+        final String resource = name.replace('.', '/') + ".class";
+        final InputStream stream;
+        if (classLoader == null) {
+            stream = ClassLoader.getSystemResourceAsStream(resource);
+        } else {
+            stream = classLoader.getResourceAsStream(resource);
+        }
+        if (stream == null) {
+            return null;
+        }
+        try {
+            try {
+                return readHeader(new DataInputStream(new BufferedInputStream(stream)));
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the superclass and interfaces from a class file. The rest of the class file after the interface table is not read.
+     */
+    private static ClassHeader readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) {
+            return null;
+        }
+        in.readInt(); // version
+        final int count = in.readUnsignedShort();
+        final int[] classes = new int[count];
+        final String[] utf8 = new String[count];
+        for (int i = 1; i < count; ++i) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    skip(in, 2);
+                    break;
+                case 15: // MethodHandle
+                    skip(in, 3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    skip(in, 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    skip(in, 8);
+                    ++i;
+                    break;
+                default:
+                    throw new IOException("Unknown const pool tag " + tag);
+            }
+        }
+        in.readUnsignedShort(); // access flags
+        in.readUnsignedShort(); // this class
+        final int superIndex = in.readUnsignedShort();
+        final String superclass = superIndex == 0 ? null : className(classes, utf8, superIndex);
+        final String[] interfaces = new String[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; ++i) {
+            interfaces[i] = className(classes, utf8, in.readUnsignedShort());
+        }
+        return new ClassHeader(superclass, interfaces);
+    }
+
+    private static String className(int[] classes, String[] utf8, int index) throws IOException {
+        if (index >= classes.length || classes[index] == 0 || classes[index] >= utf8.length || utf8[classes[index]] == null) {
+            throw new IOException("Invalid class index " + index);
+        }
+        return utf8[classes[index]].replace('/', '.');
+    }
+
+    private static void skip(DataInputStream in, int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            in.readByte();
+        }
+    }
+
+    private static final class ClassHeader {
+        final String superclass;
+        final String[] interfaces;
+
+        ClassHeader(String superclass, String[] interfaces) {
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+        }
+    }
+
+    private static final class TypeInfo {
+        final String name;
+        final TypeInfo superclass;
+        final TypeInfo[] interfaces;
+        /**
+         * The names of all types this type is assignable to, including itself
+         */
+        private final Set<String> supertypes;
+
+        TypeInfo(String name, TypeInfo superclass, TypeInfo[] interfaces) {
+            this.name = name;
+            this.superclass = superclass;
+            this.interfaces = interfaces;
+            Set<String> supertypes = new HashSet<String>();
+            supertypes.add(name);
+            // interfaces have java.lang.Object as their superclass in the class file, so it is always included
+            if (superclass != null) {
+                supertypes.addAll(superclass.supertypes);
+            }
+            for (TypeInfo i : interfaces) {
+                supertypes.addAll(i.supertypes);
+            }
+            this.supertypes = supertypes;
+        }
+
+        boolean isAssignableFrom(TypeInfo other) {
+            return other.supertypes.contains(name);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link CodeAttribute.StackFrameTypeResolver} that loads both types through the class loader and merges them based on the
+ * resulting {@link Class} objects.
+ * <p/>
+ * This resolver has no state, and does not cache its results. Use {@link CachingStackFrameTypeResolver} to avoid repeating
+ * the hierarchy walk for the same pair of types.
+ */
+public class ClassLoadingStackFrameTypeResolver implements CodeAttribute.StackFrameTypeResolver {
+
+    @Override
+    public String resolve(ClassLoader cl, String d1, String d2) {
+        try {
+            Class<?> c1 = cl.loadClass(d1);
+            Class<?> c2 = cl.loadClass(d2);
+            if (c1.isAssignableFrom(c2)) {
+                return c1.getName();
+            } else if (c2.isAssignableFrom(c1)) {
+                return c2.getName();
+            } else {
+                Class<?> p = c1;
+                while (p != null && p != Object.class) {
+                    if (p.isAssignableFrom(c2)) {
+                        return p.getName();
+                    }
+                    p = p.getSuperclass();
+                }
+                p = c2;
+                while (p != null && p != Object.class) {
+                    if (p.isAssignableFrom(c1)) {
+                        return p.getName();
+                    }
+                    p = p.getSuperclass();
+                }
+
+                Set<Class<?>> s1 = getAllSuperclassesAndInterface(c1, new HashSet<Class<?>>());
+                Set<Class<?>> s2 = getAllSuperclassesAndInterface(c2, new HashSet<Class<?>>());
+                leavesOnly(s1);
+                leavesOnly(s2);
+                Set<Class<?>> interfaces = new HashSet<Class<?>>();
+                interfaces.addAll(s1);
+                interfaces.addAll(s2);
+                interfaces.remove(c1);
+                interfaces.remove(c2);
+                if (interfaces.size() == 1) {
+                    return interfaces.iterator().next().getName();
+                } else if (interfaces.size() > 1) {
+                    throw new RuntimeException("Could not resolve common superclass for " + d1 + " and " + d2);
+                } else {
+                    return Object.class.getName();
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static void leavesOnly(Set<Class<?>> s2) {
+        List<Class<?>> keys = new ArrayList<Class<?>>(s2);
+        for (Class<?> key : keys) {
+            for (Class<?> content : s2) {
+                if (key == content) {
+                    continue;
+                }
+                if (key.isAssignableFrom(content)) {
+                    s2.remove(key);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static Set<Class<?>> getAllSuperclassesAndInterface(Class<?> c, Set<Class<?>> set) {
+        set.addAll(Arrays.asList(c.getInterfaces()));
+        set.add(c);
+        if (c.getSuperclass() != null) {
+            getAllSuperclassesAndInterface(c.getSuperclass(), set);
+        }
+        return set;
+    }
+}
@@ -17,28 +17,28 @@
  */
 package org.jboss.classfilewriter.code;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.TreeMap;
 
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
 import org.jboss.classfilewriter.ClassMethod;
 import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.JavaVersions;
 import org.jboss.classfilewriter.attributes.Attribute;
 import org.jboss.classfilewriter.attributes.StackMapTableAttribute;
 import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.constpool.MethodHandleKind;
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
 import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
 import org.jboss.classfilewriter.util.DescriptorUtils;
 import org.jboss.classfilewriter.util.LazySize;
@@ -48,35 +48,85 @@ public class CodeAttribute extends Attribute {
 
     public static final String NAME = "Code";
 
+    /**
+     * The code length above which HotSpot will not JIT compile a method, unless <code>-XX:-DontCompileHugeMethods</code> is
+     * set
+     */
+    public static final int HUGE_METHOD_LIMIT = 8000;
+
+    /**
+     * The StringConcatFactory recipe tag for an operand
+     */
+    private static final char CONCAT_ARGUMENT = '\u0001';
+
+    /**
+     * The StringConcatFactory recipe tag for a constant
+     */
+    private static final char CONCAT_CONSTANT = '\u0002';
+
+    /**
+     * The maximum number of argument slots StringConcatFactory accepts
+     */
+    private static final int MAX_CONCAT_SLOTS = 200;
+
+    /**
+     * The maximum length of the bytecode of a method
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * The maximum number of parameter slots of a method
+     */
+    private static final int MAX_PARAMETER_SLOTS = 255;
+
+    private static final String LAMBDA_BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;"
+            + "Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;";
+
+    private static final String CONCAT_BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+            + "Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;";
+
     private final ClassMethod method;
 
     private final ConstPool constPool;
 
-    private final ByteArrayOutputStream finalDataBytes;
+    /**
+     * The bytecode. Jump offsets that are not known when the instruction is written are patched in place when the branch end
+     * is reached.
+     */
+    private ByteArrayBuffer code = new ByteArrayBuffer();
+
+    /**
+     * The branch instructions that have been written, keyed by bytecode offset
+     */
+    private TreeMap<Integer, BranchSite> branches = new TreeMap<Integer, BranchSite>();
 
-    private final DataOutputStream data;
+    /**
+     * true if a 16 bit branch could not reach its target, in which case branches are widened when the code is written
+     */
+    private boolean branchesOutOfRange;
 
     private int maxLocals = 0;
 
     private int maxStackDepth = 0;
 
-    private final LinkedHashMap<Integer, StackFrame> stackFrames = new LinkedHashMap<Integer, StackFrame>();
-
     /**
-     * maps bytecode offsets to jump locations. As these jump locations where not known when the instruction was written they
-     * need to be overwritten when the final bytecode is written out
+     * The frames that need to be written to the stack map table, keyed by bytecode offset. Frames are only recorded for
+     * locations that are the target of a jump or an exception handler.
      */
-    private final Map<Integer, Integer> jumpLocations = new HashMap<Integer, Integer>();
+    private final TreeMap<Integer, StackFrame> stackFrames = new TreeMap<Integer, StackFrame>();
 
     /**
-     * maps bytecode offsets to jump locations. As these jump locations where not known when the instruction was written they
-     * need to be overwritten when the final bytecode is written out
-     * <p/>
-     * These jump locations are 32 bit offsets,
+     * The frame at the current location, or null if the current location is not reachable. This is updated in place as
+     * instructions are written, immutable {@link StackFrame} snapshots are only taken when needed.
      */
-    private final Map<Integer, Integer> jumpLocations32 = new HashMap<Integer, Integer>();
+    private MutableStackFrame currentFrame;
 
-    private StackFrame currentFrame;
+    /**
+     * The frame that {@link #currentFrame} refers to when the current location is reachable. For unchecked code this is an
+     * {@link UntrackedStackFrame}.
+     */
+    private MutableStackFrame frameState;
 
     private int currentOffset;
 
@@ -86,14 +136,55 @@ public class CodeAttribute extends Attribute {
 
     private final List<ExceptionHandler> exceptionTable = new ArrayList<ExceptionHandler>();
 
+    private static final StackFrameTypeResolver DEFAULT_STACK_FRAME_TYPE_RESOLVER = new ClassLoadingStackFrameTypeResolver();
+
     private StackFrameTypeResolver stackFrameTypeResolver;
 
+    /**
+     * The code length above which sections of code are moved into helper methods, or 0 if the method is not split
+     */
+    private int splitThreshold;
+
+    /**
+     * The locations where the method can be split, or null if the method is not split
+     */
+    private List<SplitPoint> splitPoints;
+
+    /**
+     * true if the stack was empty after the last instruction, so the next instruction may start a split point
+     */
+    private boolean splitCandidate;
+
+    /**
+     * true if the code since the last split point can be moved to a helper method
+     */
+    private boolean sectionMovable;
+
+    /**
+     * The number of forward branches whose end has not been reached yet
+     */
+    private int openBranches;
+
+    /**
+     * true if the stack and the local variables are not tracked as instructions are written, and the frames are computed from
+     * the finished bytecode instead
+     */
+    private boolean unchecked;
+
+    /**
+     * true if the frames of unchecked code have been computed
+     */
+    private boolean framesComputed;
+
+    /**
+     * true if redundant instructions are removed when the code is written
+     */
+    private boolean peepholeOptimization;
+
     public CodeAttribute(ClassMethod method, ConstPool constPool) {
         super(NAME, constPool);
         this.method = method;
         this.constPool = constPool;
-        this.finalDataBytes = new ByteArrayOutputStream();
-        this.data = new DataOutputStream(finalDataBytes);
 
         if (!Modifier.isStatic(method.getAccessFlags())) {
             maxLocals++;
@@ -105,11 +196,11 @@ public class CodeAttribute extends Attribute {
                 maxLocals++;
             }
         }
-        // creates a new initial stack frame
-        currentFrame = new StackFrame(method);
-        stackFrames.put(0, currentFrame);
         currentOffset = 0;
         stackMapTableAttribute = new StackMapTableAttribute(method, constPool);
+        unchecked = method.getClassFile().isUnchecked();
+        // creates a new initial stack frame
+        resetFrame();
     }
 
     public StackFrameTypeResolver getStackFrameTypeResolver() {
@@ -120,32 +211,307 @@ public class CodeAttribute extends Attribute {
         this.stackFrameTypeResolver = stackFrameTypeResolver;
     }
 
+    public int getSplitThreshold() {
+        return splitThreshold;
+    }
+
+    /**
+     * Enables splitting of this method. If the code is longer than the threshold when the class is written then sections of
+     * code are moved into private static helper methods, which are passed the local variables as parameters, until the code
+     * is no longer than the threshold.
+     * <p/>
+     * A section is only moved if the stack is empty at its start and end, it is not jumped into or out of, and it does not
+     * return, store to a local variable, assign a field of this class in an initializer or use a monitor. This suits long
+     * sequences of independent statements, such as large initializers.
+     * <p/>
+     * Use {@link #HUGE_METHOD_LIMIT} to keep the method small enough to be JIT compiled. This must be called before any code
+     * is written.
+     *
+     * @param threshold the code length above which the method is split
+     */
+    public void setSplitThreshold(int threshold) {
+        if (code.size() != 0) {
+            throw new IllegalStateException("The split threshold must be set before any code is written");
+        }
+        if (threshold <= 0 || threshold > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Invalid split threshold " + threshold);
+        }
+        splitThreshold = threshold;
+        splitPoints = new ArrayList<SplitPoint>();
+        splitCandidate = true;
+        sectionMovable = true;
+    }
+
+    public boolean isUnchecked() {
+        return unchecked;
+    }
+
+    /**
+     * Disables tracking and validation of the stack and the local variables as instructions are written, which reduces the
+     * cost of most instructions to writing their bytes. The stack map frames, the maximum stack depth and the number of local
+     * variables are instead computed in a single pass over the finished bytecode when the class file is written. Invalid
+     * bytecode is only detected when the frames are computed, or by the verifier when the class is loaded, so this should
+     * only be used by generators whose output is already known to be valid.
+     * <p/>
+     * As the stack is not tracked, {@link #stringConcat(String...)} and {@link #makeConcatWithConstants(String, String...)}
+     * cannot be used, unchecked methods are not split, and {@link #getStackFrames()} only returns the computed frames once
+     * the class file has been written. Unchecked code must not contain unreachable instructions. This must be called before
+     * any code is written.
+     *
+     * @param unchecked true if instructions should not be tracked or validated
+     */
+    public void setUnchecked(boolean unchecked) {
+        if (code.size() != 0) {
+            throw new IllegalStateException("Unchecked mode must be set before any code is written");
+        }
+        this.unchecked = unchecked;
+        resetFrame();
+    }
+
+    private void resetFrame() {
+        frameState = unchecked ? new UntrackedStackFrame(constPool) : new MutableStackFrame(constPool);
+        currentFrame = frameState.reset(new StackFrame(method));
+    }
+
+    public boolean isPeepholeOptimization() {
+        return peepholeOptimization;
+    }
+
+    /**
+     * Enables removal of redundant instructions when the code is written. This removes jumps to the next instruction,
+     * replaces jumps to a return instruction with the return instruction, inverts conditional branches that jump over a
+     * <code>goto</code>, and removes values that are pushed and then immediately popped. Shorter methods are more likely to
+     * be inlined by the JIT.
+     * <p/>
+     * Other attributes of the code attribute that refer to bytecode offsets are not updated when code is removed.
+     *
+     * @param peepholeOptimization true if redundant instructions should be removed
+     */
+    public void setPeepholeOptimization(boolean peepholeOptimization) {
+        this.peepholeOptimization = peepholeOptimization;
+    }
+
+    /**
+     * Moves sections of code into helper methods if splitting has been enabled with {@link #setSplitThreshold(int)} and the
+     * code is longer than the threshold. The largest sections are moved first, and only as many as are needed to bring the
+     * code length under the threshold. This is called when the class file is written.
+     */
+    public void split() {
+        if (splitPoints == null || code.size() <= splitThreshold || splitPoints.size() < 2) {
+            return;
+        }
+        final ClassFile classFile = method.getClassFile();
+        final boolean isInterface = (classFile.getAccessFlags() & AccessFlag.INTERFACE) != 0;
+        if (isInterface && classFile.getVersion() < JavaVersions.JAVA_8) {
+            // interfaces cannot have private methods before java 8
+            return;
+        }
+        final byte[] bytes = code.array();
+        final BranchSite[] sites = branches.values().toArray(new BranchSite[branches.size()]);
+        final int[][] targets = new int[sites.length][];
+        for (int i = 0; i < sites.length; ++i) {
+            targets[i] = sites[i].getTargets(bytes);
+        }
+
+        final List<Integer> candidates = new ArrayList<Integer>();
+        for (int i = 0; i + 1 < splitPoints.size(); ++i) {
+            if (splitPoints.get(i).isMovable()
+                    && isSelfContained(splitPoints.get(i).getOffset(), splitPoints.get(i + 1).getOffset(), sites, targets)) {
+                candidates.add(i);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return sectionLength(o2) - sectionLength(o1);
+            }
+        });
+
+        // choose the sections to move, and write the instructions that load the parameters of their helper methods
+        final TreeMap<Integer, ByteArrayBuffer> stubs = new TreeMap<Integer, ByteArrayBuffer>();
+        final TreeMap<Integer, List<String>> parameters = new TreeMap<Integer, List<String>>();
+        int length = code.size();
+        for (int i : candidates) {
+            if (length <= splitThreshold) {
+                break;
+            }
+            final ByteArrayBuffer stub = new ByteArrayBuffer();
+            final List<String> params = new ArrayList<String>();
+            loadLocals(splitPoints.get(i).getFrame(), stub, params);
+            final int stubLength = stub.size() + 3;
+            if (sectionLength(i) > stubLength * 2) {
+                stubs.put(i, stub);
+                parameters.put(i, params);
+                length -= sectionLength(i) - stubLength;
+                // the stub pushes every local variable onto the stack
+                final int slots = splitPoints.get(i).getFrame().getLocalVariableState().size();
+                if (slots > maxStackDepth) {
+                    maxStackDepth = slots;
+                }
+            }
+        }
+        if (stubs.isEmpty()) {
+            return;
+        }
+
+        final int[] starts = new int[stubs.size()];
+        final int[] ends = new int[stubs.size()];
+        final int[] shifts = new int[stubs.size()];
+        int j = 0;
+        for (Map.Entry<Integer, ByteArrayBuffer> entry : stubs.entrySet()) {
+            final int i = entry.getKey();
+            final ByteArrayBuffer stub = entry.getValue();
+            starts[j] = splitPoints.get(i).getOffset();
+            ends[j] = splitPoints.get(i + 1).getOffset();
+            ClassMethod helper = classFile.addMethod(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC, AccessFlag.SYNTHETIC),
+                    helperName(classFile), "V", parameters.get(i).toArray(new String[0]));
+            int index = isInterface ? constPool.addInterfaceMethodRef(classFile.getName(), helper.getName(), helper
+                    .getDescriptor()) : constPool.addMethodRef(classFile.getName(), helper.getName(), helper.getDescriptor());
+            stub.writeByte(Opcode.INVOKESTATIC);
+            stub.writeShort(index);
+            // pad the call so the code after it moves by a multiple of 4, which keeps the switch padding valid
+            while ((ends[j] - starts[j] - stub.size()) % 4 != 0) {
+                stub.writeByte(Opcode.NOP);
+            }
+            shifts[j] = ends[j] - starts[j] - stub.size();
+            helper.getCodeAttribute().setPeepholeOptimization(peepholeOptimization);
+            moveToHelper(starts[j], ends[j], sites, helper.getCodeAttribute());
+            ++j;
+        }
+
+        final OffsetMapper mapper = new OffsetMapper(constPool) {
+            @Override
+            int map(int offset) {
+                int ret = offset;
+                for (int k = 0; k < starts.length && ends[k] <= offset; ++k) {
+                    ret -= shifts[k];
+                }
+                return ret;
+            }
+        };
+        final ByteArrayBuffer newCode = new ByteArrayBuffer(length);
+        int pos = 0;
+        j = 0;
+        for (ByteArrayBuffer stub : stubs.values()) {
+            newCode.write(bytes, pos, starts[j] - pos);
+            newCode.write(stub.array(), 0, stub.size());
+            pos = ends[j++];
+        }
+        newCode.write(bytes, pos, code.size() - pos);
+
+        final TreeMap<Integer, BranchSite> newBranches = new TreeMap<Integer, BranchSite>();
+        boolean outOfRange = false;
+        for (int i = 0; i < sites.length; ++i) {
+            if (section(sites[i].getOffset(), starts, ends) != -1) {
+                continue;
+            }
+            final int offset = mapper.map(sites[i].getOffset());
+            final int[] newTargets = new int[targets[i].length];
+            for (int k = 0; k < newTargets.length; ++k) {
+                newTargets[k] = mapper.map(targets[i][k]);
+            }
+            final BranchSite site = new BranchSite(offset, mapper.map(sites[i].getFallThrough()));
+            final int jump = newTargets[0] - offset;
+            if (sites[i].isOutOfRange() && (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE)) {
+                site.setTarget(newTargets[0]);
+                outOfRange = true;
+            } else {
+                BranchSite.writeTargets(newCode, offset, newTargets);
+            }
+            newBranches.put(offset, site);
+        }
+
+        final TreeMap<Integer, StackFrame> newFrames = new TreeMap<Integer, StackFrame>();
+        for (Map.Entry<Integer, StackFrame> entry : stackFrames.entrySet()) {
+            int section = section(entry.getKey(), starts, ends);
+            if (section == -1 || entry.getKey() == starts[section]) {
+                newFrames.put(mapper.map(entry.getKey()), mapper.map(entry.getValue()));
+            }
+        }
+        final List<ExceptionHandler> newExceptionTable = new ArrayList<ExceptionHandler>();
+        for (ExceptionHandler handler : exceptionTable) {
+            int section = section(handler.getStart(), starts, ends);
+            if (section == -1 || handler.getEnd() > ends[section]) {
+                mapper.map(handler);
+                newExceptionTable.add(handler);
+            }
+        }
+
+        code = newCode;
+        currentOffset = code.size();
+        branches = newBranches;
+        branchesOutOfRange = outOfRange;
+        stackFrames.clear();
+        stackFrames.putAll(newFrames);
+        exceptionTable.clear();
+        exceptionTable.addAll(newExceptionTable);
+        splitPoints.clear();
+    }
+
+    /**
+     * Computes the stack map frames, the maximum stack depth and the number of local variables of unchecked code from the
+     * finished bytecode, after the code has been optimized and its branches widened. This is called when the class file is
+     * written, before the const pool is written, as the frames may add class entries to the const pool. It does nothing for
+     * code that is not unchecked.
+     *
+     * @throws InvalidBytecodeException if the frames cannot be computed
+     */
+    public void computeFrames() {
+        if (!unchecked) {
+            return;
+        }
+        if (peepholeOptimization) {
+            optimize();
+        }
+        if (branchesOutOfRange) {
+            widenBranches();
+        }
+        final FrameAnalyzer analyzer = new FrameAnalyzer(this, method, code.array(), code.size(), exceptionTable, constPool);
+        analyzer.analyze();
+        stackFrames.clear();
+        stackFrames.putAll(analyzer.getFrames());
+        maxStackDepth = analyzer.getMaxStack();
+        maxLocals = analyzer.getMaxLocals();
+        framesComputed = true;
+    }
+
     @Override
     public void writeData(ByteArrayDataOutputStream stream) throws IOException {
 
+        if (unchecked) {
+            if (!framesComputed) {
+                computeFrames();
+            }
+        } else {
+            if (peepholeOptimization) {
+                optimize();
+            }
+            if (branchesOutOfRange) {
+                widenBranches();
+            }
+        }
+
         // add the stack map table
-        if (method.getClassFile().getClassLoader() != null) {
+        if (method.getClassFile().getClassLoader() != null && !stackFrames.isEmpty()
+                && !attributes.contains(stackMapTableAttribute)) {
             //we don't generate the stack map if the class loader is null
+            //or if there are no jump targets that need a frame
             attributes.add(stackMapTableAttribute);
         }
 
-        if (finalDataBytes.size() == 0) {
+        if (code.size() == 0) {
             throw new RuntimeException("Code attribute is empty for method " + method.getName() + "  " + method.getDescriptor());
         }
-
-        byte[] bytecode = finalDataBytes.toByteArray();
-        for (Entry<Integer, Integer> e : jumpLocations.entrySet()) {
-            overwriteShort(bytecode, e.getKey(), e.getValue());
-        }
-        for (Entry<Integer, Integer> e : jumpLocations32.entrySet()) {
-            overwriteInt(bytecode, e.getKey(), e.getValue());
+        if (code.size() > MAX_CODE_LENGTH) {
+            throw new RuntimeException("Code attribute is " + code.size() + " bytes long, which is too large for method "
+                    + method.getName() + "  " + method.getDescriptor());
         }
 
         LazySize size = stream.writeSize();
         stream.writeShort(maxStackDepth);
         stream.writeShort(maxLocals);
-        stream.writeInt(bytecode.length);
-        stream.write(bytecode);
+        stream.writeInt(code.size());
+        stream.write(code.array(), 0, code.size());
         stream.writeShort(exceptionTable.size()); // exception table length
         for (ExceptionHandler exception : exceptionTable) {
             stream.writeShort(exception.getStart());
@@ -165,42 +531,45 @@ public class CodeAttribute extends Attribute {
 
     public void aaload() {
         assertTypeOnStack(StackEntryType.INT, "aaload requires int on top of stack");
-        if (!getStack().top_1().getDescriptor().startsWith("[")) {
+        if (!unchecked && !getFrame().top_1().getDescriptor().startsWith("[")) {
             throw new InvalidBytecodeException("aaload needs an array in position 2 on the stack");
         }
         writeByte(Opcode.AALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("Ljava/lang/Object;"));
+        currentFrame.pop2push1("Ljava/lang/Object;");
+        advanceFrame();
     }
 
     public void aastore() {
         assertTypeOnStack(StackEntryType.OBJECT, "aastore requires reference type on top of stack");
         assertTypeOnStack(1, StackEntryType.INT, "aastore requires an int on position 2 stack");
-        if (!getStack().top_2().getDescriptor().startsWith("[")) {
+        if (!unchecked && !getFrame().top_2().getDescriptor().startsWith("[")) {
             throw new InvalidBytecodeException("aaload needs an array in position 3 on the stack");
         }
         writeByte(Opcode.AASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     public void aconstNull() {
         writeByte(Opcode.ACONST_NULL);
         currentOffset++;
-        advanceFrame(currentFrame.aconstNull());
+        currentFrame.aconstNull();
+        advanceFrame();
     }
 
     public void aload(int no) {
-        LocalVariableState locals = getLocalVars();
-        if (locals.size() <= no) {
-            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + locals.toString());
+        MutableStackFrame frame = getFrame();
+        if (!unchecked && frame.localsSize() <= no) {
+            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + frame.localsToString());
         }
-        StackEntry entry = locals.get(no);
-        if (entry.getType() != StackEntryType.OBJECT && entry.getType() != StackEntryType.NULL
+        StackEntry entry = frame.getLocal(no);
+        if (!unchecked && entry.getType() != StackEntryType.OBJECT && entry.getType() != StackEntryType.NULL
                 && entry.getType() != StackEntryType.UNINITIALIZED_THIS
                 && entry.getType() != StackEntryType.UNITITIALIZED_OBJECT) {
             throw new InvalidBytecodeException("Invalid local variable at location " + no + " Local Variables "
-                    + locals.toString());
+                    + frame.localsToString());
         }
 
         if (no > 0xFF) {
@@ -217,19 +586,22 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void anewarray(String arrayType) {
         assertTypeOnStack(StackEntryType.INT, "anewarray requires int on stack");
-        int index = constPool.addClassEntry(arrayType);
+        int index = constPool.addClass(arrayType);
         writeByte(Opcode.ANEWARRAY);
         writeShort(index);
         currentOffset += 3;
         if (arrayType.startsWith("[")) {
-            advanceFrame(currentFrame.replace("[" + arrayType));
+            currentFrame.replace("[" + arrayType);
+            advanceFrame();
         } else {
-            advanceFrame(currentFrame.replace("[L" + arrayType + ";"));
+            currentFrame.replace("[L" + arrayType + ";");
+            advanceFrame();
         }
     }
 
@@ -237,7 +609,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(StackEntryType.OBJECT, "arraylength requires array on stack");
         writeByte(Opcode.ARRAYLENGTH);
         currentOffset++;
-        advanceFrame(currentFrame.replace("I"));
+        currentFrame.replace("I");
+        advanceFrame();
     }
 
     public void astore(int no) {
@@ -256,14 +629,16 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.store(no));
+        currentFrame.store(no);
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void athrow() {
         assertTypeOnStack(StackEntryType.OBJECT, "athrow requires an object on the stack");
         writeByte(Opcode.ATHROW);
         currentOffset++;
-        currentFrame = null;
+        endOfBlock();
     }
 
     public void baload() {
@@ -271,7 +646,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "baload requires an array in position 2 on the stack");
         writeByte(Opcode.BALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void bastore() {
@@ -280,7 +656,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.OBJECT, "bastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.BASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     public void caload() {
@@ -288,7 +665,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "caload requires an array in position 2 on the stack");
         writeByte(Opcode.CALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void castore() {
@@ -297,29 +675,37 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.OBJECT, "castore requires an array reference in position 3 on the stack");
         writeByte(Opcode.CASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     public void bipush(byte value) {
         writeByte(Opcode.BIPUSH);
         writeByte(value);
         currentOffset += 2;
-        advanceFrame(currentFrame.push("B"));
+        currentFrame.push("B");
+        advanceFrame();
     }
 
     /**
      * marks the end of a branch. The current stack frame is checked for compatibility with the stack frame at the branch start
+     * <p/>
+     * If the branch is a 16 bit jump and the current location is out of range then the branch is widened when the code is
+     * written.
      */
     public void branchEnd(BranchEnd end) {
-        mergeStackFrames(end.getStackFrame());
+        if (openBranches > 0) {
+            openBranches--;
+        }
+        mergeJumpTarget(end.getStackFrame());
         final int jump = currentOffset - end.getOffsetLocation();
         if (end.isJump32Bit()) {
-            jumpLocations32.put(end.getBranchLocation(), jump);
+            code.putInt(end.getBranchLocation(), jump);
+        } else if (jump > Short.MAX_VALUE) {
+            branches.get(end.getOffsetLocation()).setTarget(currentOffset);
+            branchesOutOfRange = true;
         } else {
-            if (jump > Short.MAX_VALUE) {
-                throw new RuntimeException(jump + " is to big to be written as a 16 bit value");
-            }
-            jumpLocations.put(end.getBranchLocation(), jump);
+            code.putShort(end.getBranchLocation(), jump);
         }
     }
 
@@ -332,11 +718,12 @@ public class CodeAttribute extends Attribute {
         }
         className = className.replace('.', '/');
         assertTypeOnStack(StackEntryType.OBJECT, "checkcast requires reference type on stack");
-        int classIndex = constPool.addClassEntry(className);
+        int classIndex = constPool.addClass(className);
         writeByte(Opcode.CHECKCAST);
         writeShort(classIndex);
         currentOffset += 3;
-        advanceFrame(currentFrame.replace(className));
+        currentFrame.replace(className);
+        advanceFrame();
     }
 
     public void checkcast(Class<?> clazz) {
@@ -347,21 +734,24 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(StackEntryType.DOUBLE, "d2f requires double on stack");
         writeByte(Opcode.D2F);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("F"));
+        currentFrame.pop2push1("F");
+        advanceFrame();
     }
 
     public void d2i() {
         assertTypeOnStack(StackEntryType.DOUBLE, "d2i requires double on stack");
         writeByte(Opcode.D2I);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void d2l() {
         assertTypeOnStack(StackEntryType.DOUBLE, "d2l requires double on stack");
         writeByte(Opcode.D2L);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("J"));
+        currentFrame.pop2push1("J");
+        advanceFrame();
     }
 
     public void dadd() {
@@ -369,7 +759,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "dadd requires double on stack");
         writeByte(Opcode.DADD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void daload() {
@@ -377,7 +768,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "daload requires an array in position 2 on the stack");
         writeByte(Opcode.DALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("D"));
+        currentFrame.pop2push1("D");
+        advanceFrame();
     }
 
     public void dastore() {
@@ -386,7 +778,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(3, StackEntryType.OBJECT, "dastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.DASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop4());
+        currentFrame.pop4();
+        advanceFrame();
     }
 
     public void dcmpg() {
@@ -394,7 +787,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "dcmpg requires double on stack");
         writeByte(Opcode.DCMPG);
         currentOffset++;
-        advanceFrame(currentFrame.pop4push1("I"));
+        currentFrame.pop4push1("I");
+        advanceFrame();
     }
 
     public void dcmpl() {
@@ -402,7 +796,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "dcmpl requires double in position 3 on stack");
         writeByte(Opcode.DCMPL);
         currentOffset++;
-        advanceFrame(currentFrame.pop4push1("I"));
+        currentFrame.pop4push1("I");
+        advanceFrame();
     }
 
     /**
@@ -420,7 +815,8 @@ public class CodeAttribute extends Attribute {
             return;
         }
         currentOffset++;
-        advanceFrame(currentFrame.push("D"));
+        currentFrame.push("D");
+        advanceFrame();
     }
 
     public void ddiv() {
@@ -428,18 +824,19 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "ddiv requires double in position 3 on stack");
         writeByte(Opcode.DDIV);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void dload(int no) {
-        LocalVariableState locals = getLocalVars();
-        if (locals.size() <= no) {
-            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + locals.toString());
+        MutableStackFrame frame = getFrame();
+        if (!unchecked && frame.localsSize() <= no) {
+            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + frame.localsToString());
         }
-        StackEntry entry = locals.get(no);
-        if (entry.getType() != StackEntryType.DOUBLE) {
+        StackEntry entry = frame.getLocal(no);
+        if (!unchecked && entry.getType() != StackEntryType.DOUBLE) {
             throw new InvalidBytecodeException("Invalid local variable at location " + no + " Local Variables "
-                    + locals.toString());
+                    + frame.localsToString());
         }
 
         if (no > 0xFF) {
@@ -456,7 +853,8 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void dmul() {
@@ -464,14 +862,15 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "dmul requires double in position 3 on stack");
         writeByte(Opcode.DMUL);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void dneg() {
         assertTypeOnStack(StackEntryType.DOUBLE, "dneg requires double on stack");
         writeByte(Opcode.DNEG);
         currentOffset++;
-        duplicateFrame();
+        advanceFrame();
     }
 
     public void drem() {
@@ -479,7 +878,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "drem requires double in position 3 on stack");
         writeByte(Opcode.DREM);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void dstore(int no) {
@@ -498,7 +898,9 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.store(no));
+        currentFrame.store(no);
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void dsub() {
@@ -506,14 +908,16 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.DOUBLE, "dsub requires double in position 3 on stack");
         writeByte(Opcode.DSUB);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void dup() {
         assertNotWideOnStack("dup acnnot be used if double or long is on top of the stack");
         writeByte(Opcode.DUP);
         currentOffset++;
-        advanceFrame(currentFrame.dup());
+        currentFrame.dup();
+        advanceFrame();
     }
 
     public void dupX1() {
@@ -521,42 +925,47 @@ public class CodeAttribute extends Attribute {
         assertNotWideOnStack(1, "dup_x1 cannot be used if double or long is in position 2 on the stack");
         writeByte(Opcode.DUP_X1);
         currentOffset++;
-        advanceFrame(currentFrame.dupX1());
+        currentFrame.dupX1();
+        advanceFrame();
     }
 
     public void dupX2() {
         assertNotWideOnStack("dup_x2 acnnot be used if double or long is on top of the stack");
         writeByte(Opcode.DUP_X2);
         currentOffset++;
-        advanceFrame(currentFrame.dupX2());
+        currentFrame.dupX2();
+        advanceFrame();
     }
 
     public void dup2() {
         writeByte(Opcode.DUP2);
         currentOffset++;
-        advanceFrame(currentFrame.dup2());
+        currentFrame.dup2();
+        advanceFrame();
     }
 
     public void dup2X1() {
         assertNotWideOnStack(2, "dup2_x1 cannot be used if double or long is in position 3 on the stack");
         writeByte(Opcode.DUP2_X1);
         currentOffset++;
-        advanceFrame(currentFrame.dup2X1());
+        currentFrame.dup2X1();
+        advanceFrame();
     }
 
     public void dup2X2() {
         assertNotWideOnStack(3, "dup2_x2 cannot be used if double or long is in position 4 on the stack");
         writeByte(Opcode.DUP2_X2);
         currentOffset++;
-        advanceFrame(currentFrame.dup2X2());
+        currentFrame.dup2X2();
+        advanceFrame();
     }
 
     /**
      * Begin writing an exception handler block. The handler is not actually persisted until exceptionHandler is called.
      */
     public ExceptionHandler exceptionBlockStart(String exceptionType) {
-        return new ExceptionHandler(currentOffset, constPool.addClassEntry(exceptionType), exceptionType,
-                currentFrame);
+        return new ExceptionHandler(currentOffset, constPool.addClass(exceptionType), exceptionType,
+                currentFrame.snapshot());
     }
 
     /**
@@ -577,7 +986,7 @@ public class CodeAttribute extends Attribute {
         }
         handler.setHandler(currentOffset);
         exceptionTable.add(handler);
-        mergeStackFrames(new StackFrame(new StackState(handler.getExceptionType(), constPool), handler.getFrame()
+        mergeJumpTarget(new StackFrame(new StackState(handler.getExceptionType(), constPool), handler.getFrame()
                 .getLocalVariableState(), StackFrameType.FULL_FRAME));
     }
 
@@ -585,21 +994,24 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(StackEntryType.FLOAT, "f2s requires float on stack");
         writeByte(Opcode.F2D);
         currentOffset++;
-        advanceFrame(currentFrame.replace("D"));
+        currentFrame.replace("D");
+        advanceFrame();
     }
 
     public void f2i() {
         assertTypeOnStack(StackEntryType.FLOAT, "f2i requires float on stack");
         writeByte(Opcode.F2I);
         currentOffset++;
-        advanceFrame(currentFrame.replace("I"));
+        currentFrame.replace("I");
+        advanceFrame();
     }
 
     public void f2l() {
         assertTypeOnStack(StackEntryType.FLOAT, "f2l requires float on stack");
         writeByte(Opcode.F2L);
         currentOffset++;
-        advanceFrame(currentFrame.replace("J"));
+        currentFrame.replace("J");
+        advanceFrame();
     }
 
     public void fadd() {
@@ -607,7 +1019,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fadd requires float on stack");
         writeByte(Opcode.FADD);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void faload() {
@@ -615,7 +1028,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "faload requires an array in position 2 on the stack");
         writeByte(Opcode.FALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("F"));
+        currentFrame.pop2push1("F");
+        advanceFrame();
     }
 
     public void fastore() {
@@ -624,7 +1038,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.OBJECT, "fastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.FASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     public void fcmpg() {
@@ -632,7 +1047,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fcmpg requires float on stack");
         writeByte(Opcode.FCMPG);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void fcmpl() {
@@ -640,7 +1056,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fcmpl requires float in position 2 on stack");
         writeByte(Opcode.FCMPL);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     /**
@@ -660,7 +1077,8 @@ public class CodeAttribute extends Attribute {
             return;
         }
         currentOffset++;
-        advanceFrame(currentFrame.push("F"));
+        currentFrame.push("F");
+        advanceFrame();
     }
 
     public void fdiv() {
@@ -668,18 +1086,19 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fdiv requires float in position 2 on stack");
         writeByte(Opcode.FDIV);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void fload(int no) {
-        LocalVariableState locals = getLocalVars();
-        if (locals.size() <= no) {
-            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + locals.toString());
+        MutableStackFrame frame = getFrame();
+        if (!unchecked && frame.localsSize() <= no) {
+            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + frame.localsToString());
         }
-        StackEntry entry = locals.get(no);
-        if (entry.getType() != StackEntryType.FLOAT) {
+        StackEntry entry = frame.getLocal(no);
+        if (!unchecked && entry.getType() != StackEntryType.FLOAT) {
             throw new InvalidBytecodeException("Invalid local variable at location " + no + " Local Variables "
-                    + locals.toString());
+                    + frame.localsToString());
         }
 
         if (no > 0xFF) {
@@ -696,7 +1115,8 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void fmul() {
@@ -704,14 +1124,15 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fmul requires float in position 2 on stack");
         writeByte(Opcode.FMUL);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void fneg() {
         assertTypeOnStack(StackEntryType.FLOAT, "fneg requires float on stack");
         writeByte(Opcode.FNEG);
         currentOffset++;
-        duplicateFrame();
+        advanceFrame();
     }
 
     public void frem() {
@@ -719,7 +1140,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "frem requires float in position 2 on stack");
         writeByte(Opcode.FREM);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void fstore(int no) {
@@ -738,7 +1160,9 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.store(no));
+        currentFrame.store(no);
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void fsub() {
@@ -746,7 +1170,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.FLOAT, "fsub requires float in position 2 on stack");
         writeByte(Opcode.FSUB);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void getfield(String className, String field, Class<?> fieldType) {
@@ -755,11 +1180,12 @@ public class CodeAttribute extends Attribute {
 
     public void getfield(String className, String field, String descriptor) {
         assertTypeOnStack(StackEntryType.OBJECT, "getfield requires object on stack");
-        int index = constPool.addFieldEntry(className, field, descriptor);
+        int index = constPool.addFieldRef(className, field, descriptor);
         writeByte(Opcode.GETFIELD);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.replace(descriptor));
+        currentFrame.replace(descriptor);
+        advanceFrame();
     }
 
     public void getstatic(String className, String field, Class<?> fieldType) {
@@ -767,37 +1193,35 @@ public class CodeAttribute extends Attribute {
     }
 
     public void getstatic(String className, String field, String descriptor) {
-        int index = constPool.addFieldEntry(className, field, descriptor);
+        int index = constPool.addFieldRef(className, field, descriptor);
         writeByte(Opcode.GETSTATIC);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.push(descriptor));
+        currentFrame.push(descriptor);
+        advanceFrame();
     }
 
     /**
-     * writes a goto instruction.
-     * <p/>
-     * TODO: implemented goto_w
+     * writes a goto instruction. If the location is out of range of a 16 bit jump then a goto_w is written instead.
      */
     public void gotoInstruction(CodeLocation location) {
-        writeByte(Opcode.GOTO);
-        writeShort(location.getLocation() - currentOffset);
         mergeStackFrames(location.getStackFrame());
-        currentOffset += 3;
-        currentFrame = null;
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(Opcode.GOTO, location, null);
+        endOfBlock();
     }
 
     /**
-     * writes a goto instruction.
-     * <p/>
-     * TODO: implemented goto_w
+     * writes a goto instruction. If the branch end is out of range of a 16 bit jump then a goto_w is written instead.
      */
     public BranchEnd gotoInstruction() {
+        addBranchSite(currentOffset, null);
         writeByte(Opcode.GOTO);
         writeShort(0);
         currentOffset += 3;
-        BranchEnd ret = new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
-        currentFrame = null;
+        openBranches++;
+        BranchEnd ret = new BranchEnd(currentOffset - 2, currentFrame.snapshot(), currentOffset - 3);
+        endOfBlock();
         return ret;
     }
 
@@ -805,42 +1229,48 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(StackEntryType.INT, "i2b requires int on stack");
         writeByte(Opcode.I2B);
         currentOffset++;
-        advanceFrame(currentFrame.replace("B"));
+        currentFrame.replace("B");
+        advanceFrame();
     }
 
     public void i2c() {
         assertTypeOnStack(StackEntryType.INT, "i2c requires int on stack");
         writeByte(Opcode.I2C);
         currentOffset++;
-        advanceFrame(currentFrame.replace("C"));
+        currentFrame.replace("C");
+        advanceFrame();
     }
 
     public void i2d() {
         assertTypeOnStack(StackEntryType.INT, "i2d requires int on stack");
         writeByte(Opcode.I2D);
         currentOffset++;
-        advanceFrame(currentFrame.replace("D"));
+        currentFrame.replace("D");
+        advanceFrame();
     }
 
     public void i2f() {
         assertTypeOnStack(StackEntryType.INT, "i2f requires int on stack");
         writeByte(Opcode.I2F);
         currentOffset++;
-        advanceFrame(currentFrame.replace("F"));
+        currentFrame.replace("F");
+        advanceFrame();
     }
 
     public void i2l() {
         assertTypeOnStack(StackEntryType.INT, "i2l requires int on stack");
         writeByte(Opcode.I2L);
         currentOffset++;
-        advanceFrame(currentFrame.replace("J"));
+        currentFrame.replace("J");
+        advanceFrame();
     }
 
     public void i2s() {
         assertTypeOnStack(StackEntryType.INT, "i2s requires int on stack");
         writeByte(Opcode.I2S);
         currentOffset++;
-        advanceFrame(currentFrame.replace("S"));
+        currentFrame.replace("S");
+        advanceFrame();
     }
 
     public void iadd() {
@@ -848,7 +1278,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "iadd requires int on stack");
         writeByte(Opcode.IADD);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void iaload() {
@@ -856,7 +1287,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "iaload requires an array in position 2 on the stack");
         writeByte(Opcode.IALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void iand() {
@@ -864,7 +1296,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "iand requires int on stack");
         writeByte(Opcode.IAND);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void iastore() {
@@ -873,7 +1306,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.OBJECT, "iastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.IASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     /**
@@ -891,13 +1325,15 @@ public class CodeAttribute extends Attribute {
                 writeByte(Opcode.BIPUSH);
                 writeByte(value);
                 currentOffset += 2;
-                advanceFrame(currentFrame.push("I"));
+                currentFrame.push("I");
+                advanceFrame();
             }
             return;
         }
         writeByte(Opcode.ICONST_0 + value);
         currentOffset++;
-        advanceFrame(currentFrame.push("I"));
+        currentFrame.push("I");
+        advanceFrame();
     }
 
     public void idiv() {
@@ -905,17 +1341,18 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "idiv requires int in position 2 on stack");
         writeByte(Opcode.IDIV);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void ifAcmpeq(CodeLocation location) {
         assertTypeOnStack(StackEntryType.OBJECT, "ifAcmpeq requires reference type on stack");
         assertTypeOnStack(1, StackEntryType.OBJECT, "ifAcmpeq requires reference type in position 2 on stack");
-        writeByte(Opcode.IF_ACMPEQ);
-        writeShort(location.getLocation() - currentOffset);
+        currentFrame.pop2();
+        advanceFrame();
         mergeStackFrames(location.getStackFrame());
-        currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(Opcode.IF_ACMPEQ, location, currentFrame.snapshot());
     }
 
     public BranchEnd ifAcmpeq() {
@@ -924,18 +1361,19 @@ public class CodeAttribute extends Attribute {
         writeByte(Opcode.IF_ACMPEQ);
         writeShort(0);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
-        return new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
+        currentFrame.pop2();
+        advanceFrame();
+        return addBranchEnd();
     }
 
     public void ifAcmpne(CodeLocation location) {
         assertTypeOnStack(StackEntryType.OBJECT, "ifAcmpne requires reference type on stack");
         assertTypeOnStack(1, StackEntryType.OBJECT, "ifAcmpne requires reference type in position 2 on stack");
-        writeByte(Opcode.IF_ACMPNE);
-        writeShort(location.getLocation() - currentOffset);
+        currentFrame.pop2();
+        advanceFrame();
         mergeStackFrames(location.getStackFrame());
-        currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(Opcode.IF_ACMPNE, location, currentFrame.snapshot());
     }
 
     public BranchEnd ifAcmpne() {
@@ -944,9 +1382,9 @@ public class CodeAttribute extends Attribute {
         writeByte(Opcode.IF_ACMPNE);
         writeShort(0);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
-        BranchEnd ret = new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
-        return ret;
+        currentFrame.pop2();
+        advanceFrame();
+        return addBranchEnd();
     }
 
     public void ifIcmpeq(CodeLocation location) {
@@ -1070,9 +1508,9 @@ public class CodeAttribute extends Attribute {
     }
 
     public void iinc(int local, int amount) {
-        if (getLocalVars().get(local).getType() != StackEntryType.INT) {
+        if (!unchecked && getFrame().getLocal(local).getType() != StackEntryType.INT) {
             throw new InvalidBytecodeException("iinc requires int at local variable position " + local + " "
-                    + getLocalVars().toString());
+                    + getFrame().localsToString());
         }
         if (local > 0xFF || amount > 0xFF) {
             writeByte(Opcode.WIDE);
@@ -1086,18 +1524,19 @@ public class CodeAttribute extends Attribute {
             writeByte(amount);
             currentOffset += 3;
         }
-        duplicateFrame();
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void iload(int no) {
-        LocalVariableState locals = getLocalVars();
-        if (locals.size() <= no) {
-            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + locals.toString());
+        MutableStackFrame frame = getFrame();
+        if (!unchecked && frame.localsSize() <= no) {
+            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + frame.localsToString());
         }
-        StackEntry entry = locals.get(no);
-        if (entry.getType() != StackEntryType.INT) {
+        StackEntry entry = frame.getLocal(no);
+        if (!unchecked && entry.getType() != StackEntryType.INT) {
             throw new InvalidBytecodeException("Invalid local variable at location " + no + " Local Variables "
-                    + locals.toString());
+                    + frame.localsToString());
         }
 
         if (no > 0xFF) {
@@ -1114,7 +1553,8 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void imul() {
@@ -1122,23 +1562,25 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "imul requires int in position 2 on stack");
         writeByte(Opcode.IMUL);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void ineg() {
         assertTypeOnStack(StackEntryType.INT, "ineg requires int on stack");
         writeByte(Opcode.INEG);
         currentOffset++;
-        duplicateFrame();
+        advanceFrame();
     }
 
     public void instanceofInstruction(String className) {
         assertTypeOnStack(StackEntryType.OBJECT, "instanceof requires an object reference on the stack");
-        int classIndex = constPool.addClassEntry(className);
+        int classIndex = constPool.addClass(className);
         writeByte(Opcode.INSTANCEOF);
         writeShort(classIndex);
         currentOffset += 3;
-        advanceFrame(currentFrame.replace("I"));
+        currentFrame.replace("I");
+        advanceFrame();
     }
 
     public void invokespecial(String className, String methodName, String descriptor) {
@@ -1169,7 +1611,7 @@ public class CodeAttribute extends Attribute {
     private void invokespecial(String className, String methodName, String descriptor, String returnType,
                                String[] parameterTypes) {
         // TODO: validate stack
-        int method = constPool.addMethodEntry(className, methodName, descriptor);
+        int method = constPool.addMethodRef(className, methodName, descriptor);
         writeByte(Opcode.INVOKESPECIAL);
         writeShort(method);
         currentOffset += 3;
@@ -1180,11 +1622,15 @@ public class CodeAttribute extends Attribute {
             }
         }
         if (methodName.equals("<init>")) {
-            advanceFrame(currentFrame.constructorCall(pop - 1));
+            currentFrame.constructorCall(pop - 1);
+            advanceFrame();
         } else if (returnType.equals("V")) {
-            advanceFrame(currentFrame.pop(pop));
+            currentFrame.pop(pop);
+            advanceFrame();
         } else {
-            advanceFrame(currentFrame.pop(pop).push(returnType));
+            currentFrame.pop(pop);
+            currentFrame.push(returnType);
+            advanceFrame();
         }
     }
 
@@ -1210,7 +1656,7 @@ public class CodeAttribute extends Attribute {
 
     private void invokestatic(String className, String methodName, String descriptor, String returnType, String[] parameterTypes) {
         // TODO: validate stack
-        int method = constPool.addMethodEntry(className, methodName, descriptor);
+        int method = constPool.addMethodRef(className, methodName, descriptor);
         writeByte(Opcode.INVOKESTATIC);
         writeShort(method);
         currentOffset += 3;
@@ -1221,9 +1667,12 @@ public class CodeAttribute extends Attribute {
             }
         }
         if (returnType.equals("V")) {
-            advanceFrame(currentFrame.pop(pop));
+            currentFrame.pop(pop);
+            advanceFrame();
         } else {
-            advanceFrame(currentFrame.pop(pop).push(returnType));
+            currentFrame.pop(pop);
+            currentFrame.push(returnType);
+            advanceFrame();
         }
     }
 
@@ -1254,7 +1703,7 @@ public class CodeAttribute extends Attribute {
     private void invokevirtual(String className, String methodName, String descriptor, String returnType,
                                String[] parameterTypes) {
         // TODO: validate stack
-        int method = constPool.addMethodEntry(className, methodName, descriptor);
+        int method = constPool.addMethodRef(className, methodName, descriptor);
         writeByte(Opcode.INVOKEVIRTUAL);
         writeShort(method);
         currentOffset += 3;
@@ -1265,9 +1714,12 @@ public class CodeAttribute extends Attribute {
             }
         }
         if (returnType.equals("V")) {
-            advanceFrame(currentFrame.pop(pop));
+            currentFrame.pop(pop);
+            advanceFrame();
         } else {
-            advanceFrame(currentFrame.pop(pop).push(returnType));
+            currentFrame.pop(pop);
+            currentFrame.push(returnType);
+            advanceFrame();
         }
     }
 
@@ -1305,7 +1757,7 @@ public class CodeAttribute extends Attribute {
                 pop++;
             }
         }
-        int method = constPool.addInterfaceMethodEntry(className, methodName, descriptor);
+        int method = constPool.addInterfaceMethodRef(className, methodName, descriptor);
         writeByte(Opcode.INVOKEINTERFACE);
         writeShort(method);
         writeByte(pop);
@@ -1313,10 +1765,138 @@ public class CodeAttribute extends Attribute {
         currentOffset += 5;
 
         if (returnType.equals("V")) {
-            advanceFrame(currentFrame.pop(pop));
+            currentFrame.pop(pop);
+            advanceFrame();
         } else {
-            advanceFrame(currentFrame.pop(pop).push(returnType));
+            currentFrame.pop(pop);
+            currentFrame.push(returnType);
+            advanceFrame();
+        }
+    }
+
+    /**
+     * Emits an invokedynamic instruction
+     *
+     * @param bootstrapMethodIndex the index of the bootstrap method, as returned by
+     *        {@link org.jboss.classfilewriter.ClassFile#addBootstrapMethod(int, int...)}
+     * @param name the name of the call site, which is passed to the bootstrap method
+     * @param descriptor the method descriptor of the call site
+     */
+    public void invokedynamic(int bootstrapMethodIndex, String name, String descriptor) {
+        if (method.getClassFile().getVersion() < JavaVersions.JAVA_7) {
+            throw new InvalidBytecodeException("invokedynamic requires a class file version of at least Java 7");
+        }
+        String[] parameterTypes = DescriptorUtils.parameterDescriptors(descriptor);
+        String returnType = DescriptorUtils.returnType(descriptor);
+        int pop = 0;
+        for (int i = parameterTypes.length - 1; i >= 0; --i) {
+            StackEntryType type = stackEntryType(parameterTypes[i]);
+            assertTypeOnStack(pop, type, "invokedynamic " + name + " requires " + parameterTypes[i] + " as argument " + (i + 1)
+                    + " on the stack");
+            pop += type == StackEntryType.DOUBLE || type == StackEntryType.LONG ? 2 : 1;
+        }
+        int callSite = constPool.addInvokeDynamic(bootstrapMethodIndex, name, descriptor);
+        writeByte(Opcode.INVOKEDYNAMIC);
+        writeShort(callSite);
+        writeShort(0);
+        currentOffset += 5;
+        currentFrame.pop(pop);
+        if (!returnType.equals("V")) {
+            currentFrame.push(returnType);
         }
+        advanceFrame();
+    }
+
+    /**
+     * Emits an invokedynamic instruction using a static bootstrap method
+     *
+     * @param bootstrapClass the class that declares the bootstrap method
+     * @param bootstrapMethod the name of the bootstrap method
+     * @param bootstrapDescriptor the descriptor of the bootstrap method
+     * @param name the name of the call site, which is passed to the bootstrap method
+     * @param descriptor the method descriptor of the call site
+     * @param bootstrapArguments the const pool indexes of the static arguments to the bootstrap method
+     */
+    public void invokedynamic(String bootstrapClass, String bootstrapMethod, String bootstrapDescriptor, String name,
+            String descriptor, int... bootstrapArguments) {
+        int index = method.getClassFile().addBootstrapMethod(bootstrapClass, bootstrapMethod, bootstrapDescriptor,
+                bootstrapArguments);
+        invokedynamic(index, name, descriptor);
+    }
+
+    /**
+     * Creates an instance of a functional interface that is implemented by a method on the current class, using an
+     * invokedynamic call to <code>LambdaMetafactory.metafactory</code>. The implementation class is generated by the JDK when
+     * the call site is first linked, and does not go through the {@link org.jboss.classfilewriter.ClassFactory}.
+     * <p/>
+     * The implementation method is normally a private synthetic method. If it is not private it is invoked virtually, so an
+     * override in a subclass is called instead. Any leading parameters of the implementation method that are not parameters
+     * of the interface method are captured from the stack, as is the receiver if the implementation method is not static.
+     *
+     * @param interfaceClass the functional interface
+     * @param methodName the name of the interface method
+     * @param methodDescriptor the descriptor of the interface method
+     * @param implementation the method that implements the interface method
+     */
+    public void lambda(String interfaceClass, String methodName, String methodDescriptor, ClassMethod implementation) {
+        lambda(interfaceClass, methodName, methodDescriptor, methodDescriptor, implementation);
+    }
+
+    /**
+     * Creates an instance of a functional interface that is implemented by a method on the current class, using an
+     * invokedynamic call to <code>LambdaMetafactory.metafactory</code>.
+     *
+     * @param interfaceClass the functional interface
+     * @param methodName the name of the interface method
+     * @param methodDescriptor the erased descriptor of the interface method
+     * @param instantiatedDescriptor the descriptor of the interface method with any generic types specialized, which may be the
+     *        same as <code>methodDescriptor</code>
+     * @param implementation the method that implements the interface method
+     * @see #lambda(String, String, String, ClassMethod)
+     */
+    public void lambda(String interfaceClass, String methodName, String methodDescriptor, String instantiatedDescriptor,
+            ClassMethod implementation) {
+        if (method.getClassFile().getVersion() < JavaVersions.JAVA_8) {
+            throw new InvalidBytecodeException("Lambdas require a class file version of at least Java 8");
+        }
+        ClassFile classFile = method.getClassFile();
+        if (implementation.getClassFile() != classFile) {
+            throw new IllegalArgumentException("Lambda implementation " + implementation + " is not a method of " + classFile.getName());
+        }
+        String[] implementationParameters = implementation.getParameters();
+        int interfaceParameters = DescriptorUtils.parameterDescriptors(methodDescriptor).length;
+        int captured = implementationParameters.length - interfaceParameters;
+        if (captured < 0) {
+            throw new IllegalArgumentException("Lambda implementation " + implementation + " has fewer parameters than "
+                    + methodName + methodDescriptor);
+        }
+        StringBuilder invokedType = new StringBuilder("(");
+        if (!implementation.isStatic()) {
+            invokedType.append(classFile.getDescriptor());
+        }
+        for (int i = 0; i < captured; ++i) {
+            invokedType.append(implementationParameters[i]);
+        }
+        invokedType.append(")");
+        invokedType.append(DescriptorUtils.makeDescriptor(interfaceClass));
+
+        boolean isInterface = (classFile.getAccessFlags() & AccessFlag.INTERFACE) != 0;
+        MethodHandleKind kind;
+        if (implementation.isStatic()) {
+            kind = MethodHandleKind.INVOKE_STATIC;
+        } else if (Modifier.isPrivate(implementation.getAccessFlags())) {
+            kind = MethodHandleKind.INVOKE_SPECIAL;
+        } else if (isInterface) {
+            kind = MethodHandleKind.INVOKE_INTERFACE;
+        } else {
+            // a non private implementation may be overridden, so it must be dispatched virtually
+            kind = MethodHandleKind.INVOKE_VIRTUAL;
+        }
+        int implementationHandle = constPool.addMethodHandle(kind, classFile.getName(), implementation.getName(),
+                implementation.getDescriptor(), isInterface);
+        invokedynamic("java/lang/invoke/LambdaMetafactory", "metafactory", LAMBDA_BOOTSTRAP_DESCRIPTOR, methodName,
+                invokedType.toString(), constPool.addMethodType(methodDescriptor), implementationHandle,
+                constPool.addMethodType(instantiatedDescriptor));
     }
 
     public void ior() {
@@ -1324,7 +1904,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "ior requires int on stack");
         writeByte(Opcode.IOR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void irem() {
@@ -1332,7 +1913,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "irem requires int on stack");
         writeByte(Opcode.IREM);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void ishl() {
@@ -1340,7 +1922,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "ishl requires int on stack");
         writeByte(Opcode.ISHL);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void ishr() {
@@ -1348,7 +1931,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "ishr requires int on stack");
         writeByte(Opcode.ISHR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void istore(int no) {
@@ -1367,7 +1951,9 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.store(no));
+        currentFrame.store(no);
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void isub() {
@@ -1375,7 +1961,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "isub requires int on stack");
         writeByte(Opcode.ISUB);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void iushr() {
@@ -1383,7 +1970,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "iushr requires int on stack");
         writeByte(Opcode.IUSHR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void ixor() {
@@ -1391,28 +1979,32 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.INT, "ixor requires int on stack");
         writeByte(Opcode.IXOR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void l2d() {
         assertTypeOnStack(StackEntryType.LONG, "l2d requires long on stack");
         writeByte(Opcode.L2D);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("D"));
+        currentFrame.pop2push1("D");
+        advanceFrame();
     }
 
     public void l2f() {
         assertTypeOnStack(StackEntryType.LONG, "l2f requires long on stack");
         writeByte(Opcode.L2F);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("F"));
+        currentFrame.pop2push1("F");
+        advanceFrame();
     }
 
     public void l2i() {
         assertTypeOnStack(StackEntryType.LONG, "l2i requires long on stack");
         writeByte(Opcode.L2I);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void ladd() {
@@ -1420,7 +2012,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "ladd requires long on stack");
         writeByte(Opcode.LADD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void laload() {
@@ -1428,7 +2021,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "laload requires an array in position 2 on the stack");
         writeByte(Opcode.LALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("J"));
+        currentFrame.pop2push1("J");
+        advanceFrame();
     }
 
     public void land() {
@@ -1436,7 +2030,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "land requires long on stack");
         writeByte(Opcode.LAND);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lastore() {
@@ -1445,7 +2040,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(3, StackEntryType.OBJECT, "lastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.LASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop4());
+        currentFrame.pop4();
+        advanceFrame();
     }
 
     public void lcmp() {
@@ -1453,7 +2049,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lcmp requires long on stack");
         writeByte(Opcode.LCMP);
         currentOffset++;
-        advanceFrame(currentFrame.pop4push1("I"));
+        currentFrame.pop4push1("I");
+        advanceFrame();
     }
 
     /**
@@ -1471,7 +2068,8 @@ public class CodeAttribute extends Attribute {
             return;
         }
         currentOffset++;
-        advanceFrame(currentFrame.push("J"));
+        currentFrame.push("J");
+        advanceFrame();
     }
 
     /**
@@ -1484,18 +2082,20 @@ public class CodeAttribute extends Attribute {
             iconst(value);
             return;
         }
-        int index = constPool.addIntegerEntry(value);
+        int index = constPool.addInteger(value);
         ldcInternal(index);
-        advanceFrame(currentFrame.push("I"));
+        currentFrame.push("I");
+        advanceFrame();
     }
 
     /**
      * Adds an ldc instruction for float
      */
     public void ldc(float value) {
-        int index = constPool.addFloatEntry(value);
+        int index = constPool.addFloat(value);
         ldcInternal(index);
-        advanceFrame(currentFrame.push("F"));
+        currentFrame.push("F");
+        advanceFrame();
     }
 
     /**
@@ -1504,9 +2104,10 @@ public class CodeAttribute extends Attribute {
      * To load a class literal using ldc use the @{link #loadType(String)} method.
      */
     public void ldc(String value) {
-        int index = constPool.addStringEntry(value);
+        int index = constPool.addString(value);
         ldcInternal(index);
-        advanceFrame(currentFrame.push("Ljava/lang/String;"));
+        currentFrame.push("Ljava/lang/String;");
+        advanceFrame();
     }
 
     /**
@@ -1524,26 +2125,179 @@ public class CodeAttribute extends Attribute {
         }
     }
 
+    /**
+     * Adds an ldc or ldc2_w instruction for a dynamic constant. The constant is computed by the bootstrap method the first time
+     * the instruction is executed, and is then constant.
+     *
+     * @param bootstrapMethodIndex the index of the bootstrap method, as returned by
+     *        {@link org.jboss.classfilewriter.ClassFile#addBootstrapMethod(int, int...)}
+     * @param name the name of the constant, which is passed to the bootstrap method
+     * @param descriptor the field descriptor of the constant
+     */
+    public void ldcDynamic(int bootstrapMethodIndex, String name, String descriptor) {
+        if (method.getClassFile().getVersion() < JavaVersions.JAVA_11) {
+            throw new InvalidBytecodeException("Dynamic constants require a class file version of at least Java 11");
+        }
+        int index = constPool.addDynamic(bootstrapMethodIndex, name, descriptor);
+        if (DescriptorUtils.isWide(descriptor)) {
+            writeByte(Opcode.LDC2_W);
+            writeShort(index);
+            currentOffset += 3;
+        } else {
+            ldcInternal(index);
+        }
+        currentFrame.push(descriptor);
+        advanceFrame();
+    }
+
+    /**
+     * Adds an ldc or ldc2_w instruction for a dynamic constant, using a static bootstrap method
+     *
+     * @param bootstrapClass the class that declares the bootstrap method
+     * @param bootstrapMethod the name of the bootstrap method
+     * @param bootstrapDescriptor the descriptor of the bootstrap method
+     * @param name the name of the constant, which is passed to the bootstrap method
+     * @param descriptor the field descriptor of the constant
+     * @param bootstrapArguments the const pool indexes of the static arguments to the bootstrap method
+     */
+    public void ldcDynamic(String bootstrapClass, String bootstrapMethod, String bootstrapDescriptor, String name,
+            String descriptor, int... bootstrapArguments) {
+        int index = method.getClassFile().addBootstrapMethod(bootstrapClass, bootstrapMethod, bootstrapDescriptor,
+                bootstrapArguments);
+        ldcDynamic(index, name, descriptor);
+    }
+
+    /**
+     * Concatenates values on the stack with literal strings, using an invokedynamic call to
+     * <code>StringConcatFactory.makeConcatWithConstants</code>. The result is a string made up of <code>literals[0]</code>, the
+     * first operand, <code>literals[1]</code>, the second operand and so on, so the top <code>literals.length - 1</code> values
+     * on the stack are consumed. The operand types are taken from the stack.
+     *
+     * @param literals the literal parts of the string, <code>null</code> is treated as an empty string
+     */
+    public void stringConcat(String... literals) {
+        if (literals.length == 0) {
+            throw new IllegalArgumentException("At least one literal must be specified");
+        }
+        StringBuilder recipe = new StringBuilder();
+        List<String> constants = new ArrayList<String>();
+        for (int i = 0; i < literals.length; ++i) {
+            String literal = literals[i];
+            if (literal != null) {
+                if (literal.indexOf(CONCAT_ARGUMENT) >= 0 || literal.indexOf(CONCAT_CONSTANT) >= 0) {
+                    // the literal contains tag characters, so it is passed as a constant instead
+                    recipe.append(CONCAT_CONSTANT);
+                    constants.add(literal);
+                } else {
+                    recipe.append(literal);
+                }
+            }
+            if (i != literals.length - 1) {
+                recipe.append(CONCAT_ARGUMENT);
+            }
+        }
+        makeConcatWithConstants(recipe.toString(), constants.toArray(new String[constants.size()]));
+    }
+
+    /**
+     * Emits an invokedynamic call to <code>StringConcatFactory.makeConcatWithConstants</code> with the given recipe. Each
+     * <code>\1</code> in the recipe consumes an operand from the stack, and each <code>\2</code> is replaced with the next
+     * constant. The operand types are taken from the stack.
+     */
+    public void makeConcatWithConstants(String recipe, String... constants) {
+        if (unchecked) {
+            throw new IllegalStateException("String concatenation takes the operand types from the stack, which is not tracked "
+                    + "for unchecked code");
+        }
+        if (method.getClassFile().getVersion() < JavaVersions.JAVA_9) {
+            throw new InvalidBytecodeException("StringConcatFactory requires a class file version of at least Java 9");
+        }
+        int operands = 0;
+        for (int i = 0; i < recipe.length(); ++i) {
+            if (recipe.charAt(i) == CONCAT_ARGUMENT) {
+                operands++;
+            }
+        }
+        String[] parameterTypes = new String[operands];
+        int pos = currentFrame.stackSize() - 1;
+        int slots = 0;
+        for (int i = operands - 1; i >= 0; --i) {
+            if (pos < 0) {
+                throw new InvalidBytecodeException("String concatenation requires " + operands + " operands on the stack "
+                        + currentFrame.stackToString());
+            }
+            StackEntry entry = currentFrame.getStackEntry(pos);
+            if (entry.getType() == StackEntryType.TOP) {
+                entry = currentFrame.getStackEntry(pos - 1);
+                pos -= 2;
+                slots += 2;
+            } else {
+                pos--;
+                slots++;
+            }
+            parameterTypes[i] = concatOperandType(entry);
+        }
+        if (slots > MAX_CONCAT_SLOTS) {
+            throw new InvalidBytecodeException("String concatenation of " + slots + " slots exceeds the limit of "
+                    + MAX_CONCAT_SLOTS);
+        }
+        int[] arguments = new int[constants.length + 1];
+        arguments[0] = constPool.addString(recipe);
+        for (int i = 0; i < constants.length; ++i) {
+            arguments[i + 1] = constPool.addString(constants[i]);
+        }
+        invokedynamic("java/lang/invoke/StringConcatFactory", "makeConcatWithConstants", CONCAT_BOOTSTRAP_DESCRIPTOR,
+                "makeConcatWithConstants", DescriptorUtils.methodDescriptor(parameterTypes, "Ljava/lang/String;"), arguments);
+    }
+
+    /**
+     * Returns the parameter type used to pass the given stack entry to a string concatenation call site
+     */
+    private static String concatOperandType(StackEntry entry) {
+        switch (entry.getType()) {
+            case INT:
+                String descriptor = entry.getDescriptor();
+                if (descriptor != null && descriptor.length() == 1 && "ZBSCI".indexOf(descriptor.charAt(0)) >= 0) {
+                    return descriptor;
+                }
+                return "I";
+            case FLOAT:
+                return "F";
+            case LONG:
+                return "J";
+            case DOUBLE:
+                return "D";
+            case OBJECT:
+                return entry.getDescriptor();
+            case NULL:
+                return "Ljava/lang/Object;";
+            default:
+                throw new InvalidBytecodeException("Cannot concatenate stack entry " + entry);
+        }
+    }
+
     /**
      * Adds an ldc2_w instruction for double
      */
     public void ldc2(double value) {
-        int index = constPool.addDoubleEntry(value);
+        int index = constPool.addDouble(value);
         writeByte(Opcode.LDC2_W);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.push("D"));
+        currentFrame.push("D");
+        advanceFrame();
     }
 
     /**
      * Adds an ldc2_w instruction for long
      */
     public void ldc2(long value) {
-        int index = constPool.addLongEntry(value);
+        int index = constPool.addLong(value);
         writeByte(Opcode.LDC2_W);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.push("J"));
+        currentFrame.push("J");
+        advanceFrame();
     }
 
     public void ldiv() {
@@ -1551,18 +2305,19 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "ldiv requires long in position 3 on stack");
         writeByte(Opcode.LDIV);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lload(int no) {
-        LocalVariableState locals = getLocalVars();
-        if (locals.size() <= no) {
-            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + locals.toString());
+        MutableStackFrame frame = getFrame();
+        if (!unchecked && frame.localsSize() <= no) {
+            throw new InvalidBytecodeException("Cannot load variable at " + no + ". Local Variables: " + frame.localsToString());
         }
-        StackEntry entry = locals.get(no);
-        if (entry.getType() != StackEntryType.LONG) {
+        StackEntry entry = frame.getLocal(no);
+        if (!unchecked && entry.getType() != StackEntryType.LONG) {
             throw new InvalidBytecodeException("Invalid local variable at location " + no + " Local Variables "
-                    + locals.toString());
+                    + frame.localsToString());
         }
 
         if (no > 0xFF) {
@@ -1579,7 +2334,8 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void lmul() {
@@ -1587,14 +2343,15 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lmul requires long in position 3 on stack");
         writeByte(Opcode.LMUL);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lneg() {
         assertTypeOnStack(StackEntryType.LONG, "lneg requires long on stack");
         writeByte(Opcode.LNEG);
         currentOffset++;
-        duplicateFrame();
+        advanceFrame();
     }
 
     /**
@@ -1642,9 +2399,10 @@ public class CodeAttribute extends Attribute {
     }
 
     public void loadClass(String className) {
-        int index = constPool.addClassEntry(className);
+        int index = constPool.addClass(className);
         ldcInternal(index);
-        advanceFrame(currentFrame.push("Ljava/lang/Class;"));
+        currentFrame.push("Ljava/lang/Class;");
+        advanceFrame();
     }
 
     /**
@@ -1700,6 +2458,7 @@ public class CodeAttribute extends Attribute {
      */
     public void lookupswitch(final LookupSwitchBuilder lookupSwitchBuilder) {
         assertTypeOnStack(StackEntryType.INT, "lookupswitch requires an int on the stack");
+        addBranchSite(currentOffset, null);
         writeByte(Opcode.LOOKUPSWITCH);
         final int startOffset = currentOffset;
         currentOffset++;
@@ -1708,15 +2467,18 @@ public class CodeAttribute extends Attribute {
             currentOffset++;
         }
 
-        StackFrame frame = currentFrame.pop();
+        currentFrame.pop();
+        StackFrame frame = currentFrame.snapshot();
 
         final List<LookupSwitchBuilder.ValuePair> values = new ArrayList<LookupSwitchBuilder.ValuePair>(lookupSwitchBuilder.getValues());
 
         if (lookupSwitchBuilder.getDefaultLocation() != null) {
-            writeInt(lookupSwitchBuilder.getDefaultLocation().getLocation() - currentOffset);
+            writeInt(lookupSwitchBuilder.getDefaultLocation().getLocation() - startOffset);
+            addBackwardJumpTarget(lookupSwitchBuilder.getDefaultLocation());
         } else {
             writeInt(0);
             final BranchEnd ret = new BranchEnd(currentOffset, frame, true, startOffset);
+            openBranches++;
             lookupSwitchBuilder.getDefaultBranchEnd().set(ret);
         }
         writeInt(values.size());
@@ -1726,16 +2488,18 @@ public class CodeAttribute extends Attribute {
             writeInt(value.getValue());
             currentOffset += 4;
             if (value.getLocation() != null) {
-                writeInt(value.getLocation().getLocation());
+                writeInt(value.getLocation().getLocation() - startOffset);
+                addBackwardJumpTarget(value.getLocation());
                 currentOffset += 4;
             } else {
                 writeInt(0);
                 final BranchEnd ret = new BranchEnd(currentOffset, frame, true, startOffset);
+                openBranches++;
                 value.getBranchEnd().set(ret);
                 currentOffset += 4;
             }
         }
-        currentFrame = null;
+        endOfBlock();
     }
 
     public void lor() {
@@ -1743,7 +2507,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lor requires long in position 3 on stack");
         writeByte(Opcode.LOR);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lrem() {
@@ -1751,7 +2516,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lrem requires long in position 3 on stack");
         writeByte(Opcode.LREM);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lshl() {
@@ -1759,7 +2525,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.LONG, "lshl requires long in position 2 on stack");
         writeByte(Opcode.LSHL);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void lshr() {
@@ -1767,7 +2534,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.LONG, "lshr requires long in position 2 on stack");
         writeByte(Opcode.LSHR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void lstore(int no) {
@@ -1786,7 +2554,9 @@ public class CodeAttribute extends Attribute {
             writeByte(no);
             currentOffset += 2;
         }
-        advanceFrame(currentFrame.store(no));
+        currentFrame.store(no);
+        sectionMovable = false;
+        advanceFrame();
     }
 
     public void lsub() {
@@ -1794,7 +2564,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lsub requires long in position 3 on stack");
         writeByte(Opcode.LSUB);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void lushr() {
@@ -1802,7 +2573,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.LONG, "lushr requires long in position 2 on stack");
         writeByte(Opcode.LUSHR);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void lxor() {
@@ -1810,7 +2582,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.LONG, "lxor requires long in position 3 on stack");
         writeByte(Opcode.LXOR);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     /**
@@ -1818,27 +2591,32 @@ public class CodeAttribute extends Attribute {
      * instruction that is written to the bytecode stream
      */
     public CodeLocation mark() {
-        return new CodeLocation(currentOffset, currentFrame);
+        // the frame is only recorded in the stack map table if something actually jumps to this location
+        return new CodeLocation(currentOffset, currentFrame == null ? null : currentFrame.snapshot());
     }
 
     public void monitorenter() {
         assertTypeOnStack(StackEntryType.OBJECT, "monitorenter requires object reference on stack");
         writeByte(Opcode.MONITORENTER);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
+        sectionMovable = false;
     }
 
     public void monitorexit() {
         assertTypeOnStack(StackEntryType.OBJECT, "monitorexit requires object reference on stack");
         writeByte(Opcode.MONITOREXIT);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
+        sectionMovable = false;
     }
 
     public void multianewarray(String arrayType, int dimensions) {
         StringBuilder newType = new StringBuilder();
         for (int i = 0; i < dimensions; ++i) {
-            assertTypeOnStack(i, StackEntryType.INT, "multianewarray requires int on stack in position " + i);
+            assertTypeOnStack(i, StackEntryType.INT, "multianewarray requires an int on the stack for each dimension");
             newType.append('[');
         }
         if (!arrayType.startsWith("[")) {
@@ -1848,22 +2626,25 @@ public class CodeAttribute extends Attribute {
         } else {
             newType.append(arrayType);
         }
-        int classIndex = constPool.addClassEntry(newType.toString());
+        int classIndex = constPool.addClass(newType.toString());
         writeByte(Opcode.MULTIANEWARRAY);
         writeShort(classIndex);
         writeByte(dimensions);
         currentOffset += 4;
 
-        advanceFrame(currentFrame.pop(dimensions).push(newType.toString()));
+        currentFrame.pop(dimensions);
+        currentFrame.push(newType.toString());
+        advanceFrame();
     }
 
     public void newInstruction(String classname) {
-        int classIndex = constPool.addClassEntry(classname);
+        int classIndex = constPool.addClass(classname);
         writeByte(Opcode.NEW);
         writeShort(classIndex);
         StackEntry entry = new StackEntry(StackEntryType.UNITITIALIZED_OBJECT, DescriptorUtils.makeDescriptor(classname), currentOffset);
         currentOffset += 3;
-        advanceFrame(currentFrame.push(entry));
+        currentFrame.push(entry);
+        advanceFrame();
     }
 
     public void newInstruction(Class<?> clazz) {
@@ -1907,25 +2688,28 @@ public class CodeAttribute extends Attribute {
         writeByte(Opcode.NEWARRAY);
         writeByte(type);
         currentOffset += 2;
-        advanceFrame(currentFrame.replace(desc));
+        currentFrame.replace(desc);
+        advanceFrame();
     }
 
     public void nop() {
         writeByte(Opcode.NOP);
         currentOffset++;
-        duplicateFrame();
+        advanceFrame();
     }
 
     public void pop() {
         writeByte(Opcode.POP);
         currentOffset++;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     public void pop2() {
         writeByte(Opcode.POP2);
         currentOffset++;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void putfield(String className, String field, Class<?> fieldType) {
@@ -1933,18 +2717,20 @@ public class CodeAttribute extends Attribute {
     }
 
     public void putfield(String className, String field, String descriptor) {
-        if (!getStack().isOnTop(descriptor)) {
+        if (!unchecked && !getFrame().isOnTop(descriptor)) {
             throw new InvalidBytecodeException("Attempting to put wrong type into  field. Field:" + className + "."
-                    + field + " (" + descriptor + "). Stack State: " + getStack().toString());
+                    + field + " (" + descriptor + "). Stack State: " + getFrame().stackToString());
         }
-        if (getStack().top_1().getType() != StackEntryType.UNINITIALIZED_THIS) {
+        if (!unchecked && getFrame().top_1().getType() != StackEntryType.UNINITIALIZED_THIS) {
             assertTypeOnStack(1, StackEntryType.OBJECT, "expected object in position 2 on stack");
         }
-        int index = constPool.addFieldEntry(className, field, descriptor);
+        int index = constPool.addFieldRef(className, field, descriptor);
+        fieldAssigned(className);
         writeByte(Opcode.PUTFIELD);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
     }
 
     public void putstatic(String className, String field, Class<?> fieldType) {
@@ -1952,15 +2738,17 @@ public class CodeAttribute extends Attribute {
     }
 
     public void putstatic(String className, String field, String descriptor) {
-        if (!getStack().isOnTop(descriptor)) {
+        if (!unchecked && !getFrame().isOnTop(descriptor)) {
             throw new InvalidBytecodeException("Attempting to put wrong type into static field. Field:" + className + "."
-                    + field + " (" + descriptor + "). Stack State: " + getStack().toString());
+                    + field + " (" + descriptor + "). Stack State: " + getFrame().stackToString());
         }
-        int index = constPool.addFieldEntry(className, field, descriptor);
+        int index = constPool.addFieldRef(className, field, descriptor);
+        fieldAssigned(className);
         writeByte(Opcode.PUTSTATIC);
         writeShort(index);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
     }
 
     /**
@@ -1968,14 +2756,15 @@ public class CodeAttribute extends Attribute {
      */
     public void returnInstruction() {
         String returnType = method.getReturnType();
-        if (!returnType.equals("V")) {
-            if (!getStack().isOnTop(returnType)) {
-                throw new InvalidBytecodeException(returnType + " is not on top of stack. " + getStack().toString());
+        if (!unchecked && !returnType.equals("V")) {
+            if (!getFrame().isOnTop(returnType)) {
+                throw new InvalidBytecodeException(returnType + " is not on top of stack. " + getFrame().stackToString());
             }
         }
 
         // all these instructions are one byte
         currentOffset++;
+        sectionMovable = false;
 
         // return instructions do not create stack map entries
 
@@ -2004,7 +2793,7 @@ public class CodeAttribute extends Attribute {
                     writeByte(Opcode.LRETURN);
             }
         }
-        currentFrame = null;
+        endOfBlock();
     }
 
     public void saload() {
@@ -2012,7 +2801,8 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(1, StackEntryType.OBJECT, "saload requires an array in position 2 on the stack");
         writeByte(Opcode.SALOAD);
         currentOffset++;
-        advanceFrame(currentFrame.pop2push1("I"));
+        currentFrame.pop2push1("I");
+        advanceFrame();
     }
 
     public void sastore() {
@@ -2021,14 +2811,16 @@ public class CodeAttribute extends Attribute {
         assertTypeOnStack(2, StackEntryType.OBJECT, "sastore requires an array reference in position 3 on the stack");
         writeByte(Opcode.SASTORE);
         currentOffset++;
-        advanceFrame(currentFrame.pop3());
+        currentFrame.pop3();
+        advanceFrame();
     }
 
     public void sipush(short value) {
         writeByte(Opcode.SIPUSH);
         writeShort(value);
         currentOffset += 3;
-        advanceFrame(currentFrame.push("S"));
+        currentFrame.push("S");
+        advanceFrame();
     }
 
     public void swap() {
@@ -2036,11 +2828,13 @@ public class CodeAttribute extends Attribute {
         assertNotWideOnStack(1, "swap cannot be used when wide type is on position 1 of the stack");
         writeByte(Opcode.SWAP);
         currentOffset++;
-        advanceFrame(currentFrame.swap());
+        currentFrame.swap();
+        advanceFrame();
     }
 
     public void tableswitch(final TableSwitchBuilder builder) {
         assertTypeOnStack(StackEntryType.INT, "lookupswitch requires an int on the stack");
+        addBranchSite(currentOffset, null);
         writeByte(Opcode.TABLESWITCH);
         final int startOffset = currentOffset;
         currentOffset++;
@@ -2053,13 +2847,16 @@ public class CodeAttribute extends Attribute {
             throw new RuntimeException("high - low + 1 != the number of values in the table");
         }
 
-        StackFrame frame = currentFrame.pop();
+        currentFrame.pop();
+        StackFrame frame = currentFrame.snapshot();
 
         if (builder.getDefaultLocation() != null) {
-            writeInt(builder.getDefaultLocation().getLocation() - currentOffset);
+            writeInt(builder.getDefaultLocation().getLocation() - startOffset);
+            addBackwardJumpTarget(builder.getDefaultLocation());
         } else {
             writeInt(0);
             final BranchEnd ret = new BranchEnd(currentOffset, frame, true, startOffset);
+            openBranches++;
             builder.getDefaultBranchEnd().set(ret);
         }
         writeInt(builder.getLow());
@@ -2067,16 +2864,18 @@ public class CodeAttribute extends Attribute {
         currentOffset += 12;
         for (final TableSwitchBuilder.ValuePair value : builder.getValues()) {
             if (value.getLocation() != null) {
-                writeInt(value.getLocation().getLocation());
+                writeInt(value.getLocation().getLocation() - startOffset);
+                addBackwardJumpTarget(value.getLocation());
                 currentOffset += 4;
             } else {
                 writeInt(0);
                 final BranchEnd ret = new BranchEnd(currentOffset, frame, true, startOffset);
+                openBranches++;
                 value.getBranchEnd().set(ret);
                 currentOffset += 4;
             }
         }
-        currentFrame = null;
+        endOfBlock();
     }
 
     /**
@@ -2106,50 +2905,47 @@ public class CodeAttribute extends Attribute {
     }
 
     private void writeByte(int n) {
-        try {
-            data.writeByte(n);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (splitCandidate) {
+            addSplitPoint();
         }
+        code.writeByte(n);
     }
 
     private void writeShort(int n) {
-        try {
-            if (n > Short.MAX_VALUE * 2) {
-                throw new RuntimeException(n + " is to big to be written as a 16 bit value");
-            }
-            data.writeShort(n);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (n > Short.MAX_VALUE * 2) {
+            throw new RuntimeException(n + " is to big to be written as a 16 bit value");
         }
+        code.writeShort(n);
     }
 
     private void writeInt(int n) {
-        try {
-            data.writeInt(n);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        code.writeInt(n);
     }
 
     /**
-     * overwrites a 16 bit value in the already written bytecode data
+     * Returns the number of bytes of bytecode that have been written
      */
-    private void overwriteShort(byte[] bytecode, int offset, int value) {
-        bytecode[offset] = (byte) (value >> 8);
-        bytecode[offset + 1] = (byte) (value);
+    public int getCodeLength() {
+        return code.size();
     }
 
     /**
-     * overwrites a 32 bit value in the already written bytecode data
+     * Returns the maximum depth of the stack. For unchecked code this is only known once the frames have been computed.
      */
-    private void overwriteInt(byte[] bytecode, int offset, int value) {
-        bytecode[offset] = (byte) (value >> 24);
-        bytecode[offset + 1] = (byte) (value >> 16);
-        bytecode[offset + 2] = (byte) (value >> 8);
-        bytecode[offset + 3] = (byte) (value);
+    public int getMaxStack() {
+        return maxStackDepth;
     }
 
+    /**
+     * Returns the number of local variables. For unchecked code this is only known once the frames have been computed.
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Returns the frames that will be written to the stack map table, in bytecode order
+     */
     public LinkedHashMap<Integer, StackFrame> getStackFrames() {
         return new LinkedHashMap<Integer, StackFrame>(stackFrames);
     }
@@ -2157,7 +2953,7 @@ public class CodeAttribute extends Attribute {
     public void setupFrame(String... types) {
         final LocalVariableState localVariableState = new LocalVariableState(constPool, types);
         final StackFrame f = new StackFrame(new StackState(constPool), localVariableState, StackFrameType.FULL_FRAME);
-        mergeStackFrames(f);
+        mergeJumpTarget(f);
     }
 
     public ConstPool getConstPool() {
@@ -2165,53 +2961,61 @@ public class CodeAttribute extends Attribute {
     }
 
     /**
-     * Adds a duplicate of the current frame to the current position.
+     * Called after the current frame has been modified by an instruction.
      * <p/>
-     * currently this just puts the same frame into a different position
+     * Frames are no longer recorded for every instruction, they are only snapshotted at locations that may need an entry in
+     * the stack map table
      */
-    private void duplicateFrame() {
-        stackFrames.put(currentOffset, currentFrame);
+    private void advanceFrame() {
+        if (unchecked) {
+            return;
+        }
         updateMaxValues();
+        if (splitPoints != null) {
+            splitCandidate = currentFrame.stackSize() == 0;
+        }
     }
 
-    private void advanceFrame(StackFrame frame) {
-        stackFrames.put(currentOffset, frame);
-        currentFrame = frame;
-        updateMaxValues();
+    /**
+     * Called after an instruction that does not fall through to the next instruction, so the next location is not reachable
+     * unless it is jumped to. Unchecked code does not track the frame, so the code that follows is only checked when the frames
+     * are computed.
+     */
+    private void endOfBlock() {
+        currentFrame = unchecked ? frameState : null;
     }
 
     private void updateMaxValues() {
-        if (getStack().getContents().size() > maxStackDepth) {
-            maxStackDepth = getStack().getContents().size();
+        if (getFrame().stackSize() > maxStackDepth) {
+            maxStackDepth = getFrame().stackSize();
         }
-        if (getLocalVars().getContents().size() > maxLocals) {
-            maxLocals = getLocalVars().getContents().size();
+        if (getFrame().localsSize() > maxLocals) {
+            maxLocals = getFrame().localsSize();
         }
     }
 
-    private LocalVariableState getLocalVars() {
+    private MutableStackFrame getFrame() {
         if (currentFrame == null) {
             throw new RuntimeException("No local variable information available, call setupFrame first");
         }
-        return currentFrame.getLocalVariableState();
-    }
-
-    private StackState getStack() {
-        return currentFrame.getStackState();
+        return currentFrame;
     }
 
     public void assertTypeOnStack(int position, StackEntryType type, String message) {
-        if (getStack().size() <= position) {
-            throw new InvalidBytecodeException(message + " Stack State: " + getStack().toString());
+        if (unchecked) {
+            return;
         }
-        int index = getStack().getContents().size() - 1 - position;
+        if (getFrame().stackSize() <= position) {
+            throw new InvalidBytecodeException(message + " Stack State: " + getFrame().stackToString());
+        }
+        int index = getFrame().stackSize() - 1 - position;
         if (type == StackEntryType.DOUBLE || type == StackEntryType.LONG) {
             index -= 1;
         }
-        StackEntryType stype = getStack().getContents().get(index).getType();
+        StackEntryType stype = getFrame().getStackEntry(index).getType();
         if (stype != type) {
             if (!(type == StackEntryType.OBJECT && stype == StackEntryType.NULL)) {
-                throw new InvalidBytecodeException(message + " Stack State: " + getStack().toString());
+                throw new InvalidBytecodeException(message + " Stack State: " + getFrame().stackToString());
             }
         }
     }
@@ -2221,14 +3025,17 @@ public class CodeAttribute extends Attribute {
     }
 
     public void assertNotWideOnStack(int position, String message) {
-        if (getStack().size() <= position) {
-            throw new InvalidBytecodeException(message + " Stack State: " + getStack().toString());
+        if (unchecked) {
+            return;
+        }
+        if (getFrame().stackSize() <= position) {
+            throw new InvalidBytecodeException(message + " Stack State: " + getFrame().stackToString());
         }
-        int index = getStack().getContents().size() - 1 - position;
+        int index = getFrame().stackSize() - 1 - position;
 
-        StackEntryType stype = getStack().getContents().get(index).getType();
+        StackEntryType stype = getFrame().getStackEntry(index).getType();
         if (stype == StackEntryType.TOP) {
-            throw new InvalidBytecodeException(message + " Stack State: " + getStack().toString());
+            throw new InvalidBytecodeException(message + " Stack State: " + getFrame().stackToString());
         }
     }
 
@@ -2236,6 +3043,28 @@ public class CodeAttribute extends Attribute {
         assertNotWideOnStack(0, message);
     }
 
+    /**
+     * returns the type of the stack entry that holds a value of the given field descriptor
+     */
+    private static StackEntryType stackEntryType(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'I':
+            case 'Z':
+            case 'S':
+            case 'B':
+            case 'C':
+                return StackEntryType.INT;
+            case 'F':
+                return StackEntryType.FLOAT;
+            case 'D':
+                return StackEntryType.DOUBLE;
+            case 'J':
+                return StackEntryType.LONG;
+            default:
+                return StackEntryType.OBJECT;
+        }
+    }
+
     /**
      * Merge the stack frames.
      * <p/>
@@ -2243,18 +3072,22 @@ public class CodeAttribute extends Attribute {
      * merged then the stack map is marked as invalid
      */
     private void mergeStackFrames(StackFrame stackFrame) {
+        if (unchecked) {
+            // the frames are computed when the code is finished
+            currentFrame = frameState;
+            return;
+        }
         if (currentFrame == null) {
-            currentFrame = stackFrame;
-            stackFrames.put(currentOffset, currentFrame);
+            currentFrame = frameState.reset(stackFrame);
+            updateMaxValues();
             return;
         }
-        StackState currentStackState = getStack();
         StackState mergeStackState = stackFrame.getStackState();
-        if (currentStackState.size() != mergeStackState.size()) {
+        if (currentFrame.stackSize() != mergeStackState.size()) {
             throw new InvalidBytecodeException("Cannot merge stack frames, different stack sizes " + currentFrame + " " + stackFrame);
         }
         for (int i = 0; i < mergeStackState.size(); ++i) {
-            StackEntry currentEntry = currentStackState.getContents().get(i);
+            StackEntry currentEntry = currentFrame.getStackEntry(i);
             StackEntry mergeEntry = mergeStackState.getContents().get(i);
             if (mergeEntry.getType() == currentEntry.getType()) {
                 if (mergeEntry.getType() == StackEntryType.OBJECT) {
@@ -2264,142 +3097,378 @@ public class CodeAttribute extends Attribute {
                             if (superType == null) {
                                 throw new InvalidBytecodeException("Could not find common supertype for " + mergeEntry.getDescriptor() + " and " + currentEntry.getDescriptor() + " " + currentFrame + " " + stackFrame);
                             } else if (!superType.equals(currentEntry.getDescriptor())) {
-                                stackFrames.put(currentOffset, currentFrame = currentFrame.mergeStack(i, new StackEntry(StackEntryType.OBJECT, DescriptorUtils.makeDescriptor(superType), constPool)));
+                                currentFrame.mergeStack(i, new StackEntry(StackEntryType.OBJECT, DescriptorUtils.makeDescriptor(superType), constPool));
                             }
                         }
                     }
                 }
             } else if (!((mergeEntry.getType() == StackEntryType.NULL && currentEntry.getType() == StackEntryType.OBJECT) || (mergeEntry
                     .getType() == StackEntryType.OBJECT && currentEntry.getType() == StackEntryType.NULL))) {
-                throw new InvalidBytecodeException("Cannot merge stack frame " + currentStackState + " with frame "
+                throw new InvalidBytecodeException("Cannot merge stack frame " + currentFrame.stackToString() + " with frame "
                         + mergeStackState + " stack entry " + i + " is invalid " + currentFrame + " " + stackFrame);
             }
         }
 
-        LocalVariableState currentLocalVariableState = getLocalVars();
         LocalVariableState mergeLocalVariableState = stackFrame.getLocalVariableState();
-        if (currentLocalVariableState.size() < mergeLocalVariableState.size()) {
+        if (currentFrame.localsSize() < mergeLocalVariableState.size()) {
             throw new InvalidBytecodeException(
                     "Cannot merge stack frames, merge location has less locals than current location " + currentFrame + " " + stackFrame);
         }
         for (int i = 0; i < mergeLocalVariableState.size(); ++i) {
-            StackEntry currentEntry = currentLocalVariableState.getContents().get(i);
+            StackEntry currentEntry = currentFrame.getLocal(i);
             StackEntry mergeEntry = mergeLocalVariableState.getContents().get(i);
             if (mergeEntry.getType() == currentEntry.getType()) {
                 if (mergeEntry.getType() == StackEntryType.OBJECT) {
                     if (!mergeEntry.getDescriptor().equals(currentEntry.getDescriptor())) {
-
-                        if (!mergeEntry.getDescriptor().equals(currentEntry.getDescriptor())) {
-                            if (method.getClassFile().getClassLoader() != null) {
-                                String superType = findSuperType(mergeEntry.getDescriptor(), currentEntry.getDescriptor());
-                                if (superType == null) {
-                                    throw new InvalidBytecodeException("Could not find common supertype for " + mergeEntry.getDescriptor() + " and " + currentEntry.getDescriptor() + " " + currentFrame + " " + stackFrame);
-                                } else if (!superType.equals(currentEntry.getDescriptor())) {
-                                    stackFrames.put(currentOffset, currentFrame = currentFrame.mergeLocals(i, new StackEntry(StackEntryType.OBJECT, DescriptorUtils.makeDescriptor(superType), constPool)));
-                                }
+                        if (method.getClassFile().getClassLoader() != null) {
+                            String superType = findSuperType(mergeEntry.getDescriptor(), currentEntry.getDescriptor());
+                            if (superType == null) {
+                                throw new InvalidBytecodeException("Could not find common supertype for " + mergeEntry.getDescriptor() + " and " + currentEntry.getDescriptor() + " " + currentFrame + " " + stackFrame);
+                            } else if (!superType.equals(currentEntry.getDescriptor())) {
+                                currentFrame.mergeLocals(i, new StackEntry(StackEntryType.OBJECT, DescriptorUtils.makeDescriptor(superType), constPool));
                             }
                         }
                     }
                 }
             } else if (!((mergeEntry.getType() == StackEntryType.NULL && currentEntry.getType() == StackEntryType.OBJECT) || (mergeEntry
                     .getType() == StackEntryType.OBJECT && currentEntry.getType() == StackEntryType.NULL))) {
-                throw new InvalidBytecodeException("Cannot merge stack frame " + currentLocalVariableState + " with frame "
-                        + currentLocalVariableState + " local variable entry " + i + " is invalid " + currentFrame + " " + stackFrame);
+                throw new InvalidBytecodeException("Cannot merge stack frame " + currentFrame.localsToString() + " with frame "
+                        + currentFrame.localsToString() + " local variable entry " + i + " is invalid " + currentFrame + " " + stackFrame);
             }
         }
     }
 
-    private String findSuperType(String ds1, String ds2) {
-        String d1 = ds1;
-        if (ds1.endsWith(";")) {
-            d1 = ds1.substring(1, ds1.length() - 1).replace("/", ".");
+    /**
+     * Merges the frame at the start of a jump with the current frame. The current location is the target of the jump, so the
+     * merged frame is recorded in the stack map table.
+     */
+    private void mergeJumpTarget(StackFrame stackFrame) {
+        mergeStackFrames(stackFrame);
+        stackFrames.put(currentOffset, currentFrame.snapshot());
+    }
+
+    /**
+     * Records the frame of a location that was marked earlier and is now the target of a jump. If the location is also the
+     * target of a forward jump then a frame has already been recorded when the jumps were merged, and that frame is kept.
+     */
+    private void addBackwardJumpTarget(CodeLocation location) {
+        if (!stackFrames.containsKey(location.getLocation())) {
+            stackFrames.put(location.getLocation(), location.getStackFrame());
         }
-        String d2 = ds2;
-        if (ds2.endsWith(";")) {
-            d2 = ds2.substring(1, ds2.length() - 1).replace("/", ".");
+    }
+
+    /**
+     * Writes a 16 bit branch instruction that jumps back to a location that has already been marked. If the location is out
+     * of range the offset is left empty, and the branch is widened when the code is written.
+     *
+     * @param fallThrough the frame after a conditional branch falls through, or null for a goto
+     */
+    private void writeBackwardBranch(int opcode, CodeLocation location, StackFrame fallThrough) {
+        final BranchSite site = addBranchSite(currentOffset, fallThrough);
+        final int jump = location.getLocation() - currentOffset;
+        writeByte(opcode);
+        if (jump < Short.MIN_VALUE) {
+            site.setTarget(location.getLocation());
+            branchesOutOfRange = true;
+            writeShort(0);
+        } else {
+            writeShort(jump);
         }
-        if (stackFrameTypeResolver != null) {
-            return stackFrameTypeResolver.resolve(method.getClassFile().getClassLoader(), d1, d2);
-        }
-        //just load the classes for now
-        ClassLoader cl = method.getClassFile().getClassLoader();
-        try {
-            Class<?> c1 = cl.loadClass(d1);
-            Class<?> c2 = cl.loadClass(d2);
-            if (c1.isAssignableFrom(c2)) {
-                return c1.getName();
-            } else if (c2.isAssignableFrom(c1)) {
-                return c2.getName();
+        currentOffset += 3;
+    }
+
+    /**
+     * Creates the branch end for the conditional branch that has just been written. The current frame is the frame at the
+     * branch target, and also the frame if the branch falls through.
+     */
+    private BranchEnd addBranchEnd() {
+        openBranches++;
+        final BranchEnd ret = new BranchEnd(currentOffset - 2, currentFrame.snapshot(), currentOffset - 3);
+        addBranchSite(currentOffset - 3, ret.getStackFrame());
+        return ret;
+    }
+
+    private BranchSite addBranchSite(int offset, StackFrame fallThrough) {
+        final BranchSite site = new BranchSite(offset, fallThrough);
+        branches.put(offset, site);
+        return site;
+    }
+
+    /**
+     * Widens the branches that cannot reach their targets. This moves code around, so the stack frames and the exception
+     * table are moved with it.
+     */
+    private void widenBranches() {
+        final BranchWidener widener = new BranchWidener(code, branches, constPool);
+        widener.layout();
+        code = widener.write();
+        final TreeMap<Integer, StackFrame> frames = widener.widenFrames(stackFrames);
+        stackFrames.clear();
+        stackFrames.putAll(frames);
+        widener.mapExceptionTable(exceptionTable);
+        branches = widener.getBranches();
+        currentOffset = code.size();
+        branchesOutOfRange = false;
+    }
+
+    /**
+     * Removes redundant instructions. This moves code around, so the branches, stack frames and the exception table are moved
+     * with it.
+     */
+    private void optimize() {
+        final PeepholeOptimizer optimizer = PeepholeOptimizer.decode(code, branches, stackFrames, exceptionTable, constPool);
+        if (optimizer == null || !optimizer.optimize()) {
+            return;
+        }
+        final TreeMap<Integer, BranchSite> newBranches = new TreeMap<Integer, BranchSite>();
+        code = optimizer.write(newBranches);
+        final TreeMap<Integer, StackFrame> frames = optimizer.mapFrames(stackFrames);
+        stackFrames.clear();
+        stackFrames.putAll(frames);
+        optimizer.mapExceptionTable(exceptionTable);
+        branches = newBranches;
+        branchesOutOfRange = false;
+        for (BranchSite site : branches.values()) {
+            branchesOutOfRange |= site.isOutOfRange();
+        }
+        currentOffset = code.size();
+    }
+
+    /**
+     * Records the start of the instruction that is about to be written as a split point, if the stack is empty and there are
+     * no forward branches that have not reached their end. Split points are spaced half the split threshold apart, so the
+     * helper methods stay under the threshold.
+     */
+    private void addSplitPoint() {
+        splitCandidate = false;
+        if (code.size() != currentOffset || openBranches != 0 || currentFrame == null || currentFrame.stackSize() != 0) {
+            return;
+        }
+        final SplitPoint last = splitPoints.isEmpty() ? null : splitPoints.get(splitPoints.size() - 1);
+        if (last != null && sectionMovable && currentOffset - last.getOffset() < splitThreshold / 2) {
+            return;
+        }
+        if (!canPassLocals()) {
+            return;
+        }
+        if (last != null) {
+            if (!sectionMovable && (splitPoints.size() == 1 || !splitPoints.get(splitPoints.size() - 2).isMovable())) {
+                // the last split point neither starts nor ends a section that can be moved
+                splitPoints.remove(splitPoints.size() - 1);
             } else {
-                Class<?> p = c1;
-                while (p != Object.class) {
-                    if (p.isAssignableFrom(c2)) {
-                        return p.getName();
-                    }
-                    p = p.getSuperclass();
+                last.setMovable(sectionMovable);
+            }
+        }
+        splitPoints.add(new SplitPoint(currentOffset, currentFrame.snapshot()));
+        sectionMovable = true;
+    }
+
+    /**
+     * Returns true if all the local variables can be passed to a helper method
+     */
+    private boolean canPassLocals() {
+        if (currentFrame.localsSize() > MAX_PARAMETER_SLOTS) {
+            return false;
+        }
+        for (int i = 0; i < currentFrame.localsSize(); ++i) {
+            StackEntryType type = currentFrame.getLocal(i).getType();
+            if (type == StackEntryType.NULL || type == StackEntryType.UNINITIALIZED_THIS
+                    || type == StackEntryType.UNITITIALIZED_OBJECT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fields may only be assigned by the initializers of their class, so the assignment cannot be moved to a helper method
+     */
+    private void fieldAssigned(String className) {
+        if ((method.isConstructor() || method.getName().equals("<clinit>"))
+                && className.replace('/', '.').equals(method.getClassFile().getName())) {
+            sectionMovable = false;
+        }
+    }
+
+    private int sectionLength(int splitPoint) {
+        return splitPoints.get(splitPoint + 1).getOffset() - splitPoints.get(splitPoint).getOffset();
+    }
+
+    /**
+     * Returns true if the code between the given offsets is not jumped into or out of, and the exception handlers either
+     * cover all of it or are entirely inside it
+     */
+    private boolean isSelfContained(int start, int end, BranchSite[] sites, int[][] targets) {
+        for (int i = 0; i < sites.length; ++i) {
+            final int offset = sites[i].getOffset();
+            final boolean inside = offset >= start && offset < end;
+            for (int target : targets[i]) {
+                if (inside ? target < start || target > end : target > start && target < end) {
+                    return false;
                 }
-                p = c2;
-                while (p != Object.class) {
-                    if (p.isAssignableFrom(c1)) {
-                        return p.getName();
-                    }
-                    p = p.getSuperclass();
+            }
+        }
+        for (ExceptionHandler handler : exceptionTable) {
+            if (handler.getStart() >= start && handler.getEnd() <= end) {
+                if (handler.getHandler() < start || handler.getHandler() >= end) {
+                    return false;
                 }
+            } else if (handler.getHandler() >= start && handler.getHandler() < end) {
+                return false;
+            } else if (handler.getEnd() > start && handler.getStart() < end
+                    && (handler.getStart() > start || handler.getEnd() < end)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                Set<Class<?>> s1 = getAllSuperclassesAndInterface(c1, new HashSet<Class<?>>());
-                Set<Class<?>> s2 = getAllSuperclassesAndInterface(c2, new HashSet<Class<?>>());
-                leavesOnly(s1);
-                leavesOnly(s2);
-                Set<Class<?>> interfaces = new HashSet<Class<?>>();
-                interfaces.addAll(s1);
-                interfaces.addAll(s2);
-                interfaces.remove(c1);
-                interfaces.remove(c2);
-                if (interfaces.size() == 1) {
-                    return interfaces.iterator().next().getName();
-                } else if (interfaces.size() > 1) {
-                    throw new RuntimeException("Could not resolve common superclass for " + d1 + " and " + d2);
-                } else {
-                    return Object.class.getName();
-                }
+    /**
+     * Returns the index of the section that contains the given offset, or -1
+     */
+    private static int section(int offset, int[] starts, int[] ends) {
+        for (int i = 0; i < starts.length; ++i) {
+            if (offset >= starts[i] && offset < ends[i]) {
+                return i;
             }
-        } catch (ClassNotFoundException e) {
-            return null;
         }
+        return -1;
     }
 
-    private void leavesOnly(Set<Class<?>> s2) {
-        List<Class<?>> keys = new ArrayList<Class<?>>(s2);
-        for (Class<?> key : keys) {
-            for (Class<?> content : s2) {
-                if (key == content) {
-                    continue;
-                }
-                if (key.isAssignableFrom(content)) {
-                    s2.remove(key);
+    /**
+     * Writes the instructions that load the local variables of the given frame, and adds the descriptors of the local
+     * variables to the given list. Unused local variables are passed as int 0.
+     */
+    private static void loadLocals(StackFrame frame, ByteArrayBuffer stub, List<String> parameters) {
+        final List<StackEntry> locals = frame.getLocalVariableState().getContents();
+        for (int i = 0; i < locals.size(); ++i) {
+            final StackEntry entry = locals.get(i);
+            switch (entry.getType()) {
+                case INT:
+                    loadLocal(stub, Opcode.ILOAD, i);
+                    parameters.add("I");
+                    break;
+                case FLOAT:
+                    loadLocal(stub, Opcode.FLOAD, i);
+                    parameters.add("F");
+                    break;
+                case LONG:
+                    loadLocal(stub, Opcode.LLOAD, i++);
+                    parameters.add("J");
+                    break;
+                case DOUBLE:
+                    loadLocal(stub, Opcode.DLOAD, i++);
+                    parameters.add("D");
+                    break;
+                case OBJECT:
+                    loadLocal(stub, Opcode.ALOAD, i);
+                    parameters.add(entry.getDescriptor());
+                    break;
+                default:
+                    stub.writeByte(Opcode.ICONST_0);
+                    parameters.add("I");
+            }
+        }
+    }
+
+    private static void loadLocal(ByteArrayBuffer stub, int opcode, int index) {
+        if (index < 4) {
+            // iload_0 to aload_3 are grouped by type in the same order as iload to aload
+            stub.writeByte(Opcode.ILOAD_0 + (opcode - Opcode.ILOAD) * 4 + index);
+        } else {
+            stub.writeByte(opcode);
+            stub.writeByte(index);
+        }
+    }
+
+    private String helperName(ClassFile classFile) {
+        final String base = method.getName().replace("<", "").replace(">", "") + "$split";
+        for (int i = 0;; ++i) {
+            final String name = base + i;
+            boolean exists = false;
+            for (ClassMethod existing : classFile.getMethods()) {
+                if (existing.getName().equals(name)) {
+                    exists = true;
                     break;
                 }
             }
+            if (!exists) {
+                return name;
+            }
         }
     }
 
-    private Set<Class<?>> getAllSuperclassesAndInterface(Class<?> c, Set<Class<?>> set) {
-        set.addAll(Arrays.asList(c.getInterfaces()));
-        set.add(c);
-        if (c.getSuperclass() != null) {
-            getAllSuperclassesAndInterface(c.getSuperclass(), set);
+    /**
+     * Copies the code between the given offsets into the given helper method, followed by a return instruction. Jumps to the
+     * end of the section jump to the return instruction. The helper code is padded with nops so the switch padding stays
+     * valid.
+     */
+    private void moveToHelper(final int start, final int end, BranchSite[] sites, CodeAttribute helper) {
+        final int padding = start % 4;
+        final OffsetMapper mapper = new OffsetMapper(constPool) {
+            @Override
+            int map(int offset) {
+                return offset - start + padding;
+            }
+        };
+        final ByteArrayBuffer helperCode = new ByteArrayBuffer(padding + end - start + 1);
+        for (int i = 0; i < padding; ++i) {
+            helperCode.writeByte(Opcode.NOP);
+        }
+        helperCode.write(code.array(), start, end - start);
+        helperCode.writeByte(Opcode.RETURN);
+        helper.code = helperCode;
+        helper.currentOffset = helperCode.size();
+        helper.currentFrame = null;
+        helper.maxStackDepth = maxStackDepth;
+        helper.maxLocals = Math.max(helper.maxLocals, maxLocals);
+        helper.stackFrames.putAll(mapper.mapFrames(stackFrames.subMap(start, true, end, true)));
+        for (BranchSite site : sites) {
+            if (site.getOffset() >= start && site.getOffset() < end) {
+                final BranchSite moved = mapper.map(site);
+                helper.branches.put(moved.getOffset(), moved);
+                helper.branchesOutOfRange |= moved.isOutOfRange();
+            }
+        }
+        for (ExceptionHandler handler : exceptionTable) {
+            if (handler.getStart() >= start && handler.getEnd() <= end) {
+                final ExceptionHandler moved = new ExceptionHandler(mapper.map(handler.getStart()), handler
+                        .getExceptionIndex(), handler.getExceptionType(), handler.getFrame());
+                moved.setEnd(mapper.map(handler.getEnd()));
+                moved.setHandler(mapper.map(handler.getHandler()));
+                helper.exceptionTable.add(moved);
+            }
         }
-        return set;
+    }
+
+    String findSuperType(String ds1, String ds2) {
+        String d1 = ds1;
+        if (ds1.endsWith(";")) {
+            d1 = ds1.substring(1, ds1.length() - 1).replace("/", ".");
+        }
+        String d2 = ds2;
+        if (ds2.endsWith(";")) {
+            d2 = ds2.substring(1, ds2.length() - 1).replace("/", ".");
+        }
+        StackFrameTypeResolver resolver = stackFrameTypeResolver;
+        if (resolver == null) {
+            resolver = method.getClassFile().getStackFrameTypeResolver();
+        }
+        if (resolver == null) {
+            // results are not cached unless a caching resolver is set, as classes may be redefined between class files
+            resolver = DEFAULT_STACK_FRAME_TYPE_RESOLVER;
+        }
+        return resolver.resolve(method.getClassFile().getClassLoader(), d1, d2);
     }
 
     private void addIfIcmp(CodeLocation location, int opcode, String name) {
         assertTypeOnStack(StackEntryType.INT, name + " requires int on stack");
         assertTypeOnStack(1, StackEntryType.INT, name + " requires int in position 2 on stack");
-        writeByte(opcode);
-        writeShort(location.getLocation() - currentOffset);
-        currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
+        currentFrame.pop2();
+        advanceFrame();
         mergeStackFrames(location.getStackFrame());
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(opcode, location, currentFrame.snapshot());
     }
 
     private BranchEnd addIfIcmp(int opcode, String name) {
@@ -2408,18 +3477,18 @@ public class CodeAttribute extends Attribute {
         writeByte(opcode);
         writeShort(0);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop2());
-        BranchEnd ret = new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
-        return ret;
+        currentFrame.pop2();
+        advanceFrame();
+        return addBranchEnd();
     }
 
     private void addIf(CodeLocation location, int opcode, String name) {
         assertTypeOnStack(StackEntryType.INT, name + " requires int on stack");
-        writeByte(opcode);
-        writeShort(location.getLocation() - currentOffset);
-        currentOffset += 3;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
         mergeStackFrames(location.getStackFrame());
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(opcode, location, currentFrame.snapshot());
     }
 
     private BranchEnd addIf(int opcode, String name) {
@@ -2427,17 +3496,18 @@ public class CodeAttribute extends Attribute {
         writeByte(opcode);
         writeShort(0);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop());
-        return new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
+        currentFrame.pop();
+        advanceFrame();
+        return addBranchEnd();
     }
 
     private void addNullComparison(CodeLocation location, int opcode, String name) {
         assertTypeOnStack(StackEntryType.OBJECT, name + " requires reference type on stack");
-        writeByte(opcode);
-        writeShort(location.getLocation() - currentOffset);
-        currentOffset += 3;
-        advanceFrame(currentFrame.pop());
+        currentFrame.pop();
+        advanceFrame();
         mergeStackFrames(location.getStackFrame());
+        addBackwardJumpTarget(location);
+        writeBackwardBranch(opcode, location, currentFrame.snapshot());
     }
 
     private BranchEnd addNullComparison(int opcode, String name) {
@@ -2445,12 +3515,17 @@ public class CodeAttribute extends Attribute {
         writeByte(opcode);
         writeShort(0);
         currentOffset += 3;
-        advanceFrame(currentFrame.pop());
-        return new BranchEnd(currentOffset - 2, currentFrame, currentOffset - 3);
+        currentFrame.pop();
+        advanceFrame();
+        return addBranchEnd();
     }
 
     /**
-     * Interface that can be used to override the type merging process when merging stack frames
+     * Interface that can be used to override the type merging process when merging stack frames. Implementations return the
+     * name of the common supertype of the two given class names, or <code>null</code> if it cannot be resolved.
+     *
+     * @see ClassLoadingStackFrameTypeResolver
+     * @see CachingStackFrameTypeResolver
      */
     public interface StackFrameTypeResolver {
         String resolve(ClassLoader classLoader, String type1, String type2);
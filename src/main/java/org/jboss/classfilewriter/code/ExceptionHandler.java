@@ -24,7 +24,7 @@ package org.jboss.classfilewriter.code;
  */
 public class ExceptionHandler {
 
-    private final int start;
+    private int start;
     private final int exceptionIndex;
     private final String exceptionType;
     private final StackFrame frame;
@@ -58,6 +58,10 @@ public class ExceptionHandler {
         return start;
     }
 
+    void setStart(int start) {
+        this.start = start;
+    }
+
     int getExceptionIndex() {
         return exceptionIndex;
     }
@@ -0,0 +1,1192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.DescriptorUtils;
+
+/**
+ * Computes the stack map frames, the maximum stack depth and the number of local variables of finished bytecode.
+ * <p>
+ * This is used for unchecked code, where {@link CodeAttribute} does not track the stack and the local variables as
+ * instructions are written. The bytecode is decoded once to find the jump targets and exception handlers, and then the
+ * instructions are interpreted from the start of the method, merging the frames that reach each jump target until they no
+ * longer change. Local variables that have different types on different paths become TOP, and references are merged to
+ * their common supertype. Code that cannot be reached is rejected, as it would need a frame that cannot be computed.
+ */
+final class FrameAnalyzer {
+
+    private static final StackEntry TOP = new StackEntry(StackEntryType.TOP, null);
+
+    private static final StackEntry NULL = new StackEntry(StackEntryType.NULL, null);
+
+    private final CodeAttribute codeAttribute;
+
+    private final ClassMethod method;
+
+    private final ConstPool constPool;
+
+    private final byte[] code;
+
+    private final int codeLength;
+
+    private final ExceptionHandler[] handlers;
+
+    /**
+     * The stack at the start of each exception handler, which only holds the caught exception
+     */
+    private final StackEntry[][] handlerStacks;
+
+    /**
+     * true for the offsets where an instruction starts
+     */
+    private final boolean[] instructions;
+
+    /**
+     * true for the offsets that are jump targets or exception handlers, which need a frame in the stack map table
+     */
+    private final boolean[] targets;
+
+    /**
+     * true for the offsets of instructions that have been interpreted
+     */
+    private final boolean[] reached;
+
+    /**
+     * The merged frame at the start of each jump target and at offset 0
+     */
+    private final Frame[] frames;
+
+    /**
+     * The offsets whose frame has changed and that need to be interpreted again
+     */
+    private int[] pending = new int[16];
+
+    private int pendingCount;
+
+    private final boolean[] queued;
+
+    /**
+     * Cache of stack entries by descriptor, stack entries are immutable so they can be shared
+     */
+    private final Map<String, StackEntry> entries = new HashMap<String, StackEntry>();
+
+    /**
+     * Cache of the common supertypes of two reference descriptors, keyed by both descriptors
+     */
+    private final Map<String, String> superTypes = new HashMap<String, String>();
+
+    private StackEntry[] stack = new StackEntry[8];
+
+    private int stackSize;
+
+    /**
+     * The local variables, which always has {@link #maxLocals} entries. Unused local variables are TOP.
+     */
+    private StackEntry[] locals;
+
+    /**
+     * true if the instruction that is being interpreted changed a local variable
+     */
+    private boolean localsChanged;
+
+    private int maxStack;
+
+    private int maxLocals;
+
+    FrameAnalyzer(CodeAttribute codeAttribute, ClassMethod method, byte[] code, int codeLength,
+            List<ExceptionHandler> exceptionTable, ConstPool constPool) {
+        this.codeAttribute = codeAttribute;
+        this.method = method;
+        this.constPool = constPool;
+        this.code = code;
+        this.codeLength = codeLength;
+        this.handlers = exceptionTable.toArray(new ExceptionHandler[exceptionTable.size()]);
+        this.handlerStacks = new StackEntry[handlers.length][];
+        this.instructions = new boolean[codeLength];
+        this.targets = new boolean[codeLength];
+        this.reached = new boolean[codeLength];
+        this.frames = new Frame[codeLength];
+        this.queued = new boolean[codeLength];
+    }
+
+    /**
+     * Computes the frames. The results are available from {@link #getFrames()}, {@link #getMaxStack()} and
+     * {@link #getMaxLocals()}.
+     *
+     * @throws InvalidBytecodeException if the frames cannot be computed
+     */
+    void analyze() {
+        final List<StackEntry> initialLocals = new LocalVariableState(method).getContents();
+        maxLocals = initialLocals.size();
+        decode();
+        for (int i = 0; i < handlers.length; ++i) {
+            final int index = handlers[i].getExceptionIndex();
+            handlerStacks[i] = new StackEntry[] { entry(index == 0 ? "Ljava/lang/Throwable;"
+                    : classDescriptor(constPool.getClassName(index))) };
+        }
+
+        locals = new StackEntry[maxLocals];
+        Arrays.fill(locals, TOP);
+        for (int i = 0; i < initialLocals.size(); ++i) {
+            locals[i] = initialLocals.get(i);
+        }
+        merge(0);
+        while (pendingCount > 0) {
+            final int start = pending[--pendingCount];
+            queued[start] = false;
+            interpret(start);
+        }
+        for (int i = 0; i < codeLength; ++i) {
+            if (instructions[i] && !reached[i]) {
+                throw new InvalidBytecodeException("Unreachable code at offset " + i + " in " + describeMethod()
+                        + ", a stack map frame cannot be computed for it");
+            }
+        }
+    }
+
+    /**
+     * Returns the frames that need to be written to the stack map table, keyed by bytecode offset
+     */
+    TreeMap<Integer, StackFrame> getFrames() {
+        final TreeMap<Integer, StackFrame> ret = new TreeMap<Integer, StackFrame>();
+        for (int i = 0; i < codeLength; ++i) {
+            if (targets[i]) {
+                final Frame frame = frames[i];
+                int size = frame.locals.length;
+                // trailing TOP entries are implicit, unless they are the second half of a wide type
+                while (size > 0 && frame.locals[size - 1].getType() == StackEntryType.TOP
+                        && !(size > 1 && frame.locals[size - 2].isWide())) {
+                    size--;
+                }
+                final List<StackEntry> localContents = new ArrayList<StackEntry>(Arrays.asList(frame.locals).subList(0, size));
+                final List<StackEntry> stackContents = new ArrayList<StackEntry>(Arrays.asList(frame.stack));
+                ret.put(i, new StackFrame(new StackState(stackContents, constPool), new LocalVariableState(localContents,
+                        constPool), StackFrameType.FULL_FRAME));
+            }
+        }
+        return ret;
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    // -------------------------------------------
+    // decoding
+
+    /**
+     * Finds the start of every instruction, the jump targets and the number of local variables
+     */
+    private void decode() {
+        int pc = 0;
+        while (pc < codeLength) {
+            instructions[pc] = true;
+            final int opcode = code[pc] & 0xFF;
+            final int length;
+            switch (opcode) {
+                case Opcode.ILOAD:
+                case Opcode.FLOAD:
+                case Opcode.ALOAD:
+                case Opcode.ISTORE:
+                case Opcode.FSTORE:
+                case Opcode.ASTORE:
+                    useLocal(u1(pc + 1), 1);
+                    length = 2;
+                    break;
+                case Opcode.LLOAD:
+                case Opcode.DLOAD:
+                case Opcode.LSTORE:
+                case Opcode.DSTORE:
+                    useLocal(u1(pc + 1), 2);
+                    length = 2;
+                    break;
+                case Opcode.IINC:
+                    useLocal(u1(pc + 1), 1);
+                    length = 3;
+                    break;
+                case Opcode.WIDE: {
+                    final int widened = u1(pc + 1);
+                    final boolean wideType = widened == Opcode.LLOAD || widened == Opcode.DLOAD || widened == Opcode.LSTORE
+                            || widened == Opcode.DSTORE;
+                    useLocal(u2(pc + 2), wideType ? 2 : 1);
+                    length = widened == Opcode.IINC ? 6 : 4;
+                    break;
+                }
+                case Opcode.IFEQ:
+                case Opcode.IFNE:
+                case Opcode.IFLT:
+                case Opcode.IFGE:
+                case Opcode.IFGT:
+                case Opcode.IFLE:
+                case Opcode.IF_ICMPEQ:
+                case Opcode.IF_ICMPNE:
+                case Opcode.IF_ICMPLT:
+                case Opcode.IF_ICMPGE:
+                case Opcode.IF_ICMPGT:
+                case Opcode.IF_ICMPLE:
+                case Opcode.IF_ACMPEQ:
+                case Opcode.IF_ACMPNE:
+                case Opcode.GOTO:
+                case Opcode.IFNULL:
+                case Opcode.IFNONNULL:
+                    addTarget(pc + s2(pc + 1));
+                    length = 3;
+                    break;
+                case Opcode.GOTO_W:
+                    addTarget(pc + s4(pc + 1));
+                    length = 5;
+                    break;
+                case Opcode.TABLESWITCH: {
+                    final int base = pc + 1 + BranchSite.padding(pc);
+                    addTarget(pc + s4(base));
+                    final int count = s4(base + 8) - s4(base + 4) + 1;
+                    for (int i = 0; i < count; ++i) {
+                        addTarget(pc + s4(base + 12 + i * 4));
+                    }
+                    length = base + 12 + count * 4 - pc;
+                    break;
+                }
+                case Opcode.LOOKUPSWITCH: {
+                    final int base = pc + 1 + BranchSite.padding(pc);
+                    addTarget(pc + s4(base));
+                    final int count = s4(base + 4);
+                    for (int i = 0; i < count; ++i) {
+                        addTarget(pc + s4(base + 12 + i * 8));
+                    }
+                    length = base + 8 + count * 8 - pc;
+                    break;
+                }
+                case Opcode.JSR:
+                case Opcode.JSR_W:
+                case Opcode.RET:
+                    throw new InvalidBytecodeException("Frames cannot be computed for code that uses jsr or ret in "
+                            + describeMethod());
+                default:
+                    if (opcode >= Opcode.ILOAD_0 && opcode < Opcode.ILOAD_0 + 20) {
+                        // iload_0 to aload_3
+                        final int type = (opcode - Opcode.ILOAD_0) / 4;
+                        useLocal((opcode - Opcode.ILOAD_0) % 4, type == 1 || type == 3 ? 2 : 1);
+                    } else if (opcode >= Opcode.ISTORE_0 && opcode < Opcode.ISTORE_0 + 20) {
+                        // istore_0 to astore_3
+                        final int type = (opcode - Opcode.ISTORE_0) / 4;
+                        useLocal((opcode - Opcode.ISTORE_0) % 4, type == 1 || type == 3 ? 2 : 1);
+                    }
+                    length = length(opcode);
+            }
+            if (length == 0) {
+                throw new InvalidBytecodeException("Unknown opcode " + opcode + " at offset " + pc + " in " + describeMethod());
+            }
+            pc += length;
+        }
+        if (pc != codeLength) {
+            throw new InvalidBytecodeException("The last instruction of " + describeMethod() + " is truncated");
+        }
+        for (ExceptionHandler handler : handlers) {
+            addTarget(handler.getHandler());
+        }
+        for (int i = 0; i < codeLength; ++i) {
+            if (targets[i] && !instructions[i]) {
+                throw new InvalidBytecodeException("Jump target " + i + " is not the start of an instruction in "
+                        + describeMethod());
+            }
+        }
+    }
+
+    /**
+     * Returns the length of an instruction that does not have a local variable or jump offset operand, or 0 if the opcode is
+     * not valid
+     */
+    private static int length(int opcode) {
+        switch (opcode) {
+            case Opcode.BIPUSH:
+            case Opcode.LDC:
+            case Opcode.NEWARRAY:
+                return 2;
+            case Opcode.SIPUSH:
+            case Opcode.LDC_W:
+            case Opcode.LDC2_W:
+            case Opcode.GETSTATIC:
+            case Opcode.PUTSTATIC:
+            case Opcode.GETFIELD:
+            case Opcode.PUTFIELD:
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKESTATIC:
+            case Opcode.NEW:
+            case Opcode.ANEWARRAY:
+            case Opcode.CHECKCAST:
+            case Opcode.INSTANCEOF:
+                return 3;
+            case Opcode.MULTIANEWARRAY:
+                return 4;
+            case Opcode.INVOKEINTERFACE:
+            case Opcode.INVOKEDYNAMIC:
+                return 5;
+            default:
+                return opcode <= Opcode.MONITOREXIT ? 1 : 0;
+        }
+    }
+
+    private void useLocal(int index, int size) {
+        if (index + size > maxLocals) {
+            maxLocals = index + size;
+        }
+    }
+
+    private void addTarget(int target) {
+        if (target < 0 || target >= codeLength) {
+            throw new InvalidBytecodeException("Jump target " + target + " is outside of the code of " + describeMethod());
+        }
+        targets[target] = true;
+    }
+
+    // -------------------------------------------
+    // interpretation
+
+    /**
+     * Interprets the instructions from the given jump target until the next jump target, or an instruction that does not
+     * fall through to the next instruction
+     */
+    private void interpret(int start) {
+        final Frame frame = frames[start];
+        System.arraycopy(frame.locals, 0, locals, 0, maxLocals);
+        ensureStack(frame.stack.length);
+        System.arraycopy(frame.stack, 0, stack, 0, frame.stack.length);
+        stackSize = frame.stack.length;
+        int pc = start;
+        while (true) {
+            reached[pc] = true;
+            mergeHandlers(pc);
+            localsChanged = false;
+            final int next = execute(pc);
+            if (localsChanged) {
+                // the handlers must also accept the local variables after the instruction
+                mergeHandlers(pc);
+            }
+            if (next == -1) {
+                return;
+            }
+            if (next >= codeLength) {
+                throw new InvalidBytecodeException("Execution can fall off the end of the code of " + describeMethod());
+            }
+            if (targets[next]) {
+                merge(next);
+                return;
+            }
+            pc = next;
+        }
+    }
+
+    /**
+     * Interprets the instruction at the given offset, and merges the current frame into any instruction it jumps to
+     *
+     * @return the offset of the next instruction, or -1 if the instruction does not fall through
+     */
+    private int execute(int pc) {
+        final int opcode = code[pc] & 0xFF;
+        switch (opcode) {
+            case Opcode.NOP:
+                return pc + 1;
+            case Opcode.ACONST_NULL:
+                push(NULL);
+                return pc + 1;
+            case Opcode.ICONST_M1:
+            case Opcode.ICONST_0:
+            case Opcode.ICONST_1:
+            case Opcode.ICONST_2:
+            case Opcode.ICONST_3:
+            case Opcode.ICONST_4:
+            case Opcode.ICONST_5:
+                push("I");
+                return pc + 1;
+            case Opcode.LCONST_0:
+            case Opcode.LCONST_1:
+                push("J");
+                return pc + 1;
+            case Opcode.FCONST_0:
+            case Opcode.FCONST_1:
+            case Opcode.FCONST_2:
+                push("F");
+                return pc + 1;
+            case Opcode.DCONST_0:
+            case Opcode.DCONST_1:
+                push("D");
+                return pc + 1;
+            case Opcode.BIPUSH:
+                push("I");
+                return pc + 2;
+            case Opcode.SIPUSH:
+                push("I");
+                return pc + 3;
+            case Opcode.LDC:
+                ldc(u1(pc + 1));
+                return pc + 2;
+            case Opcode.LDC_W:
+            case Opcode.LDC2_W:
+                ldc(u2(pc + 1));
+                return pc + 3;
+            case Opcode.ILOAD:
+            case Opcode.LLOAD:
+            case Opcode.FLOAD:
+            case Opcode.DLOAD:
+            case Opcode.ALOAD:
+                load(opcode - Opcode.ILOAD, u1(pc + 1));
+                return pc + 2;
+            case Opcode.ISTORE:
+            case Opcode.LSTORE:
+            case Opcode.FSTORE:
+            case Opcode.DSTORE:
+            case Opcode.ASTORE:
+                store(u1(pc + 1));
+                return pc + 2;
+            case Opcode.IALOAD:
+            case Opcode.BALOAD:
+            case Opcode.CALOAD:
+            case Opcode.SALOAD:
+                pop(2);
+                push("I");
+                return pc + 1;
+            case Opcode.LALOAD:
+                pop(2);
+                push("J");
+                return pc + 1;
+            case Opcode.FALOAD:
+                pop(2);
+                push("F");
+                return pc + 1;
+            case Opcode.DALOAD:
+                pop(2);
+                push("D");
+                return pc + 1;
+            case Opcode.AALOAD: {
+                pop(1);
+                final StackEntry array = pop();
+                if (array.getType() == StackEntryType.OBJECT && array.getDescriptor().startsWith("[")) {
+                    push(array.getDescriptor().substring(1));
+                } else {
+                    push(NULL);
+                }
+                return pc + 1;
+            }
+            case Opcode.IASTORE:
+            case Opcode.FASTORE:
+            case Opcode.AASTORE:
+            case Opcode.BASTORE:
+            case Opcode.CASTORE:
+            case Opcode.SASTORE:
+                pop(3);
+                return pc + 1;
+            case Opcode.LASTORE:
+            case Opcode.DASTORE:
+                pop(4);
+                return pc + 1;
+            case Opcode.POP:
+                pop(1);
+                return pc + 1;
+            case Opcode.POP2:
+                pop(2);
+                return pc + 1;
+            case Opcode.DUP:
+                duplicate(1, 0);
+                return pc + 1;
+            case Opcode.DUP_X1:
+                duplicate(1, 1);
+                return pc + 1;
+            case Opcode.DUP_X2:
+                duplicate(1, 2);
+                return pc + 1;
+            case Opcode.DUP2:
+                duplicate(2, 0);
+                return pc + 1;
+            case Opcode.DUP2_X1:
+                duplicate(2, 1);
+                return pc + 1;
+            case Opcode.DUP2_X2:
+                duplicate(2, 2);
+                return pc + 1;
+            case Opcode.SWAP: {
+                checkStack(2);
+                final StackEntry top = stack[stackSize - 1];
+                stack[stackSize - 1] = stack[stackSize - 2];
+                stack[stackSize - 2] = top;
+                return pc + 1;
+            }
+            case Opcode.IADD:
+            case Opcode.ISUB:
+            case Opcode.IMUL:
+            case Opcode.IDIV:
+            case Opcode.IREM:
+            case Opcode.ISHL:
+            case Opcode.ISHR:
+            case Opcode.IUSHR:
+            case Opcode.IAND:
+            case Opcode.IOR:
+            case Opcode.IXOR:
+            case Opcode.FCMPL:
+            case Opcode.FCMPG:
+                pop(2);
+                push("I");
+                return pc + 1;
+            case Opcode.LADD:
+            case Opcode.LSUB:
+            case Opcode.LMUL:
+            case Opcode.LDIV:
+            case Opcode.LREM:
+            case Opcode.LAND:
+            case Opcode.LOR:
+            case Opcode.LXOR:
+                pop(4);
+                push("J");
+                return pc + 1;
+            case Opcode.FADD:
+            case Opcode.FSUB:
+            case Opcode.FMUL:
+            case Opcode.FDIV:
+            case Opcode.FREM:
+                pop(2);
+                push("F");
+                return pc + 1;
+            case Opcode.DADD:
+            case Opcode.DSUB:
+            case Opcode.DMUL:
+            case Opcode.DDIV:
+            case Opcode.DREM:
+                pop(4);
+                push("D");
+                return pc + 1;
+            case Opcode.LSHL:
+            case Opcode.LSHR:
+            case Opcode.LUSHR:
+                pop(3);
+                push("J");
+                return pc + 1;
+            case Opcode.INEG:
+            case Opcode.I2B:
+            case Opcode.I2C:
+            case Opcode.I2S:
+            case Opcode.F2I:
+            case Opcode.ARRAYLENGTH:
+                pop(1);
+                push("I");
+                return pc + 1;
+            case Opcode.LNEG:
+            case Opcode.D2L:
+                pop(2);
+                push("J");
+                return pc + 1;
+            case Opcode.FNEG:
+            case Opcode.I2F:
+                pop(1);
+                push("F");
+                return pc + 1;
+            case Opcode.DNEG:
+            case Opcode.L2D:
+                pop(2);
+                push("D");
+                return pc + 1;
+            case Opcode.I2L:
+            case Opcode.F2L:
+                pop(1);
+                push("J");
+                return pc + 1;
+            case Opcode.I2D:
+            case Opcode.F2D:
+                pop(1);
+                push("D");
+                return pc + 1;
+            case Opcode.L2I:
+            case Opcode.D2I:
+                pop(2);
+                push("I");
+                return pc + 1;
+            case Opcode.L2F:
+            case Opcode.D2F:
+                pop(2);
+                push("F");
+                return pc + 1;
+            case Opcode.LCMP:
+            case Opcode.DCMPL:
+            case Opcode.DCMPG:
+                pop(4);
+                push("I");
+                return pc + 1;
+            case Opcode.IINC:
+                return pc + 3;
+            case Opcode.IFEQ:
+            case Opcode.IFNE:
+            case Opcode.IFLT:
+            case Opcode.IFGE:
+            case Opcode.IFGT:
+            case Opcode.IFLE:
+            case Opcode.IFNULL:
+            case Opcode.IFNONNULL:
+                pop(1);
+                merge(pc + s2(pc + 1));
+                return pc + 3;
+            case Opcode.IF_ICMPEQ:
+            case Opcode.IF_ICMPNE:
+            case Opcode.IF_ICMPLT:
+            case Opcode.IF_ICMPGE:
+            case Opcode.IF_ICMPGT:
+            case Opcode.IF_ICMPLE:
+            case Opcode.IF_ACMPEQ:
+            case Opcode.IF_ACMPNE:
+                pop(2);
+                merge(pc + s2(pc + 1));
+                return pc + 3;
+            case Opcode.GOTO:
+                merge(pc + s2(pc + 1));
+                return -1;
+            case Opcode.GOTO_W:
+                merge(pc + s4(pc + 1));
+                return -1;
+            case Opcode.TABLESWITCH: {
+                pop(1);
+                final int base = pc + 1 + BranchSite.padding(pc);
+                merge(pc + s4(base));
+                final int count = s4(base + 8) - s4(base + 4) + 1;
+                for (int i = 0; i < count; ++i) {
+                    merge(pc + s4(base + 12 + i * 4));
+                }
+                return -1;
+            }
+            case Opcode.LOOKUPSWITCH: {
+                pop(1);
+                final int base = pc + 1 + BranchSite.padding(pc);
+                merge(pc + s4(base));
+                final int count = s4(base + 4);
+                for (int i = 0; i < count; ++i) {
+                    merge(pc + s4(base + 12 + i * 8));
+                }
+                return -1;
+            }
+            case Opcode.IRETURN:
+            case Opcode.LRETURN:
+            case Opcode.FRETURN:
+            case Opcode.DRETURN:
+            case Opcode.ARETURN:
+            case Opcode.RETURN:
+            case Opcode.ATHROW:
+                return -1;
+            case Opcode.GETSTATIC:
+                push(constPool.getMemberDescriptor(u2(pc + 1)));
+                return pc + 3;
+            case Opcode.PUTSTATIC:
+                pop(slots(constPool.getMemberDescriptor(u2(pc + 1))));
+                return pc + 3;
+            case Opcode.GETFIELD:
+                pop(1);
+                push(constPool.getMemberDescriptor(u2(pc + 1)));
+                return pc + 3;
+            case Opcode.PUTFIELD:
+                pop(slots(constPool.getMemberDescriptor(u2(pc + 1))) + 1);
+                return pc + 3;
+            case Opcode.INVOKEVIRTUAL:
+            case Opcode.INVOKESPECIAL:
+            case Opcode.INVOKESTATIC:
+            case Opcode.INVOKEINTERFACE:
+            case Opcode.INVOKEDYNAMIC: {
+                final int index = u2(pc + 1);
+                final String descriptor = constPool.getMemberDescriptor(index);
+                pop(argumentSlots(descriptor));
+                if (opcode == Opcode.INVOKESPECIAL && constPool.getMemberName(index).equals("<init>")) {
+                    initialize(pop());
+                } else if (opcode != Opcode.INVOKESTATIC && opcode != Opcode.INVOKEDYNAMIC) {
+                    pop(1);
+                }
+                final String returnType = DescriptorUtils.returnType(descriptor);
+                if (!returnType.equals("V")) {
+                    push(returnType);
+                }
+                return pc + (opcode == Opcode.INVOKEINTERFACE || opcode == Opcode.INVOKEDYNAMIC ? 5 : 3);
+            }
+            case Opcode.NEW:
+                push(new StackEntry(StackEntryType.UNITITIALIZED_OBJECT, classDescriptor(constPool.getClassName(u2(pc + 1))),
+                        pc));
+                return pc + 3;
+            case Opcode.NEWARRAY:
+                pop(1);
+                push("[" + primitiveArrayType(u1(pc + 1)));
+                return pc + 2;
+            case Opcode.ANEWARRAY:
+                pop(1);
+                push("[" + classDescriptor(constPool.getClassName(u2(pc + 1))));
+                return pc + 3;
+            case Opcode.CHECKCAST:
+                pop(1);
+                push(classDescriptor(constPool.getClassName(u2(pc + 1))));
+                return pc + 3;
+            case Opcode.INSTANCEOF:
+                pop(1);
+                push("I");
+                return pc + 3;
+            case Opcode.MONITORENTER:
+            case Opcode.MONITOREXIT:
+                pop(1);
+                return pc + 1;
+            case Opcode.WIDE: {
+                final int widened = u1(pc + 1);
+                final int index = u2(pc + 2);
+                if (widened == Opcode.IINC) {
+                    return pc + 6;
+                } else if (widened >= Opcode.ILOAD && widened <= Opcode.ALOAD) {
+                    load(widened - Opcode.ILOAD, index);
+                } else {
+                    store(index);
+                }
+                return pc + 4;
+            }
+            case Opcode.MULTIANEWARRAY:
+                pop(u1(pc + 3));
+                push(classDescriptor(constPool.getClassName(u2(pc + 1))));
+                return pc + 4;
+            default:
+                if (opcode >= Opcode.ILOAD_0 && opcode < Opcode.ILOAD_0 + 20) {
+                    load((opcode - Opcode.ILOAD_0) / 4, (opcode - Opcode.ILOAD_0) % 4);
+                    return pc + 1;
+                } else if (opcode >= Opcode.ISTORE_0 && opcode < Opcode.ISTORE_0 + 20) {
+                    store((opcode - Opcode.ISTORE_0) % 4);
+                    return pc + 1;
+                }
+                throw new InvalidBytecodeException("Unknown opcode " + opcode + " at offset " + pc + " in " + describeMethod());
+        }
+    }
+
+    private void ldc(int index) {
+        switch (constPool.getEntryType(index)) {
+            case INTEGER:
+                push("I");
+                break;
+            case FLOAT:
+                push("F");
+                break;
+            case LONG:
+                push("J");
+                break;
+            case DOUBLE:
+                push("D");
+                break;
+            case STRING:
+                push("Ljava/lang/String;");
+                break;
+            case CLASS:
+                push("Ljava/lang/Class;");
+                break;
+            case METHOD_TYPE:
+                push("Ljava/lang/invoke/MethodType;");
+                break;
+            case METHOD_HANDLE:
+                push("Ljava/lang/invoke/MethodHandle;");
+                break;
+            case DYNAMIC:
+                push(constPool.getMemberDescriptor(index));
+                break;
+            default:
+                throw new InvalidBytecodeException("Const pool entry " + index + " cannot be loaded by ldc in "
+                        + describeMethod());
+        }
+    }
+
+    /**
+     * Pushes a local variable
+     *
+     * @param type the offset of the load instruction from the int version, e.g. 1 for lload
+     */
+    private void load(int type, int index) {
+        switch (type) {
+            case 0:
+                push("I");
+                break;
+            case 1:
+                push("J");
+                break;
+            case 2:
+                push("F");
+                break;
+            case 3:
+                push("D");
+                break;
+            default:
+                push(locals[index]);
+        }
+    }
+
+    /**
+     * Pops the value on top of the stack into a local variable. Wide values take up two local variables.
+     */
+    private void store(int index) {
+        StackEntry value = pop();
+        if (value.getType() == StackEntryType.TOP) {
+            value = pop();
+        }
+        if (index > 0 && locals[index - 1].isWide()) {
+            // this overwrites the second half of a wide value
+            locals[index - 1] = TOP;
+        }
+        locals[index] = value;
+        if (value.isWide()) {
+            locals[index + 1] = TOP;
+        }
+        localsChanged = true;
+    }
+
+    /**
+     * Replaces every copy of the given uninitialized value with the initialized type, after its constructor has been called
+     */
+    private void initialize(StackEntry value) {
+        if (value.getType() != StackEntryType.UNINITIALIZED_THIS && value.getType() != StackEntryType.UNITITIALIZED_OBJECT) {
+            return;
+        }
+        final StackEntry initialized = entry(value.getDescriptor());
+        for (int i = 0; i < stackSize; ++i) {
+            if (sameType(stack[i], value)) {
+                stack[i] = initialized;
+            }
+        }
+        for (int i = 0; i < maxLocals; ++i) {
+            if (sameType(locals[i], value)) {
+                locals[i] = initialized;
+                localsChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Copies the top <code>count</code> entries of the stack below the <code>depth</code> entries underneath them
+     */
+    private void duplicate(int count, int depth) {
+        checkStack(count + depth);
+        ensureStack(stackSize + count);
+        final int pos = stackSize - count - depth;
+        System.arraycopy(stack, pos, stack, pos + count, count + depth);
+        System.arraycopy(stack, stackSize, stack, pos, count);
+        stackSize += count;
+        updateMaxStack();
+    }
+
+    private void push(String descriptor) {
+        push(entry(descriptor));
+    }
+
+    private void push(StackEntry entry) {
+        ensureStack(stackSize + 2);
+        stack[stackSize++] = entry;
+        if (entry.isWide()) {
+            stack[stackSize++] = TOP;
+        }
+        updateMaxStack();
+    }
+
+    private StackEntry pop() {
+        checkStack(1);
+        return stack[--stackSize];
+    }
+
+    private void pop(int slots) {
+        checkStack(slots);
+        stackSize -= slots;
+    }
+
+    private void checkStack(int slots) {
+        if (stackSize < slots) {
+            throw new InvalidBytecodeException("Stack underflow in " + describeMethod() + ", " + slots
+                    + " entries are needed but the stack is " + Arrays.asList(stack).subList(0, stackSize));
+        }
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    private void updateMaxStack() {
+        if (stackSize > maxStack) {
+            maxStack = stackSize;
+        }
+    }
+
+    // -------------------------------------------
+    // merging
+
+    /**
+     * Merges the current locals into every exception handler that covers the given instruction
+     */
+    private void mergeHandlers(int pc) {
+        for (int i = 0; i < handlers.length; ++i) {
+            final ExceptionHandler handler = handlers[i];
+            if (pc >= handler.getStart() && pc < handler.getEnd()) {
+                merge(handler.getHandler(), locals, handlerStacks[i], 1);
+            }
+        }
+    }
+
+    /**
+     * Merges the current frame into the frame of the given jump target
+     */
+    private void merge(int target) {
+        merge(target, locals, stack, stackSize);
+    }
+
+    private void merge(int target, StackEntry[] mergeLocals, StackEntry[] mergeStack, int mergeStackSize) {
+        final Frame frame = frames[target];
+        if (frame == null) {
+            frames[target] = new Frame(mergeLocals.clone(), Arrays.copyOf(mergeStack, mergeStackSize));
+            enqueue(target);
+            return;
+        }
+        if (frame.stack.length != mergeStackSize) {
+            throw new InvalidBytecodeException("Cannot merge stack frames at offset " + target + " in " + describeMethod()
+                    + ", different stack sizes " + Arrays.asList(frame.stack) + " "
+                    + Arrays.asList(mergeStack).subList(0, mergeStackSize));
+        }
+        boolean changed = false;
+        for (int i = 0; i < mergeStackSize; ++i) {
+            final StackEntry current = frame.stack[i];
+            final StackEntry merged = mergeEntry(current, mergeStack[i]);
+            if (merged == null) {
+                throw new InvalidBytecodeException("Cannot merge stack frames at offset " + target + " in " + describeMethod()
+                        + ", stack entry " + i + " is " + current + " and " + mergeStack[i]);
+            }
+            if (merged != current) {
+                frame.stack[i] = merged;
+                changed = true;
+            }
+        }
+        for (int i = 0; i < maxLocals; ++i) {
+            final StackEntry current = frame.locals[i];
+            StackEntry merged = mergeEntry(current, mergeLocals[i]);
+            if (merged == null) {
+                merged = TOP;
+            }
+            if (merged != current) {
+                frame.locals[i] = merged;
+                changed = true;
+            }
+        }
+        if (changed) {
+            enqueue(target);
+        }
+    }
+
+    /**
+     * Merges two entries
+     *
+     * @return the current entry if the merge does not change it, or null if the entries cannot be merged
+     */
+    private StackEntry mergeEntry(StackEntry current, StackEntry entry) {
+        if (sameType(current, entry) || current.getType() == StackEntryType.TOP) {
+            return current;
+        }
+        if (current.getType() == StackEntryType.NULL && entry.getType() == StackEntryType.OBJECT) {
+            return entry;
+        }
+        if (current.getType() == StackEntryType.OBJECT && entry.getType() == StackEntryType.NULL) {
+            return current;
+        }
+        if (current.getType() == StackEntryType.OBJECT && entry.getType() == StackEntryType.OBJECT) {
+            if (method.getClassFile().getClassLoader() == null) {
+                // the stack map table is not written, so the types do not need to be resolved
+                return current;
+            }
+            final StackEntry merged = entry(superType(current.getDescriptor(), entry.getDescriptor()));
+            return sameType(merged, current) ? current : merged;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the descriptor of the common supertype of two reference descriptors
+     */
+    private String superType(String d1, String d2) {
+        if (d1.equals(d2)) {
+            return d1;
+        }
+        final String key = d1 + ' ' + d2;
+        String ret = superTypes.get(key);
+        if (ret == null) {
+            if (d1.charAt(0) == '[' || d2.charAt(0) == '[') {
+                if (d1.charAt(0) == '[' && d2.charAt(0) == '[' && !DescriptorUtils.isPrimitive(d1.substring(1))
+                        && !DescriptorUtils.isPrimitive(d2.substring(1))) {
+                    ret = "[" + superType(d1.substring(1), d2.substring(1));
+                } else {
+                    ret = "Ljava/lang/Object;";
+                }
+            } else {
+                final String superType = codeAttribute.findSuperType(d1, d2);
+                if (superType == null) {
+                    throw new InvalidBytecodeException("Could not find common supertype for " + d1 + " and " + d2 + " in "
+                            + describeMethod());
+                }
+                ret = DescriptorUtils.makeDescriptor(superType);
+            }
+            superTypes.put(key, ret);
+        }
+        return ret;
+    }
+
+    private static boolean sameType(StackEntry e1, StackEntry e2) {
+        if (e1 == e2) {
+            return true;
+        }
+        if (e1.getType() != e2.getType()) {
+            return false;
+        }
+        if (e1.getType() == StackEntryType.OBJECT) {
+            return e1.getDescriptor().equals(e2.getDescriptor());
+        }
+        if (e1.getType() == StackEntryType.UNITITIALIZED_OBJECT) {
+            return e1.getNewInstructionLocation() == e2.getNewInstructionLocation();
+        }
+        return true;
+    }
+
+    private void enqueue(int target) {
+        if (!queued[target]) {
+            queued[target] = true;
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            }
+            pending[pendingCount++] = target;
+        }
+    }
+
+    // -------------------------------------------
+    // helpers
+
+    /**
+     * Returns the stack entry for the given descriptor
+     */
+    private StackEntry entry(String descriptor) {
+        StackEntry entry = entries.get(descriptor);
+        if (entry == null) {
+            entry = StackEntry.of(descriptor, constPool);
+            entries.put(descriptor, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the descriptor of a class name in internal form, which may be an array descriptor
+     */
+    private static String classDescriptor(String className) {
+        return className.charAt(0) == '[' ? className : "L" + className + ";";
+    }
+
+    private static String primitiveArrayType(int type) {
+        switch (type) {
+            case 4:
+                return "Z";
+            case 5:
+                return "C";
+            case 6:
+                return "F";
+            case 7:
+                return "D";
+            case 8:
+                return "B";
+            case 9:
+                return "S";
+            case 10:
+                return "I";
+            case 11:
+                return "J";
+            default:
+                throw new InvalidBytecodeException("Invalid newarray type " + type);
+        }
+    }
+
+    /**
+     * Returns the number of stack slots a value of the given type takes up
+     */
+    private static int slots(String descriptor) {
+        return descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+    }
+
+    /**
+     * Returns the number of stack slots taken up by the parameters of a method descriptor
+     */
+    private static int argumentSlots(String methodDescriptor) {
+        int slots = 0;
+        int i = 1; // char 0 is a '('
+        while (methodDescriptor.charAt(i) != ')') {
+            boolean array = false;
+            char c = methodDescriptor.charAt(i);
+            while (c == '[') {
+                array = true;
+                c = methodDescriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = methodDescriptor.indexOf(';', i);
+            }
+            // arrays take up a single slot
+            slots += !array && (c == 'J' || c == 'D') ? 2 : 1;
+            ++i;
+        }
+        return slots;
+    }
+
+    private int u1(int pos) {
+        return code[pos] & 0xFF;
+    }
+
+    private int u2(int pos) {
+        return ((code[pos] & 0xFF) << 8) | (code[pos + 1] & 0xFF);
+    }
+
+    private int s2(int pos) {
+        return (short) u2(pos);
+    }
+
+    private int s4(int pos) {
+        return (code[pos] << 24) | ((code[pos + 1] & 0xFF) << 16) | ((code[pos + 2] & 0xFF) << 8) | (code[pos + 3] & 0xFF);
+    }
+
+    private String describeMethod() {
+        return method.getClassFile().getName() + "." + method.getName() + method.getDescriptor();
+    }
+
+    /**
+     * The merged frame at a jump target. The local variables always has {@link FrameAnalyzer#maxLocals} entries.
+     */
+    private static final class Frame {
+
+        final StackEntry[] locals;
+
+        final StackEntry[] stack;
+
+        Frame(StackEntry[] locals, StackEntry[] stack) {
+            this.locals = locals;
+            this.stack = stack;
+        }
+    }
+}
@@ -75,7 +75,7 @@ public class LocalVariableState {
         }
     }
 
-    private LocalVariableState(final List<StackEntry> contents, ConstPool constPool) {
+    LocalVariableState(final List<StackEntry> contents, ConstPool constPool) {
         this.contents = contents;
         this.constPool = constPool;
     }
@@ -0,0 +1,516 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.constpool.ConstPool;
+
+/**
+ * The mutable frame that {@link CodeAttribute} updates as instructions are written.
+ * <p>
+ * Unlike {@link StackFrame} this does not create a new copy of the stack and local variables for every instruction. Immutable
+ * {@link StackFrame} snapshots are only created when they are actually needed, e.g. for branch targets and exception handlers.
+ * The snapshot of the stack and the local variables are cached separately, so consecutive snapshots that only differ in the
+ * stack share the same {@link LocalVariableState}.
+ */
+class MutableStackFrame {
+
+    private static final StackEntry NULL_ENTRY = new StackEntry(StackEntryType.NULL, null);
+
+    private static final StackEntry[] EMPTY = new StackEntry[0];
+
+    private final ConstPool constPool;
+
+    /**
+     * Cache of stack entries by descriptor, stack entries are immutable so they can be shared
+     */
+    private final Map<String, StackEntry> entries = new HashMap<String, StackEntry>();
+
+    /**
+     * Cache of the TOP entries that follow wide types, by the descriptor of the wide type
+     */
+    private final Map<String, StackEntry> topEntries = new HashMap<String, StackEntry>();
+
+    /**
+     * The operand stack, the very first element represents the bottom of the stack. Wide elements are stored as Wide, Top
+     */
+    private StackEntry[] stack = new StackEntry[8];
+
+    private int stackSize;
+
+    /**
+     * The local variables
+     */
+    private StackEntry[] locals = EMPTY;
+
+    private int localsSize;
+
+    private StackState stackSnapshot;
+
+    private LocalVariableState localsSnapshot;
+
+    private StackFrame snapshot;
+
+    MutableStackFrame(ConstPool constPool) {
+        this.constPool = constPool;
+    }
+
+    /**
+     * Resets this frame to the state of the given frame
+     *
+     * @return this frame
+     */
+    MutableStackFrame reset(StackFrame frame) {
+        List<StackEntry> stackContents = frame.getStackState().getContents();
+        stackSize = 0;
+        ensureStack(stackContents.size());
+        for (StackEntry entry : stackContents) {
+            stack[stackSize++] = entry;
+        }
+        List<StackEntry> localContents = frame.getLocalVariableState().getContents();
+        localsSize = 0;
+        ensureLocals(localContents.size());
+        for (StackEntry entry : localContents) {
+            locals[localsSize++] = entry;
+        }
+        stackSnapshot = frame.getStackState();
+        localsSnapshot = frame.getLocalVariableState();
+        snapshot = frame.getType() == StackFrameType.FULL_FRAME ? frame : null;
+        return this;
+    }
+
+    /**
+     * Returns an immutable copy of the current state of this frame. The copy is cached until this frame is next modified.
+     */
+    StackFrame snapshot() {
+        if (snapshot == null) {
+            if (stackSnapshot == null) {
+                stackSnapshot = new StackState(new ArrayList<StackEntry>(Arrays.asList(stack).subList(0, stackSize)), constPool);
+            }
+            if (localsSnapshot == null) {
+                localsSnapshot = new LocalVariableState(new ArrayList<StackEntry>(Arrays.asList(locals).subList(0, localsSize)),
+                        constPool);
+            }
+            snapshot = new StackFrame(stackSnapshot, localsSnapshot, StackFrameType.FULL_FRAME);
+        }
+        return snapshot;
+    }
+
+    // -------------------------------------------
+    // stack operations
+
+    int stackSize() {
+        return stackSize;
+    }
+
+    StackEntry getStackEntry(int index) {
+        return stack[index];
+    }
+
+    StackEntry top() {
+        return stack[stackSize - 1];
+    }
+
+    StackEntry top_1() {
+        return stack[stackSize - 2];
+    }
+
+    StackEntry top_2() {
+        return stack[stackSize - 3];
+    }
+
+    StackEntry top_3() {
+        return stack[stackSize - 4];
+    }
+
+    /**
+     * checks that the appropriate object type is on top of the stack
+     */
+    boolean isOnTop(String descriptor) {
+        if (stackSize == 0) {
+            return false;
+        }
+        StackEntry entry = entry(descriptor);
+        StackEntry top = top();
+        if (entry.isWide()) {
+            if (stackSize == 1) {
+                return false;
+            }
+            return top_1().getType() == entry.getType();
+        }
+        if (top.getType() == StackEntryType.NULL && entry.getType() == StackEntryType.OBJECT) {
+            return true;
+        }
+        return top.getType() == entry.getType();
+    }
+
+    /**
+     * push an operand of the given type onto the stack
+     * <p>
+     * If the entry is wide then a corresponding TOP type will be created
+     */
+    void push(String type) {
+        push(entry(type));
+    }
+
+    /**
+     * push an operand of the given type onto the stack.
+     * <p>
+     * If the entry is wide then a corresponding TOP type will be created
+     */
+    void push(StackEntry entry) {
+        if (entry.isWide()) {
+            ensureStack(stackSize + 2);
+            stack[stackSize++] = entry;
+            stack[stackSize++] = topEntry(entry.getDescriptor());
+        } else {
+            ensureStack(stackSize + 1);
+            stack[stackSize++] = entry;
+        }
+        stackChanged();
+    }
+
+    /**
+     * pushes a null type onto the stack
+     */
+    void aconstNull() {
+        push(NULL_ENTRY);
+    }
+
+    void pop(int no) {
+        if (no == 0) {
+            return;
+        }
+        if (stackSize < no) {
+            throw new InvalidBytecodeException("cannot pop" + no + ", only " + stackSize + " on stack " + stackToString());
+        }
+        if (stack[stackSize - no].getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Pop" + no + " would split wide type " + stackToString());
+        }
+        Arrays.fill(stack, stackSize - no, stackSize, null);
+        stackSize -= no;
+        stackChanged();
+    }
+
+    /**
+     * pops an operand from the stack
+     */
+    void pop() {
+        pop(1);
+    }
+
+    /**
+     * pops 2 operands from the stack
+     */
+    void pop2() {
+        pop(2);
+    }
+
+    /**
+     * pops 3 operands from the stack
+     */
+    void pop3() {
+        pop(3);
+    }
+
+    /**
+     * pops 4 operands from the stack
+     */
+    void pop4() {
+        pop(4);
+    }
+
+    /**
+     * replace the operand at the top of the stack with the given operand
+     */
+    void replace(String type) {
+        pop(1);
+        push(type);
+    }
+
+    /**
+     * remove the top two operands and replace them with an different operand
+     */
+    void pop2push1(String type) {
+        pop(2);
+        push(type);
+    }
+
+    /**
+     * remove the top four operands and replace them with an different operand
+     */
+    void pop4push1(String type) {
+        pop(4);
+        push(type);
+    }
+
+    void dup() {
+        if (stackSize == 0) {
+            throw new InvalidBytecodeException("cannot dup empty stack");
+        }
+        StackEntry type = top();
+        if (type.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup wide type");
+        }
+        insert(0, type);
+    }
+
+    void dupX1() {
+        if (stackSize < 2) {
+            throw new InvalidBytecodeException("cannot dup_x1, stack does not have enough items");
+        }
+        StackEntry type = top();
+        if (type.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup_x1 wide type");
+        }
+        insert(2, type);
+    }
+
+    void dupX2() {
+        if (stackSize < 3) {
+            throw new InvalidBytecodeException("cannot dup_x1, stack does not have enough items");
+        }
+        StackEntry type = top();
+        if (type.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup_x1 wide type");
+        }
+        insert(3, type);
+    }
+
+    void dup2() {
+        if (stackSize < 2) {
+            throw new InvalidBytecodeException("cannot dup2, stack size is " + stackSize + " " + stackToString());
+        }
+        StackEntry t1 = top();
+        StackEntry t2 = top_1();
+        if (t2.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup2 when second type on stack is wide: " + stackToString());
+        }
+        insert(0, t2, t1);
+    }
+
+    void dup2X1() {
+        if (stackSize < 3) {
+            throw new InvalidBytecodeException("cannot dup2X1, stack size is " + stackSize + " " + stackToString());
+        }
+        StackEntry t1 = top();
+        StackEntry t2 = top_1();
+        StackEntry t3 = top_2();
+        if (t2.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup2X1 when second type on stack is wide: " + stackToString());
+        }
+        if (t3.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup2X2 when third type on stack is wide: " + stackToString());
+        }
+        insert(3, t2, t1);
+    }
+
+    void dup2X2() {
+        if (stackSize < 4) {
+            throw new InvalidBytecodeException("cannot dup2X2, stack size is " + stackSize + " " + stackToString());
+        }
+        StackEntry t1 = top();
+        StackEntry t2 = top_1();
+        StackEntry t4 = top_3();
+        if (t2.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup2X2 when second type on stack is wide: " + stackToString());
+        }
+        if (t4.getType() == StackEntryType.TOP) {
+            throw new InvalidBytecodeException("Cannot dup2X2 when fourth type on stack is wide: " + stackToString());
+        }
+        insert(4, t2, t1);
+    }
+
+    void swap() {
+        StackEntry top = stack[stackSize - 1];
+        stack[stackSize - 1] = stack[stackSize - 2];
+        stack[stackSize - 2] = top;
+        stackChanged();
+    }
+
+    /**
+     * Replaces the entry at the given position, counting from the bottom of the stack, with a merged entry
+     */
+    void mergeStack(int pos, StackEntry entry) {
+        stack[pos] = entry;
+        stackChanged();
+    }
+
+    // -------------------------------------------
+    // local variable operations
+
+    int localsSize() {
+        return localsSize;
+    }
+
+    StackEntry getLocal(int index) {
+        return locals[index];
+    }
+
+    /**
+     * Store the variable on top of the stack into a local variable, poping the variable from the stack. Wide types are handled
+     * automatically
+     */
+    void store(int no) {
+        StackEntry top = top();
+        if (top.getType() == StackEntryType.TOP) { // wide type
+            StackEntry type = top_1();
+            pop(2);
+            setLocal(no + 1, topEntry(type.getDescriptor()));
+            setLocal(no, type);
+        } else {
+            pop(1);
+            setLocal(no, top);
+        }
+    }
+
+    /**
+     * Replaces the local variable at the given position with a merged entry
+     */
+    void mergeLocals(int pos, StackEntry entry) {
+        locals[pos] = entry;
+        localsChanged();
+    }
+
+    /**
+     * marks the value in potition initializedValueStackPosition as initialized. This also pops this value and everything above
+     * it
+     */
+    void constructorCall(int initializedValueStackPosition) {
+        StackEntry entry = stack[stackSize - 1 - initializedValueStackPosition];
+        if (entry.getType() != StackEntryType.UNINITIALIZED_THIS && entry.getType() != StackEntryType.UNITITIALIZED_OBJECT) {
+            throw new InvalidBytecodeException("Object at position " + initializedValueStackPosition
+                    + " is not an unitialized object. " + stackToString());
+        }
+        int newSize = stackSize - 1 - initializedValueStackPosition;
+        Arrays.fill(stack, newSize, stackSize, null);
+        stackSize = newSize;
+        for (int i = 0; i < stackSize; ++i) {
+            if (isInitializedBy(stack[i], entry)) {
+                stack[i] = entry(stack[i].getDescriptor());
+            }
+        }
+        stackChanged();
+        for (int i = 0; i < localsSize; ++i) {
+            if (isInitializedBy(locals[i], entry)) {
+                locals[i] = entry(locals[i].getDescriptor());
+                localsChanged();
+            }
+        }
+    }
+
+    private static boolean isInitializedBy(StackEntry stackEntry, StackEntry entry) {
+        if (entry.getType() == StackEntryType.UNINITIALIZED_THIS) {
+            return stackEntry.getType() == StackEntryType.UNINITIALIZED_THIS;
+        }
+        return stackEntry.getType() == StackEntryType.UNITITIALIZED_OBJECT
+                && stackEntry.getNewInstructionLocation() == entry.getNewInstructionLocation();
+    }
+
+    // -------------------------------------------
+    // helpers
+
+    /**
+     * Returns the stack entry for the given descriptor. Stack entries are immutable, so they are shared between all positions
+     * that hold the same type
+     */
+    private StackEntry entry(String descriptor) {
+        StackEntry entry = entries.get(descriptor);
+        if (entry == null) {
+            entry = StackEntry.of(descriptor, constPool);
+            entries.put(descriptor, entry);
+        }
+        return entry;
+    }
+
+    private StackEntry topEntry(String descriptor) {
+        StackEntry entry = topEntries.get(descriptor);
+        if (entry == null) {
+            entry = new StackEntry(StackEntryType.TOP, descriptor);
+            topEntries.put(descriptor, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Inserts the given entries below the top <code>depth</code> entries of the stack
+     */
+    private void insert(int depth, StackEntry... values) {
+        ensureStack(stackSize + values.length);
+        int pos = stackSize - depth;
+        System.arraycopy(stack, pos, stack, pos + values.length, depth);
+        System.arraycopy(values, 0, stack, pos, values.length);
+        stackSize += values.length;
+        stackChanged();
+    }
+
+    private void setLocal(int index, StackEntry entry) {
+        if (index >= localsSize) {
+            ensureLocals(index + 1);
+            // write a null in unitialised slots
+            // not sure if this is correct
+            for (int i = localsSize; i < index; ++i) {
+                locals[i] = NULL_ENTRY;
+            }
+            localsSize = index + 1;
+        }
+        locals[index] = entry;
+        localsChanged();
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    private void ensureLocals(int size) {
+        if (size > locals.length) {
+            locals = Arrays.copyOf(locals, Math.max(size, locals.length * 2));
+        }
+    }
+
+    private void stackChanged() {
+        stackSnapshot = null;
+        snapshot = null;
+    }
+
+    private void localsChanged() {
+        localsSnapshot = null;
+        snapshot = null;
+    }
+
+    String stackToString() {
+        return "Stack: " + Arrays.asList(stack).subList(0, stackSize);
+    }
+
+    String localsToString() {
+        return "Local Variables: " + Arrays.asList(locals).subList(0, localsSize);
+    }
+
+    @Override
+    public String toString() {
+        return "StackFrame [localVariableState=" + localsToString() + ", stackState=" + stackToString() + "]";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+
+/**
+ * Maps bytecode offsets when code is moved, and moves the structures that refer to those offsets along with it.
+ */
+abstract class OffsetMapper {
+
+    private final ConstPool constPool;
+
+    OffsetMapper(ConstPool constPool) {
+        this.constPool = constPool;
+    }
+
+    /**
+     * Returns the new offset of an instruction at the given offset
+     */
+    abstract int map(int offset);
+
+    /**
+     * Moves the given frames to their new offsets
+     */
+    TreeMap<Integer, StackFrame> mapFrames(Map<Integer, StackFrame> frames) {
+        TreeMap<Integer, StackFrame> ret = new TreeMap<Integer, StackFrame>();
+        for (Map.Entry<Integer, StackFrame> entry : frames.entrySet()) {
+            ret.put(map(entry.getKey()), map(entry.getValue()));
+        }
+        return ret;
+    }
+
+    /**
+     * Uninitialized entries refer to the offset of the <code>new</code> instruction that created them, so they have to be
+     * moved as well
+     */
+    StackFrame map(StackFrame frame) {
+        if (frame == null) {
+            return null;
+        }
+        List<StackEntry> stack = mapEntries(frame.getStackState().getContents());
+        List<StackEntry> locals = mapEntries(frame.getLocalVariableState().getContents());
+        if (stack == null && locals == null) {
+            return frame;
+        }
+        StackState stackState = stack == null ? frame.getStackState() : new StackState(stack, constPool);
+        LocalVariableState localVariableState = locals == null ? frame.getLocalVariableState() : new LocalVariableState(locals,
+                constPool);
+        return new StackFrame(stackState, localVariableState, frame.getType());
+    }
+
+    /**
+     * Returns a copy of the branch site at its new offset
+     */
+    BranchSite map(BranchSite site) {
+        BranchSite ret = new BranchSite(map(site.getOffset()), map(site.getFallThrough()));
+        if (site.isOutOfRange()) {
+            ret.setTarget(map(site.getTarget()));
+        }
+        return ret;
+    }
+
+    void map(ExceptionHandler handler) {
+        handler.setStart(map(handler.getStart()));
+        handler.setEnd(map(handler.getEnd()));
+        handler.setHandler(map(handler.getHandler()));
+    }
+
+    /**
+     * returns the mapped entries, or null if there are no uninitialized entries
+     */
+    private List<StackEntry> mapEntries(List<StackEntry> entries) {
+        List<StackEntry> ret = null;
+        for (int i = 0; i < entries.size(); ++i) {
+            StackEntry entry = entries.get(i);
+            if (entry.getType() == StackEntryType.UNITITIALIZED_OBJECT) {
+                if (ret == null) {
+                    ret = new ArrayList<StackEntry>(entries);
+                }
+                ret.set(i, new StackEntry(StackEntryType.UNITITIALIZED_OBJECT, entry.getDescriptor(), map(entry
+                        .getNewInstructionLocation())));
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayBuffer;
+
+/**
+ * Removes redundant instructions from the bytecode of a finished method.
+ * <p>
+ * The bytecode is decoded into a list of instructions, and the following rewrites are applied until none of them match:
+ * <ul>
+ * <li>a <code>goto</code> to the next instruction is removed</li>
+ * <li>a <code>goto</code> to a return instruction is replaced by the return instruction</li>
+ * <li>a conditional branch over a <code>goto</code> is inverted so that it jumps to the target of the <code>goto</code>,
+ * and the <code>goto</code> is removed</li>
+ * <li>a constant or local variable load followed by a pop, and a <code>dup</code> followed by a pop, are removed</li>
+ * <li><code>nop</code> instructions are removed</li>
+ * </ul>
+ * Instructions that are jump targets, exception handlers, the bounds of an exception handler or have a stack frame are never
+ * removed. The remaining instructions are then written at their new offsets, with new jump offsets and switch padding.
+ */
+final class PeepholeOptimizer extends OffsetMapper {
+
+    /**
+     * The length of each fixed length instruction, or 0 for instructions that are variable length or not supported
+     */
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        for (int i = Opcode.NOP; i <= Opcode.MULTIANEWARRAY; ++i) {
+            LENGTHS[i] = 1;
+        }
+        setLength(2, Opcode.BIPUSH, Opcode.LDC, Opcode.ILOAD, Opcode.ILOAD + 1, Opcode.ILOAD + 2, Opcode.ILOAD + 3,
+                Opcode.ALOAD, Opcode.ISTORE, Opcode.ISTORE + 1, Opcode.ISTORE + 2, Opcode.ISTORE + 3, Opcode.ASTORE,
+                Opcode.RET, Opcode.NEWARRAY);
+        setLength(3, Opcode.SIPUSH, Opcode.LDC_W, Opcode.LDC2_W, Opcode.IINC, Opcode.NEW, Opcode.ANEWARRAY, Opcode.CHECKCAST,
+                Opcode.INSTANCEOF, Opcode.IFNULL, Opcode.IFNONNULL);
+        for (int i = Opcode.IFEQ; i <= Opcode.JSR; ++i) {
+            LENGTHS[i] = 3;
+        }
+        for (int i = Opcode.GETSTATIC; i <= Opcode.INVOKESTATIC; ++i) {
+            LENGTHS[i] = 3;
+        }
+        setLength(4, Opcode.MULTIANEWARRAY);
+        setLength(5, Opcode.INVOKEINTERFACE, Opcode.INVOKEDYNAMIC, Opcode.GOTO_W, Opcode.JSR_W);
+        setLength(0, Opcode.TABLESWITCH, Opcode.LOOKUPSWITCH, Opcode.WIDE);
+    }
+
+    private final byte[] code;
+
+    private final int codeLength;
+
+    /**
+     * The offset of each instruction, followed by the code length
+     */
+    private final int[] offsets;
+
+    /**
+     * The opcode of each instruction, or -1 if the instruction has been removed
+     */
+    private final int[] opcodes;
+
+    /**
+     * The absolute targets of each branch instruction, in the order used by {@link BranchSite#getTargets(byte[])}, or null if
+     * the instruction is not a branch
+     */
+    private final int[][] targets;
+
+    /**
+     * The frame after each conditional branch falls through
+     */
+    private final StackFrame[] fallThrough;
+
+    /**
+     * true for instructions that cannot be removed because other parts of the method refer to their offset
+     */
+    private final boolean[] fixed;
+
+    /**
+     * The new offset of each instruction, followed by the new code length
+     */
+    private final int[] newOffsets;
+
+    private final Map<Integer, StackFrame> frames;
+
+    /**
+     * Decodes the given bytecode, or returns null if it contains instructions that cannot be decoded
+     */
+    static PeepholeOptimizer decode(ByteArrayBuffer code, TreeMap<Integer, BranchSite> branches,
+            Map<Integer, StackFrame> frames, List<ExceptionHandler> exceptionTable, ConstPool constPool) {
+        final byte[] bytes = code.array();
+        final int length = code.size();
+        // every instruction is at least one byte long
+        final int[] offsets = new int[length + 1];
+        int count = 0;
+        int pos = 0;
+        while (pos < length) {
+            final int opcode = bytes[pos] & 0xFF;
+            final BranchSite site = branches.get(pos);
+            int instructionLength;
+            if (site != null) {
+                instructionLength = site.getLength(bytes);
+            } else if (isBranch(opcode)) {
+                return null;
+            } else if (opcode == Opcode.WIDE) {
+                instructionLength = (bytes[pos + 1] & 0xFF) == Opcode.IINC ? 6 : 4;
+            } else {
+                instructionLength = LENGTHS[opcode];
+            }
+            if (instructionLength == 0) {
+                return null;
+            }
+            offsets[count++] = pos;
+            pos += instructionLength;
+        }
+        offsets[count] = length;
+        return new PeepholeOptimizer(bytes, Arrays.copyOf(offsets, count + 1), branches, frames, exceptionTable, constPool);
+    }
+
+    private PeepholeOptimizer(byte[] code, int[] offsets, TreeMap<Integer, BranchSite> branches,
+            Map<Integer, StackFrame> frames, List<ExceptionHandler> exceptionTable, ConstPool constPool) {
+        super(constPool);
+        this.code = code;
+        this.offsets = offsets;
+        this.codeLength = offsets[offsets.length - 1];
+        this.frames = frames;
+        final int count = offsets.length - 1;
+        this.opcodes = new int[count];
+        this.targets = new int[count][];
+        this.fallThrough = new StackFrame[count];
+        this.fixed = new boolean[count];
+        this.newOffsets = new int[count + 1];
+        final Set<Integer> referenced = new HashSet<Integer>(frames.keySet());
+        for (ExceptionHandler handler : exceptionTable) {
+            referenced.add(handler.getStart());
+            referenced.add(handler.getEnd());
+            referenced.add(handler.getHandler());
+        }
+        for (int i = 0; i < count; ++i) {
+            opcodes[i] = code[offsets[i]] & 0xFF;
+            final BranchSite site = branches.get(offsets[i]);
+            if (site != null) {
+                targets[i] = site.getTargets(code);
+                fallThrough[i] = site.getFallThrough();
+                for (int target : targets[i]) {
+                    referenced.add(target);
+                }
+            }
+        }
+        for (int i = 0; i < count; ++i) {
+            fixed[i] = referenced.contains(offsets[i]);
+        }
+    }
+
+    /**
+     * Applies the rewrites until none of them match, and computes the new offsets of the instructions.
+     *
+     * @return true if any instructions were changed
+     */
+    boolean optimize() {
+        boolean optimized = false;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < opcodes.length; ++i) {
+                if (opcodes[i] != -1 && rewrite(i)) {
+                    changed = true;
+                    optimized = true;
+                }
+            }
+        }
+        if (optimized) {
+            int pos = 0;
+            for (int i = 0; i < opcodes.length; ++i) {
+                newOffsets[i] = pos;
+                pos += newLength(i, pos);
+            }
+            newOffsets[opcodes.length] = pos;
+        }
+        return optimized;
+    }
+
+    /**
+     * Writes the optimized code. {@link #optimize()} must have been called first. The new branch sites are added to the given
+     * map.
+     */
+    ByteArrayBuffer write(TreeMap<Integer, BranchSite> branches) {
+        final ByteArrayBuffer out = new ByteArrayBuffer(newOffsets[opcodes.length]);
+        for (int i = 0; i < opcodes.length; ++i) {
+            final int opcode = opcodes[i];
+            if (opcode == -1) {
+                continue;
+            }
+            final int offset = offsets[i];
+            final int newOffset = newOffsets[i];
+            if (targets[i] == null) {
+                if (opcode == (code[offset] & 0xFF)) {
+                    out.write(code, offset, offsets[i + 1] - offset);
+                } else {
+                    out.writeByte(opcode);
+                }
+                continue;
+            }
+            final int[] newTargets = new int[targets[i].length];
+            for (int j = 0; j < newTargets.length; ++j) {
+                newTargets[j] = map(targets[i][j]);
+            }
+            final BranchSite site = new BranchSite(newOffset, map(fallThrough[i]));
+            branches.put(newOffset, site);
+            if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                out.writeByte(opcode);
+                for (int j = BranchSite.padding(newOffset); j > 0; --j) {
+                    out.writeByte(0);
+                }
+                int operands = offset + 1 + BranchSite.padding(offset);
+                out.write(code, operands, offsets[i + 1] - operands);
+                BranchSite.writeTargets(out, newOffset, newTargets);
+            } else if (opcode == Opcode.GOTO_W) {
+                out.writeByte(opcode);
+                out.writeInt(newTargets[0] - newOffset);
+            } else {
+                final int jump = newTargets[0] - newOffset;
+                out.writeByte(opcode);
+                if (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE) {
+                    // this will be widened when the code is written
+                    out.writeShort(0);
+                    site.setTarget(newTargets[0]);
+                } else {
+                    out.writeShort(jump);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the offset in the optimized code of an instruction at the given offset in the original code. Removed
+     * instructions are mapped to the instruction that follows them.
+     */
+    @Override
+    int map(int offset) {
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return newOffsets[low];
+    }
+
+    void mapExceptionTable(List<ExceptionHandler> exceptionTable) {
+        for (ExceptionHandler handler : exceptionTable) {
+            map(handler);
+        }
+    }
+
+    /**
+     * Applies the first rewrite that matches the instruction at the given index
+     */
+    private boolean rewrite(int i) {
+        final int opcode = opcodes[i];
+        final int next = next(i);
+        if (opcode == Opcode.NOP) {
+            return remove(i);
+        } else if (opcode == Opcode.GOTO || opcode == Opcode.GOTO_W) {
+            final int target = instructionAt(targets[i][0]);
+            if (target == next) {
+                return remove(i);
+            } else if (target < opcodes.length && isReturn(opcodes[target])) {
+                opcodes[i] = opcodes[target];
+                targets[i] = null;
+                return true;
+            }
+        } else if (BranchWidener.isConditional(opcode) && next < opcodes.length && opcodes[next] == Opcode.GOTO && !fixed[next]
+                && instructionAt(targets[i][0]) == next(next)) {
+            // ifeq a; goto b; a: becomes ifne b; a:
+            final StackFrame frame = frames.get(targets[i][0]);
+            if (frame != null) {
+                opcodes[i] = BranchWidener.invert(opcode);
+                targets[i] = targets[next];
+                fallThrough[i] = frame;
+                return remove(next);
+            }
+        } else if (next < opcodes.length && !fixed[i] && !fixed[next] && isRedundantPop(opcode, opcodes[next])) {
+            remove(i);
+            return remove(next);
+        }
+        return false;
+    }
+
+    private boolean remove(int i) {
+        if (fixed[i]) {
+            return false;
+        }
+        opcodes[i] = -1;
+        targets[i] = null;
+        return true;
+    }
+
+    /**
+     * returns the index of the next instruction that has not been removed
+     */
+    private int next(int i) {
+        int ret = i + 1;
+        while (ret < opcodes.length && opcodes[ret] == -1) {
+            ++ret;
+        }
+        return ret;
+    }
+
+    /**
+     * returns the index of the instruction at the given offset. Branch targets are always fixed, so this instruction has not
+     * been removed.
+     */
+    private int instructionAt(int offset) {
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int newLength(int i, int newOffset) {
+        final int opcode = opcodes[i];
+        if (opcode == -1) {
+            return 0;
+        }
+        final int length = offsets[i + 1] - offsets[i];
+        if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+            return length - BranchSite.padding(offsets[i]) + BranchSite.padding(newOffset);
+        } else if (opcode != (code[offsets[i]] & 0xFF) && isReturn(opcode)) {
+            return 1;
+        }
+        return length;
+    }
+
+    /**
+     * returns true if the first instruction pushes a value that the second instruction immediately pops, and the first
+     * instruction has no other effects
+     */
+    private static boolean isRedundantPop(int first, int second) {
+        if (second == Opcode.POP) {
+            return first == Opcode.DUP || first == Opcode.ACONST_NULL || (first >= Opcode.ICONST_M1 && first <= Opcode.ICONST_5)
+                    || (first >= Opcode.FCONST_0 && first <= Opcode.FCONST_2) || first == Opcode.BIPUSH
+                    || first == Opcode.SIPUSH || first == Opcode.ILOAD || first == Opcode.FLOAD || first == Opcode.ALOAD
+                    || (first >= Opcode.ILOAD_0 && first <= Opcode.ILOAD_0 + 3)
+                    || (first >= Opcode.FLOAD_0 && first <= Opcode.FLOAD_0 + 3)
+                    || (first >= Opcode.ALOAD_0 && first <= Opcode.ALOAD_3);
+        } else if (second == Opcode.POP2) {
+            return first == Opcode.DUP2 || first == Opcode.LCONST_0 || first == Opcode.LCONST_1 || first == Opcode.DCONST_0
+                    || first == Opcode.DCONST_1 || first == Opcode.LLOAD || first == Opcode.DLOAD
+                    || (first >= Opcode.LLOAD_0 && first <= Opcode.LLOAD_3)
+                    || (first >= Opcode.DLOAD_0 && first <= Opcode.DLOAD_3);
+        }
+        return false;
+    }
+
+    private static boolean isReturn(int opcode) {
+        return opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN;
+    }
+
+    private static boolean isBranch(int opcode) {
+        return (opcode >= Opcode.IFEQ && opcode <= Opcode.LOOKUPSWITCH) || opcode == Opcode.IFNULL
+                || opcode == Opcode.IFNONNULL || opcode == Opcode.GOTO_W || opcode == Opcode.JSR_W;
+    }
+
+    private static void setLength(int length, int... opcodes) {
+        for (int opcode : opcodes) {
+            LENGTHS[opcode] = (byte) length;
+        }
+    }
+}
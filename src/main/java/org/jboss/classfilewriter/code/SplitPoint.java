@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+/**
+ * A location where the operand stack is empty, so the code between it and the next split point can be moved into a helper
+ * method that is passed the local variables as parameters.
+ */
+final class SplitPoint {
+
+    private final int offset;
+
+    /**
+     * The frame at the split point, which determines the parameters of the helper method
+     */
+    private final StackFrame frame;
+
+    /**
+     * true if the code between this split point and the next one does not return, store to a local variable or do anything
+     * else that would behave differently in a helper method
+     */
+    private boolean movable;
+
+    SplitPoint(int offset, StackFrame frame) {
+        this.offset = offset;
+        this.frame = frame;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    StackFrame getFrame() {
+        return frame;
+    }
+
+    boolean isMovable() {
+        return movable;
+    }
+
+    void setMovable(boolean movable) {
+        this.movable = movable;
+    }
+}
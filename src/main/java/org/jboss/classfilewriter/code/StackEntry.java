@@ -21,6 +21,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 
 import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
 import org.jboss.classfilewriter.util.DescriptorUtils;
 
 /**
@@ -69,9 +70,9 @@ public class StackEntry {
         }
         if(type == StackEntryType.OBJECT) {
             if (descriptor.charAt(0) == 'L') {
-                descriptorIndex = pool.addClassEntry(descriptor.substring(1, descriptor.length() - 1)); // strip the L and the ;
+                descriptorIndex = pool.addClass(descriptor.substring(1, descriptor.length() - 1)); // strip the L and the ;
             } else {
-                descriptorIndex = pool.addClassEntry(descriptor); // strip the L and the ;
+                descriptorIndex = pool.addClass(descriptor); // strip the L and the ;
             }
 
         } else {
@@ -141,7 +142,7 @@ public class StackEntry {
     /**
      * writes the entry to the stream
      */
-    public void write(DataOutputStream dstream) throws IOException {
+    public void write(ByteArrayDataOutputStream dstream) throws IOException {
         dstream.writeByte(type.ordinal());
         if (type == StackEntryType.OBJECT) {
             dstream.writeShort(descriptorIndex);
@@ -149,4 +150,16 @@ public class StackEntry {
             dstream.writeShort(newInstructionLocation);
         }
     }
+
+    /**
+     * writes the entry to the stream
+     *
+     * @deprecated use {@link #write(ByteArrayDataOutputStream)}
+     */
+    @Deprecated
+    public void write(DataOutputStream dstream) throws IOException {
+        ByteArrayDataOutputStream data = new ByteArrayDataOutputStream();
+        write(data);
+        dstream.write(data.getBytes());
+    }
 }
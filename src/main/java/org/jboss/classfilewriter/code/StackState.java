@@ -57,7 +57,7 @@ public class StackState {
         this.constPool = constPool;
     }
 
-    private StackState(final List<StackEntry> contents, ConstPool constPool) {
+    StackState(final List<StackEntry> contents, ConstPool constPool) {
         this.contents = contents;
         this.constPool = constPool;
     }
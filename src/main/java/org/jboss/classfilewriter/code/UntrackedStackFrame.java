@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.code;
+
+import java.util.ArrayList;
+
+import org.jboss.classfilewriter.constpool.ConstPool;
+
+/**
+ * The frame used by {@link CodeAttribute} for unchecked code, which ignores every change to the stack and the local variables.
+ * The frames of unchecked code are computed by {@link FrameAnalyzer} once the code is finished, so instructions only need to
+ * write their bytes.
+ */
+final class UntrackedStackFrame extends MutableStackFrame {
+
+    private static final StackEntry TOP = new StackEntry(StackEntryType.TOP, null);
+
+    /**
+     * The snapshot returned for every location, which is replaced by the computed frames
+     */
+    private final StackFrame empty;
+
+    UntrackedStackFrame(ConstPool constPool) {
+        super(constPool);
+        this.empty = new StackFrame(new StackState(constPool), new LocalVariableState(new ArrayList<StackEntry>(0), constPool),
+                StackFrameType.FULL_FRAME);
+    }
+
+    @Override
+    MutableStackFrame reset(StackFrame frame) {
+        return this;
+    }
+
+    @Override
+    StackFrame snapshot() {
+        return empty;
+    }
+
+    @Override
+    int stackSize() {
+        return 0;
+    }
+
+    @Override
+    StackEntry getStackEntry(int index) {
+        return TOP;
+    }
+
+    @Override
+    void push(String type) {
+    }
+
+    @Override
+    void push(StackEntry entry) {
+    }
+
+    @Override
+    void aconstNull() {
+    }
+
+    @Override
+    void pop(int no) {
+    }
+
+    @Override
+    void pop() {
+    }
+
+    @Override
+    void pop2() {
+    }
+
+    @Override
+    void pop3() {
+    }
+
+    @Override
+    void pop4() {
+    }
+
+    @Override
+    void replace(String type) {
+    }
+
+    @Override
+    void pop2push1(String type) {
+    }
+
+    @Override
+    void pop4push1(String type) {
+    }
+
+    @Override
+    void dup() {
+    }
+
+    @Override
+    void dupX1() {
+    }
+
+    @Override
+    void dupX2() {
+    }
+
+    @Override
+    void dup2() {
+    }
+
+    @Override
+    void dup2X1() {
+    }
+
+    @Override
+    void dup2X2() {
+    }
+
+    @Override
+    void swap() {
+    }
+
+    @Override
+    void mergeStack(int pos, StackEntry entry) {
+    }
+
+    @Override
+    int localsSize() {
+        return 0;
+    }
+
+    @Override
+    StackEntry getLocal(int index) {
+        return TOP;
+    }
+
+    @Override
+    void store(int no) {
+    }
+
+    @Override
+    void mergeLocals(int pos, StackEntry entry) {
+    }
+
+    @Override
+    void constructorCall(int initializedValueStackPosition) {
+    }
+}
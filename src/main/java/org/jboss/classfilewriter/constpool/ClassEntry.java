@@ -17,9 +17,10 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
 public class ClassEntry extends ConstPoolEntry {
     private final int utf8Location;
 
@@ -27,12 +28,16 @@ public class ClassEntry extends ConstPoolEntry {
         this.utf8Location = utf8Location;
     }
 
+    public int getUtf8Location() {
+        return utf8Location;
+    }
+
     @Override
     public ConstPoolEntryType getType() {
         return ConstPoolEntryType.CLASS;
     }
 
-    public void writeData(DataOutputStream stream) throws IOException {
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
         stream.writeShort(utf8Location);
     }
 
@@ -17,12 +17,8 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 import org.jboss.classfilewriter.WritableEntry;
 import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
@@ -30,260 +26,617 @@ import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
 
 public class ConstPool implements WritableEntry {
 
-    private final LinkedHashMap<Integer, ConstPoolEntry> entries = new LinkedHashMap<Integer, ConstPoolEntry>();
+    /**
+     * The entries, indexed by their position in the const pool. Index 0 and the second slot taken up by long and double
+     * entries are always null
+     */
+    private ConstPoolEntry[] entries = new ConstPoolEntry[64];
 
-    private final Map<String, Integer> utf8Locations = new HashMap<String, Integer>();
-    private final Map<String, Integer> classLocations = new HashMap<String, Integer>();
-    private final Map<String, Integer> stringLocations = new HashMap<String, Integer>();
-    private final Map<NameAndType, Integer> nameAndTypeLocations = new HashMap<NameAndType, Integer>();
-    private final Map<MemberInfo, Integer> fieldLocations = new HashMap<MemberInfo, Integer>();
-    private final Map<MemberInfo, Integer> methodLocations = new HashMap<MemberInfo, Integer>();
-    private final Map<MemberInfo, Integer> interfaceMethodLocations = new HashMap<MemberInfo, Integer>();
-    private final Map<Integer, Integer> integerLocations = new HashMap<Integer, Integer>();
-    private final Map<Float, Integer> floatLocations = new HashMap<Float, Integer>();
-    private final Map<Long, Integer> longLocations = new HashMap<Long, Integer>();
-    private final Map<Double, Integer> doubleLocations = new HashMap<Double, Integer>();
+    private final StringKeyTable utf8Locations = new StringKeyTable();
+    private final StringKeyTable classLocations = new StringKeyTable();
+    private final StringKeyTable stringLocations = new StringKeyTable();
+    private final StringKeyTable nameAndTypeLocations = new StringKeyTable();
+    private final StringKeyTable fieldLocations = new StringKeyTable();
+    private final StringKeyTable methodLocations = new StringKeyTable();
+    private final StringKeyTable interfaceMethodLocations = new StringKeyTable();
+    private final LongKeyTable integerLocations = new LongKeyTable();
+    private final LongKeyTable floatLocations = new LongKeyTable();
+    private final LongKeyTable longLocations = new LongKeyTable();
+    private final LongKeyTable doubleLocations = new LongKeyTable();
+    /**
+     * keyed by the reference kind in the high 32 bits and the referenced member index in the low 32 bits
+     */
+    private final LongKeyTable methodHandleLocations = new LongKeyTable();
+    /**
+     * keyed by the index of the descriptor
+     */
+    private final LongKeyTable methodTypeLocations = new LongKeyTable();
+    /**
+     * keyed by the bootstrap method index in the high 32 bits and the name and type index in the low 32 bits
+     */
+    private final LongKeyTable invokeDynamicLocations = new LongKeyTable();
+    /**
+     * keyed by the bootstrap method index in the high 32 bits and the name and type index in the low 32 bits
+     */
+    private final LongKeyTable dynamicLocations = new LongKeyTable();
 
+    /**
+     * The next free index, which is also the constant_pool_count field of the class file format
+     */
     private int count = 1;
 
     /**
-     * The constant_pool_count field of the class file format
+     * The number of bytes the entries take up in the class file
      */
-    private Integer constPoolSize = 1;
+    private int length;
 
     public Integer addUtf8Entry(String entry) {
-        if (utf8Locations.containsKey(entry)) {
-            return utf8Locations.get(entry);
-        }
-        final int index = count++;
-        constPoolSize++;
-        entries.put(index, new Utf8Entry(entry));
-        utf8Locations.put(entry, index);
-        return index;
+        return addUtf8(entry);
     }
 
     /**
      * Adds a CONSTANT_Class_info to the const pool. This must be in internal form
      */
     public Integer addClassEntry(String className) {
-        className = className.replace('.', '/');
-        if (classLocations.containsKey(className)) {
-            return classLocations.get(className);
-        }
-        final Integer utf8Location = addUtf8Entry(className);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new ClassEntry(utf8Location));
-        classLocations.put(className, index);
-        return index;
+        return addClass(className);
     }
 
     /**
      * Adds a CONSTANT_String_info to the const pool.
      */
     public Integer addStringEntry(String string) {
-        if (stringLocations.containsKey(string)) {
-            return stringLocations.get(string);
-        }
-        final Integer utf8Location = addUtf8Entry(string);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new StringEntry(utf8Location));
-        stringLocations.put(string, index);
-        return index;
+        return addString(string);
     }
 
     public Integer addIntegerEntry(int entry) {
-        if (integerLocations.containsKey(entry)) {
-            return integerLocations.get(entry);
+        return addInteger(entry);
+    }
+
+    public Integer addFloatEntry(float entry) {
+        return addFloat(entry);
+    }
+
+    public Integer addLongEntry(long entry) {
+        return addLong(entry);
+    }
+
+    public Integer addDoubleEntry(double entry) {
+        return addDouble(entry);
+    }
+
+    public Integer addNameAndTypeEntry(String name, String type) {
+        return addNameAndType(name, type);
+    }
+
+    public Integer addFieldEntry(String className, String fieldName, String fieldType) {
+        return addFieldRef(className, fieldName, fieldType);
+    }
+
+    public Integer addMethodEntry(String className, String methodName, String descriptor) {
+        return addMethodRef(className, methodName, descriptor);
+    }
+
+    public Integer addInterfaceMethodEntry(String className, String methodName, String descriptor) {
+        return addInterfaceMethodRef(className, methodName, descriptor);
+    }
+
+    /**
+     * Adds a CONSTANT_Utf8_info to the const pool, and returns its index
+     */
+    public int addUtf8(String entry) {
+        int index = utf8Locations.get(entry, null, null);
+        if (index == 0) {
+            index = add(new Utf8Entry(entry));
+            length += utf8Length(entry);
+            utf8Locations.put(entry, null, null, index);
         }
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new IntegerEntry(entry));
-        integerLocations.put(entry, index);
         return index;
     }
 
-    public Integer addFloatEntry(float entry) {
-        if (floatLocations.containsKey(entry)) {
-            return floatLocations.get(entry);
+    /**
+     * Adds a CONSTANT_Class_info to the const pool, and returns its index. Class names in dot form are converted to internal
+     * form
+     */
+    public int addClass(String className) {
+        className = className.replace('.', '/');
+        int index = classLocations.get(className, null, null);
+        if (index == 0) {
+            final int utf8Location = addUtf8(className);
+            index = add(new ClassEntry(utf8Location));
+            classLocations.put(className, null, null, index);
         }
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new FloatEntry(entry));
-        floatLocations.put(entry, index);
         return index;
     }
 
-    public Integer addLongEntry(long entry) {
-        if (longLocations.containsKey(entry)) {
-            return longLocations.get(entry);
-        }
-        final Integer index = count++;
-        count++;
-        constPoolSize += 2;
-        entries.put(index, new LongEntry(entry));
-        longLocations.put(entry, index);
+    /**
+     * Adds a CONSTANT_String_info to the const pool, and returns its index
+     */
+    public int addString(String string) {
+        int index = stringLocations.get(string, null, null);
+        if (index == 0) {
+            final int utf8Location = addUtf8(string);
+            index = add(new StringEntry(utf8Location));
+            stringLocations.put(string, null, null, index);
+        }
         return index;
     }
 
-    public Integer addDoubleEntry(double entry) {
-        if (doubleLocations.containsKey(entry)) {
-            return doubleLocations.get(entry);
-        }
-        final Integer index = count++;
-        count++;
-        constPoolSize += 2;
-        entries.put(index, new DoubleEntry(entry));
-        doubleLocations.put(entry, index);
+    /**
+     * Adds a CONSTANT_Integer_info to the const pool, and returns its index
+     */
+    public int addInteger(int entry) {
+        int index = integerLocations.get(entry);
+        if (index == 0) {
+            index = add(new IntegerEntry(entry));
+            integerLocations.put(entry, index);
+        }
         return index;
     }
 
-    public Integer addNameAndTypeEntry(String name, String type) {
-        final NameAndType typeInfo = new NameAndType(name, type);
-        if(nameAndTypeLocations.containsKey(typeInfo)) {
-            return nameAndTypeLocations.get(typeInfo);
-        }
-        final Integer nameIndex = addUtf8Entry(name);
-        final Integer typeIndex = addUtf8Entry(type);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index,new NameAndTypeEntry(nameIndex, typeIndex));
-        nameAndTypeLocations.put(typeInfo, index);
+    /**
+     * Adds a CONSTANT_Float_info to the const pool, and returns its index
+     */
+    public int addFloat(float entry) {
+        final int bits = Float.floatToIntBits(entry);
+        int index = floatLocations.get(bits);
+        if (index == 0) {
+            index = add(new FloatEntry(entry));
+            floatLocations.put(bits, index);
+        }
         return index;
     }
 
-    public Integer addFieldEntry(String className, String fieldName, String fieldType) {
-        final NameAndType nameAndType = new NameAndType(fieldName, fieldType);
-        final MemberInfo field = new MemberInfo(className, nameAndType);
-        if (fieldLocations.containsKey(field)) {
-            return fieldLocations.get(field);
-        }
-        final Integer nameAndTypeIndex = addNameAndTypeEntry(fieldName, fieldType);
-        final Integer classIndex = addClassEntry(className);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new FieldRefEntry(classIndex, nameAndTypeIndex));
-        fieldLocations.put(field, index);
+    /**
+     * Adds a CONSTANT_Long_info to the const pool, and returns its index. Long entries take up two slots in the const pool
+     */
+    public int addLong(long entry) {
+        int index = longLocations.get(entry);
+        if (index == 0) {
+            index = add(new LongEntry(entry));
+            longLocations.put(entry, index);
+        }
         return index;
     }
 
-    public Integer addMethodEntry(String className, String methodName, String descriptor) {
-        final NameAndType nameAndType = new NameAndType(methodName, descriptor);
-        final MemberInfo method = new MemberInfo(className, nameAndType);
-        if (methodLocations.containsKey(method)) {
-            return methodLocations.get(method);
-        }
-        final Integer nameAndTypeIndex = addNameAndTypeEntry(methodName, descriptor);
-        final Integer classIndex = addClassEntry(className);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new MethodRefEntry(classIndex, nameAndTypeIndex));
-        methodLocations.put(method, index);
+    /**
+     * Adds a CONSTANT_Double_info to the const pool, and returns its index. Double entries take up two slots in the const pool
+     */
+    public int addDouble(double entry) {
+        final long bits = Double.doubleToLongBits(entry);
+        int index = doubleLocations.get(bits);
+        if (index == 0) {
+            index = add(new DoubleEntry(entry));
+            doubleLocations.put(bits, index);
+        }
         return index;
     }
 
-    public Integer addInterfaceMethodEntry(String className, String methodName, String descriptor) {
-        final NameAndType nameAndType = new NameAndType(methodName, descriptor);
-        final MemberInfo method = new MemberInfo(className, nameAndType);
-        if (interfaceMethodLocations.containsKey(method)) {
-            return interfaceMethodLocations.get(method);
-        }
-        final Integer nameAndTypeIndex = addNameAndTypeEntry(methodName, descriptor);
-        final Integer classIndex = addClassEntry(className);
-        final Integer index = count++;
-        constPoolSize++;
-        entries.put(index, new InterfaceMethodRefEntry(classIndex, nameAndTypeIndex));
-        interfaceMethodLocations.put(method, index);
+    /**
+     * Adds a CONSTANT_NameAndType_info to the const pool, and returns its index
+     */
+    public int addNameAndType(String name, String type) {
+        int index = nameAndTypeLocations.get(name, type, null);
+        if (index == 0) {
+            final int nameIndex = addUtf8(name);
+            final int typeIndex = addUtf8(type);
+            index = add(new NameAndTypeEntry(nameIndex, typeIndex));
+            nameAndTypeLocations.put(name, type, null, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_Fieldref_info to the const pool, and returns its index
+     */
+    public int addFieldRef(String className, String fieldName, String fieldType) {
+        className = className.replace('.', '/');
+        int index = fieldLocations.get(className, fieldName, fieldType);
+        if (index == 0) {
+            final int nameAndTypeIndex = addNameAndType(fieldName, fieldType);
+            final int classIndex = addClass(className);
+            index = add(new FieldRefEntry(classIndex, nameAndTypeIndex));
+            fieldLocations.put(className, fieldName, fieldType, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_Methodref_info to the const pool, and returns its index
+     */
+    public int addMethodRef(String className, String methodName, String descriptor) {
+        className = className.replace('.', '/');
+        int index = methodLocations.get(className, methodName, descriptor);
+        if (index == 0) {
+            final int nameAndTypeIndex = addNameAndType(methodName, descriptor);
+            final int classIndex = addClass(className);
+            index = add(new MethodRefEntry(classIndex, nameAndTypeIndex));
+            methodLocations.put(className, methodName, descriptor, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_InterfaceMethodref_info to the const pool, and returns its index
+     */
+    public int addInterfaceMethodRef(String className, String methodName, String descriptor) {
+        className = className.replace('.', '/');
+        int index = interfaceMethodLocations.get(className, methodName, descriptor);
+        if (index == 0) {
+            final int nameAndTypeIndex = addNameAndType(methodName, descriptor);
+            final int classIndex = addClass(className);
+            index = add(new InterfaceMethodRefEntry(classIndex, nameAndTypeIndex));
+            interfaceMethodLocations.put(className, methodName, descriptor, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_MethodHandle_info to the const pool, and returns its index. The handle refers to a field for the field
+     * kinds, an interface method for {@link MethodHandleKind#INVOKE_INTERFACE}, and a class method otherwise.
+     */
+    public int addMethodHandle(MethodHandleKind kind, String className, String name, String descriptor) {
+        return addMethodHandle(kind, className, name, descriptor, kind == MethodHandleKind.INVOKE_INTERFACE);
+    }
+
+    /**
+     * Adds a CONSTANT_MethodHandle_info to the const pool, and returns its index.
+     *
+     * @param isInterface true if the class is an interface, which is needed for {@link MethodHandleKind#INVOKE_STATIC} and
+     *        {@link MethodHandleKind#INVOKE_SPECIAL} handles to interface methods
+     */
+    public int addMethodHandle(MethodHandleKind kind, String className, String name, String descriptor, boolean isInterface) {
+        final int referenceIndex;
+        if (kind.isField()) {
+            referenceIndex = addFieldRef(className, name, descriptor);
+        } else if (isInterface) {
+            if (kind == MethodHandleKind.INVOKE_VIRTUAL || kind == MethodHandleKind.NEW_INVOKE_SPECIAL) {
+                throw new IllegalArgumentException(kind + " method handles cannot refer to interface methods");
+            }
+            referenceIndex = addInterfaceMethodRef(className, name, descriptor);
+        } else {
+            if (kind == MethodHandleKind.INVOKE_INTERFACE) {
+                throw new IllegalArgumentException(kind + " method handles must refer to interface methods");
+            }
+            referenceIndex = addMethodRef(className, name, descriptor);
+        }
+        final long key = ((long) kind.getReferenceKind() << 32) | referenceIndex;
+        int index = methodHandleLocations.get(key);
+        if (index == 0) {
+            index = add(new MethodHandleEntry(kind, referenceIndex));
+            methodHandleLocations.put(key, index);
+        }
         return index;
     }
 
+    /**
+     * Adds a CONSTANT_MethodType_info to the const pool, and returns its index
+     */
+    public int addMethodType(String descriptor) {
+        final int descriptorIndex = addUtf8(descriptor);
+        int index = methodTypeLocations.get(descriptorIndex);
+        if (index == 0) {
+            index = add(new MethodTypeEntry(descriptorIndex));
+            methodTypeLocations.put(descriptorIndex, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_InvokeDynamic_info to the const pool, and returns its index
+     *
+     * @param bootstrapMethodIndex the index of the bootstrap method in the BootstrapMethods attribute of the class
+     * @param name the name of the call site
+     * @param descriptor the method descriptor of the call site
+     */
+    public int addInvokeDynamic(int bootstrapMethodIndex, String name, String descriptor) {
+        final int nameAndTypeIndex = addNameAndType(name, descriptor);
+        final long key = ((long) bootstrapMethodIndex << 32) | nameAndTypeIndex;
+        int index = invokeDynamicLocations.get(key);
+        if (index == 0) {
+            index = add(new InvokeDynamicEntry(bootstrapMethodIndex, nameAndTypeIndex));
+            invokeDynamicLocations.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a CONSTANT_Dynamic_info to the const pool, and returns its index. The entry only takes up a single slot in the
+     * const pool, even if the constant is a long or a double.
+     *
+     * @param bootstrapMethodIndex the index of the bootstrap method in the BootstrapMethods attribute of the class
+     * @param name the name of the constant
+     * @param descriptor the field descriptor of the constant
+     */
+    public int addDynamic(int bootstrapMethodIndex, String name, String descriptor) {
+        final int nameAndTypeIndex = addNameAndType(name, descriptor);
+        final long key = ((long) bootstrapMethodIndex << 32) | nameAndTypeIndex;
+        int index = dynamicLocations.get(key);
+        if (index == 0) {
+            index = add(new DynamicEntry(bootstrapMethodIndex, nameAndTypeIndex));
+            dynamicLocations.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds an entry to the end of the const pool
+     *
+     * @return the index of the entry
+     */
+    private int add(ConstPoolEntry entry) {
+        final int index = count;
+        final int slots = entry.getType().getSlots();
+        if (index + slots > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(index + slots, entries.length * 2));
+        }
+        entries[index] = entry;
+        count += slots;
+        length += entry.getType().getLength();
+        return index;
+    }
+
+    /**
+     * Returns the type of the entry at the given index
+     *
+     * @throws IllegalArgumentException if there is no entry at the index
+     */
+    public ConstPoolEntryType getEntryType(int index) {
+        return entry(index).getType();
+    }
+
+    /**
+     * Returns the string held by the CONSTANT_Utf8_info at the given index
+     */
+    public String getUtf8(int index) {
+        return ((Utf8Entry) entry(index, ConstPoolEntryType.UTF8)).getData();
+    }
+
+    /**
+     * Returns the name, in internal form, of the CONSTANT_Class_info at the given index
+     */
+    public String getClassName(int index) {
+        return getUtf8(((ClassEntry) entry(index, ConstPoolEntryType.CLASS)).getUtf8Location());
+    }
+
+    /**
+     * Returns the name of the field, method, invokedynamic call site or dynamic constant at the given index
+     */
+    public String getMemberName(int index) {
+        return getUtf8(nameAndType(index).getNameIndex());
+    }
+
+    /**
+     * Returns the descriptor of the field, method, invokedynamic call site or dynamic constant at the given index
+     */
+    public String getMemberDescriptor(int index) {
+        return getUtf8(nameAndType(index).getDescriptorIndex());
+    }
+
+    private NameAndTypeEntry nameAndType(int index) {
+        final ConstPoolEntry entry = entry(index);
+        final int nameAndTypeIndex;
+        switch (entry.getType()) {
+            case FIELDREF:
+                nameAndTypeIndex = ((FieldRefEntry) entry).getNameAndTypeIndex();
+                break;
+            case METHODREF:
+                nameAndTypeIndex = ((MethodRefEntry) entry).getNameAndTypeIndex();
+                break;
+            case INTERFACE_METHODREF:
+                nameAndTypeIndex = ((InterfaceMethodRefEntry) entry).getNameAndTypeIndex();
+                break;
+            case INVOKE_DYNAMIC:
+                nameAndTypeIndex = ((InvokeDynamicEntry) entry).getNameAndTypeIndex();
+                break;
+            case DYNAMIC:
+                nameAndTypeIndex = ((DynamicEntry) entry).getNameAndTypeIndex();
+                break;
+            default:
+                throw new IllegalArgumentException("Const pool entry " + index + " is a " + entry.getType()
+                        + ", not a member reference");
+        }
+        return (NameAndTypeEntry) entry(nameAndTypeIndex, ConstPoolEntryType.NAME_AND_TYPE);
+    }
+
+    private ConstPoolEntry entry(int index) {
+        final ConstPoolEntry entry = index > 0 && index < count ? entries[index] : null;
+        if (entry == null) {
+            throw new IllegalArgumentException("There is no const pool entry at index " + index);
+        }
+        return entry;
+    }
+
+    private ConstPoolEntry entry(int index, ConstPoolEntryType type) {
+        final ConstPoolEntry entry = entry(index);
+        if (entry.getType() != type) {
+            throw new IllegalArgumentException("Const pool entry " + index + " is a " + entry.getType() + ", not a " + type);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of bytes the const pool will take up when written, including the count field.
+     */
+    public int getLength() {
+        return length + 2;
+    }
+
+    /**
+     * The length of a string in the modified UTF-8 encoding used by the class file format
+     */
+    private static int utf8Length(String string) {
+        final int len = string.length();
+        int ret = len;
+        for (int i = 0; i < len; ++i) {
+            char c = string.charAt(i);
+            if (c >= 0x800) {
+                ret += 2;
+            } else if (c >= 0x80 || c == 0) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
     public void write(ByteArrayDataOutputStream stream) throws IOException {
-        stream.writeShort(constPoolSize);
-        for (Entry<Integer, ConstPoolEntry> entry : entries.entrySet()) {
-            entry.getValue().write(stream);
+        stream.writeShort(count);
+        for (int i = 1; i < count; ++i) {
+            final ConstPoolEntry entry = entries[i];
+            if (entry != null) {
+                entry.write(stream);
+            }
         }
     }
 
-    private static final class NameAndType {
-        private final String name, type;
+    /**
+     * Open addressing hash table that maps up to three strings to a const pool index. Lookups do not allocate, which avoids
+     * creating a key object for every lookup of a member reference.
+     */
+    private static final class StringKeyTable {
+
+        private String[] keys1 = new String[16];
+        private String[] keys2 = new String[16];
+        private String[] keys3 = new String[16];
+        private int[] hashes = new int[16];
 
-        public NameAndType(String name, String type) {
-            this.name = name;
-            this.type = type;
+        /**
+         * The const pool indexes, 0 represents an empty slot as it is never a valid index
+         */
+        private int[] values = new int[16];
+
+        private int size;
+
+        /**
+         * @return the index, or 0 if the key is not present
+         */
+        int get(String k1, String k2, String k3) {
+            final int hash = hash(k1, k2, k3);
+            final int mask = values.length - 1;
+            for (int i = spread(hash) & mask; values[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash && k1.equals(keys1[i]) && equal(k2, keys2[i]) && equal(k3, keys3[i])) {
+                    return values[i];
+                }
+            }
+            return 0;
         }
 
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((name == null) ? 0 : name.hashCode());
-            result = prime * result + ((type == null) ? 0 : type.hashCode());
-            return result;
+        void put(String k1, String k2, String k3, int value) {
+            if ((size + 1) * 2 > values.length) {
+                resize();
+            }
+            insert(k1, k2, k3, hash(k1, k2, k3), value);
+            size++;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            NameAndType other = (NameAndType) obj;
-            if (name == null) {
-                if (other.name != null)
-                    return false;
-            } else if (!name.equals(other.name))
-                return false;
-            if (type == null) {
-                if (other.type != null)
-                    return false;
-            } else if (!type.equals(other.type))
-                return false;
-            return true;
-        }
-    }
-
-    private static class MemberInfo {
-        private final String className;
-        private final NameAndType nameAndType;
-
-        public MemberInfo(String className,NameAndType nameAndType) {
-            this.className = className;
-            this.nameAndType = nameAndType;
-        }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((className == null) ? 0 : className.hashCode());
-            result = prime * result + ((nameAndType == null) ? 0 : nameAndType.hashCode());
+        private void insert(String k1, String k2, String k3, int hash, int value) {
+            final int mask = values.length - 1;
+            int i = spread(hash) & mask;
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys1[i] = k1;
+            keys2[i] = k2;
+            keys3[i] = k3;
+            hashes[i] = hash;
+            values[i] = value;
+        }
+
+        private void resize() {
+            final String[] oldKeys1 = keys1, oldKeys2 = keys2, oldKeys3 = keys3;
+            final int[] oldHashes = hashes, oldValues = values;
+            final int capacity = oldValues.length * 2;
+            keys1 = new String[capacity];
+            keys2 = new String[capacity];
+            keys3 = new String[capacity];
+            hashes = new int[capacity];
+            values = new int[capacity];
+            for (int i = 0; i < oldValues.length; ++i) {
+                if (oldValues[i] != 0) {
+                    insert(oldKeys1[i], oldKeys2[i], oldKeys3[i], oldHashes[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(String k1, String k2, String k3) {
+            int result = k1.hashCode();
+            result = 31 * result + (k2 == null ? 0 : k2.hashCode());
+            result = 31 * result + (k3 == null ? 0 : k3.hashCode());
             return result;
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            MemberInfo other = (MemberInfo) obj;
-            if (className == null) {
-                if (other.className != null)
-                    return false;
-            } else if (!className.equals(other.className))
-                return false;
-            if (nameAndType == null) {
-                if (other.nameAndType != null)
-                    return false;
-            } else if (!nameAndType.equals(other.nameAndType))
-                return false;
-            return true;
+        private static boolean equal(String s1, String s2) {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+    }
+
+    /**
+     * Open addressing hash table that maps numeric constants to a const pool index without boxing. Float and double values are
+     * stored using their bit representation.
+     */
+    private static final class LongKeyTable {
+
+        private long[] keys = new long[16];
+
+        /**
+         * The const pool indexes, 0 represents an empty slot as it is never a valid index
+         */
+        private int[] values = new int[16];
+
+        private int size;
+
+        /**
+         * @return the index, or 0 if the key is not present
+         */
+        int get(long key) {
+            final int mask = values.length - 1;
+            for (int i = spread(hash(key)) & mask; values[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > values.length) {
+                resize();
+            }
+            insert(key, value);
+            size++;
+        }
+
+        private void insert(long key, int value) {
+            final int mask = values.length - 1;
+            int i = spread(hash(key)) & mask;
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int i = 0; i < oldValues.length; ++i) {
+                if (oldValues[i] != 0) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            return (int) (key ^ (key >>> 32));
         }
+    }
 
+    /**
+     * Spreads the bits of the hash code, so that hashes that only differ in the higher bits do not collide in small tables
+     */
+    private static int spread(int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 }
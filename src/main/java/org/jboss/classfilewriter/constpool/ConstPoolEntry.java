@@ -31,7 +31,26 @@ public abstract class ConstPoolEntry implements WritableEntry {
         writeData(stream);
     }
 
-    public abstract void writeData(DataOutputStream stream) throws IOException;
+    /**
+     * Writes the entry without its tag. Entries that only override {@link #writeData(DataOutputStream)} are written through a
+     * {@link DataOutputStream} that wraps the stream.
+     */
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        writeData(new DataOutputStream(stream));
+    }
+
+    /**
+     * Writes the entry without its tag. Entries must override either this method or
+     * {@link #writeData(ByteArrayDataOutputStream)}.
+     *
+     * @deprecated override and call {@link #writeData(ByteArrayDataOutputStream)} instead, which does not need to be copied
+     */
+    @Deprecated
+    public void writeData(DataOutputStream stream) throws IOException {
+        ByteArrayDataOutputStream data = new ByteArrayDataOutputStream();
+        writeData(data);
+        stream.write(data.getBytes());
+    }
 
     public abstract ConstPoolEntryType getType();
 }
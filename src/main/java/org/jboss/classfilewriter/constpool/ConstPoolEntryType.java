@@ -18,24 +18,30 @@
 package org.jboss.classfilewriter.constpool;
 
 public enum ConstPoolEntryType {
-    CLASS(7,1),
-    FIELDREF(9,1),
-    METHODREF(10,1),
-    INTERFACE_METHODREF(11,1),
-    STRING(8,1),
-    INTEGER(3,1),
-    FLOAT(4,1),
-    LONG(5,2),
-    DOUBLE(6,2),
-    NAME_AND_TYPE(12,1),
-    UTF8(1,1);
+    CLASS(7,1,3),
+    FIELDREF(9,1,5),
+    METHODREF(10,1,5),
+    INTERFACE_METHODREF(11,1,5),
+    STRING(8,1,3),
+    INTEGER(3,1,5),
+    FLOAT(4,1,5),
+    LONG(5,2,9),
+    DOUBLE(6,2,9),
+    NAME_AND_TYPE(12,1,5),
+    UTF8(1,1,3),
+    METHOD_HANDLE(15,1,4),
+    METHOD_TYPE(16,1,3),
+    DYNAMIC(17,1,5),
+    INVOKE_DYNAMIC(18,1,5);
 
     private final int tag;
     private final int slots;
+    private final int length;
 
-    ConstPoolEntryType(int tag, int slots) {
+    ConstPoolEntryType(int tag, int slots, int length) {
         this.tag = tag;
         this.slots = slots;
+        this.length = length;
     }
 
     public int getTag() {
@@ -48,4 +54,12 @@ public enum ConstPoolEntryType {
     public int getSlots() {
         return slots;
     }
+
+    /**
+     * The number of bytes this takes up in the class file, including the tag. For UTF8 entries this does not include the
+     * string data itself.
+     */
+    public int getLength() {
+        return length;
+    }
 }
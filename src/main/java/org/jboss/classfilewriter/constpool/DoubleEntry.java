@@ -17,9 +17,10 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
 public class DoubleEntry extends ConstPoolEntry {
 
     private final double value;
@@ -34,7 +35,7 @@ public class DoubleEntry extends ConstPoolEntry {
     }
 
     @Override
-    public void writeData(DataOutputStream stream) throws IOException {
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
         stream.writeDouble(value);
     }
 
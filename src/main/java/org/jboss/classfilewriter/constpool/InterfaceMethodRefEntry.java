@@ -17,9 +17,10 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
 public class InterfaceMethodRefEntry extends ConstPoolEntry {
 
     private final int classIndex;
@@ -30,13 +31,21 @@ public class InterfaceMethodRefEntry extends ConstPoolEntry {
         this.nameAndTypeIndex = nameAndTypeIndex;
     }
 
+    public int getClassIndex() {
+        return classIndex;
+    }
+
+    public int getNameAndTypeIndex() {
+        return nameAndTypeIndex;
+    }
+
     @Override
     public ConstPoolEntryType getType() {
         return ConstPoolEntryType.INTERFACE_METHODREF;
     }
 
     @Override
-    public void writeData(DataOutputStream stream) throws IOException {
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
         stream.writeShort(classIndex);
         stream.writeShort(nameAndTypeIndex);
     }
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.constpool;
+
+import java.io.IOException;
+
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+public class InvokeDynamicEntry extends ConstPoolEntry {
+
+    private final int bootstrapMethodIndex;
+    private final int nameAndTypeIndex;
+
+    /**
+     * @param bootstrapMethodIndex the index into the BootstrapMethods attribute of the class
+     * @param nameAndTypeIndex the const pool index of the name and method descriptor of the call site
+     */
+    public InvokeDynamicEntry(int bootstrapMethodIndex, int nameAndTypeIndex) {
+        this.bootstrapMethodIndex = bootstrapMethodIndex;
+        this.nameAndTypeIndex = nameAndTypeIndex;
+    }
+
+    public int getNameAndTypeIndex() {
+        return nameAndTypeIndex;
+    }
+
+    @Override
+    public ConstPoolEntryType getType() {
+        return ConstPoolEntryType.INVOKE_DYNAMIC;
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        stream.writeShort(bootstrapMethodIndex);
+        stream.writeShort(nameAndTypeIndex);
+    }
+
+}
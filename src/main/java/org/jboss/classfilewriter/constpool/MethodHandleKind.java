@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.constpool;
+
+/**
+ * The kinds of method handle that can be stored in a CONSTANT_MethodHandle_info entry
+ */
+public enum MethodHandleKind {
+    GET_FIELD(1),
+    GET_STATIC(2),
+    PUT_FIELD(3),
+    PUT_STATIC(4),
+    INVOKE_VIRTUAL(5),
+    INVOKE_STATIC(6),
+    INVOKE_SPECIAL(7),
+    NEW_INVOKE_SPECIAL(8),
+    INVOKE_INTERFACE(9);
+
+    private final int referenceKind;
+
+    MethodHandleKind(int referenceKind) {
+        this.referenceKind = referenceKind;
+    }
+
+    /**
+     * The reference_kind value that is written to the class file
+     */
+    public int getReferenceKind() {
+        return referenceKind;
+    }
+
+    /**
+     * Returns true if the handle refers to a field rather than a method
+     */
+    public boolean isField() {
+        return referenceKind <= PUT_STATIC.referenceKind;
+    }
+}
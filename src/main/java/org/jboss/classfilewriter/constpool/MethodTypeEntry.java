@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.constpool;
+
+import java.io.IOException;
+
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
+public class MethodTypeEntry extends ConstPoolEntry {
+
+    private final int descriptorIndex;
+
+    public MethodTypeEntry(int descriptorIndex) {
+        this.descriptorIndex = descriptorIndex;
+    }
+
+    @Override
+    public ConstPoolEntryType getType() {
+        return ConstPoolEntryType.METHOD_TYPE;
+    }
+
+    @Override
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
+        stream.writeShort(descriptorIndex);
+    }
+
+}
@@ -17,9 +17,10 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
 public class NameAndTypeEntry extends ConstPoolEntry {
 
     private final int nameIndex;
@@ -30,13 +31,21 @@ public class NameAndTypeEntry extends ConstPoolEntry {
         this.descriptorIndex = descriptorIndex;
     }
 
+    public int getNameIndex() {
+        return nameIndex;
+    }
+
+    public int getDescriptorIndex() {
+        return descriptorIndex;
+    }
+
     @Override
     public ConstPoolEntryType getType() {
         return ConstPoolEntryType.NAME_AND_TYPE;
     }
 
     @Override
-    public void writeData(DataOutputStream stream) throws IOException {
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
         stream.writeShort(nameIndex);
         stream.writeShort(descriptorIndex);
     }
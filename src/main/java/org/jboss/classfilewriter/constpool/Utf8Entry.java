@@ -17,9 +17,10 @@
  */
 package org.jboss.classfilewriter.constpool;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+
 public class Utf8Entry extends ConstPoolEntry {
 
     private final String data;
@@ -33,7 +34,7 @@ public class Utf8Entry extends ConstPoolEntry {
         return ConstPoolEntryType.UTF8;
     }
 
-    public void writeData(DataOutputStream stream) throws IOException {
+    public void writeData(ByteArrayDataOutputStream stream) throws IOException {
         stream.writeUTF(data);
     }
 
@@ -0,0 +1,260 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that encodes values directly into its backing array.
+ * <p/>
+ * Unlike {@link java.io.ByteArrayOutputStream} this is not synchronized, allows values that have already been written to be
+ * overwritten, and can hand out its backing array if it has been sized exactly.
+ * <p/>
+ * A buffer can also write into a region of an existing array. If more data is written than fits in the region, the data is
+ * moved to a new array, which can be detected by comparing {@link #array()} with the original array.
+ */
+public final class ByteArrayBuffer extends OutputStream {
+
+    private byte[] buffer;
+
+    /**
+     * the index in {@link #buffer} of the first byte
+     */
+    private int offset;
+
+    /**
+     * the index in {@link #buffer} after the last byte that may be written
+     */
+    private int limit;
+
+    private int size;
+
+    public ByteArrayBuffer() {
+        this(64);
+    }
+
+    /**
+     * @param initialCapacity the expected size of the data
+     */
+    public ByteArrayBuffer(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+        limit = buffer.length;
+    }
+
+    /**
+     * Creates a buffer that writes into the given region of an existing array
+     *
+     * @param array the array to write to
+     * @param offset the index of the first byte of the region
+     * @param length the length of the region
+     */
+    public ByteArrayBuffer(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("Region " + offset + "+" + length + " is outside of an array of length "
+                    + array.length);
+        }
+        this.buffer = array;
+        this.offset = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public void write(int b) {
+        writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        final int pos = reserve(len);
+        System.arraycopy(b, off, buffer, pos, len);
+    }
+
+    public void writeByte(int b) {
+        final int pos = reserve(1);
+        buffer[pos] = (byte) b;
+    }
+
+    public void writeShort(int v) {
+        final int pos = reserve(2);
+        buffer[pos] = (byte) (v >> 8);
+        buffer[pos + 1] = (byte) v;
+    }
+
+    public void writeInt(int v) {
+        final int pos = reserve(4);
+        buffer[pos] = (byte) (v >> 24);
+        buffer[pos + 1] = (byte) (v >> 16);
+        buffer[pos + 2] = (byte) (v >> 8);
+        buffer[pos + 3] = (byte) v;
+    }
+
+    public void writeLong(long v) {
+        final int pos = reserve(8);
+        buffer[pos] = (byte) (v >> 56);
+        buffer[pos + 1] = (byte) (v >> 48);
+        buffer[pos + 2] = (byte) (v >> 40);
+        buffer[pos + 3] = (byte) (v >> 32);
+        buffer[pos + 4] = (byte) (v >> 24);
+        buffer[pos + 5] = (byte) (v >> 16);
+        buffer[pos + 6] = (byte) (v >> 8);
+        buffer[pos + 7] = (byte) v;
+    }
+
+    /**
+     * Writes the string in the modified UTF-8 format used by {@link java.io.DataOutput#writeUTF(String)}, preceded by its
+     * 16 bit length
+     *
+     * @throws UTFDataFormatException if the encoded string is longer than 65535 bytes
+     */
+    public void writeUTF(String value) throws UTFDataFormatException {
+        final int length = value.length();
+        int utfLength = length;
+        for (int i = 0; i < length; ++i) {
+            final char c = value.charAt(i);
+            if (c >= 0x800) {
+                utfLength += 2;
+            } else if (c >= 0x80 || c == 0) {
+                utfLength++;
+            }
+        }
+        if (utfLength > 0xFFFF) {
+            throw new UTFDataFormatException("Encoded string is too long: " + utfLength + " bytes");
+        }
+        int pos = reserve(2 + utfLength);
+        final byte[] buffer = this.buffer;
+        buffer[pos++] = (byte) (utfLength >> 8);
+        buffer[pos++] = (byte) utfLength;
+        if (utfLength == length) {
+            for (int i = 0; i < length; ++i) {
+                buffer[pos++] = (byte) value.charAt(i);
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                final char c = value.charAt(i);
+                if (c < 0x80 && c != 0) {
+                    buffer[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * overwrites a 16 bit value that has already been written
+     */
+    public void putShort(int position, int v) {
+        checkPosition(position, 2);
+        final int pos = offset + position;
+        buffer[pos] = (byte) (v >> 8);
+        buffer[pos + 1] = (byte) v;
+    }
+
+    /**
+     * overwrites a 32 bit value that has already been written
+     */
+    public void putInt(int position, int v) {
+        checkPosition(position, 4);
+        final int pos = offset + position;
+        buffer[pos] = (byte) (v >> 24);
+        buffer[pos + 1] = (byte) (v >> 16);
+        buffer[pos + 2] = (byte) (v >> 8);
+        buffer[pos + 3] = (byte) v;
+    }
+
+    /**
+     * Returns the byte at the given position
+     */
+    public int get(int position) {
+        checkPosition(position, 1);
+        return buffer[offset + position] & 0xFF;
+    }
+
+    /**
+     * @return the number of bytes that have been written
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array. Only the {@link #size()} bytes starting at {@link #arrayOffset()} are valid, and the array
+     * may be replaced if more data is written.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * Returns the index of the first byte in the backing array, which is only non zero for a buffer that writes into a region
+     * of an existing array
+     */
+    public int arrayOffset() {
+        return offset;
+    }
+
+    /**
+     * Writes the contents of this buffer to the given stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, offset, size);
+    }
+
+    /**
+     * Returns the written data. If the buffer is exactly full the backing array is returned without copying, so the buffer
+     * should not be written to afterwards.
+     */
+    public byte[] toByteArray() {
+        if (offset == 0 && size == buffer.length) {
+            return buffer;
+        }
+        return Arrays.copyOfRange(buffer, offset, offset + size);
+    }
+
+    /**
+     * Reserves space for <code>length</code> bytes at the end of the data, moving the data to a larger array if required
+     *
+     * @return the index in the backing array of the reserved space
+     */
+    private int reserve(int length) {
+        if (offset + size + length > limit) {
+            final byte[] grown = new byte[Math.max(size + length, (limit - offset) << 1)];
+            System.arraycopy(buffer, offset, grown, 0, size);
+            buffer = grown;
+            offset = 0;
+            limit = grown.length;
+        }
+        final int pos = offset + size;
+        size += length;
+        return pos;
+    }
+
+    private void checkPosition(int position, int length) {
+        if (position < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("Position " + position + " is outside of the written data, size " + size);
+        }
+    }
+}
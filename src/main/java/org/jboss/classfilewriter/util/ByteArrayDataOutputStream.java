@@ -18,67 +18,239 @@
 package org.jboss.classfilewriter.util;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataOutput;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 
 /**
- * DataOutputStream sub class that allows for the lazy writing of length values.
+ * Output stream that encodes values in the big endian format of {@link DataOutput} directly into a {@link ByteArrayBuffer},
+ * and allows for the lazy writing of length values.
  * <p/>
- * These length values are inserted into the bytes when then final bytes are read.
+ * Length values are patched in place in the buffer when {@link LazySize#markEnd()} is called.
+ * <p/>
+ * A 64 bit FNV-1a hash of the data is computed as it is written. Data is hashed as soon as no length value before it is
+ * pending, so most of a class file is hashed while it is still in the cache rather than in a separate pass. Values that are
+ * patched directly in the buffer rather than through a {@link LazySize} are not reflected in the hash.
+ * <p/>
+ * This is not a {@link java.io.DataOutputStream}, code that needs one can wrap this stream, which is written through
+ * directly.
  * @author Stuart Douglas
  */
-public class ByteArrayDataOutputStream extends DataOutputStream {
+public class ByteArrayDataOutputStream extends OutputStream implements DataOutput {
+
+    /**
+     * the initial value of the 64 bit FNV-1a hash
+     */
+    public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    public static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ByteArrayBuffer buffer;
+
+    private long contentHash = FNV_OFFSET_BASIS;
+
+    /**
+     * the number of bytes that have been hashed
+     */
+    private int hashed;
 
+    /**
+     * the number of length values that have been written but not marked as ended
+     */
+    private int pendingSizes;
+
+    /**
+     * the stream that the data is copied to on {@link #flush()}, if this was created with the deprecated constructor
+     */
     private final ByteArrayOutputStream bytes;
-    private final List<LazySizeImpl> sizes = new ArrayList<LazySizeImpl>();
 
+    /**
+     * the number of bytes that have been copied to {@link #bytes}
+     */
+    private int copied;
+
+    /**
+     * @deprecated the data is encoded into an internal buffer and only copied to the given stream on {@link #flush()} or
+     *             {@link #close()}, use {@link #getBytes()} or {@link #ByteArrayDataOutputStream(ByteArrayBuffer)} instead
+     */
+    @Deprecated
     public ByteArrayDataOutputStream(ByteArrayOutputStream bytes) {
-        super(bytes);
+        this.buffer = new ByteArrayBuffer();
         this.bytes = bytes;
     }
 
     public ByteArrayDataOutputStream() {
-        this(new ByteArrayOutputStream());
+        this(new ByteArrayBuffer());
+    }
+
+    /**
+     * @param expectedSize the expected number of bytes that will be written
+     */
+    public ByteArrayDataOutputStream(int expectedSize) {
+        this(new ByteArrayBuffer(expectedSize));
+    }
+
+    public ByteArrayDataOutputStream(ByteArrayBuffer buffer) {
+        this.buffer = buffer;
+        this.bytes = null;
+    }
+
+    @Override
+    public void write(int b) {
+        buffer.writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+        buffer.write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        buffer.write(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+        buffer.writeByte(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) {
+        buffer.writeByte(v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+        buffer.writeShort(v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+        buffer.writeShort(v);
     }
 
-    public LazySize writeSize() throws IOException {
-        LazySizeImpl sv = new LazySizeImpl(this.written);
-        sizes.add(sv);
-        writeInt(0);
+    @Override
+    public void writeInt(int v) {
+        buffer.writeInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+        buffer.writeLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+        buffer.writeInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v) {
+        buffer.writeLong(Double.doubleToLongBits(v));
+    }
+
+    @Override
+    public void writeBytes(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            buffer.writeByte(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeChars(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            buffer.writeShort(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeUTF(String s) throws UTFDataFormatException {
+        buffer.writeUTF(s);
+    }
+
+    /**
+     * @return the number of bytes that have been written
+     */
+    public final int size() {
+        return buffer.size();
+    }
+
+    public LazySize writeSize() {
+        if (pendingSizes++ == 0) {
+            hashTo(buffer.size());
+        }
+        LazySizeImpl sv = new LazySizeImpl(buffer.size());
+        buffer.writeInt(0);
         return sv;
     }
 
-    public byte[] getBytes() {
-        byte[] data = bytes.toByteArray();
-        for (final LazySizeImpl i : sizes) {
-            overwriteInt(data, i.position, i.value);
+    /**
+     * Returns the 64 bit FNV-1a hash of the data written so far
+     *
+     * @throws IllegalStateException if a length value has not been marked as ended
+     */
+    public long getContentHash() {
+        if (pendingSizes != 0) {
+            throw new IllegalStateException(pendingSizes + " length values have not been marked as ended");
+        }
+        hashTo(buffer.size());
+        return contentHash;
+    }
+
+    /**
+     * hashes the data up to the given position, which must not have changed since it was written
+     */
+    private void hashTo(int end) {
+        final byte[] data = buffer.array();
+        final int offset = buffer.arrayOffset();
+        long hash = contentHash;
+        for (int i = offset + hashed; i < offset + end; ++i) {
+            hash ^= data[i] & 0xFF;
+            hash *= FNV_PRIME;
         }
-        return data;
+        contentHash = hash;
+        hashed = end;
     }
 
-        /**
-     * overwrites a 32 bit value in the already written bytecode data
+    /**
+     * Returns the written bytes. If the expected size passed to the constructor was exact then no copy is made.
      */
-    private void overwriteInt(byte[] bytecode, int offset, int value) {
-        bytecode[offset] = (byte) (value >> 24);
-        bytecode[offset + 1] = (byte) (value >> 16);
-        bytecode[offset + 2] = (byte) (value >> 8);
-        bytecode[offset + 3] = (byte) (value);
+    public byte[] getBytes() {
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public void flush() {
+        if (bytes != null) {
+            bytes.write(buffer.array(), copied, buffer.size() - copied);
+            copied = buffer.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
     }
 
     private class LazySizeImpl implements LazySize {
         private final int position;
-        private int value;
 
         public LazySizeImpl(int position) {
             this.position = position;
         }
 
+        private boolean ended;
+
         @Override
         public void markEnd() {
-            value = written - position - 4;
+            buffer.putInt(position, buffer.size() - position - 4);
+            if (!ended) {
+                ended = true;
+                if (--pendingSizes == 0) {
+                    hashTo(buffer.size());
+                }
+            }
         }
     }
 
@@ -45,7 +45,11 @@ public class MethodTester<T> {
     private Method createdMethod;
 
     public MethodTester(Class<T> returnType, Class<?>... params) {
-        ClassFile file = new ClassFile("org.jboss.classwriter.test.GeneratedClass" + methodNo++, AccessFlag.PUBLIC, "java.lang.Object", JavaVersions.JAVA_7, getClass().getClassLoader());
+        this(JavaVersions.JAVA_7, returnType, params);
+    }
+
+    public MethodTester(int version, Class<T> returnType, Class<?>... params) {
+        ClassFile file = new ClassFile("org.jboss.classwriter.test.GeneratedClass" + methodNo++, AccessFlag.PUBLIC, "java.lang.Object", version, getClass().getClassLoader());
         String[] nparams = new String[params.length];
         for(int i = 0; i < params.length;++i){
             nparams[i] = DescriptorUtils.makeDescriptor(params[i]);
@@ -58,6 +62,10 @@ public class MethodTester<T> {
         return method.getCodeAttribute();
     }
 
+    public ClassFile getClassFile() {
+        return method.getClassFile();
+    }
+
     public T invoke(Object... params) {
         if (!created) {
             create();
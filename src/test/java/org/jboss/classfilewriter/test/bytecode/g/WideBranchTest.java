@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.bytecode.g;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.CodeLocation;
+import org.jboss.classfilewriter.code.ExceptionHandler;
+import org.jboss.classfilewriter.code.TableSwitchBuilder;
+import org.jboss.classfilewriter.test.bytecode.MethodTester;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests branches that are too far away from their target to use a 16 bit offset
+ */
+public class WideBranchTest {
+
+    /**
+     * The number of bytes of filler code, which is more than a 16 bit jump can cover
+     */
+    private static final int FILLER_LENGTH = 34000;
+
+    @Test
+    public void testForwardGoto() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iload(0);
+        BranchEnd zero = ca.ifeq();
+        BranchEnd end = ca.gotoInstruction();
+        ca.branchEnd(zero);
+        filler(ca);
+        ca.iconst(20);
+        ca.returnInstruction();
+        ca.branchEnd(end);
+        ca.iconst(10);
+        ca.returnInstruction();
+        Assert.assertEquals(20, (int) mt.invoke(0));
+        Assert.assertEquals(10, (int) mt.invoke(1));
+    }
+
+    @Test
+    public void testForwardConditional() {
+        MethodTester<String> mt = new MethodTester<String>(String.class, String.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.aload(0);
+        BranchEnd end = ca.ifnull();
+        filler(ca);
+        ca.aload(0);
+        ca.returnInstruction();
+        ca.branchEnd(end);
+        ca.ldc("null");
+        ca.returnInstruction();
+        Assert.assertEquals("null", mt.invoke((Object) null));
+        Assert.assertEquals("value", mt.invoke("value"));
+    }
+
+    @Test
+    public void testBackwardConditional() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        CodeLocation start = ca.mark();
+        filler(ca);
+        ca.iinc(0, 1);
+        ca.iload(0);
+        ca.iconst(3);
+        ca.ifIcmplt(start);
+        ca.iload(0);
+        ca.returnInstruction();
+        Assert.assertEquals(3, (int) mt.invoke(0));
+        Assert.assertEquals(6, (int) mt.invoke(5));
+    }
+
+    @Test
+    public void testBackwardGoto() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        CodeLocation start = ca.mark();
+        ca.iload(0);
+        ca.iconst(3);
+        BranchEnd end = ca.ifIcmpge();
+        filler(ca);
+        ca.iinc(0, 1);
+        ca.gotoInstruction(start);
+        ca.branchEnd(end);
+        ca.iload(0);
+        ca.returnInstruction();
+        Assert.assertEquals(3, (int) mt.invoke(0));
+    }
+
+    /**
+     * Widening a branch moves the code after it, so the switch padding, the exception table and the stack frames all have to
+     * be moved
+     */
+    @Test
+    public void testCodeAfterWidenedBranch() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ExceptionHandler handler = ca.exceptionBlockStart("java/lang/ArithmeticException");
+        ca.iload(0);
+        BranchEnd skip = ca.ifne();
+        filler(ca);
+        ca.branchEnd(skip);
+        ca.iload(0);
+        TableSwitchBuilder builder = new TableSwitchBuilder(1, 2);
+        AtomicReference<BranchEnd> one = builder.add();
+        AtomicReference<BranchEnd> two = builder.add();
+        ca.tableswitch(builder);
+        ca.branchEnd(one.get());
+        ca.iconst(10);
+        ca.returnInstruction();
+        ca.branchEnd(two.get());
+        ca.iconst(20);
+        ca.returnInstruction();
+        ca.branchEnd(builder.getDefaultBranchEnd().get());
+        ca.iconst(100);
+        ca.iload(0);
+        ca.idiv();
+        ca.returnInstruction();
+        ca.exceptionBlockEnd(handler);
+        ca.exceptionHandlerStart(handler);
+        ca.pop();
+        ca.iconst(-1);
+        ca.returnInstruction();
+        Assert.assertEquals(-1, (int) mt.invoke(0));
+        Assert.assertEquals(10, (int) mt.invoke(1));
+        Assert.assertEquals(20, (int) mt.invoke(2));
+        Assert.assertEquals(20, (int) mt.invoke(5));
+    }
+
+    /**
+     * Uninitialized entries in the stack map table refer to the location of the new instruction, which moves when a branch
+     * before it is widened
+     */
+    @Test
+    public void testUninitializedObjectAfterWidenedBranch() {
+        MethodTester<String> mt = new MethodTester<String>(String.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iload(0);
+        BranchEnd skip = ca.ifeq();
+        filler(ca);
+        ca.branchEnd(skip);
+        ca.newInstruction(StringBuilder.class);
+        ca.dup();
+        ca.iload(0);
+        BranchEnd end = ca.ifeq();
+        ca.branchEnd(end);
+        ca.invokespecial(StringBuilder.class.getName(), "<init>", "()V");
+        ca.invokevirtual(StringBuilder.class.getName(), "toString", "()Ljava/lang/String;");
+        ca.returnInstruction();
+        Assert.assertEquals("", mt.invoke(0));
+        Assert.assertEquals("", mt.invoke(1));
+    }
+
+    private static void filler(CodeAttribute ca) {
+        for (int i = 0; i < FILLER_LENGTH / 2; ++i) {
+            ca.iconst(0);
+            ca.pop();
+        }
+    }
+}
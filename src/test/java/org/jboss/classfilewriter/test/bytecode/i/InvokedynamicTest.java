@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.bytecode.i;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.constpool.MethodHandleKind;
+import org.jboss.classfilewriter.test.bytecode.MethodTester;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InvokedynamicTest {
+
+    private static final String BOOTSTRAP_DESCRIPTOR = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;";
+
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type) throws Exception {
+        return new ConstantCallSite(MethodHandles.lookup().findStatic(InvokedynamicTest.class, name, type));
+    }
+
+    public static CallSite bootstrapHandle(MethodHandles.Lookup lookup, String name, MethodType type, MethodHandle target,
+            MethodType expected, String suffix) throws Exception {
+        Assert.assertEquals(expected, type);
+        MethodHandle concat = MethodHandles.lookup().findVirtual(String.class, "concat",
+                MethodType.methodType(String.class, String.class));
+        return new ConstantCallSite(MethodHandles.filterReturnValue(target, MethodHandles.insertArguments(concat, 1, suffix)));
+    }
+
+    public static long add(int a, long b, double c) {
+        return a + b + (long) c;
+    }
+
+    @Test
+    public void testInvokedynamic() {
+        MethodTester<Long> mt = new MethodTester<Long>(long.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iconst(1);
+        ca.lconst(2);
+        ca.dconst(3);
+        ca.invokedynamic(getClass().getName(), "bootstrap", BOOTSTRAP_DESCRIPTOR, "add", "(IJD)J");
+        ca.returnInstruction();
+        Assert.assertEquals(6L, (long) mt.invoke());
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testWrongArgumentType() {
+        MethodTester<Long> mt = new MethodTester<Long>(long.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iconst(1);
+        ca.dconst(2);
+        ca.dconst(3);
+        ca.invokedynamic(getClass().getName(), "bootstrap", BOOTSTRAP_DESCRIPTOR, "add", "(IJD)J");
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testMissingArgument() {
+        MethodTester<Long> mt = new MethodTester<Long>(long.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.lconst(2);
+        ca.dconst(3);
+        ca.invokedynamic(getClass().getName(), "bootstrap", BOOTSTRAP_DESCRIPTOR, "add", "(IJD)J");
+    }
+
+    @Test
+    public void testMethodHandleAndMethodTypeArguments() {
+        MethodTester<String> mt = new MethodTester<String>(String.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.ldc("text");
+        ConstPool pool = ca.getConstPool();
+        int handle = pool.addMethodHandle(MethodHandleKind.INVOKE_VIRTUAL, "java/lang/String", "toUpperCase", "()Ljava/lang/String;");
+        int type = pool.addMethodType("(Ljava/lang/String;)Ljava/lang/String;");
+        int suffix = pool.addString("!");
+        ca.invokedynamic(getClass().getName(), "bootstrapHandle",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;",
+                "upper", "(Ljava/lang/String;)Ljava/lang/String;", handle, type, suffix);
+        ca.returnInstruction();
+        Assert.assertEquals("TEXT!", mt.invoke());
+    }
+
+    @Test
+    public void testConstPoolEntriesAreShared() {
+        ConstPool pool = new ConstPool();
+        int handle = pool.addMethodHandle(MethodHandleKind.INVOKE_STATIC, "org/jboss/Foo", "bootstrap", "()V");
+        Assert.assertEquals(handle, pool.addMethodHandle(MethodHandleKind.INVOKE_STATIC, "org.jboss.Foo", "bootstrap", "()V"));
+        Assert.assertNotEquals(handle, pool.addMethodHandle(MethodHandleKind.INVOKE_SPECIAL, "org/jboss/Foo", "bootstrap", "()V"));
+        Assert.assertNotEquals(handle, pool.addMethodHandle(MethodHandleKind.INVOKE_STATIC, "org/jboss/Foo", "bootstrap", "()V", true));
+        Assert.assertEquals(pool.addMethodType("()V"), pool.addMethodType("()V"));
+        int indy = pool.addInvokeDynamic(0, "name", "()V");
+        Assert.assertEquals(indy, pool.addInvokeDynamic(0, "name", "()V"));
+        Assert.assertNotEquals(indy, pool.addInvokeDynamic(1, "name", "()V"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.bytecode.l;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LambdaTest {
+
+    private static final String FUNCTION = "java/util/function/Function";
+    private static final String SUPPLIER = "java/util/function/Supplier";
+    private static final String OBJECT_FUNCTION = "(Ljava/lang/Object;)Ljava/lang/Object;";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStaticLambdaWithCapturedArgument() throws Exception {
+        ClassFile file = new ClassFile(getClass().getName() + "Static", AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        ClassMethod implementation = file.addMethod(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC, AccessFlag.SYNTHETIC),
+                "lambda$0", "Ljava/lang/String;", "Ljava/lang/String;", "Ljava/lang/String;");
+        CodeAttribute ca = implementation.getCodeAttribute();
+        ca.aload(0);
+        ca.aload(1);
+        ca.invokevirtual("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+        ca.returnInstruction();
+
+        ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "create", "Ljava/util/function/Function;",
+                "Ljava/lang/String;").getCodeAttribute();
+        ca.aload(0);
+        ca.lambda(FUNCTION, "apply", OBJECT_FUNCTION, "(Ljava/lang/String;)Ljava/lang/String;", implementation);
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        Function<String, String> function = (Function<String, String>) clazz.getMethod("create", String.class).invoke(null,
+                "prefix ");
+        Assert.assertEquals("prefix value", function.apply("value"));
+    }
+
+    @Test
+    public void testInstanceLambda() throws Exception {
+        ClassFile file = new ClassFile(getClass().getName() + "Instance", AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        CodeAttribute ca = file.addMethod(AccessFlag.PUBLIC, "<init>", "V").getCodeAttribute();
+        ca.aload(0);
+        ca.invokespecial("java/lang/Object", "<init>", "()V");
+        ca.returnInstruction();
+
+        ClassMethod implementation = file.addMethod(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.SYNTHETIC), "lambda$0",
+                "Ljava/lang/Object;");
+        ca = implementation.getCodeAttribute();
+        ca.ldc("instance");
+        ca.returnInstruction();
+
+        ca = file.addMethod(AccessFlag.PUBLIC, "supplier", "Ljava/util/function/Supplier;").getCodeAttribute();
+        ca.aload(0);
+        ca.lambda(SUPPLIER, "get", "()Ljava/lang/Object;", implementation);
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        Object instance = clazz.getConstructor().newInstance();
+        Supplier<?> supplier = (Supplier<?>) clazz.getMethod("supplier").invoke(instance);
+        Assert.assertEquals("instance", supplier.get());
+    }
+
+    @Test
+    public void testOverriddenImplementationIsInvokedVirtually() throws Exception {
+        String baseName = getClass().getName() + "VirtualBase";
+        ClassFile base = new ClassFile(baseName, AccessFlag.PUBLIC, "java.lang.Object", JavaVersions.JAVA_8,
+                getClass().getClassLoader());
+        CodeAttribute ca = base.addMethod(AccessFlag.PUBLIC, "<init>", "V").getCodeAttribute();
+        ca.aload(0);
+        ca.invokespecial("java/lang/Object", "<init>", "()V");
+        ca.returnInstruction();
+
+        ClassMethod implementation = base.addMethod(AccessFlag.PUBLIC, "value", "Ljava/lang/Object;");
+        ca = implementation.getCodeAttribute();
+        ca.ldc("base");
+        ca.returnInstruction();
+
+        ca = base.addMethod(AccessFlag.PUBLIC, "supplier", "Ljava/util/function/Supplier;").getCodeAttribute();
+        ca.aload(0);
+        ca.lambda(SUPPLIER, "get", "()Ljava/lang/Object;", implementation);
+        ca.returnInstruction();
+        base.define();
+
+        ClassFile sub = new ClassFile(getClass().getName() + "VirtualSub", AccessFlag.PUBLIC, baseName, JavaVersions.JAVA_8,
+                base.getClassLoader());
+        ca = sub.addMethod(AccessFlag.PUBLIC, "<init>", "V").getCodeAttribute();
+        ca.aload(0);
+        ca.invokespecial(baseName, "<init>", "()V");
+        ca.returnInstruction();
+        ca = sub.addMethod(AccessFlag.PUBLIC, "value", "Ljava/lang/Object;").getCodeAttribute();
+        ca.ldc("sub");
+        ca.returnInstruction();
+
+        Class<?> clazz = sub.define();
+        Object instance = clazz.getConstructor().newInstance();
+        Supplier<?> supplier = (Supplier<?>) clazz.getMethod("supplier").invoke(instance);
+        Assert.assertEquals("sub", supplier.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImplementationMustBeOnSameClass() {
+        ClassFile other = new ClassFile(getClass().getName() + "Other", AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        ClassMethod implementation = other.addMethod(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC), "lambda$0",
+                "Ljava/lang/Object;", "Ljava/lang/Object;");
+        ClassFile file = new ClassFile(getClass().getName() + "Wrong", AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        CodeAttribute ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "create",
+                "Ljava/util/function/Function;").getCodeAttribute();
+        ca.lambda(FUNCTION, "apply", OBJECT_FUNCTION, implementation);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.bytecode.l;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.test.bytecode.MethodTester;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LdcDynamicTest {
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    public static String computeString(MethodHandles.Lookup lookup, String name, Class<?> type, String prefix) {
+        COUNT.incrementAndGet();
+        return prefix + name;
+    }
+
+    public static long computeLong(MethodHandles.Lookup lookup, String name, Class<?> type) {
+        return Long.MAX_VALUE;
+    }
+
+    @Test
+    public void testLdcDynamic() throws Exception {
+        ClassFile file = new ClassFile(getClass().getName() + "Generated", AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_11, getClass().getClassLoader());
+        CodeAttribute ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "string", "Ljava/lang/String;")
+                .getCodeAttribute();
+        ca.ldcDynamic(getClass().getName(), "computeString",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/String;)Ljava/lang/String;",
+                "constant", "Ljava/lang/String;", file.getConstPool().addString("lazy "));
+        ca.returnInstruction();
+        ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "wide", "J").getCodeAttribute();
+        ca.ldcDynamic(getClass().getName(), "computeLong",
+                "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)J", "constant", "J");
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        int count = COUNT.get();
+        Method string = clazz.getMethod("string");
+        Assert.assertEquals("lazy constant", string.invoke(null));
+        Assert.assertEquals("lazy constant", string.invoke(null));
+        // the bootstrap method is only called once
+        Assert.assertEquals(count + 1, COUNT.get());
+        Assert.assertEquals(Long.MAX_VALUE, clazz.getMethod("wide").invoke(null));
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testLdcDynamicRequiresJava11() {
+        MethodTester<Object> mt = new MethodTester<Object>(Object.class);
+        mt.getCodeAttribute().ldcDynamic(0, "constant", "Ljava/lang/Object;");
+    }
+}
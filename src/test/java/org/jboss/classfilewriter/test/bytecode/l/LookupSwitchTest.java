@@ -22,6 +22,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Assert;
 import org.jboss.classfilewriter.code.BranchEnd;
 import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.CodeLocation;
 import org.jboss.classfilewriter.code.LookupSwitchBuilder;
 import org.jboss.classfilewriter.test.bytecode.MethodTester;
 import org.junit.Test;
@@ -54,4 +55,25 @@ public class LookupSwitchTest {
         Assert.assertEquals(21, (int) mt.invoke(20));
         Assert.assertEquals(101, (int) mt.invoke(100));
     }
+
+    @Test
+    public void testLookupSwitchBackwardsJump() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        CodeLocation start = ca.mark();
+        ca.iload(0);
+        ca.iconst(10);
+        BranchEnd small = ca.ifIcmplt();
+        ca.iload(0);
+        ca.returnInstruction();
+        ca.branchEnd(small);
+        ca.iinc(0, 3);
+        ca.iload(0);
+        final LookupSwitchBuilder builder = new LookupSwitchBuilder(start);
+        builder.add(7, start);
+        ca.lookupswitch(builder);
+        Assert.assertEquals(10, (int) mt.invoke(1));
+        Assert.assertEquals(11, (int) mt.invoke(2));
+        Assert.assertEquals(20, (int) mt.invoke(20));
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.bytecode.s;
+
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.test.bytecode.MethodTester;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringConcatTest {
+
+    @Test
+    public void testStringConcat() {
+        MethodTester<String> mt = new MethodTester<String>(JavaVersions.JAVA_11, String.class, int.class, long.class,
+                Object.class, char.class, double.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iload(0);
+        ca.lload(1);
+        ca.aload(3);
+        ca.iload(4);
+        ca.dload(5);
+        ca.stringConcat("int ", ", long ", ", object ", ", char ", ", double ", ".");
+        ca.returnInstruction();
+        Assert.assertEquals("int 1, long 2, object three, char 4, double 5.0.", mt.invoke(1, 2L, "three", '4', 5.0));
+    }
+
+    @Test
+    public void testTagCharactersInLiterals() {
+        MethodTester<String> mt = new MethodTester<String>(JavaVersions.JAVA_11, String.class, String.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.aload(0);
+        ca.aconstNull();
+        ca.stringConcat("\u0001", null, "\u0002");
+        ca.returnInstruction();
+        Assert.assertEquals("\u0001valuenull\u0002", mt.invoke("value"));
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testTooFewOperands() {
+        MethodTester<String> mt = new MethodTester<String>(JavaVersions.JAVA_11, String.class);
+        mt.getCodeAttribute().iconst(1);
+        mt.getCodeAttribute().stringConcat("", "", "");
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testStringConcatRequiresJava9() {
+        MethodTester<String> mt = new MethodTester<String>(String.class);
+        mt.getCodeAttribute().iconst(1);
+        mt.getCodeAttribute().stringConcat("", "");
+    }
+}
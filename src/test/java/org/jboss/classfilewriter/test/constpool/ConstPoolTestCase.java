@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.constpool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.jboss.classfilewriter.constpool.ClassEntry;
+import org.jboss.classfilewriter.constpool.ConstPool;
+import org.jboss.classfilewriter.constpool.ConstPoolEntry;
+import org.jboss.classfilewriter.constpool.ConstPoolEntryType;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConstPoolTestCase {
+
+    @Test
+    public void testEntriesAreShared() {
+        ConstPool pool = new ConstPool();
+        int utf8 = pool.addUtf8("java/lang/String");
+        int clazz = pool.addClass("java.lang.String");
+        Assert.assertEquals(clazz, pool.addClass("java/lang/String"));
+        Assert.assertEquals(utf8, pool.addUtf8("java/lang/String"));
+        Assert.assertEquals(utf8, (int) pool.addUtf8Entry("java/lang/String"));
+        int method = pool.addMethodRef("java.lang.String", "length", "()I");
+        Assert.assertEquals(method, pool.addMethodRef("java/lang/String", "length", "()I"));
+        Assert.assertNotEquals(method, pool.addInterfaceMethodRef("java/lang/String", "length", "()I"));
+        Assert.assertNotEquals(method, pool.addMethodRef("java/lang/String", "length", "()J"));
+        int field = pool.addFieldRef("java/lang/String", "length", "I");
+        Assert.assertEquals(field, pool.addFieldRef("java/lang/String", "length", "I"));
+        Assert.assertEquals(pool.addString("length"), pool.addString("length"));
+        Assert.assertNotEquals(pool.addString("length"), pool.addUtf8("length"));
+    }
+
+    @Test
+    public void testNumericEntries() throws IOException {
+        ConstPool pool = new ConstPool();
+        int l = pool.addLong(10);
+        int d = pool.addDouble(10);
+        // long and double entries take up two slots
+        Assert.assertEquals(l + 2, d);
+        Assert.assertEquals(d + 2, pool.addInteger(10));
+        Assert.assertEquals(l, pool.addLong(10));
+        Assert.assertEquals(d, pool.addDouble(10));
+        Assert.assertEquals(pool.addFloat(Float.NaN), pool.addFloat(Float.NaN));
+        Assert.assertNotEquals(pool.addFloat(0.0f), pool.addFloat(-0.0f));
+        Assert.assertNotEquals(pool.addDouble(0.0), pool.addDouble(-0.0));
+        Assert.assertNotEquals(pool.addInteger(10), pool.addFloat(10));
+        Assert.assertEquals(pool.addInteger(-1), pool.addInteger(-1));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDataOutputStreamEntries() throws IOException {
+        ConstPoolEntry legacy = new ConstPoolEntry() {
+            @Override
+            public void writeData(DataOutputStream stream) throws IOException {
+                stream.writeShort(7);
+            }
+
+            @Override
+            public ConstPoolEntryType getType() {
+                return ConstPoolEntryType.CLASS;
+            }
+        };
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        legacy.write(out);
+        Assert.assertArrayEquals(new byte[] { 7, 0, 7 }, out.getBytes());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ClassEntry(7).writeData(new DataOutputStream(bytes));
+        Assert.assertArrayEquals(new byte[] { 0, 7 }, bytes.toByteArray());
+    }
+
+    @Test
+    public void testLargePool() throws IOException {
+        ConstPool pool = new ConstPool();
+        int[] indexes = new int[5000];
+        for (int i = 0; i < indexes.length; ++i) {
+            indexes[i] = pool.addMethodRef("org/jboss/Foo" + (i % 10), "method" + i, "()V");
+            pool.addLong(i);
+        }
+        for (int i = 0; i < indexes.length; ++i) {
+            Assert.assertEquals(indexes[i], pool.addMethodRef("org/jboss/Foo" + (i % 10), "method" + i, "()V"));
+        }
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        pool.write(out);
+        byte[] data = out.getBytes();
+        int count = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        // 10 class entries and their names, the shared ()V descriptor, then a method ref, name and type, the method name and
+        // a two slot long for each method, plus the unused slot 0
+        Assert.assertEquals(20 + 1 + 5000 * 5 + 1, count);
+    }
+
+    @Test
+    public void testLengthMatchesWrittenBytes() throws IOException {
+        ConstPool pool = new ConstPool();
+        pool.addMethodRef("org/jboss/Foo", "method", "()V");
+        pool.addString("ascii");
+        pool.addString("nul\u0000 \u00e9 \u20ac \ud83d\ude00");
+        pool.addInteger(1);
+        pool.addFloat(1);
+        pool.addLong(1);
+        pool.addDouble(1);
+        pool.addInterfaceMethodRef("org/jboss/Bar", "method", "()V");
+        pool.addFieldRef("org/jboss/Foo", "field", "I");
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        pool.write(out);
+        Assert.assertEquals(out.getBytes().length, pool.getLength());
+    }
+}
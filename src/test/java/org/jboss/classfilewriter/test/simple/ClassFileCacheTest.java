@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassFileCache;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassFileCacheTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("classfilecache");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testCachedClassIsDefinedWithoutGenerating() throws Exception {
+        Path archive = directory.resolve("classes.cache");
+        String name = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Class<?> clazz = cache.define("greeter", newLoader(), generator(name, "hello"));
+            Assert.assertEquals("hello", invoke(clazz));
+        }
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertNotNull(cache.get("greeter"));
+            Class<?> clazz = cache.define("greeter", newLoader(), failingGenerator());
+            Assert.assertEquals(name, clazz.getName());
+            Assert.assertEquals("hello", invoke(clazz));
+        }
+    }
+
+    @Test
+    public void testDifferentVersionIsIgnored() throws Exception {
+        Path archive = directory.resolve("classes.cache");
+        String name = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), generator(name, "hello"));
+        }
+        try (ClassFileCache cache = new ClassFileCache(archive, "2")) {
+            Assert.assertNull(cache.get("greeter"));
+            Class<?> clazz = cache.define("greeter", newLoader(), generator(name, "goodbye"));
+            Assert.assertEquals("goodbye", invoke(clazz));
+        }
+    }
+
+    @Test
+    public void testCorruptEntryIsRegenerated() throws Exception {
+        Path archive = directory.resolve("classes.cache");
+        String name = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), generator(name, "hello"));
+        }
+        File file = archiveFile().toFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // flip a byte of the class data, which ends the archive
+            raf.seek(raf.length() - 10);
+            int b = raf.read();
+            raf.seek(raf.length() - 10);
+            raf.write(b ^ 0xFF);
+        }
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertNull(cache.get("greeter"));
+            Assert.assertEquals("hello", invoke(cache.define("greeter", newLoader(), generator(name, "hello"))));
+        }
+        file = archiveFile().toFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertNull(cache.get("greeter"));
+        }
+    }
+
+    @Test
+    public void testFlushWritesNewGenerationWhileArchiveIsMapped() throws Exception {
+        Path archive = directory.resolve("classes.cache");
+        String name = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), generator(name, "hello"));
+        }
+        Path first = archiveFile();
+        String otherName = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertEquals("hello", invoke(cache.define("greeter", newLoader(), failingGenerator())));
+            cache.define("other", newLoader(), generator(otherName, "other"));
+            cache.flush();
+            Assert.assertNotEquals(first, archiveFile());
+            // the entry read from the first generation is still usable
+            Assert.assertEquals("hello", invoke(cache.define("greeter", newLoader(), failingGenerator())));
+        }
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertEquals("hello", invoke(cache.define("greeter", newLoader(), failingGenerator())));
+            Assert.assertEquals("other", invoke(cache.define("other", newLoader(), failingGenerator())));
+        }
+    }
+
+    @Test
+    public void testUnusedEntriesAreDropped() throws Exception {
+        Path archive = directory.resolve("classes.cache");
+        String name = ClassFileTester.nextName(getClass());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), generator(name, "hello"));
+            cache.define("stale", newLoader(), generator(ClassFileTester.nextName(getClass()), "stale"));
+        }
+        Path first = archiveFile();
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), failingGenerator());
+        }
+        Assert.assertNotEquals(first, archiveFile());
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            Assert.assertNull(cache.get("stale"));
+            Assert.assertEquals("hello", invoke(cache.define("greeter", newLoader(), failingGenerator())));
+        }
+        Path second = archiveFile();
+        try (ClassFileCache cache = new ClassFileCache(archive, "1")) {
+            cache.define("greeter", newLoader(), failingGenerator());
+        }
+        // nothing changed, so the archive is not written again
+        Assert.assertEquals(second, archiveFile());
+    }
+
+    /**
+     * returns the only generation of the archive, older generations are deleted when a new one is written
+     */
+    private Path archiveFile() throws IOException {
+        Path result = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Assert.assertTrue("more than one archive file", result == null);
+                result = file;
+            }
+        }
+        Assert.assertNotNull(result);
+        return result;
+    }
+
+    private static String invoke(Class<?> clazz) throws Exception {
+        Method method = clazz.getMethod("greet");
+        return (String) method.invoke(null);
+    }
+
+    private static ClassLoader newLoader() {
+        return new ClassLoader(ClassFileCacheTest.class.getClassLoader()) {
+        };
+    }
+
+    private static Supplier<ClassFile> generator(final String name, final String greeting) {
+        return new Supplier<ClassFile>() {
+            @Override
+            public ClassFile get() {
+                ClassFile file = new ClassFile(name, AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), "java.lang.Object",
+                        JavaVersions.JAVA_8, ClassFileCacheTest.class.getClassLoader());
+                ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "greet",
+                        "Ljava/lang/String;");
+                CodeAttribute ca = method.getCodeAttribute();
+                ca.ldc(greeting);
+                ca.returnInstruction();
+                return file;
+            }
+        };
+    }
+
+    private static Supplier<ClassFile> failingGenerator() {
+        return new Supplier<ClassFile>() {
+            @Override
+            public ClassFile get() {
+                throw new AssertionError("the class should have been read from the cache");
+            }
+        };
+    }
+}
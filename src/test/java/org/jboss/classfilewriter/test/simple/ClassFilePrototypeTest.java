@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.security.ProtectionDomain;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassFilePrototype;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassFilePrototypeTest {
+
+    @Test
+    public void testDerivedClassesHaveNewNameAndConstants() throws Exception {
+        ClassFilePrototype prototype = new ClassFilePrototype(createPrototype(ClassFileTester.nextName(getClass()), Base.class));
+        Map<Object, Object> constants = new HashMap<Object, Object>();
+        constants.put("hello", "goodbye");
+        constants.put(100000, 200000);
+        constants.put(5L, 6L);
+
+        String name = ClassFileTester.nextName(getClass());
+        Class<?> clazz = prototype.define(name, null, constants);
+        Assert.assertEquals(name, clazz.getName());
+        Assert.assertEquals(Base.class, clazz.getSuperclass());
+        Assert.assertEquals("goodbye", clazz.getMethod("greet").invoke(null));
+        Assert.assertEquals(200000, clazz.getMethod("number").invoke(null));
+        Assert.assertEquals(6L, clazz.getField("LONG").get(null));
+        Assert.assertEquals(clazz, clazz.getField("instance").getType());
+        Object instance = clazz.getMethod("create").invoke(null);
+        Assert.assertEquals(clazz, instance.getClass());
+        Assert.assertEquals("base", ((Base) instance).kind());
+
+        // the prototype is unchanged by deriving a class
+        Class<?> copy = prototype.define(ClassFileTester.nextName(getClass()), null, new HashMap<Object, Object>());
+        Assert.assertEquals("hello", copy.getMethod("greet").invoke(null));
+        Assert.assertEquals(100000, copy.getMethod("number").invoke(null));
+    }
+
+    @Test
+    public void testDerivedClassWithNewSuperclass() throws Exception {
+        ClassFilePrototype prototype = new ClassFilePrototype(createPrototype(ClassFileTester.nextName(getClass()), Base.class));
+        Class<?> clazz = prototype.define(ClassFileTester.nextName(getClass()), OtherBase.class.getName(), new HashMap<Object, Object>());
+        Assert.assertEquals(OtherBase.class, clazz.getSuperclass());
+        Assert.assertEquals("other", ((Base) clazz.getMethod("create").invoke(null)).kind());
+    }
+
+    @Test
+    public void testDerivedClassInProtectionDomain() throws Exception {
+        ClassFilePrototype prototype = new ClassFilePrototype(createPrototype(ClassFileTester.nextName(getClass()), Base.class));
+        ProtectionDomain domain = new ProtectionDomain(null, null);
+        Class<?> clazz = prototype.define(ClassFileTester.nextName(getClass()), null, new HashMap<Object, Object>(), domain);
+        Assert.assertSame(domain, clazz.getProtectionDomain());
+    }
+
+    @Test
+    public void testNewSuperclassDoesNotChangeDescriptors() throws Exception {
+        String prototypeName = ClassFileTester.nextName(getClass());
+        ClassFile file = createPrototype(prototypeName, Object.class);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "lookup",
+                "Ljava/lang/Object;", "Ljava/util/Map;", "Ljava/lang/Object;");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.aload(0);
+        ca.aload(1);
+        // java.lang.Object in the descriptor must not be renamed to the new superclass
+        ca.invokeinterface("java.util.Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;");
+        ca.returnInstruction();
+        ClassFilePrototype prototype = new ClassFilePrototype(file);
+
+        Class<?> clazz = prototype.define(ClassFileTester.nextName(getClass()), Base.class.getName(), new HashMap<Object, Object>());
+        Assert.assertEquals(Base.class, clazz.getSuperclass());
+        Assert.assertEquals("base", ((Base) clazz.getMethod("create").invoke(null)).kind());
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("key", "value");
+        Assert.assertEquals("value", clazz.getMethod("lookup", Map.class, Object.class).invoke(null, map, "key"));
+        Assert.assertEquals(Object.class, clazz.getMethod("lookup", Map.class, Object.class).getReturnType());
+    }
+
+    @Test
+    public void testConstantSharingNameWithMemberIsReplacedSeparately() throws Exception {
+        String prototypeName = ClassFileTester.nextName(getClass());
+        ClassFile file = createPrototype(prototypeName, Base.class);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "literal",
+                "Ljava/lang/String;");
+        CodeAttribute ca = method.getCodeAttribute();
+        // both the method name and the class name are also used as string constants
+        ca.ldc("literal");
+        ca.ldc(prototypeName.replace('.', '/'));
+        ca.invokevirtual("java.lang.String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+        ca.returnInstruction();
+        ClassFilePrototype prototype = new ClassFilePrototype(file);
+        Map<Object, Object> constants = new HashMap<Object, Object>();
+        constants.put("literal", "replaced:");
+
+        Class<?> clazz = prototype.define(ClassFileTester.nextName(getClass()), null, constants);
+        Assert.assertEquals("replaced:" + prototypeName.replace('.', '/'), clazz.getMethod("literal").invoke(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstantOfDifferentTypeIsRejected() {
+        ClassFilePrototype prototype = new ClassFilePrototype(createPrototype(ClassFileTester.nextName(getClass()), Base.class));
+        Map<Object, Object> constants = new HashMap<Object, Object>();
+        constants.put(100000, "text");
+        prototype.derive(ClassFileTester.nextName(getClass()), null, constants);
+    }
+
+    private ClassFile createPrototype(String name, Class<?> superclass) {
+        ClassFile file = new ClassFile(name, AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), superclass.getName(),
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        String descriptor = "L" + name.replace('.', '/') + ";";
+        file.addField(AccessFlag.PUBLIC, "instance", descriptor);
+        file.addField(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC, AccessFlag.FINAL), "LONG", "J").setConstantValue(5L);
+
+        CodeAttribute ca = file.addMethod(AccessFlag.PUBLIC, "<init>", "V").getCodeAttribute();
+        ca.aload(0);
+        ca.invokespecial(superclass.getName(), "<init>", "()V");
+        ca.returnInstruction();
+
+        ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "greet", "Ljava/lang/String;")
+                .getCodeAttribute();
+        ca.ldc("hello");
+        ca.returnInstruction();
+
+        ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "number", "I").getCodeAttribute();
+        ca.ldc(100000);
+        ca.returnInstruction();
+
+        ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "create", descriptor).getCodeAttribute();
+        ca.newInstruction(name);
+        ca.dup();
+        ca.invokespecial(name, "<init>", "()V");
+        ca.returnInstruction();
+        return file;
+    }
+
+    public static class Base {
+        public String kind() {
+            return "base";
+        }
+    }
+
+    public static class OtherBase extends Base {
+        @Override
+        public String kind() {
+            return "other";
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.JavaVersions;
+
+/**
+ * Utility class for tests that generate many classes, which gives every generated class a unique name
+ */
+public final class ClassFileTester {
+
+    private static int classNo;
+
+    private ClassFileTester() {
+    }
+
+    /**
+     * returns a class name that has not been used yet, in the package of the test
+     */
+    public static synchronized String nextName(Class<?> test) {
+        return test.getName() + "Generated" + classNo++;
+    }
+
+    /**
+     * creates a public Java 8 class with a unique name, that is loaded by the class loader of the test
+     */
+    public static ClassFile newClassFile(Class<?> test) {
+        return new ClassFile(nextName(test), AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), "java.lang.Object",
+                JavaVersions.JAVA_8, test.getClassLoader());
+    }
+}
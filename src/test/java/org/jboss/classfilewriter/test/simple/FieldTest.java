@@ -23,6 +23,7 @@ import java.util.Map;
 
 import org.junit.Assert;
 import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassField;
 import org.jboss.classfilewriter.ClassFile;
 import org.jboss.classfilewriter.DuplicateMemberException;
 import org.junit.Test;
@@ -81,6 +82,56 @@ public class FieldTest<T, TT, TTT> {
         test.addField(AccessFlag.PUBLIC, "field1", "I");
     }
 
+    @Test
+    public void testConstantValue() throws Exception {
+        ClassFile test = new ClassFile(getClass().getName().replace('.', '/') + "ConstantValue", "java/lang/Object", getClass().getClassLoader());
+        int flags = AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC, AccessFlag.FINAL);
+        test.addField(flags, "intField", "I").setConstantValue(42);
+        test.addField(flags, "longField", "J").setConstantValue(1L << 40);
+        test.addField(flags, "floatField", "F").setConstantValue(1.5f);
+        test.addField(flags, "doubleField", "D").setConstantValue(2.5);
+        ClassField charField = test.addField(flags, "charField", "C");
+        charField.setConstantValue('x');
+        ClassField booleanField = test.addField(flags, "booleanField", "Z");
+        booleanField.setConstantValue(true);
+        test.addField(flags, "byteField", "B").setConstantValue((byte) -3);
+        test.addField(flags, "stringField", "Ljava/lang/String;").setConstantValue("constant");
+        ClassField removed = test.addField(flags, "removedField", "I");
+        removed.setConstantValue(7);
+        removed.setConstantValue(null);
+        ClassField replaced = test.addField(flags, "replacedField", "I");
+        replaced.setConstantValue(1);
+        replaced.setConstantValue(2);
+        Assert.assertEquals('x', charField.getConstantValue());
+        Assert.assertEquals(true, booleanField.getConstantValue());
+        Assert.assertNull(removed.getConstantValue());
+        Assert.assertEquals(2, replaced.getConstantValue());
+
+        Class<?> clazz = test.define();
+        Assert.assertEquals(42, clazz.getField("intField").get(null));
+        Assert.assertEquals(1L << 40, clazz.getField("longField").get(null));
+        Assert.assertEquals(1.5f, clazz.getField("floatField").get(null));
+        Assert.assertEquals(2.5, clazz.getField("doubleField").get(null));
+        Assert.assertEquals('x', clazz.getField("charField").get(null));
+        Assert.assertEquals(true, clazz.getField("booleanField").get(null));
+        Assert.assertEquals((byte) -3, clazz.getField("byteField").get(null));
+        Assert.assertEquals("constant", clazz.getField("stringField").get(null));
+        Assert.assertEquals(0, clazz.getField("removedField").get(null));
+        Assert.assertEquals(2, clazz.getField("replacedField").get(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstantValueOfWrongType() {
+        ClassFile test = new ClassFile(getClass().getName().replace('.', '/') + "ConstantValueType", "java/lang/Object", getClass().getClassLoader());
+        test.addField(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "field1", "J").setConstantValue(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConstantValueOnInstanceField() {
+        ClassFile test = new ClassFile(getClass().getName().replace('.', '/') + "ConstantValueInstance", "java/lang/Object", getClass().getClassLoader());
+        test.addField(AccessFlag.PUBLIC, "field1", "I").setConstantValue(1);
+    }
+
     public class AA {
 
     }
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.LookupClassFactory;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class LookupClassFactoryTest {
+
+    @Test
+    public void testDefineWithLookup() throws Exception {
+        ClassFile test = new ClassFile(getClass().getName() + "Defined", "java/lang/Object", MethodHandles.lookup());
+        addValueMethod(test);
+        Class<?> clazz = test.define();
+        Assert.assertEquals(getClass().getName() + "Defined", clazz.getName());
+        Assert.assertSame(getClass().getClassLoader(), clazz.getClassLoader());
+        Assert.assertSame(clazz, Class.forName(clazz.getName(), false, getClass().getClassLoader()));
+        Assert.assertEquals(42, clazz.getMethod("value").invoke(null));
+    }
+
+    @Test
+    public void testDefineHiddenClass() throws Exception {
+        Assume.assumeTrue(LookupClassFactory.isHiddenClassSupported());
+        LookupClassFactory factory = new LookupClassFactory(MethodHandles.lookup(), LookupClassFactory.Option.HIDDEN,
+                LookupClassFactory.Option.NESTMATE);
+        ClassFile test = new ClassFile(getClass().getName() + "Hidden", AccessFlag.of(AccessFlag.SUPER, AccessFlag.PUBLIC),
+                "java/lang/Object", JavaVersions.JAVA_7, getClass().getClassLoader(), factory);
+        addValueMethod(test);
+        Class<?> clazz = test.define();
+        Assert.assertTrue(clazz.getName().startsWith(getClass().getName() + "Hidden/"));
+        Assert.assertSame(getClass(), clazz.getNestHost());
+        Method method = clazz.getMethod("value");
+        Assert.assertEquals(42, method.invoke(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStrongRequiresHidden() {
+        new LookupClassFactory(MethodHandles.lookup(), LookupClassFactory.Option.STRONG);
+    }
+
+    private static void addValueMethod(ClassFile test) {
+        CodeAttribute code = test.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "value", "I").getCodeAttribute();
+        code.iconst(42);
+        code.returnInstruction();
+    }
+}
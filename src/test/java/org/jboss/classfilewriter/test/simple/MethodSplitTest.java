@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.lang.reflect.Method;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.ExceptionHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MethodSplitTest {
+
+    @Test
+    public void testLinearCodeIsSplit() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "build", "V",
+                "Ljava/lang/StringBuilder;", "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setSplitThreshold(CodeAttribute.HUGE_METHOD_LIMIT);
+        for (int i = 0; i < 5000; ++i) {
+            ca.aload(0);
+            ca.iload(1);
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(I)Ljava/lang/StringBuilder;");
+            ca.pop();
+        }
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        StringBuilder sb = new StringBuilder();
+        clazz.getMethod("build", StringBuilder.class, int.class).invoke(null, sb, 7);
+        Assert.assertEquals(5000, sb.length());
+        assertSplit(file, method);
+    }
+
+    @Test
+    public void testSectionsWithBranchesAndWideLocals() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "build", "V",
+                "Ljava/lang/StringBuilder;", "J", "D", "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setSplitThreshold(CodeAttribute.HUGE_METHOD_LIMIT);
+        for (int i = 0; i < 2000; ++i) {
+            ca.iload(5);
+            BranchEnd skip = ca.ifeq();
+            ca.aload(0);
+            ca.lload(1);
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(J)Ljava/lang/StringBuilder;");
+            ca.pop();
+            ca.branchEnd(skip);
+            ca.aload(0);
+            ca.dload(3);
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(D)Ljava/lang/StringBuilder;");
+            ca.pop();
+            if (i % 100 == 0) {
+                ExceptionHandler handler = ca.exceptionBlockStart("java/lang/RuntimeException");
+                ca.aload(0);
+                ca.invokevirtual("java.lang.StringBuilder", "length", "()I");
+                ca.pop();
+                ca.exceptionBlockEnd(handler);
+                BranchEnd end = ca.gotoInstruction();
+                ca.exceptionHandlerStart(handler);
+                ca.athrow();
+                ca.branchEnd(end);
+            }
+        }
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        Method build = clazz.getMethod("build", StringBuilder.class, long.class, double.class, int.class);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; ++i) {
+            expected.append(12L).append(1.5);
+        }
+        StringBuilder sb = new StringBuilder();
+        build.invoke(null, sb, 12L, 1.5, 1);
+        Assert.assertEquals(expected.toString(), sb.toString());
+        sb = new StringBuilder();
+        build.invoke(null, sb, 12L, 1.5, 0);
+        Assert.assertEquals(2000 * 3, sb.length());
+        assertSplit(file, method);
+    }
+
+    @Test
+    public void testLocalVariableStoresAreNotMoved() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "count", "I", "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setSplitThreshold(CodeAttribute.HUGE_METHOD_LIMIT);
+        for (int i = 0; i < 5000; ++i) {
+            ca.iinc(0, 1);
+        }
+        ca.iload(0);
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        Assert.assertEquals(5003, clazz.getMethod("count", int.class).invoke(null, 3));
+        Assert.assertEquals(1, file.getMethods().size());
+    }
+
+    @Test
+    public void testSmallMethodIsNotSplit() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "value", "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setSplitThreshold(CodeAttribute.HUGE_METHOD_LIMIT);
+        ca.iconst(10);
+        ca.returnInstruction();
+
+        Class<?> clazz = file.define();
+        Assert.assertEquals(10, clazz.getMethod("value").invoke(null));
+        Assert.assertEquals(1, file.getMethods().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThresholdMustBeSetBeforeCodeIsWritten() {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        CodeAttribute ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "value", "I")
+                .getCodeAttribute();
+        ca.iconst(10);
+        ca.setSplitThreshold(CodeAttribute.HUGE_METHOD_LIMIT);
+    }
+
+    private static void assertSplit(ClassFile file, ClassMethod method) {
+        Assert.assertTrue(file.getMethods().size() > 1);
+        for (ClassMethod m : file.getMethods()) {
+            Assert.assertTrue(m.getName() + " is too large",
+                    m.getCodeAttribute().getCodeLength() <= CodeAttribute.HUGE_METHOD_LIMIT);
+            if (m != method) {
+                Assert.assertTrue(m.getName().startsWith(method.getName() + "$split"));
+                Assert.assertEquals(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC, AccessFlag.SYNTHETIC), m
+                        .getAccessFlags());
+            }
+        }
+    }
+}
@@ -19,11 +19,13 @@ package org.jboss.classfilewriter.test.simple;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Assert;
 
 import org.jboss.classfilewriter.AccessFlag;
 import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
 import org.jboss.classfilewriter.DuplicateMemberException;
 import org.jboss.classfilewriter.code.CodeAttribute;
 import org.junit.Test;
@@ -95,6 +97,47 @@ public class MethodTest
 				"method", "Ljava/lang/Object;", "I", "J");
 	}
 
+	@Test
+	public void testEmptyAttributesAreNotWritten() throws Exception
+	{
+		ClassFile test = new ClassFile(getClass().getName().replace('.', '/')
+				+ "EmptyAttributes", "java/lang/Object", getClass().getClassLoader());
+		test.addField(AccessFlag.PUBLIC, "field1", "I");
+		CodeAttribute code = test.addMethod(AccessFlag.of(AccessFlag.PUBLIC),
+				"method1", "V", "I").getCodeAttribute();
+		code.returnInstruction();
+		// an attribute that is created but left empty is not written
+		ClassMethod method2 = test.addMethod(AccessFlag.of(AccessFlag.PUBLIC), "method2", "V");
+		method2.getCodeAttribute().returnInstruction();
+		Assert.assertTrue(method2.getRuntimeVisibleAnnotationsAttribute().isEmpty());
+
+		String bytecode = new String(test.toBytecode(), StandardCharsets.ISO_8859_1);
+		Assert.assertFalse(bytecode.contains("Exceptions"));
+		Assert.assertFalse(bytecode.contains("ParameterAnnotations"));
+		Class<?> clazz = test.define();
+		Assert.assertEquals(0, clazz.getDeclaredMethod("method2").getDeclaredAnnotations().length);
+	}
+
+	@Test
+	public void testSignatureIsWrittenOnce() throws Exception
+	{
+		ClassFile test = new ClassFile(getClass().getName().replace('.', '/')
+				+ "Signature", "java/lang/Object", getClass().getClassLoader());
+		test.addField(AccessFlag.PUBLIC, "field1", "Ljava/util/List;", "Ljava/util/List<Ljava/lang/String;>;");
+		ClassMethod method = test.addMethod(AccessFlag.of(AccessFlag.PUBLIC),
+				"method1", "Ljava/util/List;");
+		method.setSignature("()Ljava/util/List<Ljava/lang/String;>;");
+		method.getCodeAttribute().aconstNull();
+		method.getCodeAttribute().returnInstruction();
+
+		Assert.assertArrayEquals(test.toBytecode(), test.toBytecode());
+		Class<?> clazz = test.define();
+		Assert.assertEquals("java.util.List<java.lang.String>", clazz.getDeclaredMethod("method1")
+				.getGenericReturnType().getTypeName());
+		Assert.assertEquals("java.util.List<java.lang.String>", clazz.getDeclaredField("field1")
+				.getGenericType().getTypeName());
+	}
+
 	public class AA
 	{
 
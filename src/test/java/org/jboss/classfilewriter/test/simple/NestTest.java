@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NestTest {
+
+    @Test
+    public void testNestMemberCanAccessPrivateMembers() throws Exception {
+        String hostName = getClass().getName() + "Host";
+        String memberName = getClass().getName() + "Member";
+        ClassFile host = new ClassFile(hostName, AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), "java.lang.Object",
+                JavaVersions.JAVA_11, getClass().getClassLoader());
+        host.addNestMember(memberName);
+        host.addNestMember(memberName);
+        CodeAttribute ca = host.addMethod(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC), "secret", "I").getCodeAttribute();
+        ca.iconst(42);
+        ca.returnInstruction();
+
+        ClassFile member = new ClassFile(memberName, AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), "java.lang.Object",
+                JavaVersions.JAVA_11, getClass().getClassLoader());
+        member.setNestHost(hostName);
+        ca = member.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "value", "I").getCodeAttribute();
+        ca.invokestatic(hostName, "secret", "()I");
+        ca.returnInstruction();
+
+        Class<?> hostClass = host.define();
+        Class<?> memberClass = member.define();
+        Assert.assertSame(hostClass, memberClass.getNestHost());
+        Assert.assertEquals(2, hostClass.getNestMembers().length);
+        Assert.assertEquals(42, memberClass.getMethod("value").invoke(null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNestHostCannotBeMember() {
+        ClassFile file = new ClassFile(getClass().getName() + "Both", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_11, getClass().getClassLoader());
+        file.addNestMember(getClass().getName() + "Other");
+        file.setNestHost(getClass().getName() + "Other");
+    }
+
+    @Test(expected = InvalidBytecodeException.class)
+    public void testNestsRequireJava11() {
+        ClassFile file = new ClassFile(getClass().getName() + "Old", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_8, getClass().getClassLoader());
+        file.setNestHost(getClass().getName() + "Other");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ObjectMethodsTest {
+
+    @Test
+    public void testObjectMethods() throws Exception {
+        Assume.assumeTrue(isObjectMethodsSupported());
+        ClassFile file = new ClassFile(getClass().getName() + "Generated", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_11, getClass().getClassLoader());
+        file.addField(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.FINAL), "name", "Ljava/lang/String;");
+        file.addField(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.FINAL), "value", "I");
+        CodeAttribute ca = file.addMethod(AccessFlag.PUBLIC, "<init>", "V", "Ljava/lang/String;", "I").getCodeAttribute();
+        ca.aload(0);
+        ca.invokespecial("java/lang/Object", "<init>", "()V");
+        ca.aload(0);
+        ca.aload(1);
+        ca.putfield(file.getName(), "name", "Ljava/lang/String;");
+        ca.aload(0);
+        ca.iload(2);
+        ca.putfield(file.getName(), "value", "I");
+        ca.returnInstruction();
+        file.addObjectMethods("name", "value");
+
+        Class<?> clazz = file.define();
+        Object a = clazz.getConstructor(String.class, int.class).newInstance("a", 1);
+        Object a2 = clazz.getConstructor(String.class, int.class).newInstance("a", 1);
+        Object b = clazz.getConstructor(String.class, int.class).newInstance("b", 1);
+        Assert.assertEquals(a, a2);
+        Assert.assertNotEquals(a, b);
+        Assert.assertNotEquals(a, "a");
+        Assert.assertEquals(a.hashCode(), a2.hashCode());
+        Assert.assertEquals(31 * Objects.hashCode("a") + 1, a.hashCode());
+        Assert.assertEquals(clazz.getSimpleName() + "[name=a, value=1]", a.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() {
+        ClassFile file = new ClassFile(getClass().getName() + "Unknown", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_11, getClass().getClassLoader());
+        file.addObjectMethods("missing");
+    }
+
+    @Test
+    public void testOldClassVersionIsRejected() throws IOException {
+        ClassFile file = new ClassFile(getClass().getName() + "Old", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_6, getClass().getClassLoader());
+        file.addField(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.FINAL), "name", "Ljava/lang/String;");
+        int poolSize = poolSize(file);
+        try {
+            file.addObjectMethods("name");
+            Assert.fail();
+        } catch (InvalidBytecodeException e) {
+            // expected
+        }
+        Assert.assertTrue(file.getMethods().isEmpty());
+        Assert.assertEquals(poolSize, poolSize(file));
+    }
+
+    @Test
+    public void testStaticFieldIsRejected() throws IOException {
+        ClassFile file = new ClassFile(getClass().getName() + "Static", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_11, getClass().getClassLoader());
+        file.addField(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.FINAL), "name", "Ljava/lang/String;");
+        file.addField(AccessFlag.of(AccessFlag.PRIVATE, AccessFlag.STATIC), "count", "I");
+        int poolSize = poolSize(file);
+        try {
+            file.addObjectMethods("name", "count");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertTrue(file.getMethods().isEmpty());
+        Assert.assertEquals(poolSize, poolSize(file));
+    }
+
+    private static int poolSize(ClassFile file) throws IOException {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        file.getConstPool().write(out);
+        return out.size();
+    }
+
+    private static boolean isObjectMethodsSupported() {
+        try {
+            Class.forName("java.lang.runtime.ObjectMethods");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.CodeLocation;
+import org.jboss.classfilewriter.code.ExceptionHandler;
+import org.jboss.classfilewriter.code.TableSwitchBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeepholeOptimizationTest {
+
+    @Test
+    public void testBranchOverGotoIsInverted() throws Exception {
+        int[] lengths = new int[2];
+        for (int i = 0; i < 2; ++i) {
+            ClassFile file = ClassFileTester.newClassFile(getClass());
+            ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "choose", "I", "I");
+            CodeAttribute ca = method.getCodeAttribute();
+            ca.setPeepholeOptimization(i == 1);
+            ca.iload(0);
+            BranchEnd zero = ca.ifeq();
+            BranchEnd nonZero = ca.gotoInstruction();
+            ca.branchEnd(zero);
+            ca.iconst(1);
+            ca.returnInstruction();
+            ca.branchEnd(nonZero);
+            ca.iconst(2);
+            ca.returnInstruction();
+            Class<?> clazz = file.define();
+            Assert.assertEquals(1, clazz.getMethod("choose", int.class).invoke(null, 0));
+            Assert.assertEquals(2, clazz.getMethod("choose", int.class).invoke(null, 5));
+            lengths[i] = ca.getCodeLength();
+        }
+        Assert.assertEquals(lengths[0] - 3, lengths[1]);
+    }
+
+    @Test
+    public void testRedundantInstructionsAreRemoved() throws Exception {
+        int[] lengths = new int[2];
+        for (int i = 0; i < 2; ++i) {
+            ClassFile file = ClassFileTester.newClassFile(getClass());
+            ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "append", "V",
+                    "Ljava/lang/StringBuilder;", "I");
+            CodeAttribute ca = method.getCodeAttribute();
+            ca.setPeepholeOptimization(i == 1);
+            ca.aload(0);
+            ca.dup();
+            ca.pop();
+            ca.iconst(5);
+            ca.pop();
+            ca.lconst(1);
+            ca.pop2();
+            ca.iload(1);
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(I)Ljava/lang/StringBuilder;");
+            ca.pop();
+            ca.iload(1);
+            BranchEnd skip = ca.ifeq();
+            ca.branchEnd(ca.gotoInstruction());
+            ca.aload(0);
+            ca.ldc("!");
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            ca.pop();
+            BranchEnd end = ca.gotoInstruction();
+            ca.branchEnd(skip);
+            ca.aload(0);
+            ca.ldc("?");
+            ca.invokevirtual("java.lang.StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            ca.pop();
+            ca.branchEnd(end);
+            ca.returnInstruction();
+            Class<?> clazz = file.define();
+            StringBuilder sb = new StringBuilder();
+            clazz.getMethod("append", StringBuilder.class, int.class).invoke(null, sb, 0);
+            clazz.getMethod("append", StringBuilder.class, int.class).invoke(null, sb, 3);
+            Assert.assertEquals("0?3!", sb.toString());
+            lengths[i] = ca.getCodeLength();
+        }
+        // dup/pop, iconst/pop, lconst/pop2, the goto to the next instruction, and the goto to the return
+        Assert.assertEquals(lengths[0] - 2 - 2 - 2 - 3 - 2, lengths[1]);
+    }
+
+    @Test
+    public void testSwitchIsRealigned() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "name", "Ljava/lang/String;",
+                "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setPeepholeOptimization(true);
+        ca.iconst(0);
+        ca.pop();
+        ca.iload(0);
+        TableSwitchBuilder builder = new TableSwitchBuilder(0, 2);
+        List<AtomicReference<BranchEnd>> cases = new ArrayList<AtomicReference<BranchEnd>>();
+        for (int i = 0; i < 3; ++i) {
+            cases.add(builder.add());
+        }
+        ca.tableswitch(builder);
+        ca.branchEnd(builder.getDefaultBranchEnd().get());
+        ca.ldc("default");
+        ca.returnInstruction();
+        for (int i = 0; i < 3; ++i) {
+            ca.branchEnd(cases.get(i).get());
+            ca.ldc("case" + i);
+            ca.returnInstruction();
+        }
+        Class<?> clazz = file.define();
+        for (int i = -1; i < 4; ++i) {
+            String expected = i < 0 || i > 2 ? "default" : "case" + i;
+            Assert.assertEquals(expected, clazz.getMethod("name", int.class).invoke(null, i));
+        }
+    }
+
+    @Test
+    public void testLoopsAndExceptionHandlersAreMoved() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "sum", "I", "[I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.setPeepholeOptimization(true);
+        ca.iconst(0);
+        ca.istore(1);
+        ca.iconst(0);
+        ca.istore(2);
+        ExceptionHandler handler = ca.exceptionBlockStart("java/lang/ArrayIndexOutOfBoundsException");
+        CodeLocation loop = ca.mark();
+        ca.aload(0);
+        ca.pop();
+        ca.iload(1);
+        ca.aload(0);
+        ca.iload(2);
+        ca.iaload();
+        ca.iadd();
+        ca.istore(1);
+        ca.iinc(2, 1);
+        ca.gotoInstruction(loop);
+        ca.exceptionBlockEnd(handler);
+        ca.exceptionHandlerStart(handler);
+        ca.pop();
+        ca.iload(1);
+        ca.returnInstruction();
+        Class<?> clazz = file.define();
+        Assert.assertEquals(6, clazz.getMethod("sum", int[].class).invoke(null, new int[] { 1, 2, 3 }));
+    }
+}
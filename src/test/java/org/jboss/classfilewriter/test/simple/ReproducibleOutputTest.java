@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import java.util.Iterator;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReproducibleOutputTest {
+
+    @Test
+    public void testMembersAreWrittenInInsertionOrder() {
+        ClassFile file = generate("value");
+        Iterator<ClassMethod> methods = file.getMethods().iterator();
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertEquals("method" + i, methods.next().getName());
+        }
+        Assert.assertEquals("field0", file.getFields().iterator().next().getName());
+    }
+
+    @Test
+    public void testIdenticalInputProducesIdenticalBytecode() {
+        ClassFile first = generate("value");
+        ClassFile second = generate("value");
+        Assert.assertArrayEquals(first.toBytecode(), second.toBytecode());
+        Assert.assertEquals(first.getContentHash(), second.getContentHash());
+        Assert.assertNotEquals(first.getContentHash(), generate("other").getContentHash());
+    }
+
+    @Test
+    public void testContentHashIsHashOfBytecode() {
+        ClassFile file = generate("value");
+        long expected = ByteArrayDataOutputStream.FNV_OFFSET_BASIS;
+        for (byte b : file.toBytecode()) {
+            expected ^= b & 0xFF;
+            expected *= ByteArrayDataOutputStream.FNV_PRIME;
+        }
+        Assert.assertEquals(expected, file.getContentHash());
+    }
+
+    private ClassFile generate(String value) {
+        ClassFile file = new ClassFile(getClass().getName() + "Generated", AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER),
+                "java.lang.Object", JavaVersions.JAVA_8, getClass().getClassLoader());
+        for (int i = 0; i < 50; ++i) {
+            file.addField(AccessFlag.PUBLIC, "field" + i, "I");
+        }
+        for (int i = 0; i < 50; ++i) {
+            ClassMethod method = file.addMethod(AccessFlag.PUBLIC, "method" + i, "Ljava/lang/String;");
+            CodeAttribute ca = method.getCodeAttribute();
+            ca.ldc(value + i);
+            ca.returnInstruction();
+        }
+        return file;
+    }
+}
@@ -18,10 +18,19 @@
 package org.jboss.classfilewriter.test.simple;
 
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
 
 import org.junit.Assert;
 
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFactory;
 import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
 import org.junit.Test;
 
 public class SimpleTest {
@@ -49,4 +58,100 @@ public class SimpleTest {
         Assert.assertEquals(1, clazz.getInterfaces().length);
     }
 
+    @Test
+    public void testDefineFromDirectBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        buffer.position(10);
+        ClassFile test = new ClassFile("com/test/CClass", "java/lang/Object", getClass().getClassLoader());
+        Class<?> clazz = test.define(buffer);
+        Assert.assertEquals("com.test.CClass", clazz.getName());
+        Assert.assertEquals(10 + test.getBytecodeLength(), buffer.position());
+    }
+
+    @Test
+    public void testDefineFromArraySlice() {
+        TestClassLoader loader = new TestClassLoader();
+        ClassFile test = new ClassFile("com/test/DClass", "java/lang/Object", loader, loader);
+        byte[] data = new byte[test.getBytecodeLength() + 20];
+        Assert.assertEquals(test.getBytecodeLength(), test.writeTo(data, 10));
+        Class<?> clazz = loader.defineClass(loader, "com.test.DClass", ByteBuffer.wrap(data, 10, test.getBytecodeLength()), null);
+        Assert.assertEquals("com.test.DClass", clazz.getName());
+        Assert.assertArrayEquals(test.toBytecode(), loader.lastDefined);
+    }
+
+    @Test
+    public void testWriteToArrayEncodesDirectly() throws Exception {
+        ClassFile test = createClassWithBranch("com.test.EClass");
+        byte[] data = new byte[4096];
+        int length = test.writeTo(data, 10);
+        Assert.assertEquals(length, test.getBytecodeLength());
+        // the class is written again, which gives the same bytes
+        Assert.assertArrayEquals(test.toBytecode(), Arrays.copyOfRange(data, 10, 10 + length));
+        Assert.assertEquals(5, test.define().getMethod("abs", int.class).invoke(null, -5));
+    }
+
+    @Test
+    public void testDefineFromHeapBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.position(5);
+        ClassFile test = createClassWithBranch("com.test.FClass");
+        Class<?> clazz = test.define(buffer);
+        Assert.assertEquals(5 + test.getBytecodeLength(), buffer.position());
+        Assert.assertArrayEquals(test.toBytecode(), Arrays.copyOfRange(buffer.array(), 5, buffer.position()));
+        Assert.assertEquals(7, clazz.getMethod("abs", int.class).invoke(null, 7));
+    }
+
+    @Test
+    public void testWriteToRegionThatIsTooSmall() {
+        ClassFile test = createClassWithBranch("com.test.GClass");
+        ByteBuffer buffer = ByteBuffer.allocate(40);
+        buffer.position(2);
+        try {
+            test.writeTo(buffer);
+            Assert.fail();
+        } catch (BufferOverflowException expected) {
+        }
+        Assert.assertEquals(2, buffer.position());
+        try {
+            test.writeTo(new byte[50], 10);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        byte[] data = new byte[test.getBytecodeLength() + 1];
+        Assert.assertEquals(test.getBytecodeLength(), test.writeTo(data, 1));
+        Assert.assertArrayEquals(test.toBytecode(), Arrays.copyOfRange(data, 1, data.length));
+    }
+
+    private ClassFile createClassWithBranch(String name) {
+        ClassFile file = new ClassFile(name, AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.SUPER), "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        CodeAttribute ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "abs", "I", "I")
+                .getCodeAttribute();
+        ca.iload(0);
+        BranchEnd positive = ca.ifge();
+        ca.iload(0);
+        ca.ineg();
+        ca.returnInstruction();
+        ca.branchEnd(positive);
+        ca.iload(0);
+        ca.returnInstruction();
+        return file;
+    }
+
+    private static final class TestClassLoader extends ClassLoader implements ClassFactory {
+
+        byte[] lastDefined;
+
+        TestClassLoader() {
+            super(SimpleTest.class.getClassLoader());
+        }
+
+        @Override
+        public Class<?> defineClass(ClassLoader loader, String name, byte[] b, int off, int len, ProtectionDomain protectionDomain) {
+            lastDefined = new byte[len];
+            System.arraycopy(b, off, lastDefined, 0, len);
+            return defineClass(name, b, off, len, protectionDomain);
+        }
+    }
+
 }
@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.simple;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.InvalidBytecodeException;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.CodeLocation;
+import org.jboss.classfilewriter.code.ExceptionHandler;
+import org.jboss.classfilewriter.code.StackEntry;
+import org.jboss.classfilewriter.code.StackEntryType;
+import org.jboss.classfilewriter.code.StackFrame;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UncheckedTest {
+
+    @Test
+    public void testUncheckedCodeIsNotValidated() {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod checked = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "checked", "V", "I");
+        try {
+            checked.getCodeAttribute().aload(0);
+            Assert.fail("expected InvalidBytecodeException");
+        } catch (InvalidBytecodeException expected) {
+        }
+        file.setUnchecked(true);
+        ClassMethod unchecked = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "unchecked", "V", "I");
+        Assert.assertTrue(unchecked.getCodeAttribute().isUnchecked());
+        Assert.assertFalse(checked.getCodeAttribute().isUnchecked());
+        unchecked.getCodeAttribute().aload(0);
+        unchecked.getCodeAttribute().iconst(1);
+        unchecked.getCodeAttribute().iadd();
+    }
+
+    @Test
+    public void testUncheckedCodeHasStackFrames() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "describe",
+                "Ljava/lang/String;", "Ljava/lang/Object;");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.aload(0);
+        BranchEnd isNull = ca.ifnull();
+        ca.aload(0);
+        ca.invokevirtual("java.lang.Object", "toString", "()Ljava/lang/String;");
+        ca.returnInstruction();
+        ca.branchEnd(isNull);
+        ca.ldc("null");
+        ca.returnInstruction();
+        Class<?> clazz = file.define();
+        Assert.assertEquals("null", clazz.getMethod("describe", Object.class).invoke(null, (Object) null));
+        Assert.assertEquals("1", clazz.getMethod("describe", Object.class).invoke(null, 1));
+    }
+
+    @Test
+    public void testLoopFramesMatchCheckedCode() throws Exception {
+        ClassFile checkedFile = ClassFileTester.newClassFile(getClass());
+        ClassMethod checked = checkedFile.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "sum", "I", "I");
+        writeSum(checked.getCodeAttribute());
+        checkedFile.toBytecode();
+
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "sum", "I", "I");
+        writeSum(method.getCodeAttribute());
+        Class<?> clazz = file.define();
+        Assert.assertEquals(10, clazz.getMethod("sum", int.class).invoke(null, 5));
+
+        CodeAttribute ca = method.getCodeAttribute();
+        CodeAttribute expected = checked.getCodeAttribute();
+        Assert.assertEquals(expected.getMaxStack(), ca.getMaxStack());
+        Assert.assertEquals(expected.getMaxLocals(), ca.getMaxLocals());
+        Assert.assertEquals(expected.getStackFrames().keySet(), ca.getStackFrames().keySet());
+    }
+
+    @Test
+    public void testLocalsAreMergedToTheirCommonSupertype() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "number",
+                "Ljava/lang/Number;", "Z");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.iload(0);
+        BranchEnd isFalse = ca.ifeq();
+        ca.iconst(1);
+        ca.invokestatic("java.lang.Integer", "valueOf", "(I)Ljava/lang/Integer;");
+        ca.astore(1);
+        BranchEnd join = ca.gotoInstruction();
+        ca.branchEnd(isFalse);
+        ca.lconst(2);
+        ca.invokestatic("java.lang.Long", "valueOf", "(J)Ljava/lang/Long;");
+        ca.astore(1);
+        ca.branchEnd(join);
+        int joinOffset = ca.getCodeLength();
+        ca.aload(1);
+        ca.returnInstruction();
+        Class<?> clazz = file.define();
+        Assert.assertEquals(1, clazz.getMethod("number", boolean.class).invoke(null, true));
+        Assert.assertEquals(2L, clazz.getMethod("number", boolean.class).invoke(null, false));
+
+        Assert.assertEquals(2, ca.getMaxStack());
+        Assert.assertEquals(2, ca.getMaxLocals());
+        StackFrame frame = ca.getStackFrames().get(joinOffset);
+        Assert.assertNotNull(frame);
+        Assert.assertEquals("Ljava/lang/Number;", frame.getLocalVariableState().get(1).getDescriptor());
+    }
+
+    @Test
+    public void testExceptionHandlerFrame() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "parse", "I",
+                "Ljava/lang/String;");
+        CodeAttribute ca = method.getCodeAttribute();
+        ExceptionHandler handler = ca.exceptionBlockStart("java.lang.NumberFormatException");
+        ca.aload(0);
+        ca.invokestatic("java.lang.Integer", "parseInt", "(Ljava/lang/String;)I");
+        ca.returnInstruction();
+        ca.exceptionBlockEnd(handler);
+        ca.exceptionHandlerStart(handler);
+        int handlerOffset = ca.getCodeLength();
+        ca.pop();
+        ca.iconst(-1);
+        ca.returnInstruction();
+        Class<?> clazz = file.define();
+        Assert.assertEquals(12, clazz.getMethod("parse", String.class).invoke(null, "12"));
+        Assert.assertEquals(-1, clazz.getMethod("parse", String.class).invoke(null, "twelve"));
+
+        StackFrame frame = ca.getStackFrames().get(handlerOffset);
+        Assert.assertEquals(1, frame.getStackState().size());
+        Assert.assertEquals("Ljava/lang/NumberFormatException;", frame.getStackState().top().getDescriptor());
+    }
+
+    @Test
+    public void testUninitializedObjectsAcrossBranches() throws Exception {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod constructor = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC), "<init>", "V");
+        constructor.getCodeAttribute().aload(0);
+        constructor.getCodeAttribute().invokespecial("java.lang.Object", "<init>", "()V");
+        constructor.getCodeAttribute().returnInstruction();
+
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "choose",
+                "Ljava/lang/String;", "Z");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.newInstruction("java.lang.StringBuilder");
+        ca.dup();
+        ca.iload(0);
+        BranchEnd isFalse = ca.ifeq();
+        ca.ldc("yes");
+        BranchEnd join = ca.gotoInstruction();
+        ca.branchEnd(isFalse);
+        ca.ldc("no");
+        ca.branchEnd(join);
+        int joinOffset = ca.getCodeLength();
+        ca.invokespecial("java.lang.StringBuilder", "<init>", "(Ljava/lang/String;)V");
+        ca.invokevirtual("java.lang.StringBuilder", "toString", "()Ljava/lang/String;");
+        ca.returnInstruction();
+        Class<?> clazz = file.define();
+        Assert.assertNotNull(clazz.getConstructor().newInstance());
+        Assert.assertEquals("yes", clazz.getMethod("choose", boolean.class).invoke(null, true));
+        Assert.assertEquals("no", clazz.getMethod("choose", boolean.class).invoke(null, false));
+
+        Assert.assertEquals(3, ca.getMaxStack());
+        StackEntry uninitialized = ca.getStackFrames().get(joinOffset).getStackState().getContents().get(0);
+        Assert.assertEquals(StackEntryType.UNITITIALIZED_OBJECT, uninitialized.getType());
+        Assert.assertEquals(0, uninitialized.getNewInstructionLocation());
+    }
+
+    @Test
+    public void testUnreachableCodeIsRejected() {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        file.setUnchecked(true);
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "unreachable", "I");
+        CodeAttribute ca = method.getCodeAttribute();
+        ca.iconst(0);
+        ca.returnInstruction();
+        ca.iconst(1);
+        ca.returnInstruction();
+        try {
+            file.toBytecode();
+            Assert.fail("expected InvalidBytecodeException");
+        } catch (InvalidBytecodeException expected) {
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUncheckedMustBeSetBeforeCodeIsWritten() {
+        ClassFile file = ClassFileTester.newClassFile(getClass());
+        ClassMethod method = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "late", "V");
+        method.getCodeAttribute().iconst(0);
+        method.getCodeAttribute().setUnchecked(true);
+    }
+
+    /**
+     * Writes a method that sums the numbers below its parameter, with a loop that jumps back to a marked location
+     */
+    private static void writeSum(CodeAttribute ca) {
+        ca.iconst(0);
+        ca.istore(1);
+        ca.iconst(0);
+        ca.istore(2);
+        CodeLocation loop = ca.mark();
+        ca.iload(2);
+        ca.iload(0);
+        BranchEnd end = ca.ifIcmpge();
+        ca.iload(1);
+        ca.iload(2);
+        ca.iadd();
+        ca.istore(1);
+        ca.iinc(2, 1);
+        ca.gotoInstruction(loop);
+        ca.branchEnd(end);
+        ca.iload(1);
+        ca.returnInstruction();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.stackmap;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.JavaVersions;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CachingStackFrameTypeResolver;
+import org.jboss.classfilewriter.code.ClassFileStackFrameTypeResolver;
+import org.jboss.classfilewriter.code.ClassLoadingStackFrameTypeResolver;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackFrameTypeResolverTestCase {
+
+    private static final String FOO = Foo.class.getName();
+    private static final String FOO1 = Foo1.class.getName();
+    private static final String FOO2 = Foo2.class.getName();
+    private static final String BAR1 = Bar1.class.getName();
+    private static final String BAR2 = Bar2.class.getName();
+
+    @Test
+    public void testClassLoadingResolver() {
+        ClassLoader cl = getClass().getClassLoader();
+        ClassLoadingStackFrameTypeResolver resolver = new ClassLoadingStackFrameTypeResolver();
+        Assert.assertEquals(FOO, resolver.resolve(cl, FOO1, FOO2));
+        Assert.assertEquals(FOO, resolver.resolve(cl, FOO, FOO1));
+        // the verifier treats interfaces as Object, so classes that only share an interface merge to Object
+        Assert.assertEquals(Object.class.getName(), resolver.resolve(cl, BAR1, BAR2));
+        Assert.assertEquals(Object.class.getName(), resolver.resolve(cl, FOO1, Object.class.getName()));
+        Assert.assertNull(resolver.resolve(cl, FOO1, "org.jboss.DoesNotExist"));
+    }
+
+    @Test
+    public void testClassFileResolverMatchesClassLoadingResolver() {
+        ClassLoader cl = getClass().getClassLoader();
+        ClassLoadingStackFrameTypeResolver loading = new ClassLoadingStackFrameTypeResolver();
+        ClassFileStackFrameTypeResolver resolver = new ClassFileStackFrameTypeResolver();
+        String[][] pairs = { { FOO1, FOO2 }, { FOO, FOO1 }, { FOO1, FOO }, { BAR1, BAR2 }, { BAR1, Bar.class.getName() },
+                { Integer.class.getName(), Long.class.getName() }, { String.class.getName(), StringBuilder.class.getName() },
+                { FOO1, Object.class.getName() }, { FOO1, Bar.class.getName() } };
+        for (String[] pair : pairs) {
+            Assert.assertEquals(pair[0] + " " + pair[1], loading.resolve(cl, pair[0], pair[1]), resolver.resolve(cl, pair[0], pair[1]));
+        }
+        Assert.assertEquals(Number.class.getName(), resolver.resolve(cl, Integer.class.getName(), Long.class.getName()));
+        Assert.assertNull(resolver.resolve(cl, FOO1, "org.jboss.DoesNotExist"));
+    }
+
+    @Test
+    public void testClassFileResolverDoesNotLoadClasses() {
+        final ClassLoader parent = getClass().getClassLoader();
+        ClassLoader cl = new ClassLoader(null) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                throw new AssertionError("Attempted to load " + name);
+            }
+
+            @Override
+            public URL getResource(String name) {
+                return parent.getResource(name);
+            }
+
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return parent.getResourceAsStream(name);
+            }
+        };
+        Assert.assertEquals(FOO, new ClassFileStackFrameTypeResolver().resolve(cl, FOO1, FOO2));
+    }
+
+    @Test
+    public void testResultsAreCached() {
+        CountingResolver delegate = new CountingResolver();
+        CachingStackFrameTypeResolver resolver = new CachingStackFrameTypeResolver(delegate);
+        ClassLoader cl = getClass().getClassLoader();
+        Assert.assertEquals(FOO, resolver.resolve(cl, FOO1, FOO2));
+        Assert.assertEquals(FOO, resolver.resolve(cl, FOO1, FOO2));
+        Assert.assertEquals(1, delegate.count.get());
+        // results are cached per class loader
+        ClassLoader other = new ClassLoader(cl) {
+        };
+        Assert.assertEquals(FOO, resolver.resolve(other, FOO1, FOO2));
+        Assert.assertEquals(2, delegate.count.get());
+        resolver.clear(cl);
+        Assert.assertEquals(FOO, resolver.resolve(cl, FOO1, FOO2));
+        Assert.assertEquals(3, delegate.count.get());
+    }
+
+    @Test
+    public void testNullResultsAreNotCached() {
+        CountingResolver delegate = new CountingResolver();
+        CachingStackFrameTypeResolver resolver = new CachingStackFrameTypeResolver(delegate);
+        ClassLoader cl = getClass().getClassLoader();
+        Assert.assertNull(resolver.resolve(cl, FOO1, "org.jboss.DoesNotExist"));
+        Assert.assertNull(resolver.resolve(cl, FOO1, "org.jboss.DoesNotExist"));
+        Assert.assertEquals(2, delegate.count.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        CountingResolver delegate = new CountingResolver();
+        CachingStackFrameTypeResolver resolver = new CachingStackFrameTypeResolver(delegate, 2);
+        ClassLoader cl = getClass().getClassLoader();
+        resolver.resolve(cl, FOO1, FOO2);
+        resolver.resolve(cl, BAR1, BAR2);
+        resolver.resolve(cl, FOO1, FOO2);
+        // evicts BAR1, BAR2 as it was the least recently used
+        resolver.resolve(cl, FOO, FOO1);
+        Assert.assertEquals(3, delegate.count.get());
+        resolver.resolve(cl, FOO1, FOO2);
+        Assert.assertEquals(3, delegate.count.get());
+        resolver.resolve(cl, BAR1, BAR2);
+        Assert.assertEquals(4, delegate.count.get());
+    }
+
+    @Test
+    public void testCachingIsOptIn() throws Exception {
+        ClassFile file = createMergingClass("Uncached", null);
+        Assert.assertNull(file.getStackFrameTypeResolver());
+        Assert.assertEquals(FOO1, file.define().getMethod("choose", boolean.class, Foo1.class, Foo2.class).invoke(null, true,
+                new Foo1(), new Foo2()).getClass().getName());
+
+        // a caching resolver set on each class file is shared between them
+        CountingResolver delegate = new CountingResolver();
+        CachingStackFrameTypeResolver resolver = new CachingStackFrameTypeResolver(delegate);
+        for (int i = 0; i < 2; ++i) {
+            createMergingClass("Cached" + i, resolver).define();
+        }
+        Assert.assertEquals(1, delegate.count.get());
+    }
+
+    private ClassFile createMergingClass(String suffix, CodeAttribute.StackFrameTypeResolver resolver) {
+        ClassFile file = new ClassFile(getClass().getName() + suffix, AccessFlag.PUBLIC, "java.lang.Object",
+                JavaVersions.JAVA_8, getClass().getClassLoader());
+        // the resolver is used while the code is written, so it must be set first
+        file.setStackFrameTypeResolver(resolver);
+        CodeAttribute ca = file.addMethod(AccessFlag.of(AccessFlag.PUBLIC, AccessFlag.STATIC), "choose", descriptor(FOO), "Z",
+                descriptor(FOO1), descriptor(FOO2)).getCodeAttribute();
+        ca.iload(0);
+        BranchEnd second = ca.ifeq();
+        ca.aload(1);
+        BranchEnd end = ca.gotoInstruction();
+        ca.branchEnd(second);
+        ca.aload(2);
+        // merging Foo1 and Foo2 requires the resolver
+        ca.branchEnd(end);
+        ca.returnInstruction();
+        return file;
+    }
+
+    private static String descriptor(String className) {
+        return "L" + className.replace('.', '/') + ";";
+    }
+
+    private static final class CountingResolver implements CodeAttribute.StackFrameTypeResolver {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        final ClassLoadingStackFrameTypeResolver delegate = new ClassLoadingStackFrameTypeResolver();
+
+        @Override
+        public String resolve(ClassLoader classLoader, String type1, String type2) {
+            count.incrementAndGet();
+            return delegate.resolve(classLoader, type1, type2);
+        }
+    }
+}
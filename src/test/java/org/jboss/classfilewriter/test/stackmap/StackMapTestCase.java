@@ -1,7 +1,16 @@
 package org.jboss.classfilewriter.test.stackmap;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.classfilewriter.ClassFile;
 import org.jboss.classfilewriter.code.BranchEnd;
 import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.code.CodeLocation;
+import org.jboss.classfilewriter.code.StackFrame;
 import org.jboss.classfilewriter.test.bytecode.MethodTester;
 import org.junit.Test;
 import org.junit.Assert;
@@ -76,4 +85,265 @@ public class StackMapTestCase {
         Assert.assertEquals("foo1", mt.invoke(10));
         Assert.assertEquals("foo2", mt.invoke(0));
     }
+
+    @Test
+    public void testFramesOnlyRecordedWhereNeeded() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iload(0);
+        for (int i = 0; i < 100; ++i) {
+            ca.iconst(i);
+            ca.iadd();
+        }
+        ca.dup();
+        BranchEnd end = ca.ifeq();
+        ca.iconst(1);
+        ca.iadd();
+        ca.branchEnd(end);
+        ca.returnInstruction();
+        // only the branch target needs a frame
+        Assert.assertEquals(1, ca.getStackFrames().size());
+        Assert.assertEquals(4952, (int) mt.invoke(1));
+    }
+
+    @Test
+    public void testMarkedFrameRecordedForBackwardJump() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iconst(0);
+        ca.istore(1);
+        // locations that are never jumped to do not need a frame
+        ca.mark();
+        ca.iload(1);
+        CodeLocation loop = ca.mark();
+        ca.pop();
+        ca.iload(1);
+        ca.iload(0);
+        ca.iadd();
+        ca.istore(1);
+        ca.iinc(0, -1);
+        ca.iload(1);
+        ca.iload(0);
+        ca.ifne(loop);
+        ca.returnInstruction();
+        // iconst_0, istore_1 and iload_1 are single byte instructions
+        Assert.assertEquals(1, ca.getStackFrames().size());
+        StackFrame frame = ca.getStackFrames().get(3);
+        Assert.assertEquals(1, frame.getStackState().size());
+        Assert.assertEquals(2, frame.getLocalVariableState().size());
+        Assert.assertEquals(10, (int) mt.invoke(4));
+    }
+
+    @Test
+    public void testChopAppendAndExtendedFrames() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iconst(7);
+        ca.iload(0);
+        BranchEnd sameLocalsExtended = ca.ifeq();
+        for (int i = 0; i < 40; ++i) {
+            ca.iconst(1);
+            ca.iadd();
+        }
+        // one stack item and an offset that does not fit in the frame type
+        ca.branchEnd(sameLocalsExtended);
+        ca.istore(1);
+        ca.iload(0);
+        BranchEnd chop = ca.ifeq();
+        ca.iconst(2);
+        ca.istore(2);
+        ca.iload(2);
+        BranchEnd append = ca.ifeq();
+        // two more locals than the previous frame
+        ca.branchEnd(append);
+        ca.iload(1);
+        ca.returnInstruction();
+        // one less local than the previous frame
+        ca.branchEnd(chop);
+        ca.iload(1);
+        ca.iconst(100);
+        ca.iadd();
+        ca.returnInstruction();
+        Assert.assertEquals(3, ca.getStackFrames().size());
+        Assert.assertEquals(107, (int) mt.invoke(0));
+        Assert.assertEquals(47, (int) mt.invoke(1));
+        // bipush, iload_0, ifeq and 40 iconst_1, iadd pairs come before the first frame
+        assertFrames(readStackMapTable(mt.getClassFile()), 247, 86, 253, 10, 250, 1);
+    }
+
+    @Test
+    public void testWrittenFrameTypes() {
+        MethodTester<Integer> mt = new MethodTester<Integer>(int.class, int.class);
+        CodeAttribute ca = mt.getCodeAttribute();
+        ca.iload(0);
+        BranchEnd same = ca.ifeq();
+        ca.iinc(0, 1);
+        // same locals as the method descriptor, empty stack
+        ca.branchEnd(same);
+        ca.iconst(5);
+        ca.iload(0);
+        BranchEnd sameLocals1 = ca.ifeq();
+        ca.iconst(1);
+        ca.iadd();
+        // same locals, one stack item
+        ca.branchEnd(sameLocals1);
+        ca.istore(1);
+        ca.iload(0);
+        BranchEnd chop = ca.ifeq();
+        ca.iconst(2);
+        ca.istore(2);
+        ca.iload(2);
+        BranchEnd append = ca.ifeq();
+        ca.iinc(1, 1);
+        // two more locals than the previous frame
+        ca.branchEnd(append);
+        ca.iload(1);
+        ca.returnInstruction();
+        // one less local than the previous frame
+        ca.branchEnd(chop);
+        ca.iconst(3);
+        ca.istore(2);
+        ca.iload(1);
+        ca.iload(0);
+        BranchEnd full = ca.ifeq();
+        ca.iconst(1);
+        ca.iadd();
+        // one more local and a stack item
+        ca.branchEnd(full);
+        ca.returnInstruction();
+        Assert.assertEquals(5, (int) mt.invoke(0));
+        Assert.assertEquals(7, (int) mt.invoke(1));
+        // frames at 7, 14, 28, 30 and 39
+        assertFrames(readStackMapTable(mt.getClassFile()), 7, 7, 64 + 6, 6, 253, 13, 250, 1, 255, 8);
+    }
+
+    /**
+     * asserts the frame type and offset_delta of each frame, given as pairs
+     */
+    private static void assertFrames(List<int[]> frames, int... expected) {
+        Assert.assertEquals(expected.length / 2, frames.size());
+        for (int i = 0; i < frames.size(); ++i) {
+            Assert.assertEquals("type of frame " + i, expected[i * 2], frames.get(i)[0]);
+            Assert.assertEquals("offset_delta of frame " + i, expected[i * 2 + 1], frames.get(i)[1]);
+        }
+    }
+
+    /**
+     * Parses the StackMapTable of the method generated by {@link MethodTester}, returning the frame type and offset_delta of
+     * each frame
+     */
+    private static List<int[]> readStackMapTable(ClassFile file) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.toBytecode()));
+            in.skipBytes(8);
+            int constPoolCount = in.readUnsignedShort();
+            String[] utf8 = new String[constPoolCount];
+            for (int i = 1; i < constPoolCount; ++i) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 5:
+                    case 6:
+                        in.skipBytes(8);
+                        ++i;
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        in.skipBytes(2);
+                        break;
+                    case 15:
+                        in.skipBytes(3);
+                        break;
+                    default:
+                        in.skipBytes(4);
+                }
+            }
+            in.skipBytes(6);
+            in.skipBytes(in.readUnsignedShort() * 2);
+            int fields = in.readUnsignedShort();
+            for (int i = 0; i < fields; ++i) {
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+            int methods = in.readUnsignedShort();
+            for (int i = 0; i < methods; ++i) {
+                in.skipBytes(2);
+                String name = utf8[in.readUnsignedShort()];
+                in.skipBytes(2);
+                int attributes = in.readUnsignedShort();
+                for (int j = 0; j < attributes; ++j) {
+                    String attribute = utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (!name.equals("method") || !attribute.equals("Code")) {
+                        in.skipBytes(length);
+                        continue;
+                    }
+                    in.skipBytes(4);
+                    in.skipBytes(in.readInt());
+                    in.skipBytes(in.readUnsignedShort() * 8);
+                    int codeAttributes = in.readUnsignedShort();
+                    for (int k = 0; k < codeAttributes; ++k) {
+                        String codeAttribute = utf8[in.readUnsignedShort()];
+                        int codeAttributeLength = in.readInt();
+                        if (codeAttribute.equals("StackMapTable")) {
+                            return readFrames(in);
+                        }
+                        in.skipBytes(codeAttributeLength);
+                    }
+                }
+            }
+            throw new AssertionError("No StackMapTable found");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<int[]> readFrames(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<int[]> frames = new ArrayList<int[]>(count);
+        for (int i = 0; i < count; ++i) {
+            int type = in.readUnsignedByte();
+            int offsetDelta;
+            if (type < 64) {
+                offsetDelta = type;
+            } else if (type < 128) {
+                offsetDelta = type - 64;
+                skipVerificationTypes(in, 1);
+            } else {
+                offsetDelta = in.readUnsignedShort();
+                if (type == 247) {
+                    skipVerificationTypes(in, 1);
+                } else if (type > 251 && type < 255) {
+                    skipVerificationTypes(in, type - 251);
+                } else if (type == 255) {
+                    skipVerificationTypes(in, in.readUnsignedShort());
+                    skipVerificationTypes(in, in.readUnsignedShort());
+                }
+            }
+            frames.add(new int[] { type, offsetDelta });
+        }
+        return frames;
+    }
+
+    private static void skipVerificationTypes(DataInputStream in, int count) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            int tag = in.readUnsignedByte();
+            if (tag == 7 || tag == 8) {
+                in.skipBytes(2);
+            }
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; ++i) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ *
+ * Copyright 2026 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.classfilewriter.test.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+
+import org.jboss.classfilewriter.util.ByteArrayDataOutputStream;
+import org.jboss.classfilewriter.util.LazySize;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteArrayDataOutputStreamTestCase {
+
+    private static final String[] STRINGS = { "", "ascii", "nul\u0000", "\u00e9\u07ff\u0800\u20ac\uffff", "\ud83d\ude00" };
+
+    @Test
+    public void testEncodingMatchesDataOutputStream() throws IOException {
+        ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+        DataOutputStream expected = new DataOutputStream(expectedBytes);
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(4);
+        for (DataOutputWriter writer : new DataOutputWriter[] { new DataOutputWriter(expected), new DataOutputWriter(out) }) {
+            writer.write();
+        }
+        Assert.assertArrayEquals(expectedBytes.toByteArray(), out.getBytes());
+        Assert.assertEquals(expected.size(), out.size());
+    }
+
+    @Test
+    public void testLazySizeIsPatched() throws IOException {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        out.writeByte(1);
+        LazySize size = out.writeSize();
+        out.writeLong(2);
+        size.markEnd();
+        byte[] data = out.getBytes();
+        Assert.assertEquals(13, data.length);
+        Assert.assertEquals(8, data[4]);
+    }
+
+    @Test
+    public void testContentHashIncludesPatchedSizes() throws IOException {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(4);
+        out.writeUTF("before");
+        LazySize outer = out.writeSize();
+        out.writeShort(1);
+        LazySize inner = out.writeSize();
+        out.writeLong(2);
+        inner.markEnd();
+        out.writeInt(3);
+        outer.markEnd();
+        out.writeUTF("after");
+        long expected = ByteArrayDataOutputStream.FNV_OFFSET_BASIS;
+        for (byte b : out.getBytes()) {
+            expected ^= b & 0xFF;
+            expected *= ByteArrayDataOutputStream.FNV_PRIME;
+        }
+        Assert.assertEquals(expected, out.getContentHash());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testContentHashRequiresEndedSizes() {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        out.writeSize();
+        out.getContentHash();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testByteArrayOutputStreamReceivesDataOnFlush() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(bytes);
+        LazySize size = out.writeSize();
+        out.writeShort(3);
+        size.markEnd();
+        out.flush();
+        Assert.assertArrayEquals(new byte[] { 0, 0, 0, 2, 0, 3 }, bytes.toByteArray());
+        out.writeByte(4);
+        out.close();
+        Assert.assertArrayEquals(new byte[] { 0, 0, 0, 2, 0, 3, 4 }, bytes.toByteArray());
+    }
+
+    @Test(expected = UTFDataFormatException.class)
+    public void testStringTooLong() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 0x8000; ++i) {
+            builder.append('\u00e9');
+        }
+        new ByteArrayDataOutputStream().writeUTF(builder.toString());
+    }
+
+    /**
+     * writes the same values to a DataOutputStream and a ByteArrayDataOutputStream
+     */
+    private static final class DataOutputWriter {
+
+        private final DataOutput out;
+
+        DataOutputWriter(DataOutput out) {
+            this.out = out;
+        }
+
+        void write() throws IOException {
+            out.write(0x1FF);
+            out.write(new byte[] { 1, 2, 3 }, 1, 2);
+            out.writeBoolean(true);
+            out.writeByte(-2);
+            out.writeShort(0x12345);
+            out.writeChar('\u20ac');
+            out.writeInt(0xCAFEBABE);
+            out.writeLong(0x0123456789ABCDEFL);
+            out.writeFloat(1.5f);
+            out.writeDouble(-2.25);
+            out.writeBytes("bytes\u20ac");
+            out.writeChars("chars\u20ac");
+            for (String string : STRINGS) {
+                out.writeUTF(string);
+            }
+        }
+    }
+}